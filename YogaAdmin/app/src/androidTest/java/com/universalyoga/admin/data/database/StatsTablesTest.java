@@ -0,0 +1,201 @@
+package com.universalyoga.admin.data.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs random sequences of course and schedule writes against an in-memory database
+ * and checks that the trigger-maintained rollups match a full rebuild.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatsTablesTest {
+
+    private static final int SEQUENCES = 300;
+    private static final int WRITES_PER_SEQUENCE = 40;
+
+    private static final String[] TYPES = {"Flow Yoga", "Aerial Yoga", "Family Yoga"};
+    // Spelling variants of the same teachers share a bucket
+    private static final String[] TEACHERS = {"Anna", " anna ", "Ben", "BEN", "", null};
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) {
+            db.close();
+        }
+    }
+
+    @Test
+    public void triggersMatchRebuildAfterRandomWrites() {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            random = new Random(sequence);
+            openEmptyDatabase();
+
+            for (int i = 0; i < WRITES_PER_SEQUENCE; i++) {
+                randomWrite();
+            }
+
+            List<String> maintained = snapshot();
+            StatsTables.rebuild(db);
+            assertEquals("sequence " + sequence, snapshot(), maintained);
+        }
+    }
+
+    private void openEmptyDatabase() {
+        if (db != null) {
+            db.close();
+        }
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        helper.onCreate(db);
+    }
+
+    private void randomWrite() {
+        switch (random.nextInt(6)) {
+            case 0:
+                db.insert(DatabaseHelper.TABLE_YOGA_COURSES, null, randomCourse());
+                break;
+            case 1:
+                update(DatabaseHelper.TABLE_YOGA_COURSES, randomCourse());
+                break;
+            case 2:
+                delete(DatabaseHelper.TABLE_YOGA_COURSES);
+                break;
+            case 3:
+                ContentValues schedule = randomSchedule();
+                if (schedule != null) {
+                    db.insert(DatabaseHelper.TABLE_SCHEDULES, null, schedule);
+                }
+                break;
+            case 4:
+                ContentValues changes = randomSchedule();
+                if (changes != null) {
+                    update(DatabaseHelper.TABLE_SCHEDULES, changes);
+                }
+                break;
+            default:
+                delete(DatabaseHelper.TABLE_SCHEDULES);
+                break;
+        }
+    }
+
+    private ContentValues randomCourse() {
+        ContentValues values = new ContentValues();
+        int dayOrdinal = random.nextInt(7);
+        values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, "Day " + dayOrdinal);
+        values.put(DatabaseHelper.COLUMN_DAY_ORDINAL, dayOrdinal);
+        values.put(DatabaseHelper.COLUMN_TIME, "10:00");
+        values.put(DatabaseHelper.COLUMN_CAPACITY, 5 + random.nextInt(20));
+        values.put(DatabaseHelper.COLUMN_DURATION, 30 + 15 * random.nextInt(5));
+        // Halves add up exactly, so rollup and rebuild sums can be compared as text
+        values.put(DatabaseHelper.COLUMN_PRICE, 5 + random.nextInt(20) / 2.0);
+        values.put(DatabaseHelper.COLUMN_TYPE, TYPES[random.nextInt(TYPES.length)]);
+        return values;
+    }
+
+    /** A schedule for a random existing course, or null if there are no courses. */
+    private ContentValues randomSchedule() {
+        Integer courseId = randomId(DatabaseHelper.TABLE_YOGA_COURSES);
+        if (courseId == null) {
+            return null;
+        }
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_COURSE_ID, courseId);
+        // Dates in the first half of 2025, so weeks span month boundaries
+        values.put(DatabaseHelper.COLUMN_DATE, String.format(Locale.US, "2025-%02d-%02d",
+                1 + random.nextInt(6), 1 + random.nextInt(28)));
+        values.put(DatabaseHelper.COLUMN_TEACHER, TEACHERS[random.nextInt(TEACHERS.length)]);
+        values.put(DatabaseHelper.COLUMN_BOOKED_COUNT, random.nextInt(10));
+        return values;
+    }
+
+    private void update(String table, ContentValues values) {
+        Integer id = randomId(table);
+        if (id != null) {
+            db.update(table, values, DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        }
+    }
+
+    private void delete(String table) {
+        Integer id = randomId(table);
+        if (id != null) {
+            db.delete(table, DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        }
+    }
+
+    private Integer randomId(String table) {
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_ID + " FROM " + table +
+                " ORDER BY " + DatabaseHelper.COLUMN_ID, null);
+        try {
+            if (cursor.getCount() == 0) {
+                return null;
+            }
+            cursor.moveToPosition(random.nextInt(cursor.getCount()));
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Every rollup row as text. The teacher display name is left out: it keeps the
+     * first spelling seen, which a rebuild cannot know.
+     */
+    private List<String> snapshot() {
+        List<String> rows = new ArrayList<>();
+        read(rows, "SELECT " + StatsTables.COLUMN_TYPE + ", " + StatsTables.COLUMN_COURSE_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", " + StatsTables.COLUMN_REVENUE_POTENTIAL +
+                " FROM " + StatsTables.TABLE_COURSE_TYPES + " ORDER BY 1");
+        read(rows, "SELECT " + StatsTables.COLUMN_DAY_ORDINAL + ", " + StatsTables.COLUMN_COURSE_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", " + StatsTables.COLUMN_REVENUE_POTENTIAL +
+                " FROM " + StatsTables.TABLE_DAYS + " ORDER BY 1");
+        read(rows, "SELECT " + StatsTables.COLUMN_MONTH + ", " + StatsTables.COLUMN_CLASS_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", " + StatsTables.COLUMN_REVENUE_POTENTIAL + ", " +
+                StatsTables.COLUMN_BOOKED_COUNT + " FROM " + StatsTables.TABLE_MONTHS + " ORDER BY 1");
+        read(rows, "SELECT " + StatsTables.COLUMN_WEEK_START + ", " + StatsTables.COLUMN_TEACHER_KEY + ", " +
+                StatsTables.COLUMN_CLASS_COUNT + ", " + StatsTables.COLUMN_MINUTES +
+                " FROM " + StatsTables.TABLE_TEACHER_WEEKS + " ORDER BY 1, 2");
+        return rows;
+    }
+
+    private void read(List<String> rows, String query) {
+        Cursor cursor = db.rawQuery(query, null);
+        try {
+            while (cursor.moveToNext()) {
+                StringBuilder row = new StringBuilder(query.substring(query.indexOf(" FROM ")));
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.append(" | ").append(cursor.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
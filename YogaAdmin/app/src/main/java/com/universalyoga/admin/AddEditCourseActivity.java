@@ -2,7 +2,6 @@ package com.universalyoga.admin;
 
 import android.os.Bundle;
 import android.text.Editable;
-import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -10,6 +9,7 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
@@ -17,6 +17,8 @@ import com.google.android.material.textfield.TextInputLayout;
 import com.universalyoga.admin.data.database.AppDatabase;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.ValidationRules;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -189,110 +191,40 @@ public class AddEditCourseActivity extends AppCompatActivity {
     }
 
     private void validateCapacity(String capacityStr) {
-        if (TextUtils.isEmpty(capacityStr)) {
-            tilCapacity.setError("Capacity is required");
-            tilCapacity.setErrorEnabled(true);
-            isCapacityValid = false;
-        } else {
-            try {
-                int capacity = Integer.parseInt(capacityStr);
-                if (capacity <= 0) {
-                    tilCapacity.setError("Capacity must be greater than 0");
-                    tilCapacity.setErrorEnabled(true);
-                    isCapacityValid = false;
-                } else if (capacity > 100) {
-                    tilCapacity.setError("Capacity cannot exceed 100");
-                    tilCapacity.setErrorEnabled(true);
-                    isCapacityValid = false;
-                } else {
-                    tilCapacity.setError(null);
-                    tilCapacity.setErrorEnabled(false);
-                    isCapacityValid = true;
-                }
-            } catch (NumberFormatException e) {
-                tilCapacity.setError("Please enter a valid number");
-                tilCapacity.setErrorEnabled(true);
-                isCapacityValid = false;
-            }
-        }
+        isCapacityValid = showError(tilCapacity, ValidationRules.validateCapacity(capacityStr));
         updateSaveButtonState();
     }
 
     private void validateDuration(String durationStr) {
-        if (TextUtils.isEmpty(durationStr)) {
-            tilDuration.setError("Duration is required");
-            tilDuration.setErrorEnabled(true);
-            isDurationValid = false;
-        } else {
-            try {
-                int duration = Integer.parseInt(durationStr);
-                if (duration <= 0) {
-                    tilDuration.setError("Duration must be greater than 0");
-                    tilDuration.setErrorEnabled(true);
-                    isDurationValid = false;
-                } else if (duration > 300) {
-                    tilDuration.setError("Duration cannot exceed 300 minutes");
-                    tilDuration.setErrorEnabled(true);
-                    isDurationValid = false;
-                } else {
-                    tilDuration.setError(null);
-                    tilDuration.setErrorEnabled(false);
-                    isDurationValid = true;
-                }
-            } catch (NumberFormatException e) {
-                tilDuration.setError("Please enter a valid number");
-                tilDuration.setErrorEnabled(true);
-                isDurationValid = false;
-            }
-        }
+        isDurationValid = showError(tilDuration, ValidationRules.validateDuration(durationStr));
         updateSaveButtonState();
     }
 
     private void validatePrice(String priceStr) {
-        if (TextUtils.isEmpty(priceStr)) {
-            tilPrice.setError("Price is required");
-            tilPrice.setErrorEnabled(true);
-            isPriceValid = false;
-        } else {
-            try {
-                double price = Double.parseDouble(priceStr);
-                if (price <= 0) {
-                    tilPrice.setError("Price must be greater than £0");
-                    tilPrice.setErrorEnabled(true);
-                    isPriceValid = false;
-                } else if (price > 1000) {
-                    tilPrice.setError("Price cannot exceed £1000");
-                    tilPrice.setErrorEnabled(true);
-                    isPriceValid = false;
-                } else {
-                    tilPrice.setError(null);
-                    tilPrice.setErrorEnabled(false);
-                    isPriceValid = true;
-                }
-            } catch (NumberFormatException e) {
-                tilPrice.setError("Please enter a valid price (e.g., 20.50)");
-                tilPrice.setErrorEnabled(true);
-                isPriceValid = false;
-            }
-        }
+        isPriceValid = showError(tilPrice, ValidationRules.validatePrice(priceStr));
         updateSaveButtonState();
     }
 
+    /**
+     * Show or clear a field error. Returns true if there was no error.
+     */
+    private boolean showError(TextInputLayout layout, String error) {
+        layout.setError(error);
+        layout.setErrorEnabled(error != null);
+        return error == null;
+    }
+
     private void updateDescriptionCounter(String description) {
         int length = description.length();
-        int maxLength = 500; // Set reasonable limit
+        int maxLength = ValidationRules.MAX_DESCRIPTION_LENGTH;
 
-        if (length > maxLength) {
-            tilDescription.setError("Description too long (" + length + "/" + maxLength + ")");
-            tilDescription.setErrorEnabled(true);
+        if (!showError(tilDescription, ValidationRules.validateDescription(description))) {
+            return;
+        }
+        if (length > 0) {
+            tilDescription.setHelperText(length + "/" + maxLength + " characters");
         } else {
-            tilDescription.setError(null);
-            tilDescription.setErrorEnabled(false);
-            if (length > 0) {
-                tilDescription.setHelperText(length + "/" + maxLength + " characters");
-            } else {
-                tilDescription.setHelperText("Add a description (optional)");
-            }
+            tilDescription.setHelperText("Add a description (optional)");
         }
     }
 
@@ -362,31 +294,34 @@ public class AddEditCourseActivity extends AppCompatActivity {
             return;
         }
 
-        // Check for duplicate course (same day, time, type)
-        if (courseId == -1) { // Only check for duplicates when adding new course
-            checkForDuplicateAndSave();
-        } else {
-            performSave();
-        }
+        checkForDuplicateAndSave();
     }
 
     private boolean allFieldsValid() {
         return isCapacityValid && isDurationValid && isPriceValid;
     }
 
+    /**
+     * Check the studio time slot before saving. Courses overlapping the slot come from
+     * an indexed query; an exact duplicate (same day, time and type) blocks a new course,
+     * any other overlap asks for confirmation.
+     */
     private void checkForDuplicateAndSave() {
-        String dayOfWeek = spinnerDayOfWeek.getSelectedItem().toString();
-        String time = spinnerTime.getSelectedItem().toString();
-        String type = spinnerType.getSelectedItem().toString();
+        YogaCourse candidate = createCourseFromInputs();
+        if (courseId != -1) {
+            candidate.setId(courseId);
+        }
 
         executor.execute(() -> {
-            List<YogaCourse> existingCourses = dao.getCoursesByDay(dayOfWeek);
+            List<YogaCourse> overlapping = dao.getOverlappingCourses(candidate);
             boolean isDuplicate = false;
 
-            for (YogaCourse course : existingCourses) {
-                if (course.getTime().equals(time) && course.getType().equals(type)) {
-                    isDuplicate = true;
-                    break;
+            if (courseId == -1) { // Only check for duplicates when adding new course
+                for (YogaCourse course : overlapping) {
+                    if (course.getTime().equals(candidate.getTime()) && course.getType().equals(candidate.getType())) {
+                        isDuplicate = true;
+                        break;
+                    }
                 }
             }
 
@@ -396,12 +331,31 @@ public class AddEditCourseActivity extends AppCompatActivity {
                     // Visual feedback on conflicting fields
                     highlightDuplicateFields();
                 });
+            } else if (!overlapping.isEmpty()) {
+                runOnUiThread(() -> showOverlapDialog(candidate, overlapping));
             } else {
                 performSave();
             }
         });
     }
 
+    private void showOverlapDialog(YogaCourse candidate, List<YogaCourse> overlapping) {
+        StringBuilder message = new StringBuilder("This time slot overlaps:\n");
+        for (YogaCourse course : overlapping) {
+            int start = DateUtils.parseTimeToMinutes(course.getTime());
+            message.append("\n• ").append(course.getType()).append(", ")
+                    .append(course.getTime()).append("-").append(DateUtils.formatMinutes(start + course.getDuration()));
+        }
+        message.append("\n\nSave ").append(candidate.getType()).append(" anyway?");
+
+        new AlertDialog.Builder(this)
+                .setTitle("Time Slot Overlap")
+                .setMessage(message.toString())
+                .setPositiveButton("Save Anyway", (dialog, which) -> performSave())
+                .setNegativeButton("Cancel", (dialog, which) -> highlightDuplicateFields())
+                .show();
+    }
+
     private void highlightDuplicateFields() {
         // Temporarily highlight the conflicting spinners
         spinnerDayOfWeek.setBackgroundColor(ContextCompat.getColor(this, android.R.color.holo_red_light));
@@ -428,8 +382,28 @@ public class AddEditCourseActivity extends AppCompatActivity {
                         finish();
                     });
                 } else {
-                    course.setId(courseId);
-                    dao.update(course);
+                    if (existingCourse != null) {
+                        // Only the edited fields are written and sent on the next sync
+                        existingCourse.applyEdits(course);
+                        if (!existingCourse.hasChanges()) {
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "No changes to save", Toast.LENGTH_SHORT).show();
+                                finish();
+                            });
+                            return;
+                        }
+                        if (dao.updateChangedFields(existingCourse) == 0) {
+                            // Sync or another screen saved a newer version since this one was loaded
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "This course was changed elsewhere. Please open it again and redo your edit.", Toast.LENGTH_LONG).show();
+                                finish();
+                            });
+                            return;
+                        }
+                    } else {
+                        course.setId(courseId);
+                        dao.update(course);
+                    }
                     runOnUiThread(() -> {
                         Toast.makeText(this, "Course updated successfully!", Toast.LENGTH_SHORT).show();
                         finish();
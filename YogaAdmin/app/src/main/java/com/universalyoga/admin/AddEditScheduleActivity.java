@@ -2,7 +2,6 @@ package com.universalyoga.admin;
 
 import android.app.DatePickerDialog;
 import android.os.Bundle;
-import android.text.TextUtils;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
@@ -15,15 +14,15 @@ import com.universalyoga.admin.data.database.AppDatabase;
 import com.universalyoga.admin.data.dao.ScheduleDao;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.ScheduleSlot;
 import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.TeacherConflictIndex;
+import com.universalyoga.admin.utils.ValidationRules;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -158,8 +157,7 @@ public class AddEditScheduleActivity extends AppCompatActivity {
     }
 
     private void updateDateDisplay() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        etDate.setText(sdf.format(selectedDate.getTime()));
+        etDate.setText(DateUtils.formatIsoDate(selectedDate));
     }
 
     private void validateDateWithCourse() {
@@ -171,9 +169,8 @@ public class AddEditScheduleActivity extends AppCompatActivity {
         YogaCourse selectedCourse = allCourses.get(spinnerCourse.getSelectedItemPosition());
         String courseDayOfWeek = selectedCourse.getDayOfWeek();
 
-        // Get day of week from selected date
-        SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
-        String selectedDayOfWeek = dayFormat.format(selectedDate.getTime());
+        // Get day of week from selected date (English names, as stored on courses)
+        String selectedDayOfWeek = DateUtils.dayOfWeekName(DateUtils.formatIsoDate(selectedDate));
 
         if (!courseDayOfWeek.equalsIgnoreCase(selectedDayOfWeek)) {
             Toast.makeText(this,
@@ -201,12 +198,9 @@ public class AddEditScheduleActivity extends AppCompatActivity {
         setCourseSelection(schedule.getCourseId());
 
         // Set date
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            Date date = sdf.parse(schedule.getDate());
-            selectedDate.setTime(date);
+        if (DateUtils.setCalendarDate(selectedDate, schedule.getDate())) {
             updateDateDisplay();
-        } catch (ParseException e) {
+        } else {
             etDate.setText(schedule.getDate());
         }
 
@@ -230,9 +224,22 @@ public class AddEditScheduleActivity extends AppCompatActivity {
         }
 
         Schedule schedule = createScheduleFromInputs();
+        YogaCourse course = allCourses.get(spinnerCourse.getSelectedItemPosition());
 
         executor.execute(() -> {
             try {
+                // The same teacher cannot take two overlapping classes
+                List<ScheduleSlot> conflicts = findTeacherConflicts(schedule, course);
+                if (!conflicts.isEmpty()) {
+                    ScheduleSlot conflict = conflicts.get(0);
+                    runOnUiThread(() ->
+                            Toast.makeText(this, schedule.getTeacher() + " is already teaching from " +
+                                    DateUtils.formatMinutes(conflict.getStartMinute()) + " to " +
+                                    DateUtils.formatMinutes(conflict.getEndMinute()) + " on this date!", Toast.LENGTH_LONG).show()
+                    );
+                    return;
+                }
+
                 if (scheduleId == -1) {
                     // Check for duplicate schedule
                     List<Schedule> existingSchedules = scheduleDao.getSchedulesForDate(schedule.getDate());
@@ -260,8 +267,28 @@ public class AddEditScheduleActivity extends AppCompatActivity {
                     });
                 } else {
                     // Update existing schedule
-                    schedule.setId(scheduleId);
-                    scheduleDao.update(schedule);
+                    if (existingSchedule != null) {
+                        // Only the edited fields are written and sent on the next sync
+                        existingSchedule.applyEdits(schedule);
+                        if (!existingSchedule.hasChanges()) {
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "No changes to save", Toast.LENGTH_SHORT).show();
+                                finish();
+                            });
+                            return;
+                        }
+                        if (scheduleDao.updateChangedFields(existingSchedule) == 0) {
+                            // Sync or another screen saved a newer version since this one was loaded
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "This schedule was changed elsewhere. Please open it again and redo your edit.", Toast.LENGTH_LONG).show();
+                                finish();
+                            });
+                            return;
+                        }
+                    } else {
+                        schedule.setId(scheduleId);
+                        scheduleDao.update(schedule);
+                    }
                     runOnUiThread(() -> {
                         Toast.makeText(this, "Schedule updated successfully!", Toast.LENGTH_SHORT).show();
                         finish();
@@ -275,6 +302,18 @@ public class AddEditScheduleActivity extends AppCompatActivity {
         });
     }
 
+    private List<ScheduleSlot> findTeacherConflicts(Schedule schedule, YogaCourse course) {
+        int start = DateUtils.parseTimeToMinutes(course.getTime());
+        if (start == DateUtils.INVALID) {
+            return new ArrayList<>();
+        }
+        // New schedules have no id yet; 0 never matches a stored row
+        ScheduleSlot slot = new ScheduleSlot(scheduleId == -1 ? 0 : scheduleId, course.getId(),
+                schedule.getDate(), schedule.getTeacher(), start, start + course.getDuration());
+        return TeacherConflictIndex.forTeacherOnDate(scheduleDao, schedule.getTeacher(), schedule.getDate())
+                .findConflicts(slot);
+    }
+
     private boolean validateInputs() {
         // Clear previous errors
         etDate.setError(null);
@@ -289,29 +328,16 @@ public class AddEditScheduleActivity extends AppCompatActivity {
         }
 
         // Validate date
-        String dateStr = etDate.getText().toString().trim();
-        if (TextUtils.isEmpty(dateStr)) {
-            etDate.setError("Date is required");
+        String dateError = ValidationRules.validateScheduleDate(etDate.getText().toString().trim());
+        if (dateError != null) {
+            etDate.setError(dateError);
             isValid = false;
-        } else {
-            // Validate date format
-            try {
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-                sdf.setLenient(false);
-                sdf.parse(dateStr);
-            } catch (ParseException e) {
-                etDate.setError("Invalid date format (yyyy-MM-dd)");
-                isValid = false;
-            }
         }
 
         // Validate teacher
-        String teacherStr = etTeacher.getText().toString().trim();
-        if (TextUtils.isEmpty(teacherStr)) {
-            etTeacher.setError("Teacher name is required");
-            isValid = false;
-        } else if (teacherStr.length() < 2) {
-            etTeacher.setError("Teacher name must be at least 2 characters");
+        String teacherError = ValidationRules.validateTeacher(etTeacher.getText().toString().trim());
+        if (teacherError != null) {
+            etTeacher.setError(teacherError);
             isValid = false;
         }
 
@@ -1,9 +1,12 @@
 package com.universalyoga.admin;
 
+import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -17,8 +20,18 @@ import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.dao.ScheduleDao;
 import com.universalyoga.admin.data.entity.YogaCourse;
 import com.universalyoga.admin.data.entity.Schedule;
-
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.ProgressBanner;
+import com.universalyoga.admin.utils.ProgressTracker;
+import com.universalyoga.admin.utils.QRCodeGenerator;
+import com.universalyoga.admin.utils.ScheduleGenerator;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -32,6 +45,7 @@ public class CourseDetailActivity extends AppCompatActivity {
     private YogaCourseDao courseDao;
     private ScheduleDao scheduleDao;
     private ExecutorService executor;
+    private ProgressBanner progressBanner;
 
     private int courseId;
     private YogaCourse course;
@@ -58,6 +72,7 @@ public class CourseDetailActivity extends AppCompatActivity {
 
     private void initViews() {
         tvCourseType = findViewById(R.id.tvCourseType);
+        progressBanner = new ProgressBanner(this);
         tvDayTime = findViewById(R.id.tvDayTime);
         tvCapacity = findViewById(R.id.tvCapacity);
         tvDuration = findViewById(R.id.tvDuration);
@@ -143,21 +158,7 @@ public class CourseDetailActivity extends AppCompatActivity {
     private void generateQRCode() {
         if (course != null) {
             // QR Code content with course details
-            String qrContent = String.format(
-                    "Universal Yoga Course\n" +
-                            "Type: %s\n" +
-                            "Day: %s\n" +
-                            "Time: %s\n" +
-                            "Price: £%.2f\n" +
-                            "Duration: %d min\n" +
-                            "Capacity: %d",
-                    course.getType(),
-                    course.getDayOfWeek(),
-                    course.getTime(),
-                    course.getPrice(),
-                    course.getDuration(),
-                    course.getCapacity()
-            );
+            String qrContent = QRCodeGenerator.courseContent(course);
 
             // [Inference] This would typically use a QR code library like ZXing
             Intent intent = new Intent(this, QRCodeActivity.class);
@@ -192,6 +193,9 @@ public class CourseDetailActivity extends AppCompatActivity {
         } else if (id == R.id.action_share_course) {
             shareCourse();
             return true;
+        } else if (id == R.id.action_generate_schedules) {
+            showGenerateSchedulesDialog();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -219,6 +223,112 @@ public class CourseDetailActivity extends AppCompatActivity {
         });
     }
 
+    private void showGenerateSchedulesDialog() {
+        if (course == null) return;
+
+        View view = getLayoutInflater().inflate(R.layout.dialog_generate_schedules, null);
+        EditText etStartDate = view.findViewById(R.id.etStartDate);
+        EditText etEndDate = view.findViewById(R.id.etEndDate);
+        EditText etTeacherRota = view.findViewById(R.id.etTeacherRota);
+        EditText etSkipDates = view.findViewById(R.id.etSkipDates);
+        EditText etComments = view.findViewById(R.id.etGenerateComments);
+
+        // Default to the next three months
+        Calendar start = Calendar.getInstance();
+        Calendar end = Calendar.getInstance();
+        end.add(Calendar.MONTH, 3);
+        etStartDate.setText(DateUtils.formatIsoDate(start));
+        etEndDate.setText(DateUtils.formatIsoDate(end));
+        etStartDate.setOnClickListener(v -> showDatePicker(etStartDate));
+        etEndDate.setOnClickListener(v -> showDatePicker(etEndDate));
+
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle("Generate " + course.getDayOfWeek() + " Classes")
+                .setView(view)
+                .setPositiveButton("Generate", null)
+                .setNegativeButton("Cancel", null)
+                .create();
+
+        // Override the positive button so the dialog stays open on validation errors
+        dialog.setOnShowListener(d -> dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> {
+            ScheduleGenerator.Plan plan = new ScheduleGenerator.Plan(course,
+                    etStartDate.getText().toString().trim(),
+                    etEndDate.getText().toString().trim(),
+                    splitList(etTeacherRota.getText().toString()),
+                    new HashSet<>(splitList(etSkipDates.getText().toString())),
+                    etComments.getText().toString().trim());
+
+            String error = ScheduleGenerator.validate(plan);
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+                return;
+            }
+            dialog.dismiss();
+            generateSchedules(plan);
+        }));
+        dialog.show();
+    }
+
+    private void showDatePicker(EditText target) {
+        Calendar calendar = Calendar.getInstance();
+        DateUtils.setCalendarDate(calendar, target.getText().toString());
+        new DatePickerDialog(this,
+                (view, year, month, dayOfMonth) -> target.setText(DateUtils.formatIsoDate(year, month + 1, dayOfMonth)),
+                calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH)
+        ).show();
+    }
+
+    private static List<String> splitList(String text) {
+        List<String> items = new ArrayList<>();
+        for (String item : text.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private void generateSchedules(ScheduleGenerator.Plan plan) {
+        if (progressBanner.isShowing()) {
+            Toast.makeText(this, "Wait for the current generation to finish", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        ProgressTracker tracker = progressBanner.start("Generating Classes", "classes");
+
+        executor.execute(() -> {
+            try {
+                ScheduleGenerator.Result result = new ScheduleGenerator(scheduleDao)
+                        .generate(Collections.singletonList(plan), tracker);
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    if (result.isCancelled()) {
+                        Toast.makeText(this, "Generation cancelled, no classes created", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    String message = "Created " + result.getCreated().size() + " class instance(s)";
+                    if (result.getDuplicatesSkipped() > 0) {
+                        message += ", " + result.getDuplicatesSkipped() + " already scheduled";
+                    }
+                    if (result.getDatesSkipped() > 0) {
+                        message += ", " + result.getDatesSkipped() + " skipped";
+                    }
+                    if (result.getConflictsSkipped() > 0) {
+                        message += ", " + result.getConflictsSkipped() + " teacher conflict(s)";
+                    }
+                    Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+                    loadCourseDetails();
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    Toast.makeText(this, "Error generating schedules: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+            }
+        });
+    }
+
     private void shareCourse() {
         if (course == null) return;
 
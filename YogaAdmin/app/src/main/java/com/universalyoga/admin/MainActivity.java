@@ -1,6 +1,7 @@
 package com.universalyoga.admin;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -8,6 +9,8 @@ import android.view.View;
 import android.widget.SearchView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -15,13 +18,29 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.universalyoga.admin.adapter.CourseListItem;
 import com.universalyoga.admin.adapter.YogaCourseAdapter;
 import com.universalyoga.admin.data.database.AppDatabase;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.entity.YogaCourse;
-import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.sync.SyncEngine;
+import com.universalyoga.admin.sync.SyncScheduler;
+import com.universalyoga.admin.utils.DataExporter;
+import com.universalyoga.admin.utils.DataImporter;
 import com.universalyoga.admin.utils.FirebaseSync;
-
+import com.universalyoga.admin.utils.NetworkMonitor;
+import com.universalyoga.admin.utils.Progress;
+import com.universalyoga.admin.utils.ProgressBanner;
+import com.universalyoga.admin.utils.ProgressTracker;
+import com.universalyoga.admin.utils.QRBatchExporter;
+import com.universalyoga.admin.utils.QRCodeGenerator;
+import com.universalyoga.admin.utils.TimetablePublisher;
+import com.universalyoga.admin.utils.TimetableValidator;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,6 +57,17 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
     private YogaCourseDao dao;
     private ExecutorService executor;
     private FirebaseSync firebaseSync;
+    private TimetablePublisher timetablePublisher;
+    private SyncScheduler syncScheduler;
+    private NetworkMonitor networkMonitor;
+    private ProgressBanner progressBanner;
+    // When the course list last reflected a finished sync
+    private long shownSyncAt;
+
+    private final SyncScheduler.Listener syncListener = this::showSyncState;
+
+    private final ActivityResultLauncher<String[]> importPicker = registerForActivityResult(
+            new ActivityResultContracts.OpenMultipleDocuments(), this::startImport);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,12 +87,19 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
         tvEmptyState = findViewById(R.id.tvEmptyState);
         fabAddCourse = findViewById(R.id.fabAddCourse);
         swipeRefreshLayout = findViewById(R.id.swipeRefreshLayout);
+        progressBanner = new ProgressBanner(this);
     }
 
     private void initDatabase() {
         dao = AppDatabase.getInstance(this).yogaCourseDao();
         executor = Executors.newSingleThreadExecutor();
         firebaseSync = new FirebaseSync(this);
+        timetablePublisher = new TimetablePublisher(this, dao, AppDatabase.getInstance(this).scheduleDao());
+        syncScheduler = SyncScheduler.getInstance(this);
+        networkMonitor = NetworkMonitor.getInstance(this);
+        shownSyncAt = syncScheduler.getState().getLastSyncAt();
+        syncScheduler.addListener(syncListener);
+        showSyncState(syncScheduler.getState());
     }
 
     private void setupRecyclerView() {
@@ -146,9 +183,9 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
         }
 
         executor.execute(() -> {
-            List<YogaCourse> courses = dao.searchCourses(query.trim());
+            List<CourseListItem> items = CourseListItem.fromCourses(dao.searchCourses(query.trim()));
             runOnUiThread(() -> {
-                updateUI(courses);
+                updateUI(items);
                 if (swipeRefreshLayout != null) {
                     swipeRefreshLayout.setRefreshing(false);
                 }
@@ -162,9 +199,9 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
         }
 
         executor.execute(() -> {
-            List<YogaCourse> courses = dao.getAllCourses();
+            List<CourseListItem> items = CourseListItem.fromCourses(dao.getAllCourses());
             runOnUiThread(() -> {
-                updateUI(courses);
+                updateUI(items);
                 if (swipeRefreshLayout != null) {
                     swipeRefreshLayout.setRefreshing(false);
                 }
@@ -172,9 +209,9 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
         });
     }
 
-    private void updateUI(List<YogaCourse> courses) {
-        if (courses != null && !courses.isEmpty()) {
-            adapter.setCourses(courses);
+    private void updateUI(List<CourseListItem> items) {
+        if (items != null && !items.isEmpty()) {
+            adapter.setItems(items);
             recyclerCourses.setVisibility(View.VISIBLE);
             tvEmptyState.setVisibility(View.GONE);
         } else {
@@ -208,6 +245,21 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
         } else if (id == R.id.action_export_data) {
             exportData();
             return true;
+        } else if (id == R.id.action_import_data) {
+            importPicker.launch(new String[]{"*/*"});
+            return true;
+        } else if (id == R.id.action_timetable_health) {
+            showTimetableHealth();
+            return true;
+        } else if (id == R.id.action_statistics) {
+            startActivity(new Intent(this, StatsActivity.class));
+            return true;
+        } else if (id == R.id.action_sync_diagnostics) {
+            startActivity(new Intent(this, SyncDiagnosticsActivity.class));
+            return true;
+        } else if (id == R.id.action_export_qr_codes) {
+            showExportQRCodesDialog();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -231,74 +283,338 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
             dao.deleteAllCourses();
             // Schedules will be automatically deleted due to CASCADE foreign key
 
-            // Step 2: Clear Firestore data
-            firebaseSync.resetFirestoreDatabase(new FirebaseSync.SyncCallback() {
+            if (!networkMonitor.isConnected()) {
+                // The tombstones are pushed by the background sync when the connection is back
+                runOnUiThread(() -> {
+                    Toast.makeText(MainActivity.this, "Local database reset. Cloud data will be cleared when you're back online.", Toast.LENGTH_LONG).show();
+                    loadCourses();
+                });
+                return;
+            }
+
+            // Step 2: Push the deletes as tombstones, so other devices drop the rows too
+            // instead of uploading them again, then clear the customer timetable
+            syncScheduler.pushDeletes(new SyncEngine.Callback() {
                 @Override
-                public void onSuccess() {
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, "✅ Database and cloud data reset successfully!", Toast.LENGTH_SHORT).show();
-                        loadCourses(); // Refresh the UI
+                public void onSuccess(SyncEngine.Summary summary) {
+                    firebaseSync.clearTimetableFromFirestore(new FirebaseSync.SyncCallback() {
+                        @Override
+                        public void onSuccess() {
+                            timetablePublisher.forgetPublished();
+                            runOnUiThread(() -> {
+                                Toast.makeText(MainActivity.this, "✅ Database and cloud data reset successfully!", Toast.LENGTH_SHORT).show();
+                                loadCourses(); // Refresh the UI
+                            });
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            onResetError(error);
+                        }
                     });
                 }
 
                 @Override
                 public void onError(String error) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, "⚠️ Local database reset, but cloud sync failed: " + error, Toast.LENGTH_LONG).show();
-                        loadCourses(); // Still refresh the UI to show local changes
-                    });
+                    onResetError(error);
                 }
             });
         });
     }
 
+    private void onResetError(String error) {
+        runOnUiThread(() -> {
+            Toast.makeText(MainActivity.this, "⚠️ Local database reset, but cloud sync failed: " + error, Toast.LENGTH_LONG).show();
+            loadCourses(); // Still refresh the UI to show local changes
+        });
+    }
+
     private void syncWithFirebase() {
-        Toast.makeText(this, "Starting smart Firebase sync...", Toast.LENGTH_SHORT).show();
+        SyncScheduler.State state = syncScheduler.getState();
+        if (state.getStatus() == SyncScheduler.Status.SYNCING && state.getProgress() != null) {
+            // Runs in the background; the admin can leave it going or stop it
+            new AlertDialog.Builder(this)
+                    .setTitle("Sync in Progress")
+                    .setMessage(state.getProgress().toText("records") +
+                            "\n\nStopped syncs carry on from where they stopped next time.")
+                    .setPositiveButton("Keep Syncing", null)
+                    .setNegativeButton("Stop Sync", (dialog, which) -> syncScheduler.cancelSync())
+                    .show();
+            return;
+        }
+        if (!networkMonitor.isConnected()) {
+            Toast.makeText(this, "You're offline. Sync will start when the connection is back.", Toast.LENGTH_LONG).show();
+            startSync();
+            return;
+        }
+        int pending = syncScheduler.getState().getPendingCount();
+        if (!networkMonitor.isMetered() || pending <= SyncScheduler.LARGE_SYNC_PENDING) {
+            startSync();
+            return;
+        }
+
+        // On mobile data, check with the admin before sending a large backlog
+        new AlertDialog.Builder(this)
+                .setTitle("Metered Connection")
+                .setMessage(pending + " unsynced changes will be sent over a metered connection. Sync now, or wait for Wi-Fi?")
+                .setPositiveButton("Sync Now", (dialog, which) -> startSync())
+                .setNegativeButton("Wait for Wi-Fi", (dialog, which) -> syncScheduler.requestSync())
+                .show();
+    }
+
+    private void startSync() {
+        if (networkMonitor.isConnected()) {
+            Toast.makeText(this, "Starting smart Firebase sync...", Toast.LENGTH_SHORT).show();
+        }
+
+        // Merges this device's changes with those from other devices, then publishes the timetable;
+        // the course list is reloaded by showSyncState when the run finishes
+        syncScheduler.syncNow(new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                Toast.makeText(MainActivity.this, "Complete sync finished successfully!", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(String error) {
+                Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /**
+     * Show what background sync is doing under the title, and reload the courses after a sync.
+     */
+    private void showSyncState(SyncScheduler.State state) {
+        if (state.getLastSyncAt() != shownSyncAt) {
+            shownSyncAt = state.getLastSyncAt();
+            loadCourses();
+        }
+        if (getSupportActionBar() == null) {
+            return;
+        }
+
+        String text;
+        switch (state.getStatus()) {
+            case SYNCING:
+                Progress progress = state.getProgress();
+                text = progress != null && !progress.isIndeterminate()
+                        ? "Syncing… " + progress.getPercent() + "%"
+                        : "Syncing…";
+                break;
+            case WAITING_FOR_NETWORK:
+                text = "Offline";
+                break;
+            case WAITING_FOR_UNMETERED:
+                text = "Waiting for Wi-Fi";
+                break;
+            case WAITING_FOR_BATTERY:
+                text = "Waiting for charger";
+                break;
+            default:
+                text = state.getLastSyncAt() > 0
+                        ? "Synced " + android.text.format.DateUtils.getRelativeTimeSpanString(state.getLastSyncAt())
+                        : "Not synced yet";
+        }
+        if (state.getPendingCount() > 0) {
+            text += " • " + state.getPendingCount() + " pending";
+        }
+        getSupportActionBar().setSubtitle(text);
+    }
+
+    private void exportData() {
+        String[] options = {"CSV", "CSV (gzip)", "JSON lines", "JSON lines (gzip)"};
+        new AlertDialog.Builder(this)
+                .setTitle("Export Data")
+                .setItems(options, (dialog, which) -> startExport(
+                        which < 2 ? DataExporter.Format.CSV : DataExporter.Format.NDJSON,
+                        which % 2 == 1))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void startExport(DataExporter.Format format, boolean gzip) {
+        if (progressBanner.isShowing()) {
+            Toast.makeText(this, "Wait for the current operation to finish", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        DataExporter exporter = new DataExporter(dao,
+                AppDatabase.getInstance(this).scheduleDao(), format, gzip);
+        ProgressTracker tracker = progressBanner.start("Exporting Data", "rows");
+
+        executor.execute(() -> exporter.run(new File(getFilesDir(), "exports"), tracker, new DataExporter.Callback() {
+            @Override
+            public void onComplete(List<File> files, int rowsWritten) {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    Toast.makeText(MainActivity.this, "Exported " + rowsWritten + " rows to " +
+                            files.get(0).getParent(), Toast.LENGTH_LONG).show();
+                });
+            }
+
+            @Override
+            public void onCancelled() {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    Toast.makeText(MainActivity.this, "Export cancelled", Toast.LENGTH_SHORT).show();
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+                });
+            }
+        }));
+    }
+
+    private void startImport(List<Uri> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return;
+        }
+        if (progressBanner.isShowing()) {
+            Toast.makeText(this, "Wait for the current operation to finish", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<DataImporter.Source> sources = new ArrayList<>();
+        for (Uri uri : uris) {
+            sources.add(new DataImporter.Source() {
+                @Override
+                public String getName() {
+                    return uri.getLastPathSegment();
+                }
+
+                @Override
+                public InputStream open() throws FileNotFoundException {
+                    InputStream in = getContentResolver().openInputStream(uri);
+                    if (in == null) {
+                        throw new FileNotFoundException("Could not open " + uri);
+                    }
+                    return in;
+                }
+            });
+        }
+
+        DataImporter importer = new DataImporter(dao, AppDatabase.getInstance(this).scheduleDao());
+        ProgressTracker tracker = progressBanner.start("Importing Data", "rows read");
 
+        executor.execute(() -> importer.run(sources, new File(getFilesDir(), "imports"), tracker, new DataImporter.Callback() {
+            @Override
+            public void onComplete(DataImporter.Report report) {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    loadCourses();
+                    StringBuilder message = new StringBuilder()
+                            .append("Courses imported: ").append(report.getCoursesImported())
+                            .append("\nSchedules imported: ").append(report.getSchedulesImported())
+                            .append("\nRows rejected: ").append(report.getRowsRejected());
+                    if (report.getRejectFile() != null) {
+                        message.append("\n\nReject report saved to:\n").append(report.getRejectFile().getAbsolutePath());
+                    }
+                    new AlertDialog.Builder(MainActivity.this)
+                            .setTitle("Import Complete")
+                            .setMessage(message.toString())
+                            .setPositiveButton("OK", null)
+                            .show();
+                });
+            }
+
+            @Override
+            public void onCancelled() {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    loadCourses();
+                    Toast.makeText(MainActivity.this, "Import cancelled", Toast.LENGTH_SHORT).show();
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> {
+                    progressBanner.finish();
+                    loadCourses();
+                    Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+                });
+            }
+        }));
+    }
+
+    private void showTimetableHealth() {
         executor.execute(() -> {
-            List<YogaCourse> courses = dao.getAllCourses();
+            TimetableValidator.HealthReport report = TimetableValidator.buildReport(dao.getAllCourses());
+            runOnUiThread(() -> new AlertDialog.Builder(this)
+                    .setTitle(report.isHealthy() ? "Timetable Healthy" : "Timetable Issues")
+                    .setMessage(report.toText())
+                    .setPositiveButton("OK", null)
+                    .show());
+        });
+    }
+
+    private void showExportQRCodesDialog() {
+        // With a search open, export the courses it matches rather than every course
+        String filter = searchView != null && searchView.getVisibility() == View.VISIBLE
+                && !searchView.getQuery().toString().trim().isEmpty()
+                ? searchView.getQuery().toString().trim() : null;
+        String[] formats = {"ZIP of PNG images", "Printable PDF (one course per page)"};
+        new AlertDialog.Builder(this)
+                .setTitle(filter == null ? "Export All QR Codes" : "Export QR Codes for \"" + filter + "\"")
+                .setItems(formats, (dialog, which) -> exportQRCodes(
+                        which == 0 ? QRBatchExporter.Format.ZIP : QRBatchExporter.Format.PDF, filter))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * @param filter search query the exported courses must match, or null for every course
+     */
+    private void exportQRCodes(QRBatchExporter.Format format, String filter) {
+        QRBatchExporter exporter = new QRBatchExporter(format, QRCodeGenerator.Options.defaults());
+
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Exporting QR Codes")
+                .setMessage("Preparing...")
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (dialog, which) -> exporter.cancel())
+                .show();
+
+        executor.execute(() -> {
+            List<YogaCourse> courses = filter == null ? dao.getAllCourses() : dao.searchCourses(filter);
+            exporter.run(courses, new File(getFilesDir(), "exports"), new QRBatchExporter.Callback() {
+                @Override
+                public void onProgress(int completed, int total) {
+                    runOnUiThread(() -> progressDialog.setMessage("Rendered " + completed + " of " + total + " QR codes"));
+                }
+
+                @Override
+                public void onComplete(File output, int count) {
+                    runOnUiThread(() -> {
+                        progressDialog.dismiss();
+                        Toast.makeText(MainActivity.this, "Exported " + count + " QR codes to " + output.getAbsolutePath(), Toast.LENGTH_LONG).show();
+                    });
+                }
 
-            // Use smart sync that handles additions, updates, and deletions
-            firebaseSync.smartSyncCoursesToFirestore(courses, new FirebaseSync.SyncCallback() {
                 @Override
-                public void onSuccess() {
-                    // Also sync schedules
-                    executor.execute(() -> {
-                        List<Schedule> schedules = AppDatabase.getInstance(MainActivity.this).scheduleDao().getAllSchedules();
-
-                        firebaseSync.smartSyncSchedulesToFirestore(schedules, new FirebaseSync.SyncCallback() {
-                            @Override
-                            public void onSuccess() {
-                                runOnUiThread(() ->
-                                        Toast.makeText(MainActivity.this, "Complete sync finished successfully!", Toast.LENGTH_SHORT).show()
-                                );
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                runOnUiThread(() ->
-                                        Toast.makeText(MainActivity.this, "Courses synced, but schedules sync failed: " + error, Toast.LENGTH_LONG).show()
-                                );
-                            }
-                        });
+                public void onCancelled() {
+                    runOnUiThread(() -> {
+                        progressDialog.dismiss();
+                        Toast.makeText(MainActivity.this, "QR code export cancelled", Toast.LENGTH_SHORT).show();
                     });
                 }
 
                 @Override
                 public void onError(String error) {
-                    runOnUiThread(() ->
-                            Toast.makeText(MainActivity.this, "Sync failed: " + error, Toast.LENGTH_LONG).show()
-                    );
+                    runOnUiThread(() -> {
+                        progressDialog.dismiss();
+                        Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+                    });
                 }
             });
         });
     }
 
-    private void exportData() {
-        // TODO: Implement data export functionality (CSV, JSON)
-        Toast.makeText(this, "Export functionality coming soon!", Toast.LENGTH_SHORT).show();
-    }
-
     // YogaCourseAdapter.OnCourseClickListener implementation
     @Override
     public void onCourseClick(YogaCourse course) {
@@ -330,14 +646,32 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
             dao.delete(course);
             // Associated schedules will be automatically deleted due to CASCADE
 
-            // Then delete from Firestore
-            firebaseSync.deleteCourseFromFirestore(course.getId(), new FirebaseSync.SyncCallback() {
+            if (!networkMonitor.isConnected()) {
+                runOnUiThread(() -> {
+                    Toast.makeText(MainActivity.this, "Course deleted. It will be removed from the cloud when you're back online.", Toast.LENGTH_LONG).show();
+                    loadCourses();
+                });
+                return;
+            }
+
+            // Then push the tombstones for the course and its schedules, so every device drops them
+            syncScheduler.pushDeletes(new SyncEngine.Callback() {
                 @Override
-                public void onSuccess() {
+                public void onSuccess(SyncEngine.Summary summary) {
                     runOnUiThread(() -> {
                         Toast.makeText(MainActivity.this, "Course deleted successfully from both local and cloud", Toast.LENGTH_SHORT).show();
                         loadCourses();
                     });
+                    // Drop the course from the customer timetable too
+                    syncScheduler.publishTimetable(new FirebaseSync.SyncCallback() {
+                        @Override
+                        public void onSuccess() {}
+
+                        @Override
+                        public void onError(String error) {
+                            // Unpublished changes are picked up by the next sync
+                        }
+                    });
                 }
 
                 @Override
@@ -354,6 +688,9 @@ public class MainActivity extends AppCompatActivity implements YogaCourseAdapter
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (syncScheduler != null) {
+            syncScheduler.removeListener(syncListener);
+        }
         if (executor != null && !executor.isShutdown()) {
             executor.shutdown();
         }
@@ -2,29 +2,33 @@ package com.universalyoga.admin;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.Color;
+import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 
 import com.google.android.material.button.MaterialButton;
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.universalyoga.admin.utils.QRCodeCache;
+import com.universalyoga.admin.utils.QRCodeGenerator;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class QRCodeActivity extends AppCompatActivity {
 
+    private static final String TAG = "QRCodeActivity";
+
     private ImageView ivQRCode;
     private TextView tvQRContent, tvQRTitle;
     private MaterialButton btnShareQR, btnSaveQR;
@@ -33,6 +37,12 @@ public class QRCodeActivity extends AppCompatActivity {
     private String qrTitle;
     private Bitmap qrBitmap;
 
+    private ExecutorService executor;
+    private QRCodeCache qrCache;
+    private String qrCacheKey;
+    private QRCodeGenerator.Options qrOptions = QRCodeGenerator.Options.defaults();
+    private int generation = 0; // Ignore results from superseded requests
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -47,6 +57,9 @@ public class QRCodeActivity extends AppCompatActivity {
             return;
         }
 
+        executor = Executors.newSingleThreadExecutor();
+        qrCache = QRCodeCache.getInstance(this);
+
         initViews();
         setupActionBar();
         generateQRCode();
@@ -77,30 +90,100 @@ public class QRCodeActivity extends AppCompatActivity {
     }
 
     private void generateQRCode() {
-        try {
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
+        generateQRCode(false);
+    }
 
-            // Generate QR code with 512x512 size for good quality
-            BitMatrix bitMatrix = qrCodeWriter.encode(qrContent, BarcodeFormat.QR_CODE, 512, 512);
+    private void generateQRCode(boolean forceRegenerate) {
+        final int requestId = ++generation;
+        final String content = qrContent;
+        final QRCodeGenerator.Options options = qrOptions;
+        final String key = QRCodeCache.keyFor(content, options);
+
+        // Encoding and rendering can take a noticeable time, so keep them off the UI thread
+        executor.execute(() -> {
+            if (!forceRegenerate) {
+                Bitmap cached = qrCache.get(key);
+                if (cached != null) {
+                    Log.d(TAG, "QR code served from cache");
+                    runOnUiThread(() -> {
+                        if (requestId != generation || isFinishing()) {
+                            return;
+                        }
+                        qrBitmap = cached;
+                        qrCacheKey = key;
+                        ivQRCode.setImageBitmap(qrBitmap);
+                        if (getSupportActionBar() != null) {
+                            getSupportActionBar().setSubtitle(options.getSize() + "px • EC " +
+                                    options.getErrorCorrection() + " • cached");
+                        }
+                    });
+                    return;
+                }
+            }
 
-            int width = bitMatrix.getWidth();
-            int height = bitMatrix.getHeight();
+            try {
+                QRCodeGenerator.Result result = QRCodeGenerator.generate(content, options);
+                Log.d(TAG, "Generated " + options.getSize() + "px QR code (EC " +
+                        options.getErrorCorrection() + ") in " + result.getTotalMillis() + " ms" +
+                        " [encode " + result.getEncodeMillis() + " ms, render " + result.getRenderMillis() + " ms]");
+
+                runOnUiThread(() -> {
+                    if (requestId != generation || isFinishing()) {
+                        return;
+                    }
+                    qrBitmap = result.getBitmap();
+                    qrCacheKey = key;
+                    ivQRCode.setImageBitmap(qrBitmap);
+                    showGenerationInfo(result);
+                });
+
+                // Write to the cache after handing the bitmap to the UI so the PNG
+                // compression does not delay display; share runs after this on the same executor
+                qrCache.put(key, result.getBitmap());
+            } catch (WriterException e) {
+                runOnUiThread(() -> {
+                    Toast.makeText(this, "Error generating QR code: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    finish();
+                });
+            }
+        });
+    }
 
-            qrBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+    private void showGenerationInfo(QRCodeGenerator.Result result) {
+        if (getSupportActionBar() != null) {
+            QRCodeGenerator.Options options = result.getOptions();
+            getSupportActionBar().setSubtitle(options.getSize() + "px • EC " +
+                    options.getErrorCorrection() + " • " + result.getTotalMillis() + " ms");
+        }
+    }
 
-            // Set colors - black for QR code, white for background
-            for (int x = 0; x < width; x++) {
-                for (int y = 0; y < height; y++) {
-                    qrBitmap.setPixel(x, y, bitMatrix.get(x, y) ? Color.BLACK : Color.WHITE);
+    private void showOptionsDialog() {
+        String[] labels = new String[QRCodeGenerator.SIZE_OPTIONS.length * 2];
+        final ErrorCorrectionLevel[] levels = {ErrorCorrectionLevel.L, ErrorCorrectionLevel.H};
+        int checked = 0;
+        int index = 0;
+        for (int size : QRCodeGenerator.SIZE_OPTIONS) {
+            for (ErrorCorrectionLevel level : levels) {
+                labels[index] = size + "px, error correction " + level +
+                        (level == ErrorCorrectionLevel.H ? " (more robust)" : "");
+                if (size == qrOptions.getSize() && level == qrOptions.getErrorCorrection()) {
+                    checked = index;
                 }
+                index++;
             }
-
-            ivQRCode.setImageBitmap(qrBitmap);
-
-        } catch (WriterException e) {
-            Toast.makeText(this, "Error generating QR code: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            finish();
         }
+
+        new AlertDialog.Builder(this)
+                .setTitle("QR Code Options")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    qrOptions = qrOptions
+                            .withSize(QRCodeGenerator.SIZE_OPTIONS[which / levels.length])
+                            .withErrorCorrection(levels[which % levels.length]);
+                    dialog.dismiss();
+                    generateQRCode();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
     private void setupClickListeners() {
@@ -114,27 +197,31 @@ public class QRCodeActivity extends AppCompatActivity {
             return;
         }
 
-        try {
-            // Create a temporary file to share
-            File cachePath = new File(getCacheDir(), "qr_codes");
-            cachePath.mkdirs();
+        final Bitmap bitmap = qrBitmap;
+        final String key = qrCacheKey;
 
-            File qrFile = new File(cachePath, "course_qr_code.png");
-            FileOutputStream stream = new FileOutputStream(qrFile);
-            qrBitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            stream.close();
+        // Reuse the PNG already written by the cache; only compress if it is missing
+        executor.execute(() -> {
+            File qrFile = qrCache.getOrWritePngFile(key, bitmap);
+            runOnUiThread(() -> {
+                if (qrFile == null) {
+                    Toast.makeText(this, "Error sharing QR code: could not write image", Toast.LENGTH_SHORT).show();
+                    return;
+                }
 
-            // Share both image and text content
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("text/plain");
-            shareIntent.putExtra(Intent.EXTRA_TEXT, qrContent);
-            shareIntent.putExtra(Intent.EXTRA_SUBJECT, qrTitle != null ? qrTitle : "Universal Yoga Course");
+                // Share the image, with the encoded content as text for apps that take both
+                Uri imageUri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", qrFile);
+                Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                shareIntent.setType("image/png");
+                shareIntent.putExtra(Intent.EXTRA_STREAM, imageUri);
+                shareIntent.putExtra(Intent.EXTRA_TEXT, qrContent);
+                shareIntent.putExtra(Intent.EXTRA_SUBJECT, qrTitle != null ? qrTitle : "Universal Yoga Course");
 
-            startActivity(Intent.createChooser(shareIntent, "Share QR Code"));
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
-        } catch (IOException e) {
-            Toast.makeText(this, "Error sharing QR code: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+                startActivity(Intent.createChooser(shareIntent, "Share QR Code"));
+            });
+        });
     }
 
     private void saveQRCode() {
@@ -168,7 +255,10 @@ public class QRCodeActivity extends AppCompatActivity {
             finish();
             return true;
         } else if (id == R.id.action_regenerate) {
-            generateQRCode();
+            generateQRCode(true);
+            return true;
+        } else if (id == R.id.action_qr_options) {
+            showOptionsDialog();
             return true;
         } else if (id == R.id.action_share_text) {
             shareTextOnly();
@@ -186,4 +276,12 @@ public class QRCodeActivity extends AppCompatActivity {
 
         startActivity(Intent.createChooser(shareIntent, "Share Course Details"));
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (executor != null && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
 }
\ No newline at end of file
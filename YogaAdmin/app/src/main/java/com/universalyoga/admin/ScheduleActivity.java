@@ -21,14 +21,20 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.universalyoga.admin.adapter.ScheduleAdapter;
+import com.universalyoga.admin.adapter.ScheduleListItem;
 import com.universalyoga.admin.data.database.AppDatabase;
 import com.universalyoga.admin.data.dao.ScheduleDao;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.entity.Schedule;
 import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.FirebaseSync;
+import com.universalyoga.admin.utils.TeacherConflictIndex;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -46,8 +52,11 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
     private ScheduleDao scheduleDao;
     private YogaCourseDao courseDao;
     private ExecutorService executor;
+    private FirebaseSync firebaseSync;
 
     private List<YogaCourse> allCourses = new ArrayList<>();
+    // Courses as last loaded on the executor, used to build schedule rows off the main thread
+    private volatile List<YogaCourse> loadedCourses = new ArrayList<>();
     private int selectedCourseId = -1; // -1 means show all courses
 
     @Override
@@ -82,6 +91,7 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
         scheduleDao = database.scheduleDao();
         courseDao = database.yogaCourseDao();
         executor = Executors.newSingleThreadExecutor();
+        firebaseSync = new FirebaseSync(this);
     }
 
     private void setupRecyclerView() {
@@ -140,7 +150,7 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
     private void setupSwipeRefresh() {
         swipeRefreshLayout.setOnRefreshListener(() -> {
             loadCourses();
-            loadSchedules();
+            refreshBookedCounts();
         });
         swipeRefreshLayout.setColorSchemeResources(
                 android.R.color.holo_blue_bright,
@@ -153,6 +163,7 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
     private void loadCourses() {
         executor.execute(() -> {
             List<YogaCourse> courses = courseDao.getAllCourses();
+            loadedCourses = courses != null ? courses : new ArrayList<>();
             runOnUiThread(() -> {
                 allCourses.clear();
                 if (courses != null) {
@@ -188,29 +199,58 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
             } else {
                 schedules = scheduleDao.getSchedulesForCourse(selectedCourseId);
             }
+            List<ScheduleListItem> items = ScheduleListItem.fromSchedules(schedules, loadedCourses);
 
             runOnUiThread(() -> {
-                updateUI(schedules);
+                updateUI(items);
                 swipeRefreshLayout.setRefreshing(false);
             });
         });
     }
 
+    /**
+     * Pull booking counts for upcoming classes from Firestore, then reload the list.
+     * Past classes keep the count from their last pull.
+     */
+    private void refreshBookedCounts() {
+        swipeRefreshLayout.setRefreshing(true);
+
+        executor.execute(() -> {
+            Map<Integer, String> upcoming = scheduleDao.getScheduleUidsFrom(DateUtils.formatIsoDate(Calendar.getInstance()));
+            runOnUiThread(() -> firebaseSync.pullBookingCounts(upcoming, new FirebaseSync.BookingCountsCallback() {
+                @Override
+                public void onSuccess(Map<Integer, Integer> counts) {
+                    executor.execute(() -> {
+                        scheduleDao.setBookedCounts(counts);
+                        runOnUiThread(() -> loadSchedules());
+                    });
+                }
+
+                @Override
+                public void onError(String error) {
+                    Toast.makeText(ScheduleActivity.this, "Could not update bookings: " + error, Toast.LENGTH_LONG).show();
+                    loadSchedules();
+                }
+            }));
+        });
+    }
+
     private void searchSchedules(String query) {
         swipeRefreshLayout.setRefreshing(true);
 
         executor.execute(() -> {
             List<Schedule> schedules = scheduleDao.getSchedulesByTeacher(query.trim());
+            List<ScheduleListItem> items = ScheduleListItem.fromSchedules(schedules, loadedCourses);
             runOnUiThread(() -> {
-                updateUI(schedules);
+                updateUI(items);
                 swipeRefreshLayout.setRefreshing(false);
             });
         });
     }
 
-    private void updateUI(List<Schedule> schedules) {
-        if (schedules != null && !schedules.isEmpty()) {
-            adapter.setSchedules(schedules, allCourses);
+    private void updateUI(List<ScheduleListItem> items) {
+        if (items != null && !items.isEmpty()) {
+            adapter.setItems(items);
             recyclerSchedules.setVisibility(View.VISIBLE);
             tvEmptyState.setVisibility(View.GONE);
         } else {
@@ -247,11 +287,62 @@ public class ScheduleActivity extends AppCompatActivity implements ScheduleAdapt
         } else if (id == R.id.action_clear_all_schedules) {
             showClearAllSchedulesDialog();
             return true;
+        } else if (id == R.id.action_check_teacher_conflicts) {
+            checkTeacherConflicts();
+            return true;
+        } else if (id == R.id.action_near_capacity) {
+            showNearCapacitySchedules();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    private void checkTeacherConflicts() {
+        executor.execute(() -> {
+            List<TeacherConflictIndex.Conflict> conflicts = TeacherConflictIndex.scanAll(scheduleDao);
+            runOnUiThread(() -> {
+                if (conflicts.isEmpty()) {
+                    Toast.makeText(this, "No teacher double-bookings found", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                String[] lines = new String[conflicts.size()];
+                for (int i = 0; i < conflicts.size(); i++) {
+                    lines[i] = conflicts.get(i).describe();
+                }
+                new AlertDialog.Builder(this)
+                        .setTitle(conflicts.size() + " Teacher Conflict(s)")
+                        .setItems(lines, null)
+                        .setPositiveButton("OK", null)
+                        .show();
+            });
+        });
+    }
+
+    private void showNearCapacitySchedules() {
+        executor.execute(() -> {
+            List<Schedule> schedules = scheduleDao.getNearCapacitySchedules(
+                    DateUtils.formatIsoDate(Calendar.getInstance()), ScheduleDao.NEAR_CAPACITY_RATIO);
+            List<ScheduleListItem> items = ScheduleListItem.fromSchedules(schedules, loadedCourses);
+            runOnUiThread(() -> {
+                if (items.isEmpty()) {
+                    Toast.makeText(this, "No upcoming classes are nearly full", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                String[] lines = new String[items.size()];
+                for (int i = 0; i < items.size(); i++) {
+                    ScheduleListItem item = items.get(i);
+                    lines[i] = item.getFormattedDate() + " • " + item.getCourseInfo() + "\n" + item.getFillRateText();
+                }
+                new AlertDialog.Builder(this)
+                        .setTitle(items.size() + " Nearly Full Class(es)")
+                        .setItems(lines, (dialog, which) -> onScheduleClick(items.get(which).getSchedule()))
+                        .setPositiveButton("OK", null)
+                        .show();
+            });
+        });
+    }
+
     private void showClearAllSchedulesDialog() {
         new AlertDialog.Builder(this)
                 .setTitle("Clear All Schedules")
@@ -17,11 +17,8 @@ import com.universalyoga.admin.data.dao.ScheduleDao;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 import com.universalyoga.admin.data.entity.Schedule;
 import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -149,33 +146,8 @@ public class ScheduleDetailActivity extends AppCompatActivity {
     }
 
     private String formatScheduleDate(String dateString) {
-        try {
-            SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            SimpleDateFormat outputFormat = new SimpleDateFormat("EEEE, MMMM dd, yyyy", Locale.getDefault());
-            Date date = inputFormat.parse(dateString);
-
-            // Add day suffix (1st, 2nd, 3rd, etc.)
-            SimpleDateFormat dayFormat = new SimpleDateFormat("d", Locale.getDefault());
-            int day = Integer.parseInt(dayFormat.format(date));
-            String suffix = getDayOfMonthSuffix(day);
-
-            SimpleDateFormat finalFormat = new SimpleDateFormat("EEEE, MMMM d'" + suffix + "', yyyy", Locale.getDefault());
-            return finalFormat.format(date);
-        } catch (ParseException e) {
-            return dateString; // Return original if parsing fails
-        }
-    }
-
-    private String getDayOfMonthSuffix(int day) {
-        if (day >= 11 && day <= 13) {
-            return "th";
-        }
-        switch (day % 10) {
-            case 1: return "st";
-            case 2: return "nd";
-            case 3: return "rd";
-            default: return "th";
-        }
+        // Returns the original string if parsing fails
+        return DateUtils.formatLongDateWithSuffix(dateString);
     }
 
     private void setupClickListeners() {
@@ -0,0 +1,159 @@
+package com.universalyoga.admin;
+
+import android.os.Bundle;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.universalyoga.admin.data.dao.StatsDao;
+import com.universalyoga.admin.data.database.AppDatabase;
+import com.universalyoga.admin.data.entity.StatBucket;
+import com.universalyoga.admin.utils.DateUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Dashboard of revenue potential, busiest days, teacher hours and upcoming months.
+ * Reads only the precomputed rollups from StatsDao, so it stays fast however many schedules exist.
+ */
+public class StatsActivity extends AppCompatActivity {
+
+    private static final int MONTHS_AHEAD = 6;
+
+    private TextView tvRevenueStats, tvDayStats, tvTeachersTitle, tvTeacherStats, tvMonthStats;
+
+    private StatsDao statsDao;
+    private ExecutorService executor;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_stats);
+
+        setTitle("Statistics");
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        tvRevenueStats = findViewById(R.id.tvRevenueStats);
+        tvDayStats = findViewById(R.id.tvDayStats);
+        tvTeachersTitle = findViewById(R.id.tvTeachersTitle);
+        tvTeacherStats = findViewById(R.id.tvTeacherStats);
+        tvMonthStats = findViewById(R.id.tvMonthStats);
+
+        statsDao = AppDatabase.getInstance(this).statsDao();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        loadStats();
+    }
+
+    private void loadStats() {
+        executor.execute(() -> {
+            Calendar calendar = Calendar.getInstance();
+            String today = DateUtils.formatIsoDate(calendar);
+            String weekStart = DateUtils.weekStart(today);
+            String fromMonth = today.substring(0, 7);
+            calendar.add(Calendar.MONTH, MONTHS_AHEAD - 1);
+            String toMonth = DateUtils.formatIsoDate(calendar).substring(0, 7);
+
+            String revenueText = formatRevenue(statsDao.getCourseTypeStats());
+            String dayText = formatDays(statsDao.getDayStats());
+            String teacherText = formatTeachers(statsDao.getTeacherWeekStats(weekStart));
+            String monthText = formatMonths(statsDao.getMonthStats(fromMonth, toMonth));
+
+            runOnUiThread(() -> {
+                tvRevenueStats.setText(revenueText);
+                tvDayStats.setText(dayText);
+                tvTeachersTitle.setText("Teacher Hours, Week of " + DateUtils.formatListDate(weekStart));
+                tvTeacherStats.setText(teacherText);
+                tvMonthStats.setText(monthText);
+            });
+        });
+    }
+
+    private String formatRevenue(List<StatBucket> types) {
+        if (types.isEmpty()) {
+            return "No courses yet";
+        }
+        double total = 0;
+        StringBuilder text = new StringBuilder();
+        for (StatBucket type : types) {
+            total += type.getRevenuePotential();
+            text.append(String.format(Locale.US, "%-14s %2d course(s)  £%,.2f\n",
+                    type.getKey(), type.getCount(), type.getRevenuePotential()));
+        }
+        text.append(String.format(Locale.US, "\nTotal if every class sells out: £%,.2f", total));
+        return text.toString();
+    }
+
+    private String formatDays(List<StatBucket> days) {
+        if (days.isEmpty()) {
+            return "No courses yet";
+        }
+        List<StatBucket> busiestFirst = new ArrayList<>(days);
+        Collections.sort(busiestFirst, (a, b) -> Integer.compare(b.getMinutes(), a.getMinutes()));
+
+        StringBuilder text = new StringBuilder();
+        for (StatBucket day : busiestFirst) {
+            text.append(String.format(Locale.US, "%-10s %2d class(es)  %s\n",
+                    day.getKey(), day.getCount(), formatHours(day.getMinutes())));
+        }
+        return text.toString().trim();
+    }
+
+    private String formatTeachers(List<StatBucket> teachers) {
+        if (teachers.isEmpty()) {
+            return "No classes scheduled this week";
+        }
+        StringBuilder text = new StringBuilder();
+        for (StatBucket teacher : teachers) {
+            String name = teacher.getKey() == null || teacher.getKey().isEmpty() ? "(no teacher)" : teacher.getKey();
+            text.append(String.format(Locale.US, "%-16s %2d class(es)  %s\n",
+                    name, teacher.getCount(), formatHours(teacher.getMinutes())));
+        }
+        return text.toString().trim();
+    }
+
+    private String formatMonths(List<StatBucket> months) {
+        if (months.isEmpty()) {
+            return "No classes scheduled in the next " + MONTHS_AHEAD + " months";
+        }
+        StringBuilder text = new StringBuilder();
+        for (StatBucket month : months) {
+            text.append(String.format(Locale.US, "%s  %3d classes  %s\n         %d booked, £%,.2f potential\n",
+                    month.getKey(), month.getCount(), formatHours(month.getMinutes()),
+                    month.getBookedCount(), month.getRevenuePotential()));
+        }
+        return text.toString().trim();
+    }
+
+    private static String formatHours(int minutes) {
+        return String.format(Locale.US, "%d h %02d min", minutes / 60, minutes % 60);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (executor != null && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.universalyoga.admin;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.format.Formatter;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.universalyoga.admin.data.dao.SyncCheckpointDao;
+import com.universalyoga.admin.data.database.AppDatabase;
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+import com.universalyoga.admin.sync.SqliteLocalStore;
+import com.universalyoga.admin.sync.SyncMetrics;
+import com.universalyoga.admin.sync.SyncScheduler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sync counters, outcomes and per-phase latencies since the app started, from SyncMetrics,
+ * with the scheduler state and any checkpoint left by an unfinished sync. Refreshes while
+ * open, and exports the metrics as a JSON snapshot.
+ */
+public class SyncDiagnosticsActivity extends AppCompatActivity {
+
+    private TextView tvSyncStatus, tvRunStats, tvDocumentStats, tvPhaseStats;
+
+    private SyncScheduler syncScheduler;
+    private SyncCheckpointDao checkpointDao;
+    private ExecutorService executor;
+    private final SyncScheduler.Listener syncListener = state -> loadDiagnostics();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_diagnostics);
+
+        setTitle("Sync Diagnostics");
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        tvSyncStatus = findViewById(R.id.tvSyncStatus);
+        tvRunStats = findViewById(R.id.tvRunStats);
+        tvDocumentStats = findViewById(R.id.tvDocumentStats);
+        tvPhaseStats = findViewById(R.id.tvPhaseStats);
+
+        syncScheduler = SyncScheduler.getInstance(this);
+        checkpointDao = AppDatabase.getInstance(this).syncCheckpointDao();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        syncScheduler.addListener(syncListener);
+        loadDiagnostics();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        syncScheduler.removeListener(syncListener);
+    }
+
+    private void loadDiagnostics() {
+        SyncScheduler.State state = syncScheduler.getState();
+        SyncMetrics metrics = syncScheduler.getMetrics();
+        executor.execute(() -> {
+            List<SyncCheckpoint> checkpoints = new ArrayList<>();
+            for (String collection : SqliteLocalStore.COLLECTIONS) {
+                SyncCheckpoint checkpoint = checkpointDao.get(collection);
+                if (checkpoint != null) {
+                    checkpoints.add(checkpoint);
+                }
+            }
+
+            String statusText = formatStatus(state, checkpoints);
+            String runText = formatRuns(metrics);
+            String documentText = formatDocuments(metrics);
+            String phaseText = formatPhases(metrics);
+
+            runOnUiThread(() -> {
+                tvSyncStatus.setText(statusText);
+                tvRunStats.setText(runText);
+                tvDocumentStats.setText(documentText);
+                tvPhaseStats.setText(phaseText);
+            });
+        });
+    }
+
+    private String formatStatus(SyncScheduler.State state, List<SyncCheckpoint> checkpoints) {
+        StringBuilder text = new StringBuilder()
+                .append(String.format(Locale.US, "%-12s %s\n", "Status", state.getStatus()))
+                .append(String.format(Locale.US, "%-12s %s\n", "Last sync",
+                        state.getLastSyncAt() > 0 ? formatTime(state.getLastSyncAt()) : "never"))
+                .append(String.format(Locale.US, "%-12s %d\n", "Pending", state.getPendingCount()));
+        if (state.getLastError() != null) {
+            text.append(String.format(Locale.US, "%-12s %s\n", "Last error", state.getLastError()));
+        }
+        for (SyncCheckpoint checkpoint : checkpoints) {
+            text.append(String.format(Locale.US, "\nUnfinished sync of %s:\n  %d page(s) done%s",
+                    checkpoint.getCollection(), checkpoint.getPages(),
+                    checkpoint.isDone() ? ", complete" : ", next after " + checkpoint.getCursor()));
+        }
+        return text.toString().trim();
+    }
+
+    private String formatRuns(SyncMetrics metrics) {
+        StringBuilder text = new StringBuilder()
+                .append("Since ").append(formatTime(metrics.getStartedAt())).append("\n\n")
+                .append(String.format(Locale.US, "%-12s %6d\n", "Started", metrics.getRuns()))
+                .append(String.format(Locale.US, "%-12s %6d\n", "Succeeded", metrics.getSucceeded()))
+                .append(String.format(Locale.US, "%-12s %6d\n", "Failed", metrics.getFailed()))
+                .append(String.format(Locale.US, "%-12s %6d\n", "Cancelled", metrics.getCancelled()))
+                .append(String.format(Locale.US, "%-12s %6d\n", "Retries", metrics.getRetries()))
+                .append(String.format(Locale.US, "%-12s %6d\n", "Resumed", metrics.getResumed()));
+        Map<SyncMetrics.Phase, Long> failures = metrics.getFailures();
+        if (!failures.isEmpty()) {
+            text.append("\nFailures by phase\n");
+            for (Map.Entry<SyncMetrics.Phase, Long> failure : failures.entrySet()) {
+                text.append(String.format(Locale.US, "  %-10s %6d\n", failure.getKey(), failure.getValue()));
+            }
+        }
+        return text.toString().trim();
+    }
+
+    private String formatDocuments(SyncMetrics metrics) {
+        return String.format(Locale.US, "%-12s %6d\n", "Pages", metrics.getPages()) +
+                String.format(Locale.US, "%-12s %6d  %s\n", "Fetched", metrics.getDocsFetched(),
+                        Formatter.formatShortFileSize(this, metrics.getBytesFetched())) +
+                String.format(Locale.US, "%-12s %6d  %s\n", "Written", metrics.getDocsWritten() + metrics.getDocsDeleted(),
+                        Formatter.formatShortFileSize(this, metrics.getBytesWritten())) +
+                String.format(Locale.US, "  %-10s %6d\n", "deleted", metrics.getDocsDeleted()) +
+                String.format(Locale.US, "%-12s %6d", "Applied", metrics.getDocsApplied());
+    }
+
+    private String formatPhases(SyncMetrics metrics) {
+        StringBuilder text = new StringBuilder(String.format(Locale.US, "%-9s %5s %6s %6s %6s %6s\n",
+                "Phase", "Runs", "Mean", "p50", "p95", "Max"));
+        for (SyncMetrics.Phase phase : SyncMetrics.Phase.values()) {
+            SyncMetrics.Histogram latency = metrics.getLatency(phase);
+            if (latency.getCount() == 0) {
+                text.append(String.format(Locale.US, "%-9s %5d\n", phase, 0));
+                continue;
+            }
+            text.append(String.format(Locale.US, "%-9s %5d %6d %6s %6s %6d\n", phase, latency.getCount(),
+                    latency.getMeanMs(), formatBound(latency.getPercentileMs(0.5)),
+                    formatBound(latency.getPercentileMs(0.95)), latency.getMaxMs()));
+        }
+        text.append("\np50 and p95 are bucket bounds: the time that half,\nor 95%, of the samples took at most.");
+        return text.toString();
+    }
+
+    // Percentiles beyond the last bucket are shown as slower than it
+    private static String formatBound(long ms) {
+        return ms >= 0 ? "≤" + ms : ">10000";
+    }
+
+    private static String formatTime(long time) {
+        return new SimpleDateFormat("dd MMM HH:mm:ss", Locale.US).format(new Date(time));
+    }
+
+    private void exportMetrics() {
+        String json = syncScheduler.getMetrics().toJson();
+        executor.execute(() -> {
+            File dir = new File(getFilesDir(), "exports");
+            String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+            File file = new File(dir, "sync-metrics-" + stamp + ".json");
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Could not create " + dir);
+                }
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(json.getBytes(StandardCharsets.UTF_8));
+                }
+                runOnUiThread(() -> Toast.makeText(this, "Metrics saved to " + file.getAbsolutePath(),
+                        Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(this, "Export failed: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show());
+            }
+        });
+    }
+
+    private void shareMetrics() {
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/json");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Yoga Admin sync metrics");
+        shareIntent.putExtra(Intent.EXTRA_TEXT, syncScheduler.getMetrics().toJson());
+        startActivity(Intent.createChooser(shareIntent, "Share Sync Metrics"));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.sync_diagnostics_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == android.R.id.home) {
+            finish();
+            return true;
+        } else if (id == R.id.action_export_metrics) {
+            exportMetrics();
+            return true;
+        } else if (id == R.id.action_share_metrics) {
+            shareMetrics();
+            return true;
+        } else if (id == R.id.action_reset_metrics) {
+            syncScheduler.getMetrics().reset();
+            loadDiagnostics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (executor != null && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+}
@@ -4,7 +4,13 @@ import android.app.Application;
 import android.util.Log;
 
 import com.google.firebase.FirebaseApp;
+import com.universalyoga.admin.data.dao.TombstoneDao;
 import com.universalyoga.admin.data.database.AppDatabase;
+import com.universalyoga.admin.sync.SyncScheduler;
+import com.universalyoga.admin.utils.NetworkMonitor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class YogaAdminApp extends Application {
     @Override
@@ -17,6 +23,18 @@ public class YogaAdminApp extends Application {
         // Initialize SQLite database instance
         AppDatabase.getInstance(this);
 
+        // Start following connectivity once, for everything that syncs
+        NetworkMonitor.getInstance(this);
+
+        // Sync in the background after local edits and periodically
+        SyncScheduler.getInstance(this).start();
+
+        // Compact tombstones whose deletes reached Firestore, off the main thread
+        ExecutorService compactor = Executors.newSingleThreadExecutor();
+        compactor.execute(() -> AppDatabase.getInstance(this).tombstoneDao()
+                .purgeAcknowledged(System.currentTimeMillis() - TombstoneDao.RETENTION_MS));
+        compactor.shutdown();
+
         Log.d("YogaAdminApp", "Firebase & SQLite initialized");
     }
-}
\ No newline at end of file
+}
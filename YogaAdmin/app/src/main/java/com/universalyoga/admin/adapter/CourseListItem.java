@@ -0,0 +1,66 @@
+package com.universalyoga.admin.adapter;
+
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Display-ready row for YogaCourseAdapter.
+ * Strings are precomputed on the loading thread so binding is setText only.
+ */
+public class CourseListItem {
+
+    private final YogaCourse course;
+    private final String priceText;
+    private final String capacityText;
+    private final String durationText;
+
+    private CourseListItem(YogaCourse course) {
+        this.course = course;
+        this.priceText = "£" + String.format("%.2f", course.getPrice());
+        this.capacityText = "Capacity: " + course.getCapacity();
+        this.durationText = course.getDuration() + " min";
+    }
+
+    /**
+     * Build rows for a list of courses. Call this on a background thread.
+     */
+    public static List<CourseListItem> fromCourses(List<YogaCourse> courses) {
+        List<CourseListItem> items = new ArrayList<>();
+        if (courses != null) {
+            for (YogaCourse course : courses) {
+                items.add(new CourseListItem(course));
+            }
+        }
+        return items;
+    }
+
+    public YogaCourse getCourse() {
+        return course;
+    }
+
+    public String getType() {
+        return course.getType();
+    }
+
+    public String getDayOfWeek() {
+        return course.getDayOfWeek();
+    }
+
+    public String getTime() {
+        return course.getTime();
+    }
+
+    public String getPriceText() {
+        return priceText;
+    }
+
+    public String getCapacityText() {
+        return capacityText;
+    }
+
+    public String getDurationText() {
+        return durationText;
+    }
+}
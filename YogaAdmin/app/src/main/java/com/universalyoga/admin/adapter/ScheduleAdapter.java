@@ -8,23 +8,18 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.universalyoga.admin.R;
 import com.universalyoga.admin.data.entity.Schedule;
-import com.universalyoga.admin.data.entity.YogaCourse;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 public class ScheduleAdapter extends RecyclerView.Adapter<ScheduleAdapter.ScheduleViewHolder> {
 
-    private List<Schedule> schedules = new ArrayList<>();
-    private List<YogaCourse> courses = new ArrayList<>();
+    private List<ScheduleListItem> items = new ArrayList<>();
     private OnScheduleClickListener listener;
     private Context context;
 
@@ -39,9 +34,11 @@ public class ScheduleAdapter extends RecyclerView.Adapter<ScheduleAdapter.Schedu
         this.listener = listener;
     }
 
-    public void setSchedules(List<Schedule> schedules, List<YogaCourse> courses) {
-        this.schedules = schedules != null ? schedules : new ArrayList<>();
-        this.courses = courses != null ? courses : new ArrayList<>();
+    /**
+     * Set precomputed rows. Build them with ScheduleListItem.fromSchedules on a background thread.
+     */
+    public void setItems(List<ScheduleListItem> items) {
+        this.items = items != null ? items : new ArrayList<>();
         notifyDataSetChanged();
     }
 
@@ -55,27 +52,16 @@ public class ScheduleAdapter extends RecyclerView.Adapter<ScheduleAdapter.Schedu
 
     @Override
     public void onBindViewHolder(@NonNull ScheduleViewHolder holder, int position) {
-        Schedule schedule = schedules.get(position);
-        YogaCourse course = findCourseById(schedule.getCourseId());
-        holder.bind(schedule, course, listener);
+        holder.bind(items.get(position), listener);
     }
 
     @Override
     public int getItemCount() {
-        return schedules.size();
-    }
-
-    private YogaCourse findCourseById(int courseId) {
-        for (YogaCourse course : courses) {
-            if (course.getId() == courseId) {
-                return course;
-            }
-        }
-        return null; // Course not found
+        return items.size();
     }
 
     static class ScheduleViewHolder extends RecyclerView.ViewHolder {
-        private TextView tvCourseInfo, tvDate, tvTeacher, tvComments, tvFormattedDate;
+        private TextView tvCourseInfo, tvDate, tvTeacher, tvComments, tvFormattedDate, tvFillRate;
         private Button btnEdit, btnDelete;
 
         public ScheduleViewHolder(@NonNull View itemView) {
@@ -85,32 +71,33 @@ public class ScheduleAdapter extends RecyclerView.Adapter<ScheduleAdapter.Schedu
             tvTeacher = itemView.findViewById(R.id.tvTeacher);
             tvComments = itemView.findViewById(R.id.tvComments);
             tvFormattedDate = itemView.findViewById(R.id.tvFormattedDate);
+            tvFillRate = itemView.findViewById(R.id.tvFillRate);
             btnEdit = itemView.findViewById(R.id.btnEdit);
             btnDelete = itemView.findViewById(R.id.btnDelete);
         }
 
-        public void bind(Schedule schedule, YogaCourse course, OnScheduleClickListener listener) {
-            // Display course information
-            if (course != null) {
-                String courseInfo = course.getType() + " • " +
-                        course.getDayOfWeek() + " • " +
-                        course.getTime() + " • " +
-                        "£" + String.format("%.2f", course.getPrice());
-                tvCourseInfo.setText(courseInfo);
+        public void bind(ScheduleListItem item, OnScheduleClickListener listener) {
+            Schedule schedule = item.getSchedule();
+
+            // All display strings are precomputed off the main thread
+            tvCourseInfo.setText(item.getCourseInfo());
+            tvDate.setText(item.getDateText());
+            tvTeacher.setText(item.getTeacherText());
+            tvFormattedDate.setText(item.getFormattedDate());
+
+            // Occupancy from the last booking pull
+            if (item.getFillRateText() != null) {
+                tvFillRate.setText(item.getFillRateText());
+                tvFillRate.setTextColor(ContextCompat.getColor(itemView.getContext(),
+                        item.isNearCapacity() ? R.color.error_color : R.color.text_secondary));
+                tvFillRate.setVisibility(View.VISIBLE);
             } else {
-                tvCourseInfo.setText("Course not found (ID: " + schedule.getCourseId() + ")");
+                tvFillRate.setVisibility(View.GONE);
             }
 
-            // Display schedule information
-            tvDate.setText("Date: " + schedule.getDate());
-            tvTeacher.setText("Teacher: " + schedule.getTeacher());
-
-            // Format and display date in a more readable format
-            tvFormattedDate.setText(formatDate(schedule.getDate()));
-
             // Handle comments
-            if (schedule.getComments() != null && !schedule.getComments().trim().isEmpty()) {
-                tvComments.setText("Comments: " + schedule.getComments());
+            if (item.hasComments()) {
+                tvComments.setText(item.getCommentsText());
                 tvComments.setVisibility(View.VISIBLE);
             } else {
                 tvComments.setVisibility(View.GONE);
@@ -135,16 +122,5 @@ public class ScheduleAdapter extends RecyclerView.Adapter<ScheduleAdapter.Schedu
                 }
             });
         }
-
-        private String formatDate(String dateString) {
-            try {
-                SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-                SimpleDateFormat outputFormat = new SimpleDateFormat("EEE, MMM dd, yyyy", Locale.getDefault());
-                Date date = inputFormat.parse(dateString);
-                return outputFormat.format(date);
-            } catch (ParseException e) {
-                return dateString; // Return original if parsing fails
-            }
-        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.universalyoga.admin.adapter;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Display-ready row for ScheduleAdapter.
+ * All strings are built off the main thread when schedules are loaded,
+ * so binding a row only needs setText calls.
+ */
+public class ScheduleListItem {
+
+    private final Schedule schedule;
+    private final String courseInfo;
+    private final String dateText;
+    private final String teacherText;
+    private final String formattedDate;
+    private final String commentsText; // null when there are no comments
+    private final String fillRateText; // null when the course is unknown
+    private final boolean nearCapacity;
+
+    private ScheduleListItem(Schedule schedule, String courseInfo, String dateText,
+                             String teacherText, String formattedDate, String commentsText,
+                             String fillRateText, boolean nearCapacity) {
+        this.schedule = schedule;
+        this.courseInfo = courseInfo;
+        this.dateText = dateText;
+        this.teacherText = teacherText;
+        this.formattedDate = formattedDate;
+        this.commentsText = commentsText;
+        this.fillRateText = fillRateText;
+        this.nearCapacity = nearCapacity;
+    }
+
+    /**
+     * Build rows for a list of schedules. Call this on a background thread.
+     */
+    public static List<ScheduleListItem> fromSchedules(List<Schedule> schedules, List<YogaCourse> courses) {
+        List<ScheduleListItem> items = new ArrayList<>();
+        if (schedules == null) {
+            return items;
+        }
+
+        // Index courses once instead of scanning the list for every row
+        Map<Integer, YogaCourse> courseById = new HashMap<>();
+        if (courses != null) {
+            for (YogaCourse course : courses) {
+                courseById.put(course.getId(), course);
+            }
+        }
+
+        for (Schedule schedule : schedules) {
+            YogaCourse course = courseById.get(schedule.getCourseId());
+
+            String courseInfo;
+            String fillRateText = null;
+            boolean nearCapacity = false;
+            if (course != null) {
+                courseInfo = course.getType() + " • " +
+                        course.getDayOfWeek() + " • " +
+                        course.getTime() + " • " +
+                        "£" + String.format("%.2f", course.getPrice());
+
+                int booked = schedule.getBookedCount();
+                int capacity = course.getCapacity();
+                if (capacity > 0) {
+                    fillRateText = String.format(Locale.US, "Booked: %d/%d (%d%%)",
+                            booked, capacity, Math.round(booked * 100f / capacity));
+                    nearCapacity = booked >= capacity * ScheduleDao.NEAR_CAPACITY_RATIO;
+                } else {
+                    fillRateText = "Booked: " + booked;
+                }
+            } else {
+                courseInfo = "Course not found (ID: " + schedule.getCourseId() + ")";
+            }
+
+            String comments = schedule.getComments();
+            String commentsText = comments != null && !comments.trim().isEmpty()
+                    ? "Comments: " + comments
+                    : null;
+
+            items.add(new ScheduleListItem(
+                    schedule,
+                    courseInfo,
+                    "Date: " + schedule.getDate(),
+                    "Teacher: " + schedule.getTeacher(),
+                    DateUtils.formatListDate(schedule.getDate()),
+                    commentsText,
+                    fillRateText,
+                    nearCapacity));
+        }
+        return items;
+    }
+
+    public Schedule getSchedule() {
+        return schedule;
+    }
+
+    public String getCourseInfo() {
+        return courseInfo;
+    }
+
+    public String getDateText() {
+        return dateText;
+    }
+
+    public String getTeacherText() {
+        return teacherText;
+    }
+
+    public String getFormattedDate() {
+        return formattedDate;
+    }
+
+    public String getCommentsText() {
+        return commentsText;
+    }
+
+    public boolean hasComments() {
+        return commentsText != null;
+    }
+
+    public String getFillRateText() {
+        return fillRateText;
+    }
+
+    /** Bookings have reached ScheduleDao.NEAR_CAPACITY_RATIO of the course capacity. */
+    public boolean isNearCapacity() {
+        return nearCapacity;
+    }
+}
@@ -17,7 +17,7 @@ import java.util.List;
 
 public class YogaCourseAdapter extends RecyclerView.Adapter<YogaCourseAdapter.CourseViewHolder> {
 
-    private List<YogaCourse> courses = new ArrayList<>();
+    private List<CourseListItem> items = new ArrayList<>();
     private OnCourseClickListener listener;
 
     public interface OnCourseClickListener {
@@ -30,8 +30,11 @@ public class YogaCourseAdapter extends RecyclerView.Adapter<YogaCourseAdapter.Co
         this.listener = listener;
     }
 
-    public void setCourses(List<YogaCourse> courses) {
-        this.courses = courses != null ? courses : new ArrayList<>();
+    /**
+     * Set precomputed rows. Build them with CourseListItem.fromCourses on a background thread.
+     */
+    public void setItems(List<CourseListItem> items) {
+        this.items = items != null ? items : new ArrayList<>();
         notifyDataSetChanged();
     }
 
@@ -45,13 +48,12 @@ public class YogaCourseAdapter extends RecyclerView.Adapter<YogaCourseAdapter.Co
 
     @Override
     public void onBindViewHolder(@NonNull CourseViewHolder holder, int position) {
-        YogaCourse course = courses.get(position);
-        holder.bind(course, listener);
+        holder.bind(items.get(position), listener);
     }
 
     @Override
     public int getItemCount() {
-        return courses.size();
+        return items.size();
     }
 
     static class CourseViewHolder extends RecyclerView.ViewHolder {
@@ -70,13 +72,15 @@ public class YogaCourseAdapter extends RecyclerView.Adapter<YogaCourseAdapter.Co
             btnDelete = itemView.findViewById(R.id.btnDelete);
         }
 
-        public void bind(YogaCourse course, OnCourseClickListener listener) {
-            tvType.setText(course.getType());
-            tvDay.setText(course.getDayOfWeek());
-            tvTime.setText(course.getTime());
-            tvPrice.setText("£" + String.format("%.2f", course.getPrice()));
-            tvCapacity.setText("Capacity: " + course.getCapacity());
-            tvDuration.setText(course.getDuration() + " min");
+        public void bind(CourseListItem item, OnCourseClickListener listener) {
+            YogaCourse course = item.getCourse();
+
+            tvType.setText(item.getType());
+            tvDay.setText(item.getDayOfWeek());
+            tvTime.setText(item.getTime());
+            tvPrice.setText(item.getPriceText());
+            tvCapacity.setText(item.getCapacityText());
+            tvDuration.setText(item.getDurationText());
 
             // Click on entire item
             itemView.setOnClickListener(v -> {
@@ -0,0 +1,12 @@
+package com.universalyoga.admin.data.dao;
+
+/**
+ * Receives rows one at a time from a forward-only cursor walk.
+ * Used for table-sized reads (export, sync) that should not build a full list in memory.
+ */
+public interface RowVisitor<T> {
+    /**
+     * @return false to stop iterating early
+     */
+    boolean visit(T row);
+}
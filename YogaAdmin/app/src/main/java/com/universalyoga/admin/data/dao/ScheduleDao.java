@@ -4,17 +4,29 @@ package com.universalyoga.admin.data.dao;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.universalyoga.admin.data.database.DatabaseHelper;
 import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.ScheduleSlot;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.Ulid;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ScheduleDao {
 
     private static final String TAG = "ScheduleDao";
+
+    /** Fill rate at which a class counts as nearly full. */
+    public static final double NEAR_CAPACITY_RATIO = 0.8;
     private DatabaseHelper dbHelper;
 
     public ScheduleDao(DatabaseHelper dbHelper) {
@@ -25,16 +37,84 @@ public class ScheduleDao {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
 
+        if (schedule.getUid() == null) {
+            schedule.setUid(Ulid.next());
+        }
+        values.put(DatabaseHelper.COLUMN_UID, schedule.getUid());
         values.put(DatabaseHelper.COLUMN_COURSE_ID, schedule.getCourseId());
         values.put(DatabaseHelper.COLUMN_DATE, schedule.getDate());
         values.put(DatabaseHelper.COLUMN_TEACHER, schedule.getTeacher());
         values.put(DatabaseHelper.COLUMN_COMMENTS, schedule.getComments());
-
-        long id = db.insert(DatabaseHelper.TABLE_SCHEDULES, null, values);
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_VERSION, 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.insert(DatabaseHelper.TABLE_SCHEDULES, null, values);
+            if (id != -1) {
+                SyncChangeDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, id,
+                        SyncChangeDao.INSERTED, now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        schedule.setVersion(1);
+        schedule.setLastModified(now);
         Log.d(TAG, "Inserted schedule with ID: " + id);
         return id;
     }
 
+    /**
+     * Insert many schedules in one transaction using a single compiled statement.
+     * Generated ids, and uids for schedules without one, are written back to each schedule.
+     */
+    public void insertAll(List<Schedule> schedules) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + DatabaseHelper.TABLE_SCHEDULES + " (" +
+                DatabaseHelper.COLUMN_COURSE_ID + ", " +
+                DatabaseHelper.COLUMN_DATE + ", " +
+                DatabaseHelper.COLUMN_TEACHER + ", " +
+                DatabaseHelper.COLUMN_COMMENTS + ", " +
+                DatabaseHelper.COLUMN_VERSION + ", " +
+                DatabaseHelper.COLUMN_LAST_MODIFIED + ", " +
+                DatabaseHelper.COLUMN_UID + ") VALUES (?, ?, ?, ?, 1, ?, ?)");
+        long now = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            for (Schedule schedule : schedules) {
+                statement.clearBindings();
+                statement.bindLong(1, schedule.getCourseId());
+                statement.bindString(2, schedule.getDate());
+                statement.bindString(3, schedule.getTeacher());
+                if (schedule.getComments() != null) {
+                    statement.bindString(4, schedule.getComments());
+                }
+                statement.bindLong(5, now);
+                if (schedule.getUid() == null) {
+                    schedule.setUid(Ulid.next());
+                }
+                statement.bindString(6, schedule.getUid());
+                schedule.setId((int) statement.executeInsert());
+                schedule.setVersion(1);
+                schedule.setLastModified(now);
+            }
+            if (!schedules.isEmpty()) {
+                // Ids from one transaction are consecutive
+                SyncChangeDao.recordInsertedRange(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES,
+                        schedules.get(0).getId(), schedules.get(schedules.size() - 1).getId(), now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        Log.d(TAG, "Inserted " + schedules.size() + " schedules");
+    }
+
     public void update(Schedule schedule) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
@@ -43,21 +123,142 @@ public class ScheduleDao {
         values.put(DatabaseHelper.COLUMN_DATE, schedule.getDate());
         values.put(DatabaseHelper.COLUMN_TEACHER, schedule.getTeacher());
         values.put(DatabaseHelper.COLUMN_COMMENTS, schedule.getComments());
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_SCHEDULES, values,
+                    DatabaseHelper.COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(schedule.getId())});
+            // Unconditional overwrite: bump whatever version is stored
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_SCHEDULES + " SET " + DatabaseHelper.COLUMN_VERSION +
+                    " = " + DatabaseHelper.COLUMN_VERSION + " + 1 WHERE " + DatabaseHelper.COLUMN_ID + " = ?",
+                    new Object[]{schedule.getId()});
+            SyncChangeDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, schedule.getId(),
+                    Collections.singleton(SyncChangeDao.ALL_FIELDS), now);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Updated schedule. Rows affected: " + rowsAffected);
+    }
+
+    /**
+     * Write only the fields changed through Schedule.applyEdits() and log them for sync,
+     * if the stored version is still the schedule's version. See YogaCourseDao.updateChangedFields().
+     * Returns the number of rows updated, 0 if the schedule was changed or deleted since it was read.
+     */
+    public int updateChangedFields(Schedule schedule) {
+        if (!schedule.hasChanges()) {
+            return 0;
+        }
+        Set<String> changed = schedule.getChangedFields();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        if (changed.contains(DatabaseHelper.COLUMN_COURSE_ID)) values.put(DatabaseHelper.COLUMN_COURSE_ID, schedule.getCourseId());
+        if (changed.contains(DatabaseHelper.COLUMN_DATE)) values.put(DatabaseHelper.COLUMN_DATE, schedule.getDate());
+        if (changed.contains(DatabaseHelper.COLUMN_TEACHER)) values.put(DatabaseHelper.COLUMN_TEACHER, schedule.getTeacher());
+        if (changed.contains(DatabaseHelper.COLUMN_COMMENTS)) values.put(DatabaseHelper.COLUMN_COMMENTS, schedule.getComments());
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_VERSION, schedule.getVersion() + 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_SCHEDULES, values,
+                    DatabaseHelper.COLUMN_ID + " = ? AND " + DatabaseHelper.COLUMN_VERSION + " = ?",
+                    new String[]{String.valueOf(schedule.getId()), String.valueOf(schedule.getVersion())});
+            if (rowsAffected > 0) {
+                SyncChangeDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, schedule.getId(), changed, now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsAffected == 0) {
+            Log.w(TAG, "Schedule " + schedule.getId() + " is no longer at version " + schedule.getVersion());
+            return 0;
+        }
+        Log.d(TAG, "Updated schedule fields " + changed + ". Rows affected: " + rowsAffected);
+        schedule.setVersion(schedule.getVersion() + 1);
+        schedule.setLastModified(now);
+        schedule.clearChanges();
+        return rowsAffected;
+    }
+
+    /**
+     * Overwrite the schedule with the same uid with values merged in by sync if the stored version is still
+     * expectedVersion. See YogaCourseDao.applyRemote(). The booked count is left alone.
+     */
+    public boolean applyRemote(Schedule remote, long expectedVersion) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(DatabaseHelper.COLUMN_COURSE_ID, remote.getCourseId());
+        values.put(DatabaseHelper.COLUMN_DATE, remote.getDate());
+        values.put(DatabaseHelper.COLUMN_TEACHER, remote.getTeacher());
+        values.put(DatabaseHelper.COLUMN_COMMENTS, remote.getComments());
+        values.put(DatabaseHelper.COLUMN_VERSION, expectedVersion + 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, System.currentTimeMillis());
 
         int rowsAffected = db.update(DatabaseHelper.TABLE_SCHEDULES, values,
-                DatabaseHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(schedule.getId())});
+                DatabaseHelper.COLUMN_UID + " = ? AND " + DatabaseHelper.COLUMN_VERSION + " = ?",
+                new String[]{remote.getUid(), String.valueOf(expectedVersion)});
+        Log.d(TAG, "Applied synced values to schedule " + remote.getUid() + ". Rows affected: " + rowsAffected);
+        return rowsAffected > 0;
+    }
 
-        Log.d(TAG, "Updated schedule. Rows affected: " + rowsAffected);
+    /**
+     * Insert a schedule created on another device, keeping its uid; the local id is generated.
+     * Nothing is logged for sync. Returns false if it could not be inserted.
+     */
+    public boolean insertFromRemote(Schedule remote) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(DatabaseHelper.COLUMN_UID, remote.getUid());
+        values.put(DatabaseHelper.COLUMN_COURSE_ID, remote.getCourseId());
+        values.put(DatabaseHelper.COLUMN_DATE, remote.getDate());
+        values.put(DatabaseHelper.COLUMN_TEACHER, remote.getTeacher());
+        values.put(DatabaseHelper.COLUMN_COMMENTS, remote.getComments());
+        values.put(DatabaseHelper.COLUMN_VERSION, 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, System.currentTimeMillis());
+
+        long id = db.insert(DatabaseHelper.TABLE_SCHEDULES, null, values);
+        Log.d(TAG, "Inserted synced schedule " + remote.getUid() + " as " + id);
+        return id != -1;
     }
 
-    public void delete(Schedule schedule) {
+    /**
+     * Delete a schedule deleted on another device, without recording a tombstone.
+     */
+    public boolean deleteFromRemote(String uid) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        int rowsAffected = db.delete(DatabaseHelper.TABLE_SCHEDULES,
-                DatabaseHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(schedule.getId())});
+        String[] args = new String[]{uid};
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            SyncChangeDao.forget(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES,
+                    DatabaseHelper.COLUMN_UID + " = ?", args);
+            rowsAffected = db.delete(DatabaseHelper.TABLE_SCHEDULES, DatabaseHelper.COLUMN_UID + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Deleted synced schedule " + uid + ". Rows affected: " + rowsAffected);
+        return rowsAffected > 0;
+    }
 
-        Log.d(TAG, "Deleted schedule. Rows affected: " + rowsAffected);
+    public void delete(Schedule schedule) {
+        deleteWhere(DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(schedule.getId())});
+        Log.d(TAG, "Deleted schedule " + schedule.getId());
     }
 
     public List<Schedule> getSchedulesForCourse(int courseId) {
@@ -115,6 +316,63 @@ public class ScheduleDao {
         return schedules;
     }
 
+    /**
+     * Walk every schedule in id order without materialising a list.
+     * Column indexes are resolved once rather than per row.
+     */
+    public void forEachSchedule(RowVisitor<Schedule> visitor) {
+        querySchedules(null, null, DatabaseHelper.COLUMN_ID, visitor);
+    }
+
+    /**
+     * Walk the schedules on or after a date, grouped by course and in date order within each course.
+     */
+    public void forEachScheduleFrom(String fromDate, RowVisitor<Schedule> visitor) {
+        querySchedules(DatabaseHelper.COLUMN_DATE + " >= ?", new String[]{fromDate},
+                DatabaseHelper.COLUMN_COURSE_ID + ", " + DatabaseHelper.COLUMN_DATE + ", " + DatabaseHelper.COLUMN_ID,
+                visitor);
+    }
+
+    private void querySchedules(String where, String[] args, String orderBy, RowVisitor<Schedule> visitor) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT * FROM " + DatabaseHelper.TABLE_SCHEDULES +
+                (where != null ? " WHERE " + where : "") +
+                " ORDER BY " + orderBy;
+
+        Cursor cursor = db.rawQuery(query, args);
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
+            int uidIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_UID);
+            int courseIdIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_COURSE_ID);
+            int dateIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE);
+            int teacherIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TEACHER);
+            int commentsIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_COMMENTS);
+            int bookedCountIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOKED_COUNT);
+            int versionIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VERSION);
+            int lastModifiedIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LAST_MODIFIED);
+
+            while (cursor.moveToNext()) {
+                Schedule schedule = new Schedule();
+                schedule.setId(cursor.getInt(idIndex));
+                schedule.setUid(cursor.getString(uidIndex));
+                schedule.setCourseId(cursor.getInt(courseIdIndex));
+                schedule.setDate(cursor.getString(dateIndex));
+                schedule.setTeacher(cursor.getString(teacherIndex));
+                schedule.setComments(cursor.getString(commentsIndex));
+                schedule.setBookedCount(cursor.getInt(bookedCountIndex));
+                schedule.setVersion(cursor.getLong(versionIndex));
+                schedule.setLastModified(cursor.getLong(lastModifiedIndex));
+
+                if (!visitor.visit(schedule)) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     public List<Schedule> getSchedulesForDate(String date) {
         List<Schedule> schedules = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
@@ -135,6 +393,186 @@ public class ScheduleDao {
         return schedules;
     }
 
+    /**
+     * Dates (yyyy-MM-dd) already scheduled for a course between two dates, inclusive;
+     * one range scan of idx_schedules_course_date.
+     */
+    public Set<String> getScheduleDatesForCourse(int courseId, String fromDate, String toDate) {
+        Set<String> dates = new HashSet<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT " + DatabaseHelper.COLUMN_DATE + " FROM " + DatabaseHelper.TABLE_SCHEDULES +
+                " WHERE " + DatabaseHelper.COLUMN_COURSE_ID + " = ? AND " +
+                DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
+
+        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(courseId), fromDate, toDate});
+        try {
+            while (cursor.moveToNext()) {
+                dates.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return dates;
+    }
+
+    /**
+     * Walk every schedule as a time slot, ordered by date and start time, for a
+     * single-pass conflict scan. Teachers are grouped by the caller: SQLite's LOWER()
+     * only folds ASCII, so it cannot match names the way Java does.
+     */
+    public void forEachSlot(RowVisitor<ScheduleSlot> visitor) {
+        querySlots(null, null, "ORDER BY s." + DatabaseHelper.COLUMN_DATE + ", c." +
+                DatabaseHelper.COLUMN_START_MINUTE, visitor);
+    }
+
+    /**
+     * Walk the time slots of every schedule between two dates, inclusive.
+     */
+    public void forEachSlotInRange(String fromDate, String toDate, RowVisitor<ScheduleSlot> visitor) {
+        querySlots("s." + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{fromDate, toDate}, "", visitor);
+    }
+
+    /**
+     * Time slots of every schedule on a date, whoever teaches them.
+     */
+    public List<ScheduleSlot> getSlotsOnDate(String date) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        querySlots("s." + DatabaseHelper.COLUMN_DATE + " = ?", new String[]{date}, "", slot -> {
+            slots.add(slot);
+            return true;
+        });
+        return slots;
+    }
+
+    private void querySlots(String where, String[] args, String orderBy, RowVisitor<ScheduleSlot> visitor) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT s." + DatabaseHelper.COLUMN_ID + ", s." + DatabaseHelper.COLUMN_COURSE_ID +
+                ", s." + DatabaseHelper.COLUMN_DATE + ", s." + DatabaseHelper.COLUMN_TEACHER +
+                ", c." + DatabaseHelper.COLUMN_TIME + ", c." + DatabaseHelper.COLUMN_DURATION +
+                " FROM " + DatabaseHelper.TABLE_SCHEDULES + " s JOIN " + DatabaseHelper.TABLE_YOGA_COURSES +
+                " c ON c." + DatabaseHelper.COLUMN_ID + " = s." + DatabaseHelper.COLUMN_COURSE_ID +
+                (where != null ? " WHERE " + where : "") + " " + orderBy;
+
+        Cursor cursor = db.rawQuery(query, args);
+        try {
+            while (cursor.moveToNext()) {
+                int start = DateUtils.parseTimeToMinutes(cursor.getString(4));
+                if (start == DateUtils.INVALID) {
+                    continue;
+                }
+                ScheduleSlot slot = new ScheduleSlot(cursor.getInt(0), cursor.getInt(1),
+                        cursor.getString(2), cursor.getString(3), start, start + cursor.getInt(5));
+                if (!visitor.visit(slot)) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Id -> uid of schedules on or after a date, e.g. the classes whose bookings are worth pulling.
+     */
+    public Map<Integer, String> getScheduleUidsFrom(String fromDate) {
+        Map<Integer, String> uids = new LinkedHashMap<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT " + DatabaseHelper.COLUMN_ID + ", " + DatabaseHelper.COLUMN_UID + " FROM " +
+                DatabaseHelper.TABLE_SCHEDULES + " WHERE " + DatabaseHelper.COLUMN_DATE + " >= ?";
+
+        Cursor cursor = db.rawQuery(query, new String[]{fromDate});
+        try {
+            while (cursor.moveToNext()) {
+                uids.put(cursor.getInt(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return uids;
+    }
+
+    /**
+     * Ids of a course's schedules, read through idx_schedules_course_date.
+     * Collect these before deleting a course, as the cascade removes the rows.
+     */
+    public List<Integer> getScheduleIdsForCourse(int courseId) {
+        List<Integer> ids = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT " + DatabaseHelper.COLUMN_ID + " FROM " + DatabaseHelper.TABLE_SCHEDULES +
+                " WHERE " + DatabaseHelper.COLUMN_COURSE_ID + " = ?";
+
+        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(courseId)});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Replace booked counts (schedule id -> bookings) in one transaction.
+     * Rows whose count is unchanged are not rewritten. Returns the number of rows changed.
+     * Booked counts come from Firestore, so they do not change the row version.
+     */
+    public int setBookedCounts(Map<Integer, Integer> counts) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("UPDATE " + DatabaseHelper.TABLE_SCHEDULES +
+                " SET " + DatabaseHelper.COLUMN_BOOKED_COUNT + " = ? WHERE " + DatabaseHelper.COLUMN_ID + " = ? AND " +
+                DatabaseHelper.COLUMN_BOOKED_COUNT + " != ?");
+        int changed = 0;
+
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                int count = Math.max(0, entry.getValue());
+                statement.bindLong(1, count);
+                statement.bindLong(2, entry.getKey());
+                statement.bindLong(3, count);
+                changed += statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        Log.d(TAG, "Updated booked counts. Rows changed: " + changed);
+        return changed;
+    }
+
+    /**
+     * Schedules on or after a date whose bookings have reached the given share of the
+     * course capacity, soonest first. Served by the partial index on booked schedules.
+     */
+    public List<Schedule> getNearCapacitySchedules(String fromDate, double ratio) {
+        List<Schedule> schedules = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT s.* FROM " + DatabaseHelper.TABLE_SCHEDULES + " s JOIN " +
+                DatabaseHelper.TABLE_YOGA_COURSES + " c ON c." + DatabaseHelper.COLUMN_ID +
+                " = s." + DatabaseHelper.COLUMN_COURSE_ID +
+                " WHERE s." + DatabaseHelper.COLUMN_BOOKED_COUNT + " > 0 AND s." + DatabaseHelper.COLUMN_DATE + " >= ?" +
+                " AND s." + DatabaseHelper.COLUMN_BOOKED_COUNT + " >= c." + DatabaseHelper.COLUMN_CAPACITY + " * ?" +
+                " ORDER BY s." + DatabaseHelper.COLUMN_DATE + " ASC";
+
+        Cursor cursor = db.rawQuery(query, new String[]{fromDate, String.valueOf(ratio)});
+        try {
+            while (cursor.moveToNext()) {
+                schedules.add(cursorToSchedule(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schedules;
+    }
+
     public List<Schedule> getSchedulesByTeacher(String teacher) {
         List<Schedule> schedules = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
@@ -156,20 +594,33 @@ public class ScheduleDao {
     }
 
     public void deleteSchedulesForCourse(int courseId) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        int rowsAffected = db.delete(DatabaseHelper.TABLE_SCHEDULES,
-                DatabaseHelper.COLUMN_COURSE_ID + " = ?",
+        int rowsAffected = deleteWhere(DatabaseHelper.COLUMN_COURSE_ID + " = ?",
                 new String[]{String.valueOf(courseId)});
-
         Log.d(TAG, "Deleted schedules for course " + courseId + ". Rows affected: " + rowsAffected);
     }
 
     public void deleteAllSchedules() {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        int rowsAffected = db.delete(DatabaseHelper.TABLE_SCHEDULES, null, null);
+        int rowsAffected = deleteWhere(null, null);
         Log.d(TAG, "Deleted all schedules. Rows affected: " + rowsAffected);
     }
 
+    /**
+     * Delete matching schedules, leaving a tombstone for each so sync can push the delete.
+     */
+    private int deleteWhere(String where, String[] whereArgs) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            TombstoneDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES,
+                    where, whereArgs, System.currentTimeMillis());
+            int rowsAffected = db.delete(DatabaseHelper.TABLE_SCHEDULES, where, whereArgs);
+            db.setTransactionSuccessful();
+            return rowsAffected;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public int getSchedulesCount() {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
@@ -189,10 +640,14 @@ public class ScheduleDao {
         Schedule schedule = new Schedule();
 
         schedule.setId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
+        schedule.setUid(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_UID)));
         schedule.setCourseId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_COURSE_ID)));
         schedule.setDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)));
         schedule.setTeacher(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TEACHER)));
         schedule.setComments(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_COMMENTS)));
+        schedule.setBookedCount(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOKED_COUNT)));
+        schedule.setVersion(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VERSION)));
+        schedule.setLastModified(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LAST_MODIFIED)));
 
         return schedule;
     }
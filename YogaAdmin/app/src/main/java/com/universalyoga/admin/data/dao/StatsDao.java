@@ -0,0 +1,108 @@
+package com.universalyoga.admin.data.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.universalyoga.admin.data.database.DatabaseHelper;
+import com.universalyoga.admin.data.database.StatsTables;
+import com.universalyoga.admin.data.entity.StatBucket;
+import com.universalyoga.admin.utils.DateUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the trigger-maintained rollups in StatsTables.
+ * Every query reads one row per bucket, independent of how many courses or schedules exist.
+ */
+public class StatsDao {
+
+    private static final String TAG = "StatsDao";
+    private DatabaseHelper dbHelper;
+
+    public StatsDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Courses, weekly minutes and weekly revenue potential per class type, highest revenue first.
+     */
+    public List<StatBucket> getCourseTypeStats() {
+        return queryBuckets("SELECT " + StatsTables.COLUMN_TYPE + ", " + StatsTables.COLUMN_COURSE_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", " + StatsTables.COLUMN_REVENUE_POTENTIAL + ", 0 FROM " +
+                StatsTables.TABLE_COURSE_TYPES +
+                " ORDER BY " + StatsTables.COLUMN_REVENUE_POTENTIAL + " DESC", null);
+    }
+
+    /**
+     * Courses, minutes and revenue potential per weekday, Monday first. Days without courses are left out.
+     */
+    public List<StatBucket> getDayStats() {
+        List<StatBucket> days = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT * FROM " + StatsTables.TABLE_DAYS +
+                " WHERE " + StatsTables.COLUMN_DAY_ORDINAL + " BETWEEN 0 AND 6" +
+                " ORDER BY " + StatsTables.COLUMN_DAY_ORDINAL, null);
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new StatBucket(
+                        DateUtils.DAY_NAMES[cursor.getInt(cursor.getColumnIndexOrThrow(StatsTables.COLUMN_DAY_ORDINAL))],
+                        cursor.getInt(cursor.getColumnIndexOrThrow(StatsTables.COLUMN_COURSE_COUNT)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(StatsTables.COLUMN_MINUTES)),
+                        cursor.getDouble(cursor.getColumnIndexOrThrow(StatsTables.COLUMN_REVENUE_POTENTIAL)),
+                        0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return days;
+    }
+
+    /**
+     * Scheduled classes, minutes, revenue potential and bookings per month (yyyy-MM), inclusive, in order.
+     */
+    public List<StatBucket> getMonthStats(String fromMonth, String toMonth) {
+        return queryBuckets("SELECT " + StatsTables.COLUMN_MONTH + ", " + StatsTables.COLUMN_CLASS_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", " + StatsTables.COLUMN_REVENUE_POTENTIAL + ", " +
+                StatsTables.COLUMN_BOOKED_COUNT + " FROM " + StatsTables.TABLE_MONTHS +
+                " WHERE " + StatsTables.COLUMN_MONTH + " BETWEEN ? AND ?" +
+                " ORDER BY " + StatsTables.COLUMN_MONTH, new String[]{fromMonth, toMonth});
+    }
+
+    /**
+     * Classes and teaching minutes per teacher for the week starting on the given Monday, busiest first.
+     */
+    public List<StatBucket> getTeacherWeekStats(String weekStart) {
+        return queryBuckets("SELECT " + StatsTables.COLUMN_TEACHER + ", " + StatsTables.COLUMN_CLASS_COUNT + ", " +
+                StatsTables.COLUMN_MINUTES + ", 0, 0 FROM " + StatsTables.TABLE_TEACHER_WEEKS +
+                " WHERE " + StatsTables.COLUMN_WEEK_START + " = ?" +
+                " ORDER BY " + StatsTables.COLUMN_MINUTES + " DESC", new String[]{weekStart});
+    }
+
+    /**
+     * Recompute all rollups from courses and schedules. Only needed if the tables are suspected to be wrong.
+     */
+    public void rebuild() {
+        StatsTables.rebuild(dbHelper.getWritableDatabase());
+        Log.d(TAG, "Rebuilt statistics tables");
+    }
+
+    /** Runs a query whose columns are key, count, minutes, revenue potential, booked count. */
+    private List<StatBucket> queryBuckets(String query, String[] args) {
+        List<StatBucket> buckets = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery(query, args);
+        try {
+            while (cursor.moveToNext()) {
+                buckets.add(new StatBucket(cursor.getString(0), cursor.getInt(1), cursor.getInt(2),
+                        cursor.getDouble(3), cursor.getInt(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return buckets;
+    }
+}
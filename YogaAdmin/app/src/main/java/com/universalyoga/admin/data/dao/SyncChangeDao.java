@@ -0,0 +1,242 @@
+package com.universalyoga.admin.data.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.universalyoga.admin.data.database.DatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Log of locally changed fields that have not been pushed to Firestore yet.
+ *
+ * Course and schedule DAOs record changes, with the time they were made, in the
+ * same transaction as the write. Sync reads a snapshot with getPending(), sends
+ * only those fields, and then calls clear() with the snapshot so changes made
+ * meanwhile stay.
+ *
+ * The log also coalesces outbound work: edits to one field collapse into one entry,
+ * and a row created and deleted again before any sync saw it leaves nothing to send.
+ * For the latter, inserts also record CREATED, and markSnapshotted() keeps the highest
+ * seq a sync has read; a row whose CREATED is above it has never been pushed.
+ */
+public class SyncChangeDao {
+
+    private static final String TAG = "SyncChangeDao";
+
+    public static final String ENTITY_COURSE = "course";
+    public static final String ENTITY_SCHEDULE = "schedule";
+    /** Field value meaning the whole row must be written, e.g. after an insert. */
+    public static final String ALL_FIELDS = "*";
+    /** Field value recorded with ALL_FIELDS by inserts, so an unpushed new row can be told apart. */
+    public static final String CREATED = "+";
+
+    static final List<String> INSERTED = Arrays.asList(ALL_FIELDS, CREATED);
+
+    private static final String STATE_SNAPSHOT_SEQ = "snapshotSeq";
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    /**
+     * Changed fields per entity id, as of one point in the log.
+     */
+    public static class Pending {
+        private final Map<Integer, Map<String, Long>> fields;
+        private final long upToSeq;
+
+        Pending(Map<Integer, Map<String, Long>> fields, long upToSeq) {
+            this.fields = fields;
+            this.upToSeq = upToSeq;
+        }
+
+        public boolean isEmpty() {
+            return fields.isEmpty();
+        }
+
+        /** Changed fields for an id; empty if unchanged. Contains ALL_FIELDS for a full write. */
+        public Set<String> getFields(int id) {
+            Map<String, Long> changed = fields.get(id);
+            return changed != null ? changed.keySet() : Collections.emptySet();
+        }
+
+        /** When each changed field of an id was last changed, epoch millis; empty if unchanged. */
+        public Map<String, Long> getChangedAt(int id) {
+            Map<String, Long> changed = fields.get(id);
+            return changed != null ? changed : Collections.emptyMap();
+        }
+
+        public Set<Integer> getIds() {
+            return fields.keySet();
+        }
+
+        /** Highest change log seq the snapshot includes. */
+        public long getUpToSeq() {
+            return upToSeq;
+        }
+    }
+
+    /**
+     * Told whenever a local change or delete is recorded, on the writing thread and before
+     * the write commits, so it must not read the database itself.
+     */
+    public interface ChangeListener {
+        void onLocalChange();
+    }
+
+    private static volatile ChangeListener changeListener;
+
+    private DatabaseHelper dbHelper;
+
+    public SyncChangeDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Record changed fields. Call inside the transaction of the write being recorded.
+     *
+     * @param changedAt epoch millis of the write; sync merges concurrent edits by it
+     */
+    static void record(SQLiteDatabase db, String entity, long id, Collection<String> fields, long changedAt) {
+        for (String field : fields) {
+            // REPLACE moves the row to a new seq, so a re-edit after a snapshot survives clear()
+            db.execSQL("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_SYNC_CHANGES + " (" +
+                    DatabaseHelper.COLUMN_ENTITY + ", " + DatabaseHelper.COLUMN_ENTITY_ID + ", " +
+                    DatabaseHelper.COLUMN_FIELD + ", " + DatabaseHelper.COLUMN_CHANGED_AT + ") VALUES (?, ?, ?, ?)",
+                    new Object[]{entity, id, field, changedAt});
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Mark a contiguous range of newly inserted ids as needing a full write, e.g. after a bulk insert.
+     */
+    static void recordInsertedRange(SQLiteDatabase db, String entity, String table, long fromId, long toId,
+                                    long changedAt) {
+        for (String field : INSERTED) {
+            db.execSQL("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_SYNC_CHANGES + " (" +
+                    DatabaseHelper.COLUMN_ENTITY + ", " + DatabaseHelper.COLUMN_ENTITY_ID + ", " +
+                    DatabaseHelper.COLUMN_FIELD + ", " + DatabaseHelper.COLUMN_CHANGED_AT + ") SELECT ?, " +
+                    DatabaseHelper.COLUMN_ID + ", ?, ? FROM " + table +
+                    " WHERE " + DatabaseHelper.COLUMN_ID + " BETWEEN ? AND ?",
+                    new Object[]{entity, field, changedAt, fromId, toId});
+        }
+        notifyChanged();
+    }
+
+    /**
+     * SQL condition, with one argument for the entity, true for rows of a table that were
+     * created here and have not been read by any sync since, so no copy of them can exist
+     * in Firestore.
+     */
+    static String unpushedInsert(String table) {
+        return "EXISTS (SELECT 1 FROM " + DatabaseHelper.TABLE_SYNC_CHANGES + " c WHERE c." +
+                DatabaseHelper.COLUMN_ENTITY + " = ? AND c." + DatabaseHelper.COLUMN_ENTITY_ID + " = " +
+                table + "." + DatabaseHelper.COLUMN_ID + " AND c." + DatabaseHelper.COLUMN_FIELD + " = '" +
+                CREATED + "' AND c." + DatabaseHelper.COLUMN_SEQ + " > COALESCE((SELECT " +
+                DatabaseHelper.COLUMN_VALUE + " FROM " + DatabaseHelper.TABLE_SYNC_STATE + " WHERE " +
+                DatabaseHelper.COLUMN_NAME + " = '" + STATE_SNAPSHOT_SEQ + "'), 0))";
+    }
+
+    /**
+     * Set the listener told about local changes, e.g. the background sync scheduler; null to stop.
+     */
+    public static void setChangeListener(ChangeListener listener) {
+        changeListener = listener;
+    }
+
+    static void notifyChanged() {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onLocalChange();
+        }
+    }
+
+    /**
+     * Drop the pending changes of the rows of a table matching a where clause (null for every
+     * row), e.g. because the rows are being deleted. Call inside the delete's transaction, before deleting.
+     */
+    static void forget(SQLiteDatabase db, String entity, String table, String where, String[] whereArgs) {
+        String filter = where != null ? " WHERE " + where : "";
+        String[] args = whereArgs != null ? whereArgs : new String[0];
+        Object[] clearArgs = new Object[args.length + 1];
+        clearArgs[0] = entity;
+        System.arraycopy(args, 0, clearArgs, 1, args.length);
+        db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_SYNC_CHANGES + " WHERE " +
+                DatabaseHelper.COLUMN_ENTITY + " = ? AND " + DatabaseHelper.COLUMN_ENTITY_ID + " IN (SELECT " +
+                DatabaseHelper.COLUMN_ID + " FROM " + table + filter + ")", clearArgs);
+    }
+
+    /**
+     * Snapshot of everything changed for one entity type.
+     */
+    public Pending getPending(String entity) {
+        Map<Integer, Map<String, Long>> fields = new HashMap<>();
+        long upToSeq = 0;
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_SEQ + ", " + DatabaseHelper.COLUMN_ENTITY_ID +
+                ", " + DatabaseHelper.COLUMN_FIELD + ", " + DatabaseHelper.COLUMN_CHANGED_AT + " FROM " +
+                DatabaseHelper.TABLE_SYNC_CHANGES + " WHERE " + DatabaseHelper.COLUMN_ENTITY + " = ?",
+                new String[]{entity});
+        try {
+            while (cursor.moveToNext()) {
+                upToSeq = Math.max(upToSeq, cursor.getLong(0));
+                Map<String, Long> changed = fields.get(cursor.getInt(1));
+                if (changed == null) {
+                    changed = new LinkedHashMap<>();
+                    fields.put(cursor.getInt(1), changed);
+                }
+                changed.put(cursor.getString(2), cursor.getLong(3));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new Pending(fields, upToSeq);
+    }
+
+    /**
+     * Note that a sync has read a snapshot and may push it. Call in the snapshot's transaction,
+     * before anything from it is sent.
+     */
+    public void markSnapshotted(Pending pending) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_SYNC_STATE + " (" + DatabaseHelper.COLUMN_NAME +
+                ", " + DatabaseHelper.COLUMN_VALUE + ") VALUES (?, MAX(?, COALESCE((SELECT " +
+                DatabaseHelper.COLUMN_VALUE + " FROM " + DatabaseHelper.TABLE_SYNC_STATE + " WHERE " +
+                DatabaseHelper.COLUMN_NAME + " = ?), 0)))",
+                new Object[]{STATE_SNAPSHOT_SEQ, pending.getUpToSeq(), STATE_SNAPSHOT_SEQ});
+    }
+
+    /**
+     * Forget the changes in a snapshot to some ids once they have been pushed.
+     */
+    public void clear(String entity, Pending pushed, Collection<Integer> ids) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        List<Integer> remaining = new ArrayList<>(ids);
+        int rowsAffected = 0;
+        // A statement takes at most 999 arguments
+        for (int from = 0; from < remaining.size(); from += MAX_IDS_PER_STATEMENT) {
+            List<Integer> chunk = remaining.subList(from, Math.min(from + MAX_IDS_PER_STATEMENT, remaining.size()));
+            String[] args = new String[chunk.size() + 2];
+            args[0] = entity;
+            args[1] = String.valueOf(pushed.getUpToSeq());
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+                args[i + 2] = String.valueOf(chunk.get(i));
+            }
+            rowsAffected += db.delete(DatabaseHelper.TABLE_SYNC_CHANGES,
+                    DatabaseHelper.COLUMN_ENTITY + " = ? AND " + DatabaseHelper.COLUMN_SEQ + " <= ? AND " +
+                            DatabaseHelper.COLUMN_ENTITY_ID + " IN (" + placeholders + ")", args);
+        }
+        Log.d(TAG, "Cleared " + rowsAffected + " pushed " + entity + " changes");
+    }
+}
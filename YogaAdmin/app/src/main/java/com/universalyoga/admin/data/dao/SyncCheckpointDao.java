@@ -0,0 +1,73 @@
+package com.universalyoga.admin.data.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.universalyoga.admin.data.database.DatabaseHelper;
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+
+/**
+ * Checkpoints of a sync that has not finished, one per collection.
+ *
+ * Sync saves a checkpoint in the same transaction as the changes it acknowledges for
+ * each page, so after a crash or a lost connection the next sync carries on from the
+ * last committed page. A finished sync clears them all.
+ */
+public class SyncCheckpointDao {
+
+    private static final String TAG = "SyncCheckpointDao";
+
+    private DatabaseHelper dbHelper;
+
+    public SyncCheckpointDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * The checkpoint of a collection, or null if its last sync finished.
+     */
+    public SyncCheckpoint get(String collection) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_CURSOR + ", " + DatabaseHelper.COLUMN_PAGES +
+                ", " + DatabaseHelper.COLUMN_DONE + ", " + DatabaseHelper.COLUMN_ACKED_SEQ + " FROM " +
+                DatabaseHelper.TABLE_SYNC_CHECKPOINTS + " WHERE " + DatabaseHelper.COLUMN_COLLECTION + " = ?",
+                new String[]{collection});
+        try {
+            if (cursor.moveToFirst()) {
+                return new SyncCheckpoint(collection, cursor.isNull(0) ? null : cursor.getString(0),
+                        cursor.getInt(1), cursor.getInt(2) == 1, cursor.getLong(3));
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Save a checkpoint. Call in the transaction that acknowledges the changes it covers.
+     *
+     * @param ackedSeq change log seq the acknowledged changes went up to; stored in place of the checkpoint's own
+     */
+    public void save(SyncCheckpoint checkpoint, long ackedSeq) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_SYNC_CHECKPOINTS + " (" +
+                DatabaseHelper.COLUMN_COLLECTION + ", " + DatabaseHelper.COLUMN_CURSOR + ", " +
+                DatabaseHelper.COLUMN_PAGES + ", " + DatabaseHelper.COLUMN_DONE + ", " +
+                DatabaseHelper.COLUMN_ACKED_SEQ + ", " + DatabaseHelper.COLUMN_SAVED_AT + ") VALUES (?, ?, ?, ?, ?, ?)",
+                new Object[]{checkpoint.getCollection(), checkpoint.getCursor(), checkpoint.getPages(),
+                        checkpoint.isDone() ? 1 : 0, ackedSeq, System.currentTimeMillis()});
+        Log.d(TAG, "Saved " + checkpoint);
+    }
+
+    /**
+     * Delete every checkpoint, e.g. once a sync has finished.
+     */
+    public void clearAll() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int rowsAffected = db.delete(DatabaseHelper.TABLE_SYNC_CHECKPOINTS, null, null);
+        if (rowsAffected > 0) {
+            Log.d(TAG, "Cleared " + rowsAffected + " sync checkpoints");
+        }
+    }
+}
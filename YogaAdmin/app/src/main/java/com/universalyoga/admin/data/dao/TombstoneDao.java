@@ -0,0 +1,130 @@
+package com.universalyoga.admin.data.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.universalyoga.admin.data.database.DatabaseHelper;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tombstones for deleted courses and schedules.
+ *
+ * Course and schedule DAOs record a tombstone in the same transaction as the
+ * delete. Sync pushes the deletes from getPending() as tombstone documents, so
+ * other devices see them, and then acknowledges them; purgeAcknowledged() drops
+ * acknowledged tombstones once they are older than RETENTION_MS.
+ */
+public class TombstoneDao {
+
+    private static final String TAG = "TombstoneDao";
+
+    /** How long a tombstone is kept after its delete reached Firestore. */
+    public static final long RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private DatabaseHelper dbHelper;
+
+    public TombstoneDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Record tombstones for the rows of a table matching a where clause (null for every row),
+     * and drop their pending field changes. Call inside the delete's transaction, before deleting.
+     */
+    static void record(SQLiteDatabase db, String entity, String table, String where, String[] whereArgs, long deletedAt) {
+        // Rows no sync has seen yet need no tombstone: insert then delete sends nothing
+        String filter = " WHERE " + (where != null ? "(" + where + ") AND " : "") +
+                "NOT " + SyncChangeDao.unpushedInsert(table);
+        String[] args = whereArgs != null ? whereArgs : new String[0];
+
+        Object[] insertArgs = new Object[args.length + 3];
+        insertArgs[0] = entity;
+        insertArgs[1] = deletedAt;
+        System.arraycopy(args, 0, insertArgs, 2, args.length);
+        insertArgs[args.length + 2] = entity;
+        db.execSQL("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_TOMBSTONES + " (" +
+                DatabaseHelper.COLUMN_ENTITY + ", " + DatabaseHelper.COLUMN_ENTITY_ID + ", " +
+                DatabaseHelper.COLUMN_ENTITY_UID + ", " + DatabaseHelper.COLUMN_DELETED_AT + ") SELECT ?, " +
+                DatabaseHelper.COLUMN_ID + ", " + DatabaseHelper.COLUMN_UID + ", ? FROM " + table + filter, insertArgs);
+
+        SyncChangeDao.forget(db, entity, table, where, whereArgs);
+        SyncChangeDao.notifyChanged();
+    }
+
+    /**
+     * Deletes that have not reached Firestore yet: uid -> deletedAt.
+     */
+    public Map<String, Long> getPending(String entity) {
+        Map<String, Long> deletes = new LinkedHashMap<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        // Served by the partial index idx_tombstones_pending
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_ENTITY_UID + ", " + DatabaseHelper.COLUMN_DELETED_AT +
+                " FROM " + DatabaseHelper.TABLE_TOMBSTONES + " WHERE " + DatabaseHelper.COLUMN_ENTITY + " = ? AND " +
+                DatabaseHelper.COLUMN_ACKED_AT + " IS NULL", new String[]{entity});
+        try {
+            while (cursor.moveToNext()) {
+                deletes.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return deletes;
+    }
+
+    /**
+     * Mark deletes as confirmed by Firestore.
+     */
+    public void markAcknowledged(String entity, Collection<String> uids) {
+        if (uids.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("UPDATE " + DatabaseHelper.TABLE_TOMBSTONES +
+                " SET " + DatabaseHelper.COLUMN_ACKED_AT + " = ? WHERE " + DatabaseHelper.COLUMN_ENTITY + " = ? AND " +
+                DatabaseHelper.COLUMN_ENTITY_UID + " = ? AND " + DatabaseHelper.COLUMN_ACKED_AT + " IS NULL");
+        long now = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            for (String uid : uids) {
+                statement.bindLong(1, now);
+                statement.bindString(2, entity);
+                statement.bindString(3, uid);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        Log.d(TAG, "Acknowledged " + uids.size() + " " + entity + " deletes");
+    }
+
+    /**
+     * Mark every pending delete as confirmed, e.g. after the cloud data has been cleared.
+     */
+    public void markAllAcknowledged() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("UPDATE " + DatabaseHelper.TABLE_TOMBSTONES + " SET " + DatabaseHelper.COLUMN_ACKED_AT +
+                " = ? WHERE " + DatabaseHelper.COLUMN_ACKED_AT + " IS NULL", new Object[]{System.currentTimeMillis()});
+    }
+
+    /**
+     * Delete acknowledged tombstones acknowledged before a time. Pending ones are always kept.
+     * Returns the number purged.
+     */
+    public int purgeAcknowledged(long acknowledgedBefore) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int rowsAffected = db.delete(DatabaseHelper.TABLE_TOMBSTONES,
+                DatabaseHelper.COLUMN_ACKED_AT + " < ?",
+                new String[]{String.valueOf(acknowledgedBefore)});
+        Log.d(TAG, "Purged " + rowsAffected + " acknowledged tombstones");
+        return rowsAffected;
+    }
+}
@@ -4,13 +4,18 @@ package com.universalyoga.admin.data.dao;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.universalyoga.admin.data.database.DatabaseHelper;
 import com.universalyoga.admin.data.entity.YogaCourse;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.Ulid;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 public class YogaCourseDao {
 
@@ -25,6 +30,10 @@ public class YogaCourseDao {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
 
+        if (course.getUid() == null) {
+            course.setUid(Ulid.next());
+        }
+        values.put(DatabaseHelper.COLUMN_UID, course.getUid());
         values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, course.getDayOfWeek());
         values.put(DatabaseHelper.COLUMN_TIME, course.getTime());
         values.put(DatabaseHelper.COLUMN_CAPACITY, course.getCapacity());
@@ -32,12 +41,90 @@ public class YogaCourseDao {
         values.put(DatabaseHelper.COLUMN_PRICE, course.getPrice());
         values.put(DatabaseHelper.COLUMN_TYPE, course.getType());
         values.put(DatabaseHelper.COLUMN_DESCRIPTION, course.getDescription());
-
-        long id = db.insert(DatabaseHelper.TABLE_YOGA_COURSES, null, values);
+        putSlotColumns(values, course);
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_VERSION, 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.insert(DatabaseHelper.TABLE_YOGA_COURSES, null, values);
+            if (id != -1) {
+                SyncChangeDao.record(db, SyncChangeDao.ENTITY_COURSE, id,
+                        SyncChangeDao.INSERTED, now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        course.setVersion(1);
+        course.setLastModified(now);
         Log.d(TAG, "Inserted course with ID: " + id);
         return id;
     }
 
+    /**
+     * Insert many courses in one transaction using a single compiled statement.
+     * Generated ids, and uids for courses without one, are written back to each course.
+     */
+    public void insertAll(List<YogaCourse> courses) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + DatabaseHelper.TABLE_YOGA_COURSES + " (" +
+                DatabaseHelper.COLUMN_DAY_OF_WEEK + ", " +
+                DatabaseHelper.COLUMN_TIME + ", " +
+                DatabaseHelper.COLUMN_CAPACITY + ", " +
+                DatabaseHelper.COLUMN_DURATION + ", " +
+                DatabaseHelper.COLUMN_PRICE + ", " +
+                DatabaseHelper.COLUMN_TYPE + ", " +
+                DatabaseHelper.COLUMN_DESCRIPTION + ", " +
+                DatabaseHelper.COLUMN_DAY_ORDINAL + ", " +
+                DatabaseHelper.COLUMN_START_MINUTE + ", " +
+                DatabaseHelper.COLUMN_END_MINUTE + ", " +
+                DatabaseHelper.COLUMN_VERSION + ", " +
+                DatabaseHelper.COLUMN_LAST_MODIFIED + ", " +
+                DatabaseHelper.COLUMN_UID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?, ?)");
+        long now = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            for (YogaCourse course : courses) {
+                statement.clearBindings();
+                statement.bindString(1, course.getDayOfWeek());
+                statement.bindString(2, course.getTime());
+                statement.bindLong(3, course.getCapacity());
+                statement.bindLong(4, course.getDuration());
+                statement.bindDouble(5, course.getPrice());
+                statement.bindString(6, course.getType());
+                if (course.getDescription() != null) {
+                    statement.bindString(7, course.getDescription());
+                }
+                int startMinute = DateUtils.parseTimeToMinutes(course.getTime());
+                statement.bindLong(8, DateUtils.dayNameToIndex(course.getDayOfWeek()));
+                statement.bindLong(9, startMinute);
+                statement.bindLong(10, startMinute == DateUtils.INVALID ? DateUtils.INVALID : startMinute + course.getDuration());
+                statement.bindLong(11, now);
+                if (course.getUid() == null) {
+                    course.setUid(Ulid.next());
+                }
+                statement.bindString(12, course.getUid());
+                course.setId((int) statement.executeInsert());
+                course.setVersion(1);
+                course.setLastModified(now);
+            }
+            if (!courses.isEmpty()) {
+                // Ids from one transaction are consecutive
+                SyncChangeDao.recordInsertedRange(db, SyncChangeDao.ENTITY_COURSE, DatabaseHelper.TABLE_YOGA_COURSES,
+                        courses.get(0).getId(), courses.get(courses.size() - 1).getId(), now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        Log.d(TAG, "Inserted " + courses.size() + " courses");
+    }
+
     public void update(YogaCourse course) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
@@ -49,19 +136,225 @@ public class YogaCourseDao {
         values.put(DatabaseHelper.COLUMN_PRICE, course.getPrice());
         values.put(DatabaseHelper.COLUMN_TYPE, course.getType());
         values.put(DatabaseHelper.COLUMN_DESCRIPTION, course.getDescription());
+        putSlotColumns(values, course);
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_YOGA_COURSES, values,
+                    DatabaseHelper.COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(course.getId())});
+            // Unconditional overwrite: bump whatever version is stored
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_YOGA_COURSES + " SET " + DatabaseHelper.COLUMN_VERSION +
+                    " = " + DatabaseHelper.COLUMN_VERSION + " + 1 WHERE " + DatabaseHelper.COLUMN_ID + " = ?",
+                    new Object[]{course.getId()});
+            SyncChangeDao.record(db, SyncChangeDao.ENTITY_COURSE, course.getId(),
+                    Collections.singleton(SyncChangeDao.ALL_FIELDS), now);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Updated course. Rows affected: " + rowsAffected);
+    }
+
+    /**
+     * Write only the fields changed through YogaCourse.applyEdits() and log them for sync.
+     * The write only happens if the stored version is still the course's version; on success
+     * the version goes up by one and the changed fields are cleared.
+     * Returns the number of rows updated, 0 if the course was changed or deleted since it was read.
+     */
+    public int updateChangedFields(YogaCourse course) {
+        if (!course.hasChanges()) {
+            return 0;
+        }
+        Set<String> changed = course.getChangedFields();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        if (changed.contains(DatabaseHelper.COLUMN_DAY_OF_WEEK)) values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, course.getDayOfWeek());
+        if (changed.contains(DatabaseHelper.COLUMN_TIME)) values.put(DatabaseHelper.COLUMN_TIME, course.getTime());
+        if (changed.contains(DatabaseHelper.COLUMN_CAPACITY)) values.put(DatabaseHelper.COLUMN_CAPACITY, course.getCapacity());
+        if (changed.contains(DatabaseHelper.COLUMN_DURATION)) values.put(DatabaseHelper.COLUMN_DURATION, course.getDuration());
+        if (changed.contains(DatabaseHelper.COLUMN_PRICE)) values.put(DatabaseHelper.COLUMN_PRICE, course.getPrice());
+        if (changed.contains(DatabaseHelper.COLUMN_TYPE)) values.put(DatabaseHelper.COLUMN_TYPE, course.getType());
+        if (changed.contains(DatabaseHelper.COLUMN_DESCRIPTION)) values.put(DatabaseHelper.COLUMN_DESCRIPTION, course.getDescription());
+        if (changed.contains(DatabaseHelper.COLUMN_DAY_OF_WEEK) || changed.contains(DatabaseHelper.COLUMN_TIME) ||
+                changed.contains(DatabaseHelper.COLUMN_DURATION)) {
+            putSlotColumns(values, course);
+        }
+        long now = System.currentTimeMillis();
+        values.put(DatabaseHelper.COLUMN_VERSION, course.getVersion() + 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, now);
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.update(DatabaseHelper.TABLE_YOGA_COURSES, values,
+                    DatabaseHelper.COLUMN_ID + " = ? AND " + DatabaseHelper.COLUMN_VERSION + " = ?",
+                    new String[]{String.valueOf(course.getId()), String.valueOf(course.getVersion())});
+            if (rowsAffected > 0) {
+                SyncChangeDao.record(db, SyncChangeDao.ENTITY_COURSE, course.getId(), changed, now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsAffected == 0) {
+            Log.w(TAG, "Course " + course.getId() + " is no longer at version " + course.getVersion());
+            return 0;
+        }
+        Log.d(TAG, "Updated course fields " + changed + ". Rows affected: " + rowsAffected);
+        course.setVersion(course.getVersion() + 1);
+        course.setLastModified(now);
+        course.clearChanges();
+        return rowsAffected;
+    }
+
+    /**
+     * Overwrite the course with the same uid with values merged in by sync. Only applies if the stored version
+     * is still expectedVersion, so an edit made since sync read the row is not lost; the
+     * version then goes up like for a local edit. Nothing is logged for sync.
+     */
+    public boolean applyRemote(YogaCourse remote, long expectedVersion) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, remote.getDayOfWeek());
+        values.put(DatabaseHelper.COLUMN_TIME, remote.getTime());
+        values.put(DatabaseHelper.COLUMN_CAPACITY, remote.getCapacity());
+        values.put(DatabaseHelper.COLUMN_DURATION, remote.getDuration());
+        values.put(DatabaseHelper.COLUMN_PRICE, remote.getPrice());
+        values.put(DatabaseHelper.COLUMN_TYPE, remote.getType());
+        values.put(DatabaseHelper.COLUMN_DESCRIPTION, remote.getDescription());
+        putSlotColumns(values, remote);
+        values.put(DatabaseHelper.COLUMN_VERSION, expectedVersion + 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, System.currentTimeMillis());
 
         int rowsAffected = db.update(DatabaseHelper.TABLE_YOGA_COURSES, values,
-                DatabaseHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(course.getId())});
+                DatabaseHelper.COLUMN_UID + " = ? AND " + DatabaseHelper.COLUMN_VERSION + " = ?",
+                new String[]{remote.getUid(), String.valueOf(expectedVersion)});
+        Log.d(TAG, "Applied synced values to course " + remote.getUid() + ". Rows affected: " + rowsAffected);
+        return rowsAffected > 0;
+    }
 
-        Log.d(TAG, "Updated course. Rows affected: " + rowsAffected);
+    /**
+     * Insert a course created on another device, keeping its uid; the local id is generated.
+     * Nothing is logged for sync. Returns false if it could not be inserted.
+     */
+    public boolean insertFromRemote(YogaCourse remote) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(DatabaseHelper.COLUMN_UID, remote.getUid());
+        values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, remote.getDayOfWeek());
+        values.put(DatabaseHelper.COLUMN_TIME, remote.getTime());
+        values.put(DatabaseHelper.COLUMN_CAPACITY, remote.getCapacity());
+        values.put(DatabaseHelper.COLUMN_DURATION, remote.getDuration());
+        values.put(DatabaseHelper.COLUMN_PRICE, remote.getPrice());
+        values.put(DatabaseHelper.COLUMN_TYPE, remote.getType());
+        values.put(DatabaseHelper.COLUMN_DESCRIPTION, remote.getDescription());
+        putSlotColumns(values, remote);
+        values.put(DatabaseHelper.COLUMN_VERSION, 1);
+        values.put(DatabaseHelper.COLUMN_LAST_MODIFIED, System.currentTimeMillis());
+
+        long id = db.insert(DatabaseHelper.TABLE_YOGA_COURSES, null, values);
+        Log.d(TAG, "Inserted synced course " + remote.getUid() + " as " + id);
+        return id != -1;
+    }
+
+    /**
+     * Delete a course deleted on another device. Its tombstone is already in Firestore, so
+     * none is recorded; pending changes to it and its schedules are dropped.
+     */
+    public boolean deleteFromRemote(String uid) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] args = new String[]{uid};
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            SyncChangeDao.forget(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES,
+                    DatabaseHelper.COLUMN_COURSE_ID + " = (SELECT " + DatabaseHelper.COLUMN_ID + " FROM " +
+                            DatabaseHelper.TABLE_YOGA_COURSES + " WHERE " + DatabaseHelper.COLUMN_UID + " = ?)", args);
+            SyncChangeDao.forget(db, SyncChangeDao.ENTITY_COURSE, DatabaseHelper.TABLE_YOGA_COURSES,
+                    DatabaseHelper.COLUMN_UID + " = ?", args);
+            rowsAffected = db.delete(DatabaseHelper.TABLE_YOGA_COURSES, DatabaseHelper.COLUMN_UID + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Deleted synced course " + uid + ". Rows affected: " + rowsAffected);
+        return rowsAffected > 0;
+    }
+
+    /**
+     * Courses on the same day whose time slot overlaps [startMinute, endMinute).
+     * Uses the (dayOrdinal, startMinute, endMinute) index.
+     *
+     * @param excludeId a course id to leave out, e.g. the course being edited; -1 for none
+     */
+    public List<YogaCourse> getOverlappingCourses(int dayOrdinal, int startMinute, int endMinute, int excludeId) {
+        List<YogaCourse> courses = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT * FROM " + DatabaseHelper.TABLE_YOGA_COURSES +
+                " WHERE " + DatabaseHelper.COLUMN_DAY_ORDINAL + " = ? AND " +
+                DatabaseHelper.COLUMN_START_MINUTE + " >= 0 AND " +
+                DatabaseHelper.COLUMN_START_MINUTE + " < ? AND " +
+                DatabaseHelper.COLUMN_END_MINUTE + " > ? AND " +
+                DatabaseHelper.COLUMN_ID + " != ?" +
+                " ORDER BY " + DatabaseHelper.COLUMN_START_MINUTE;
+
+        Cursor cursor = db.rawQuery(query, new String[]{
+                String.valueOf(dayOrdinal), String.valueOf(endMinute),
+                String.valueOf(startMinute), String.valueOf(excludeId)});
+
+        if (cursor.moveToFirst()) {
+            do {
+                courses.add(cursorToCourse(cursor));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+        return courses;
+    }
+
+    /**
+     * Courses whose time slot overlaps the given course's, excluding the course itself.
+     */
+    public List<YogaCourse> getOverlappingCourses(YogaCourse course) {
+        int dayOrdinal = DateUtils.dayNameToIndex(course.getDayOfWeek());
+        int startMinute = DateUtils.parseTimeToMinutes(course.getTime());
+        if (dayOrdinal == DateUtils.INVALID || startMinute == DateUtils.INVALID) {
+            return new ArrayList<>();
+        }
+        return getOverlappingCourses(dayOrdinal, startMinute, startMinute + course.getDuration(),
+                course.getId() > 0 ? course.getId() : -1);
     }
 
     public void delete(YogaCourse course) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        int rowsAffected = db.delete(DatabaseHelper.TABLE_YOGA_COURSES,
-                DatabaseHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(course.getId())});
+        String[] args = new String[]{String.valueOf(course.getId())};
+        long now = System.currentTimeMillis();
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            // The cascade removes the course's schedules, so they get tombstones too
+            TombstoneDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES,
+                    DatabaseHelper.COLUMN_COURSE_ID + " = ?", args, now);
+            TombstoneDao.record(db, SyncChangeDao.ENTITY_COURSE, DatabaseHelper.TABLE_YOGA_COURSES,
+                    DatabaseHelper.COLUMN_ID + " = ?", args, now);
+            rowsAffected = db.delete(DatabaseHelper.TABLE_YOGA_COURSES,
+                    DatabaseHelper.COLUMN_ID + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
         Log.d(TAG, "Deleted course. Rows affected: " + rowsAffected);
     }
@@ -87,6 +380,27 @@ public class YogaCourseDao {
         return courses;
     }
 
+    /**
+     * Walk every course in id order without materialising a list.
+     */
+    public void forEachCourse(RowVisitor<YogaCourse> visitor) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String query = "SELECT * FROM " + DatabaseHelper.TABLE_YOGA_COURSES +
+                " ORDER BY " + DatabaseHelper.COLUMN_ID + " ASC";
+
+        Cursor cursor = db.rawQuery(query, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (!visitor.visit(cursorToCourse(cursor))) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     public YogaCourse getCourseById(int id) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         YogaCourse course = null;
@@ -103,6 +417,21 @@ public class YogaCourseDao {
         return course;
     }
 
+    /**
+     * Local id of the course with a uid, read through idx_courses_uid; -1 if there is none.
+     */
+    public int getIdByUid(String uid) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_ID + " FROM " + DatabaseHelper.TABLE_YOGA_COURSES +
+                " WHERE " + DatabaseHelper.COLUMN_UID + " = ?", new String[]{uid});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
     public List<YogaCourse> getCoursesByType(String type) {
         List<YogaCourse> courses = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
@@ -191,7 +520,18 @@ public class YogaCourseDao {
 
     public void deleteAllCourses() {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        int rowsAffected = db.delete(DatabaseHelper.TABLE_YOGA_COURSES, null, null);
+        long now = System.currentTimeMillis();
+
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            TombstoneDao.record(db, SyncChangeDao.ENTITY_SCHEDULE, DatabaseHelper.TABLE_SCHEDULES, null, null, now);
+            TombstoneDao.record(db, SyncChangeDao.ENTITY_COURSE, DatabaseHelper.TABLE_YOGA_COURSES, null, null, now);
+            rowsAffected = db.delete(DatabaseHelper.TABLE_YOGA_COURSES, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         Log.d(TAG, "Deleted all courses. Rows affected: " + rowsAffected);
     }
 
@@ -259,10 +599,19 @@ public class YogaCourseDao {
         return days;
     }
 
+    private static void putSlotColumns(ContentValues values, YogaCourse course) {
+        int startMinute = DateUtils.parseTimeToMinutes(course.getTime());
+        values.put(DatabaseHelper.COLUMN_DAY_ORDINAL, DateUtils.dayNameToIndex(course.getDayOfWeek()));
+        values.put(DatabaseHelper.COLUMN_START_MINUTE, startMinute);
+        values.put(DatabaseHelper.COLUMN_END_MINUTE,
+                startMinute == DateUtils.INVALID ? DateUtils.INVALID : startMinute + course.getDuration());
+    }
+
     private YogaCourse cursorToCourse(Cursor cursor) {
         YogaCourse course = new YogaCourse();
 
         course.setId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
+        course.setUid(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_UID)));
         course.setDayOfWeek(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DAY_OF_WEEK)));
         course.setTime(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TIME)));
         course.setCapacity(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CAPACITY)));
@@ -270,6 +619,8 @@ public class YogaCourseDao {
         course.setPrice(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRICE)));
         course.setType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TYPE)));
         course.setDescription(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DESCRIPTION)));
+        course.setVersion(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VERSION)));
+        course.setLastModified(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LAST_MODIFIED)));
 
         return course;
     }
@@ -2,8 +2,13 @@
 package com.universalyoga.admin.data.database;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.dao.StatsDao;
+import com.universalyoga.admin.data.dao.SyncChangeDao;
+import com.universalyoga.admin.data.dao.SyncCheckpointDao;
+import com.universalyoga.admin.data.dao.TombstoneDao;
 import com.universalyoga.admin.data.dao.YogaCourseDao;
 
 public class AppDatabase {
@@ -12,11 +17,19 @@ public class AppDatabase {
     private DatabaseHelper dbHelper;
     private YogaCourseDao yogaCourseDao;
     private ScheduleDao scheduleDao;
+    private StatsDao statsDao;
+    private SyncChangeDao syncChangeDao;
+    private TombstoneDao tombstoneDao;
+    private SyncCheckpointDao syncCheckpointDao;
 
     private AppDatabase(Context context) {
         dbHelper = DatabaseHelper.getInstance(context);
         yogaCourseDao = new YogaCourseDao(dbHelper);
         scheduleDao = new ScheduleDao(dbHelper);
+        statsDao = new StatsDao(dbHelper);
+        syncChangeDao = new SyncChangeDao(dbHelper);
+        tombstoneDao = new TombstoneDao(dbHelper);
+        syncCheckpointDao = new SyncCheckpointDao(dbHelper);
     }
 
     public static AppDatabase getInstance(Context context) {
@@ -38,6 +51,36 @@ public class AppDatabase {
         return scheduleDao;
     }
 
+    public StatsDao statsDao() {
+        return statsDao;
+    }
+
+    public SyncChangeDao syncChangeDao() {
+        return syncChangeDao;
+    }
+
+    public TombstoneDao tombstoneDao() {
+        return tombstoneDao;
+    }
+
+    public SyncCheckpointDao syncCheckpointDao() {
+        return syncCheckpointDao;
+    }
+
+    /**
+     * Run DAO calls in one transaction, so reads see a consistent state and writes land together.
+     */
+    public void runInTransaction(Runnable body) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            body.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public static void destroyInstance() {
         if (INSTANCE != null) {
             DatabaseHelper.destroyInstance();
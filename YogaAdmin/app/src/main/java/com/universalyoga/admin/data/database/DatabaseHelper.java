@@ -9,12 +9,16 @@ import android.util.Log;
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "yoga_admin_db";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 13;
     private static final String TAG = "DatabaseHelper";
 
     // Table names
     public static final String TABLE_YOGA_COURSES = "yoga_courses";
     public static final String TABLE_SCHEDULES = "schedules";
+    public static final String TABLE_SYNC_CHANGES = "sync_changes";
+    public static final String TABLE_TOMBSTONES = "tombstones";
+    public static final String TABLE_SYNC_STATE = "sync_state";
+    public static final String TABLE_SYNC_CHECKPOINTS = "sync_checkpoints";
 
     // YogaCourse table columns
     public static final String COLUMN_ID = "id";
@@ -25,12 +29,46 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_PRICE = "price";
     public static final String COLUMN_TYPE = "type";
     public static final String COLUMN_DESCRIPTION = "description";
+    // Derived from dayOfWeek/time/duration so time-slot overlaps can be found with an index
+    public static final String COLUMN_DAY_ORDINAL = "dayOrdinal";     // 0 = Monday
+    public static final String COLUMN_START_MINUTE = "startMinute";   // minutes after midnight
+    public static final String COLUMN_END_MINUTE = "endMinute";       // startMinute + duration
+    // Both tables: optimistic concurrency. version goes up by one on every edit
+    public static final String COLUMN_VERSION = "version";
+    public static final String COLUMN_LAST_MODIFIED = "lastModified"; // epoch millis
+    // Both tables: id shared by every device and used as the Firestore document id, see Ulid
+    public static final String COLUMN_UID = "uid";
 
     // Schedule table columns
     public static final String COLUMN_COURSE_ID = "courseId";
     public static final String COLUMN_DATE = "date";
     public static final String COLUMN_TEACHER = "teacher";
     public static final String COLUMN_COMMENTS = "comments";
+    public static final String COLUMN_BOOKED_COUNT = "bookedCount";  // bookings pulled from Firestore
+
+    // Sync change log columns: one row per locally changed field not yet pushed to Firestore
+    public static final String COLUMN_SEQ = "seq";
+    public static final String COLUMN_ENTITY = "entity";       // "course" or "schedule"
+    public static final String COLUMN_ENTITY_ID = "entityId";
+    public static final String COLUMN_FIELD = "field";         // column name, or "*" for the whole row
+    public static final String COLUMN_CHANGED_AT = "changedAt"; // epoch millis of the edit
+
+    // Tombstone columns: one row per deleted course/schedule (entity, entityId as above)
+    public static final String COLUMN_DELETED_AT = "deletedAt";    // epoch millis
+    public static final String COLUMN_ACKED_AT = "ackedAt";        // when Firestore confirmed the delete, null until then
+    public static final String COLUMN_ENTITY_UID = "entityUid";    // uid of the deleted row
+
+    // Sync state columns: named numbers kept between syncs, see SyncChangeDao
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_VALUE = "value";
+
+    // Sync checkpoint columns: one row per collection of an unfinished sync
+    public static final String COLUMN_COLLECTION = "collection";
+    public static final String COLUMN_CURSOR = "cursor";       // last remote id merged
+    public static final String COLUMN_PAGES = "pages";
+    public static final String COLUMN_DONE = "done";           // 1 once every page is merged
+    public static final String COLUMN_ACKED_SEQ = "ackedSeq";  // change log seq acknowledged up to
+    public static final String COLUMN_SAVED_AT = "savedAt";    // epoch millis
 
     // Create table statements
     private static final String CREATE_TABLE_YOGA_COURSES =
@@ -42,7 +80,13 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_DURATION + " INTEGER NOT NULL, " +
                     COLUMN_PRICE + " REAL NOT NULL, " +
                     COLUMN_TYPE + " TEXT NOT NULL, " +
-                    COLUMN_DESCRIPTION + " TEXT" +
+                    COLUMN_DESCRIPTION + " TEXT, " +
+                    COLUMN_DAY_ORDINAL + " INTEGER NOT NULL DEFAULT -1, " +
+                    COLUMN_START_MINUTE + " INTEGER NOT NULL DEFAULT -1, " +
+                    COLUMN_END_MINUTE + " INTEGER NOT NULL DEFAULT -1, " +
+                    COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1, " +
+                    COLUMN_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_UID + " TEXT" +
                     ")";
 
     private static final String CREATE_TABLE_SCHEDULES =
@@ -52,13 +96,75 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_DATE + " TEXT NOT NULL, " +
                     COLUMN_TEACHER + " TEXT, " +
                     COLUMN_COMMENTS + " TEXT, " +
+                    COLUMN_BOOKED_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1, " +
+                    COLUMN_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_UID + " TEXT, " +
                     "FOREIGN KEY(" + COLUMN_COURSE_ID + ") REFERENCES " +
                     TABLE_YOGA_COURSES + "(" + COLUMN_ID + ") ON DELETE CASCADE" +
                     ")";
 
-    // Create index for foreign key
-    private static final String CREATE_INDEX_SCHEDULES_COURSE_ID =
-            "CREATE INDEX idx_schedules_course_id ON " + TABLE_SCHEDULES + "(" + COLUMN_COURSE_ID + ")";
+    // Index for the foreign key, and for a course's schedules in a date range
+    private static final String CREATE_INDEX_SCHEDULES_COURSE_DATE =
+            "CREATE INDEX idx_schedules_course_date ON " + TABLE_SCHEDULES + "(" +
+                    COLUMN_COURSE_ID + ", " + COLUMN_DATE + ")";
+
+    // Index for time-slot overlap queries
+    private static final String CREATE_INDEX_COURSES_SLOT =
+            "CREATE INDEX idx_courses_slot ON " + TABLE_YOGA_COURSES + "(" +
+                    COLUMN_DAY_ORDINAL + ", " + COLUMN_START_MINUTE + ", " + COLUMN_END_MINUTE + ")";
+
+    private static final String CREATE_TABLE_SYNC_CHANGES =
+            "CREATE TABLE " + TABLE_SYNC_CHANGES + " (" +
+                    COLUMN_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_ENTITY + " TEXT NOT NULL, " +
+                    COLUMN_ENTITY_ID + " INTEGER NOT NULL, " +
+                    COLUMN_FIELD + " TEXT NOT NULL, " +
+                    COLUMN_CHANGED_AT + " INTEGER NOT NULL DEFAULT 0, " +
+                    "UNIQUE(" + COLUMN_ENTITY + ", " + COLUMN_ENTITY_ID + ", " + COLUMN_FIELD + ")" +
+                    ")";
+
+    // Partial index for near-capacity queries: only schedules with bookings are indexed
+    private static final String CREATE_INDEX_SCHEDULES_BOOKED =
+            "CREATE INDEX idx_schedules_booked ON " + TABLE_SCHEDULES + "(" +
+                    COLUMN_DATE + ", " + COLUMN_BOOKED_COUNT + ") WHERE " + COLUMN_BOOKED_COUNT + " > 0";
+
+    private static final String CREATE_TABLE_TOMBSTONES =
+            "CREATE TABLE " + TABLE_TOMBSTONES + " (" +
+                    COLUMN_ENTITY + " TEXT NOT NULL, " +
+                    COLUMN_ENTITY_ID + " INTEGER NOT NULL, " +
+                    COLUMN_DELETED_AT + " INTEGER NOT NULL, " +
+                    COLUMN_ACKED_AT + " INTEGER, " +
+                    COLUMN_ENTITY_UID + " TEXT, " +
+                    "PRIMARY KEY(" + COLUMN_ENTITY + ", " + COLUMN_ENTITY_ID + ")" +
+                    ")";
+
+    // Partial index for sync: only deletes still waiting to be pushed are indexed
+    private static final String CREATE_INDEX_TOMBSTONES_PENDING =
+            "CREATE INDEX idx_tombstones_pending ON " + TABLE_TOMBSTONES + "(" +
+                    COLUMN_ENTITY + ", " + COLUMN_ENTITY_ID + ") WHERE " + COLUMN_ACKED_AT + " IS NULL";
+
+    // Lookup by uid, e.g. when sync applies a record; also keeps uids unique
+    private static final String CREATE_INDEX_COURSES_UID =
+            "CREATE UNIQUE INDEX idx_courses_uid ON " + TABLE_YOGA_COURSES + "(" + COLUMN_UID + ")";
+    private static final String CREATE_INDEX_SCHEDULES_UID =
+            "CREATE UNIQUE INDEX idx_schedules_uid ON " + TABLE_SCHEDULES + "(" + COLUMN_UID + ")";
+
+    private static final String CREATE_TABLE_SYNC_STATE =
+            "CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                    COLUMN_NAME + " TEXT PRIMARY KEY, " +
+                    COLUMN_VALUE + " INTEGER NOT NULL" +
+                    ")";
+
+    private static final String CREATE_TABLE_SYNC_CHECKPOINTS =
+            "CREATE TABLE " + TABLE_SYNC_CHECKPOINTS + " (" +
+                    COLUMN_COLLECTION + " TEXT PRIMARY KEY, " +
+                    COLUMN_CURSOR + " TEXT, " +
+                    COLUMN_PAGES + " INTEGER NOT NULL, " +
+                    COLUMN_DONE + " INTEGER NOT NULL, " +
+                    COLUMN_ACKED_SEQ + " INTEGER NOT NULL, " +
+                    COLUMN_SAVED_AT + " INTEGER NOT NULL" +
+                    ")";
 
     private static volatile DatabaseHelper INSTANCE;
 
@@ -83,7 +189,17 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
         db.execSQL(CREATE_TABLE_YOGA_COURSES);
         db.execSQL(CREATE_TABLE_SCHEDULES);
-        db.execSQL(CREATE_INDEX_SCHEDULES_COURSE_ID);
+        db.execSQL(CREATE_INDEX_SCHEDULES_COURSE_DATE);
+        db.execSQL(CREATE_INDEX_COURSES_SLOT);
+        db.execSQL(CREATE_INDEX_SCHEDULES_BOOKED);
+        db.execSQL(CREATE_INDEX_COURSES_UID);
+        db.execSQL(CREATE_INDEX_SCHEDULES_UID);
+        db.execSQL(CREATE_TABLE_SYNC_CHANGES);
+        db.execSQL(CREATE_TABLE_TOMBSTONES);
+        db.execSQL(CREATE_INDEX_TOMBSTONES_PENDING);
+        db.execSQL(CREATE_TABLE_SYNC_STATE);
+        db.execSQL(CREATE_TABLE_SYNC_CHECKPOINTS);
+        StatsTables.create(db);
 
         Log.d(TAG, "Database tables created successfully");
     }
@@ -92,12 +208,180 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
 
-        // Drop existing tables
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SCHEDULES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_YOGA_COURSES);
+        if (oldVersion < 2) {
+            // Version 1 schema is not migrated: drop existing tables and recreate
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SCHEDULES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_YOGA_COURSES);
+            onCreate(db);
+            return;
+        }
+
+        // From version 2 on, upgrades are applied step by step and keep existing data
+        if (oldVersion < 3) {
+            upgradeToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db, oldVersion);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db, oldVersion);
+        }
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+        }
+        if (oldVersion < 12) {
+            db.execSQL(CREATE_TABLE_SYNC_CHECKPOINTS);
+        }
+        if (oldVersion < 13) {
+            upgradeToVersion13(db);
+        }
+    }
+
+    /**
+     * Version 3: time-slot columns on courses, backfilled from dayOfWeek/time/duration.
+     */
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_YOGA_COURSES + " ADD COLUMN " + COLUMN_DAY_ORDINAL + " INTEGER NOT NULL DEFAULT -1");
+        db.execSQL("ALTER TABLE " + TABLE_YOGA_COURSES + " ADD COLUMN " + COLUMN_START_MINUTE + " INTEGER NOT NULL DEFAULT -1");
+        db.execSQL("ALTER TABLE " + TABLE_YOGA_COURSES + " ADD COLUMN " + COLUMN_END_MINUTE + " INTEGER NOT NULL DEFAULT -1");
+
+        db.execSQL("UPDATE " + TABLE_YOGA_COURSES + " SET " +
+                COLUMN_DAY_ORDINAL + " = CASE " + COLUMN_DAY_OF_WEEK + " " +
+                "WHEN 'Monday' THEN 0 " +
+                "WHEN 'Tuesday' THEN 1 " +
+                "WHEN 'Wednesday' THEN 2 " +
+                "WHEN 'Thursday' THEN 3 " +
+                "WHEN 'Friday' THEN 4 " +
+                "WHEN 'Saturday' THEN 5 " +
+                "WHEN 'Sunday' THEN 6 " +
+                "ELSE -1 END");
+        db.execSQL("UPDATE " + TABLE_YOGA_COURSES + " SET " +
+                COLUMN_START_MINUTE + " = CAST(substr(" + COLUMN_TIME + ", 1, 2) AS INTEGER) * 60 + " +
+                "CAST(substr(" + COLUMN_TIME + ", 4, 2) AS INTEGER) " +
+                "WHERE " + COLUMN_TIME + " GLOB '[0-2][0-9]:[0-5][0-9]'");
+        db.execSQL("UPDATE " + TABLE_YOGA_COURSES + " SET " +
+                COLUMN_END_MINUTE + " = " + COLUMN_START_MINUTE + " + " + COLUMN_DURATION +
+                " WHERE " + COLUMN_START_MINUTE + " >= 0");
+
+        db.execSQL(CREATE_INDEX_COURSES_SLOT);
+    }
+
+    /**
+     * Version 4: booked count per schedule. Existing schedules start at 0 until the next booking pull.
+     */
+    private void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_SCHEDULES + " ADD COLUMN " + COLUMN_BOOKED_COUNT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL(CREATE_INDEX_SCHEDULES_BOOKED);
+    }
+
+    /**
+     * Version 5: trigger-maintained statistics tables, filled from the existing data.
+     */
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        StatsTables.create(db);
+        StatsTables.rebuild(db);
+    }
+
+    /**
+     * Version 6: field-level change log for sync. Edits made before the upgrade are unknown,
+     * so every existing row is marked for one full write.
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_SYNC_CHANGES);
+        db.execSQL("INSERT INTO " + TABLE_SYNC_CHANGES + " (" + COLUMN_ENTITY + ", " + COLUMN_ENTITY_ID + ", " + COLUMN_FIELD + ")" +
+                " SELECT 'course', " + COLUMN_ID + ", '*' FROM " + TABLE_YOGA_COURSES);
+        db.execSQL("INSERT INTO " + TABLE_SYNC_CHANGES + " (" + COLUMN_ENTITY + ", " + COLUMN_ENTITY_ID + ", " + COLUMN_FIELD + ")" +
+                " SELECT 'schedule', " + COLUMN_ID + ", '*' FROM " + TABLE_SCHEDULES);
+    }
+
+    /**
+     * Version 7: tombstones for deleted rows. Deletes made before the upgrade left no
+     * trace; those not yet synced stay in Firestore until removed there.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_TOMBSTONES);
+        db.execSQL(CREATE_INDEX_TOMBSTONES_PENDING);
+    }
+
+    /**
+     * Version 8: row version and modification time. Existing rows start at version 1,
+     * modified at the time of the upgrade.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        long now = System.currentTimeMillis();
+        for (String table : new String[]{TABLE_YOGA_COURSES, TABLE_SCHEDULES}) {
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + COLUMN_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("UPDATE " + table + " SET " + COLUMN_LAST_MODIFIED + " = " + now);
+        }
+    }
+
+    /**
+     * Version 9: edit time per pending change, for merging edits from several devices.
+     * Changes logged before the upgrade take their row's modification time.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion >= 6) {
+            // A log created by upgradeToVersion6() in this same upgrade already has the column
+            db.execSQL("ALTER TABLE " + TABLE_SYNC_CHANGES + " ADD COLUMN " + COLUMN_CHANGED_AT + " INTEGER NOT NULL DEFAULT 0");
+        }
+        db.execSQL("UPDATE " + TABLE_SYNC_CHANGES + " SET " + COLUMN_CHANGED_AT + " = COALESCE((SELECT " +
+                COLUMN_LAST_MODIFIED + " FROM " + TABLE_YOGA_COURSES + " WHERE " + TABLE_YOGA_COURSES + "." +
+                COLUMN_ID + " = " + COLUMN_ENTITY_ID + "), 0) WHERE " + COLUMN_ENTITY + " = 'course'");
+        db.execSQL("UPDATE " + TABLE_SYNC_CHANGES + " SET " + COLUMN_CHANGED_AT + " = COALESCE((SELECT " +
+                COLUMN_LAST_MODIFIED + " FROM " + TABLE_SCHEDULES + " WHERE " + TABLE_SCHEDULES + "." +
+                COLUMN_ID + " = " + COLUMN_ENTITY_ID + "), 0) WHERE " + COLUMN_ENTITY + " = 'schedule'");
+    }
+
+    /**
+     * Version 10: uids. Existing rows take their integer id as uid, which is the document
+     * id they were synced under, so every device keeps agreeing on them; new rows get ULIDs.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db, int oldVersion) {
+        for (String table : new String[]{TABLE_YOGA_COURSES, TABLE_SCHEDULES}) {
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + COLUMN_UID + " TEXT");
+            db.execSQL("UPDATE " + table + " SET " + COLUMN_UID + " = CAST(" + COLUMN_ID + " AS TEXT)");
+        }
+        db.execSQL(CREATE_INDEX_COURSES_UID);
+        db.execSQL(CREATE_INDEX_SCHEDULES_UID);
+
+        if (oldVersion >= 7) {
+            // Tombstones created by upgradeToVersion7() in this same upgrade already have the column
+            db.execSQL("ALTER TABLE " + TABLE_TOMBSTONES + " ADD COLUMN " + COLUMN_ENTITY_UID + " TEXT");
+        }
+        db.execSQL("UPDATE " + TABLE_TOMBSTONES + " SET " + COLUMN_ENTITY_UID + " = CAST(" + COLUMN_ENTITY_ID + " AS TEXT)");
+    }
+
+    /**
+     * Version 11: sync state. Rows created before this have no CREATED marker in the change
+     * log, so deleting them records a tombstone, as before.
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_SYNC_STATE);
+    }
 
-        // Recreate tables
-        onCreate(db);
+    /**
+     * Version 13: schedules indexed on (courseId, date) for duplicate checks by date range.
+     * The index on courseId alone is a prefix of it, so it goes.
+     */
+    private void upgradeToVersion13(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_SCHEDULES_COURSE_DATE);
+        db.execSQL("DROP INDEX IF EXISTS idx_schedules_course_id");
     }
 
     @Override
@@ -0,0 +1,231 @@
+package com.universalyoga.admin.data.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Aggregate tables for the statistics screen, kept up to date by triggers.
+ *
+ * Every insert, update and delete on courses or schedules adjusts the matching
+ * bucket rows, so DAO write paths (including bulk inserts and cascading
+ * deletes) need no extra code and reading a rollup touches one row per bucket.
+ *
+ * - stats_course_types: courses, weekly minutes and revenue potential per class type
+ * - stats_days: the same per weekday, for finding the busiest days
+ * - stats_months: scheduled classes, minutes, revenue potential and bookings per yyyy-MM
+ * - stats_teacher_weeks: classes and minutes per teacher per week (weeks start on Monday)
+ *
+ * Revenue potential is price × capacity, i.e. takings if every place is sold.
+ */
+public final class StatsTables {
+
+    public static final String TABLE_COURSE_TYPES = "stats_course_types";
+    public static final String TABLE_DAYS = "stats_days";
+    public static final String TABLE_MONTHS = "stats_months";
+    public static final String TABLE_TEACHER_WEEKS = "stats_teacher_weeks";
+
+    public static final String COLUMN_TYPE = "type";
+    public static final String COLUMN_DAY_ORDINAL = "dayOrdinal";
+    public static final String COLUMN_MONTH = "month";              // yyyy-MM
+    public static final String COLUMN_TEACHER_KEY = "teacherKey";   // trimmed, lower case
+    public static final String COLUMN_TEACHER = "teacher";          // as first entered
+    public static final String COLUMN_WEEK_START = "weekStart";     // yyyy-MM-dd of the Monday
+    public static final String COLUMN_COURSE_COUNT = "courseCount";
+    public static final String COLUMN_CLASS_COUNT = "classCount";
+    public static final String COLUMN_MINUTES = "minutes";
+    public static final String COLUMN_REVENUE_POTENTIAL = "revenuePotential";
+    public static final String COLUMN_BOOKED_COUNT = "bookedCount";
+
+    private static final String COURSES = DatabaseHelper.TABLE_YOGA_COURSES;
+    private static final String SCHEDULES = DatabaseHelper.TABLE_SCHEDULES;
+
+    private StatsTables() {}
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_COURSE_TYPES + " (" +
+                COLUMN_TYPE + " TEXT PRIMARY KEY, " +
+                COLUMN_COURSE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_MINUTES + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_REVENUE_POTENTIAL + " REAL NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE " + TABLE_DAYS + " (" +
+                COLUMN_DAY_ORDINAL + " INTEGER PRIMARY KEY, " +
+                COLUMN_COURSE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_MINUTES + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_REVENUE_POTENTIAL + " REAL NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE " + TABLE_MONTHS + " (" +
+                COLUMN_MONTH + " TEXT PRIMARY KEY, " +
+                COLUMN_CLASS_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_MINUTES + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_REVENUE_POTENTIAL + " REAL NOT NULL DEFAULT 0, " +
+                COLUMN_BOOKED_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE " + TABLE_TEACHER_WEEKS + " (" +
+                COLUMN_TEACHER_KEY + " TEXT NOT NULL, " +
+                COLUMN_WEEK_START + " TEXT NOT NULL, " +
+                COLUMN_TEACHER + " TEXT, " +
+                COLUMN_CLASS_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_MINUTES + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY(" + COLUMN_WEEK_START + ", " + COLUMN_TEACHER_KEY + "))");
+
+        // Courses: move the row between type/day buckets
+        db.execSQL("CREATE TRIGGER stats_course_insert AFTER INSERT ON " + COURSES + " BEGIN " +
+                addCourse("NEW") + " END");
+        db.execSQL("CREATE TRIGGER stats_course_update AFTER UPDATE ON " + COURSES + " BEGIN " +
+                removeCourse("OLD") + addCourse("NEW") + rescaleSchedules() + " END");
+        // Delete the course's schedules first, while the course row can still be read for their durations
+        db.execSQL("CREATE TRIGGER stats_course_delete BEFORE DELETE ON " + COURSES + " BEGIN " +
+                "DELETE FROM " + SCHEDULES + " WHERE " + DatabaseHelper.COLUMN_COURSE_ID + " = OLD." + DatabaseHelper.COLUMN_ID + "; " +
+                removeCourse("OLD") + " END");
+
+        // Schedules: move the class between month/teacher-week buckets
+        db.execSQL("CREATE TRIGGER stats_schedule_insert AFTER INSERT ON " + SCHEDULES + " BEGIN " +
+                addSchedule("NEW") + " END");
+        db.execSQL("CREATE TRIGGER stats_schedule_update AFTER UPDATE OF " +
+                DatabaseHelper.COLUMN_COURSE_ID + ", " + DatabaseHelper.COLUMN_DATE + ", " +
+                DatabaseHelper.COLUMN_TEACHER + ", " + DatabaseHelper.COLUMN_BOOKED_COUNT + " ON " + SCHEDULES + " BEGIN " +
+                removeSchedule("OLD") + addSchedule("NEW") + " END");
+        db.execSQL("CREATE TRIGGER stats_schedule_delete AFTER DELETE ON " + SCHEDULES + " BEGIN " +
+                removeSchedule("OLD") + " END");
+    }
+
+    /**
+     * Recompute every aggregate from the base tables, e.g. after a migration.
+     */
+    public static void rebuild(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_COURSE_TYPES);
+            db.execSQL("DELETE FROM " + TABLE_DAYS);
+            db.execSQL("DELETE FROM " + TABLE_MONTHS);
+            db.execSQL("DELETE FROM " + TABLE_TEACHER_WEEKS);
+
+            db.execSQL("INSERT INTO " + TABLE_COURSE_TYPES + " SELECT " + DatabaseHelper.COLUMN_TYPE +
+                    ", COUNT(*), SUM(" + DatabaseHelper.COLUMN_DURATION + "), SUM(" + revenue("") + ")" +
+                    " FROM " + COURSES + " GROUP BY " + DatabaseHelper.COLUMN_TYPE);
+            db.execSQL("INSERT INTO " + TABLE_DAYS + " SELECT " + DatabaseHelper.COLUMN_DAY_ORDINAL +
+                    ", COUNT(*), SUM(" + DatabaseHelper.COLUMN_DURATION + "), SUM(" + revenue("") + ")" +
+                    " FROM " + COURSES + " GROUP BY " + DatabaseHelper.COLUMN_DAY_ORDINAL);
+            db.execSQL("INSERT INTO " + TABLE_MONTHS + " SELECT " + monthOf("s.") +
+                    ", COUNT(*), SUM(c." + DatabaseHelper.COLUMN_DURATION + "), SUM(" + revenue("c.") +
+                    "), SUM(s." + DatabaseHelper.COLUMN_BOOKED_COUNT + ")" +
+                    " FROM " + SCHEDULES + " s JOIN " + COURSES + " c ON c." + DatabaseHelper.COLUMN_ID +
+                    " = s." + DatabaseHelper.COLUMN_COURSE_ID + " GROUP BY 1");
+            db.execSQL("INSERT INTO " + TABLE_TEACHER_WEEKS + " SELECT " + teacherKeyOf("s.") + ", " +
+                    weekStartOf("s.") + ", MIN(TRIM(s." + DatabaseHelper.COLUMN_TEACHER + ")), COUNT(*), SUM(c." +
+                    DatabaseHelper.COLUMN_DURATION + ")" +
+                    " FROM " + SCHEDULES + " s JOIN " + COURSES + " c ON c." + DatabaseHelper.COLUMN_ID +
+                    " = s." + DatabaseHelper.COLUMN_COURSE_ID + " GROUP BY 1, 2");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // --- Trigger bodies. row is NEW or OLD. ---
+
+    private static String addCourse(String row) {
+        return adjustCourse(row, "+");
+    }
+
+    private static String removeCourse(String row) {
+        return adjustCourse(row, "-") +
+                "DELETE FROM " + TABLE_COURSE_TYPES + " WHERE " + COLUMN_TYPE + " = " +
+                row + "." + DatabaseHelper.COLUMN_TYPE + " AND " + COLUMN_COURSE_COUNT + " <= 0; " +
+                "DELETE FROM " + TABLE_DAYS + " WHERE " + COLUMN_DAY_ORDINAL + " = " +
+                row + "." + DatabaseHelper.COLUMN_DAY_ORDINAL + " AND " + COLUMN_COURSE_COUNT + " <= 0; ";
+    }
+
+    private static String adjustCourse(String row, String sign) {
+        String minutes = row + "." + DatabaseHelper.COLUMN_DURATION;
+        String revenue = revenue(row + ".");
+        return "INSERT OR IGNORE INTO " + TABLE_COURSE_TYPES + " (" + COLUMN_TYPE + ") VALUES (" +
+                row + "." + DatabaseHelper.COLUMN_TYPE + "); " +
+                "UPDATE " + TABLE_COURSE_TYPES + " SET " +
+                COLUMN_COURSE_COUNT + " = " + COLUMN_COURSE_COUNT + " " + sign + " 1, " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " " + sign + " " + minutes + ", " +
+                COLUMN_REVENUE_POTENTIAL + " = " + COLUMN_REVENUE_POTENTIAL + " " + sign + " " + revenue +
+                " WHERE " + COLUMN_TYPE + " = " + row + "." + DatabaseHelper.COLUMN_TYPE + "; " +
+                "INSERT OR IGNORE INTO " + TABLE_DAYS + " (" + COLUMN_DAY_ORDINAL + ") VALUES (" +
+                row + "." + DatabaseHelper.COLUMN_DAY_ORDINAL + "); " +
+                "UPDATE " + TABLE_DAYS + " SET " +
+                COLUMN_COURSE_COUNT + " = " + COLUMN_COURSE_COUNT + " " + sign + " 1, " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " " + sign + " " + minutes + ", " +
+                COLUMN_REVENUE_POTENTIAL + " = " + COLUMN_REVENUE_POTENTIAL + " " + sign + " " + revenue +
+                " WHERE " + COLUMN_DAY_ORDINAL + " = " + row + "." + DatabaseHelper.COLUMN_DAY_ORDINAL + "; ";
+    }
+
+    /**
+     * When a course's duration, price or capacity changes, shift the month and
+     * teacher-week buckets of its schedules by the difference per class.
+     */
+    private static String rescaleSchedules() {
+        String minutesDelta = "(NEW." + DatabaseHelper.COLUMN_DURATION + " - OLD." + DatabaseHelper.COLUMN_DURATION + ")";
+        String revenueDelta = "(" + revenue("NEW.") + " - " + revenue("OLD.") + ")";
+        String ofCourse = "s." + DatabaseHelper.COLUMN_COURSE_ID + " = NEW." + DatabaseHelper.COLUMN_ID;
+        String classesInMonth = "(SELECT COUNT(*) FROM " + SCHEDULES + " s WHERE " + ofCourse +
+                " AND " + monthOf("s.") + " = " + TABLE_MONTHS + "." + COLUMN_MONTH + ")";
+        String classesInWeek = "(SELECT COUNT(*) FROM " + SCHEDULES + " s WHERE " + ofCourse +
+                " AND " + teacherKeyOf("s.") + " = " + TABLE_TEACHER_WEEKS + "." + COLUMN_TEACHER_KEY +
+                " AND " + weekStartOf("s.") + " = " + TABLE_TEACHER_WEEKS + "." + COLUMN_WEEK_START + ")";
+
+        return "UPDATE " + TABLE_MONTHS + " SET " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " + " + minutesDelta + " * " + classesInMonth + ", " +
+                COLUMN_REVENUE_POTENTIAL + " = " + COLUMN_REVENUE_POTENTIAL + " + " + revenueDelta + " * " + classesInMonth +
+                " WHERE " + revenueDelta + " != 0 OR " + minutesDelta + " != 0; " +
+                "UPDATE " + TABLE_TEACHER_WEEKS + " SET " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " + " + minutesDelta + " * " + classesInWeek +
+                " WHERE " + minutesDelta + " != 0; ";
+    }
+
+    private static String addSchedule(String row) {
+        return adjustSchedule(row, "+");
+    }
+
+    private static String removeSchedule(String row) {
+        return adjustSchedule(row, "-") +
+                "DELETE FROM " + TABLE_MONTHS + " WHERE " + COLUMN_MONTH + " = " + monthOf(row + ".") +
+                " AND " + COLUMN_CLASS_COUNT + " <= 0; " +
+                "DELETE FROM " + TABLE_TEACHER_WEEKS + " WHERE " + COLUMN_TEACHER_KEY + " = " + teacherKeyOf(row + ".") +
+                " AND " + COLUMN_WEEK_START + " = " + weekStartOf(row + ".") + " AND " + COLUMN_CLASS_COUNT + " <= 0; ";
+    }
+
+    private static String adjustSchedule(String row, String sign) {
+        String course = " FROM " + COURSES + " WHERE " + DatabaseHelper.COLUMN_ID + " = " +
+                row + "." + DatabaseHelper.COLUMN_COURSE_ID;
+        String minutes = "COALESCE((SELECT " + DatabaseHelper.COLUMN_DURATION + course + "), 0)";
+        String revenue = "COALESCE((SELECT " + revenue("") + course + "), 0)";
+        String month = monthOf(row + ".");
+        String teacherKey = teacherKeyOf(row + ".");
+        String weekStart = weekStartOf(row + ".");
+
+        return "INSERT OR IGNORE INTO " + TABLE_MONTHS + " (" + COLUMN_MONTH + ") VALUES (" + month + "); " +
+                "UPDATE " + TABLE_MONTHS + " SET " +
+                COLUMN_CLASS_COUNT + " = " + COLUMN_CLASS_COUNT + " " + sign + " 1, " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " " + sign + " " + minutes + ", " +
+                COLUMN_REVENUE_POTENTIAL + " = " + COLUMN_REVENUE_POTENTIAL + " " + sign + " " + revenue + ", " +
+                COLUMN_BOOKED_COUNT + " = " + COLUMN_BOOKED_COUNT + " " + sign + " " + row + "." + DatabaseHelper.COLUMN_BOOKED_COUNT +
+                " WHERE " + COLUMN_MONTH + " = " + month + "; " +
+                "INSERT OR IGNORE INTO " + TABLE_TEACHER_WEEKS + " (" + COLUMN_TEACHER_KEY + ", " + COLUMN_WEEK_START +
+                ", " + COLUMN_TEACHER + ") VALUES (" + teacherKey + ", " + weekStart + ", TRIM(" +
+                row + "." + DatabaseHelper.COLUMN_TEACHER + ")); " +
+                "UPDATE " + TABLE_TEACHER_WEEKS + " SET " +
+                COLUMN_CLASS_COUNT + " = " + COLUMN_CLASS_COUNT + " " + sign + " 1, " +
+                COLUMN_MINUTES + " = " + COLUMN_MINUTES + " " + sign + " " + minutes +
+                " WHERE " + COLUMN_TEACHER_KEY + " = " + teacherKey + " AND " + COLUMN_WEEK_START + " = " + weekStart + "; ";
+    }
+
+    private static String revenue(String prefix) {
+        return prefix + DatabaseHelper.COLUMN_PRICE + " * " + prefix + DatabaseHelper.COLUMN_CAPACITY;
+    }
+
+    private static String monthOf(String prefix) {
+        return "substr(" + prefix + DatabaseHelper.COLUMN_DATE + ", 1, 7)";
+    }
+
+    private static String teacherKeyOf(String prefix) {
+        return "COALESCE(LOWER(TRIM(" + prefix + DatabaseHelper.COLUMN_TEACHER + ")), '')";
+    }
+
+    /** Monday of the date's week: 'weekday 0' moves forward to Sunday, then back six days. */
+    private static String weekStartOf(String prefix) {
+        return "COALESCE(date(" + prefix + DatabaseHelper.COLUMN_DATE + ", 'weekday 0', '-6 days'), '')";
+    }
+}
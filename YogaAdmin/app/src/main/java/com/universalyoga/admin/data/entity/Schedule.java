@@ -1,13 +1,27 @@
 // YogaAdmin/app/src/main/java/com.universalyoga.admin.data.entity/Schedule.java
 package com.universalyoga.admin.data.entity;
 
+import com.universalyoga.admin.data.database.DatabaseHelper;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
 public class Schedule {
 
     private int id;
+    private String uid;         // Same on every device, see Ulid; null until inserted
     private int courseId;
     private String date;        // ISO format yyyy-MM-dd
     private String teacher;
     private String comments;
+    private int bookedCount;    // customer bookings, pulled from Firestore
+    private long version;       // Row version, +1 on every local edit
+    private long lastModified;  // Epoch millis of the last local edit
+
+    // Fields changed by applyEdits(), named as their database columns / Firestore keys
+    private final Set<String> changedFields = new LinkedHashSet<>();
 
     // Default constructor
     public Schedule() {}
@@ -29,6 +43,14 @@ public class Schedule {
         this.id = id;
     }
 
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
     public int getCourseId() {
         return courseId;
     }
@@ -61,14 +83,75 @@ public class Schedule {
         this.comments = comments;
     }
 
+    public int getBookedCount() {
+        return bookedCount;
+    }
+
+    public void setBookedCount(int bookedCount) {
+        this.bookedCount = bookedCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Copy the user-editable fields from an edited copy, remembering which ones actually changed.
+     */
+    public void applyEdits(Schedule edited) {
+        if (courseId != edited.courseId) {
+            courseId = edited.courseId;
+            changedFields.add(DatabaseHelper.COLUMN_COURSE_ID);
+        }
+        if (!Objects.equals(date, edited.date)) {
+            date = edited.date;
+            changedFields.add(DatabaseHelper.COLUMN_DATE);
+        }
+        if (!Objects.equals(teacher, edited.teacher)) {
+            teacher = edited.teacher;
+            changedFields.add(DatabaseHelper.COLUMN_TEACHER);
+        }
+        if (!Objects.equals(comments, edited.comments)) {
+            comments = edited.comments;
+            changedFields.add(DatabaseHelper.COLUMN_COMMENTS);
+        }
+    }
+
+    public Set<String> getChangedFields() {
+        return Collections.unmodifiableSet(changedFields);
+    }
+
+    public boolean hasChanges() {
+        return !changedFields.isEmpty();
+    }
+
+    public void clearChanges() {
+        changedFields.clear();
+    }
+
     @Override
     public String toString() {
         return "Schedule{" +
                 "id=" + id +
+                ", uid='" + uid + '\'' +
                 ", courseId=" + courseId +
                 ", date='" + date + '\'' +
                 ", teacher='" + teacher + '\'' +
                 ", comments='" + comments + '\'' +
+                ", bookedCount=" + bookedCount +
+                ", version=" + version +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.universalyoga.admin.data.entity;
+
+/**
+ * A schedule joined with its course's start time and duration: when the teacher is busy.
+ * Read-only; built by ScheduleDao for conflict checks.
+ */
+public class ScheduleSlot {
+
+    private final int scheduleId;
+    private final int courseId;
+    private final String date;          // ISO format yyyy-MM-dd
+    private final String teacher;
+    private final int startMinute;      // minutes after midnight
+    private final int endMinute;        // exclusive
+
+    public ScheduleSlot(int scheduleId, int courseId, String date, String teacher, int startMinute, int endMinute) {
+        this.scheduleId = scheduleId;
+        this.courseId = courseId;
+        this.date = date;
+        this.teacher = teacher;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    public int getScheduleId() {
+        return scheduleId;
+    }
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getTeacher() {
+        return teacher;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    public boolean overlaps(ScheduleSlot other) {
+        return startMinute < other.endMinute && other.startMinute < endMinute;
+    }
+}
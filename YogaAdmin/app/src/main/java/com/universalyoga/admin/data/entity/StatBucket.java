@@ -0,0 +1,42 @@
+package com.universalyoga.admin.data.entity;
+
+/**
+ * One row of a precomputed statistics rollup, e.g. a class type, weekday, month or teacher-week.
+ * Read-only; built by StatsDao. Fields that do not apply to a rollup are 0.
+ */
+public class StatBucket {
+
+    private final String key;           // type, day name, yyyy-MM or teacher name
+    private final int count;            // courses for type/day rollups, classes for month/teacher rollups
+    private final int minutes;
+    private final double revenuePotential;
+    private final int bookedCount;
+
+    public StatBucket(String key, int count, int minutes, double revenuePotential, int bookedCount) {
+        this.key = key;
+        this.count = count;
+        this.minutes = minutes;
+        this.revenuePotential = revenuePotential;
+        this.bookedCount = bookedCount;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    public double getRevenuePotential() {
+        return revenuePotential;
+    }
+
+    public int getBookedCount() {
+        return bookedCount;
+    }
+}
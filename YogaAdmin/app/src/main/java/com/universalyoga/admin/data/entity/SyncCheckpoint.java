@@ -0,0 +1,53 @@
+package com.universalyoga.admin.data.entity;
+
+/**
+ * How far an unfinished sync got through one collection, so the next sync can carry on
+ * from there instead of starting over. Read-only; saved by SyncCheckpointDao.
+ */
+public class SyncCheckpoint {
+
+    private final String collection;
+    private final String cursor;        // last remote id merged and acknowledged; null for none yet
+    private final int pages;            // pages of the collection committed so far
+    private final boolean done;         // every page of the collection is committed
+    private final long ackedSeq;        // change log seq the acknowledged changes went up to
+
+    public SyncCheckpoint(String collection, String cursor, int pages, boolean done, long ackedSeq) {
+        this.collection = collection;
+        this.cursor = cursor;
+        this.pages = pages;
+        this.done = done;
+        this.ackedSeq = ackedSeq;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncCheckpoint{" +
+                "collection='" + collection + '\'' +
+                ", cursor='" + cursor + '\'' +
+                ", pages=" + pages +
+                ", done=" + done +
+                ", ackedSeq=" + ackedSeq +
+                '}';
+    }
+}
@@ -1,9 +1,17 @@
 // YogaAdmin/app/src/main/java/com.universalyoga.admin.data.entity/YogaCourse.java
 package com.universalyoga.admin.data.entity;
 
+import com.universalyoga.admin.data.database.DatabaseHelper;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
 public class YogaCourse {
 
     private int id;
+    private String uid;          // Same on every device, see Ulid; null until inserted
     private String dayOfWeek;    // Required: Monday, Tuesday, etc.
     private String time;         // Required: 10:00, 11:00, etc.
     private int capacity;        // Required: number of persons
@@ -11,6 +19,11 @@ public class YogaCourse {
     private double price;        // Required: price per class
     private String type;         // Required: Flow Yoga, Aerial Yoga, etc.
     private String description;  // Optional: additional description
+    private long version;        // Row version, +1 on every local edit
+    private long lastModified;   // Epoch millis of the last local edit
+
+    // Fields changed by applyEdits(), named as their database columns / Firestore keys
+    private final Set<String> changedFields = new LinkedHashSet<>();
 
     // Default constructor
     public YogaCourse() {}
@@ -36,6 +49,14 @@ public class YogaCourse {
         this.id = id;
     }
 
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
     public String getDayOfWeek() {
         return dayOfWeek;
     }
@@ -92,10 +113,73 @@ public class YogaCourse {
         this.description = description;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Copy the user-editable fields from an edited copy, remembering which ones actually changed.
+     */
+    public void applyEdits(YogaCourse edited) {
+        if (!Objects.equals(dayOfWeek, edited.dayOfWeek)) {
+            dayOfWeek = edited.dayOfWeek;
+            changedFields.add(DatabaseHelper.COLUMN_DAY_OF_WEEK);
+        }
+        if (!Objects.equals(time, edited.time)) {
+            time = edited.time;
+            changedFields.add(DatabaseHelper.COLUMN_TIME);
+        }
+        if (capacity != edited.capacity) {
+            capacity = edited.capacity;
+            changedFields.add(DatabaseHelper.COLUMN_CAPACITY);
+        }
+        if (duration != edited.duration) {
+            duration = edited.duration;
+            changedFields.add(DatabaseHelper.COLUMN_DURATION);
+        }
+        if (Double.compare(price, edited.price) != 0) {
+            price = edited.price;
+            changedFields.add(DatabaseHelper.COLUMN_PRICE);
+        }
+        if (!Objects.equals(type, edited.type)) {
+            type = edited.type;
+            changedFields.add(DatabaseHelper.COLUMN_TYPE);
+        }
+        if (!Objects.equals(description, edited.description)) {
+            description = edited.description;
+            changedFields.add(DatabaseHelper.COLUMN_DESCRIPTION);
+        }
+    }
+
+    public Set<String> getChangedFields() {
+        return Collections.unmodifiableSet(changedFields);
+    }
+
+    public boolean hasChanges() {
+        return !changedFields.isEmpty();
+    }
+
+    public void clearChanges() {
+        changedFields.clear();
+    }
+
     @Override
     public String toString() {
         return "YogaCourse{" +
                 "id=" + id +
+                ", uid='" + uid + '\'' +
                 ", dayOfWeek='" + dayOfWeek + '\'' +
                 ", time='" + time + '\'' +
                 ", capacity=" + capacity +
@@ -103,6 +187,7 @@ public class YogaCourse {
                 ", price=" + price +
                 ", type='" + type + '\'' +
                 ", description='" + description + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
\ No newline at end of file
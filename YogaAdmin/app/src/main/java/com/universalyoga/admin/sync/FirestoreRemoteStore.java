@@ -0,0 +1,194 @@
+package com.universalyoga.admin.sync;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+import com.universalyoga.admin.utils.FirebaseSync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RemoteStore on Firestore. A record is one document, named by the record's uid: its
+ * fields at the top level, as before, plus a map of field clocks. A tombstone holds only
+ * the empty clock map and the deletion clock, so readers such as the customer app skip
+ * any document with FIELD_DELETED.
+ *
+ * joinAll() reads and writes each batch of documents in a transaction, so the join is
+ * against the stored document even when another device wrote it since the fetch.
+ */
+public class FirestoreRemoteStore implements RemoteStore {
+
+    private static final String TAG = "FirestoreRemoteStore";
+    static final String FIELD_CLOCKS = "_clocks";
+    static final String FIELD_DELETED = "_deleted";
+    // A transaction or batch may write at most 500 documents
+    private static final int MAX_WRITES = 500;
+    // Bookkeeping keys that are not synced fields, including those written by older versions
+    private static final Set<String> RESERVED_KEYS = new HashSet<>(Arrays.asList(
+            FIELD_CLOCKS, FIELD_DELETED, "id", "lastUpdated", "version", "lastModified"));
+
+    private final FirebaseFirestore db;
+
+    /**
+     * @param db null if Firebase is not configured; every call then fails
+     */
+    public FirestoreRemoteStore(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    @Override
+    public void fetchPage(String collection, String afterId, int limit, Callback<List<SyncRecord>> callback) {
+        if (db == null) {
+            callback.onError("Firebase is not properly configured.");
+            return;
+        }
+
+        Query query = db.collection(collection).orderBy(FieldPath.documentId()).limit(limit);
+        if (afterId != null) {
+            query = query.startAfter(afterId);
+        }
+        query.get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<SyncRecord> records = new ArrayList<>();
+                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
+                        records.add(fromDocument(doc));
+                    }
+                    Log.d(TAG, "Fetched " + records.size() + " " + collection + " after " + afterId);
+                    callback.onSuccess(records);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching " + collection, e);
+                    callback.onError("Failed to get " + collection + ": " + FirebaseSync.getErrorMessage(e));
+                });
+    }
+
+    @Override
+    public void joinAll(String collection, List<SyncRecord> records, Callback<Void> callback) {
+        if (db == null) {
+            callback.onError("Firebase is not properly configured.");
+            return;
+        }
+
+        CollectionReference documents = db.collection(collection);
+        List<Task<Void>> commits = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += MAX_WRITES) {
+            List<SyncRecord> chunk = records.subList(from, Math.min(from + MAX_WRITES, records.size()));
+            commits.add(db.runTransaction((Transaction.Function<Void>) transaction -> {
+                // All reads come before the first write, as transactions require
+                List<DocumentSnapshot> stored = new ArrayList<>();
+                for (SyncRecord record : chunk) {
+                    stored.add(transaction.get(documents.document(record.getId())));
+                }
+                for (int i = 0; i < chunk.size(); i++) {
+                    SyncRecord record = chunk.get(i);
+                    DocumentSnapshot current = stored.get(i);
+                    SyncRecord joined = current.exists()
+                            ? MergeEngine.join(fromDocument(current), record) : record;
+                    DocumentReference ref = documents.document(record.getId());
+                    transaction.set(ref, toDocument(joined));
+                }
+                return null;
+            }));
+        }
+
+        Tasks.whenAll(commits)
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Joined " + records.size() + " " + collection);
+                    callback.onSuccess(null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error writing " + collection, e);
+                    callback.onError("Failed to write " + collection + ": " + FirebaseSync.getErrorMessage(e));
+                });
+    }
+
+    @Override
+    public void purgeTombstones(String collection, long deletedBefore, Callback<Integer> callback) {
+        if (db == null) {
+            callback.onError("Firebase is not properly configured.");
+            return;
+        }
+
+        // Clocks sort by time first, so this matches every deletion before the cutoff
+        db.collection(collection)
+                .whereLessThan(FIELD_DELETED, SyncRecord.clock(deletedBefore, ""))
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<DocumentSnapshot> tombstones = queryDocumentSnapshots.getDocuments();
+                    List<Task<Void>> commits = new ArrayList<>();
+                    for (int from = 0; from < tombstones.size(); from += MAX_WRITES) {
+                        WriteBatch batch = db.batch();
+                        for (DocumentSnapshot doc : tombstones.subList(from, Math.min(from + MAX_WRITES, tombstones.size()))) {
+                            batch.delete(doc.getReference());
+                        }
+                        commits.add(batch.commit());
+                    }
+                    Tasks.whenAll(commits)
+                            .addOnSuccessListener(aVoid -> {
+                                Log.d(TAG, "Purged " + tombstones.size() + " " + collection + " tombstones");
+                                callback.onSuccess(tombstones.size());
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error purging " + collection + " tombstones", e);
+                                callback.onError("Failed to purge " + collection + ": " + FirebaseSync.getErrorMessage(e));
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error finding " + collection + " tombstones", e);
+                    callback.onError("Failed to get " + collection + ": " + FirebaseSync.getErrorMessage(e));
+                });
+    }
+
+    static SyncRecord fromDocument(DocumentSnapshot doc) {
+        SyncRecord record = new SyncRecord(doc.getId());
+        Map<String, Object> data = doc.getData();
+        if (data == null) {
+            return record;
+        }
+
+        Object clocks = data.get(FIELD_CLOCKS);
+        Map<?, ?> clockMap = clocks instanceof Map ? (Map<?, ?>) clocks : Collections.emptyMap();
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            if (RESERVED_KEYS.contains(field.getKey())) {
+                continue;
+            }
+            // Documents written before field clocks existed have none, so any stamped edit beats them
+            Object clock = clockMap.get(field.getKey());
+            record.put(field.getKey(), field.getValue(), clock instanceof String ? (String) clock : null);
+        }
+        Object deleted = data.get(FIELD_DELETED);
+        if (deleted instanceof String) {
+            record.markDeleted((String) deleted);
+        }
+        return record;
+    }
+
+    static Map<String, Object> toDocument(SyncRecord record) {
+        Map<String, Object> data = new HashMap<>(record.getValues());
+        data.put(FIELD_CLOCKS, new HashMap<>(record.getClocks()));
+        if (record.isDeleted()) {
+            // A tombstone has no fields, and set() drops the ones the document had
+            data.put(FIELD_DELETED, record.getDeletedClock());
+        } else {
+            data.put("lastUpdated", System.currentTimeMillis());
+        }
+        return data;
+    }
+}
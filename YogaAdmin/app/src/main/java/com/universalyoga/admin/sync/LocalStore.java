@@ -0,0 +1,79 @@
+package com.universalyoga.admin.sync;
+
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This device's copy of the synced tables. Called from a background thread.
+ */
+public interface LocalStore {
+
+    /**
+     * Local records of one collection at one point in time.
+     */
+    class Snapshot {
+        private final Map<String, SyncRecord> records;
+        private final Object marker;
+
+        /**
+         * @param marker whatever the store needs to acknowledge exactly these changes later
+         */
+        public Snapshot(Map<String, SyncRecord> records, Object marker) {
+            this.records = records;
+            this.marker = marker;
+        }
+
+        /**
+         * Records by id: live rows, with clocks on the fields changed since the last sync,
+         * and tombstones for deletes not yet pushed.
+         */
+        public Map<String, SyncRecord> getRecords() {
+            return records;
+        }
+
+        public Object getMarker() {
+            return marker;
+        }
+    }
+
+    /**
+     * Every row of a collection plus its pending deletes.
+     */
+    Snapshot snapshot(String collection);
+
+    /**
+     * Only the pending deletes of a collection.
+     */
+    Snapshot snapshotDeletes(String collection);
+
+    /**
+     * Store merged records: insert new ones, delete tombstoned ones and overwrite the rest
+     * if they are still at the version they were read at (see SyncRecord.getLocalVersion()),
+     * so an edit made during the sync is kept for the next one. Nothing applied here is
+     * recorded as a pending change. Returns the number of records applied.
+     */
+    int apply(String collection, List<SyncRecord> records);
+
+    /**
+     * Forget the pending changes and deletes of some ids in a snapshot once they have been
+     * merged into the remote store, and save how far the sync has got in the same
+     * transaction. Changes made after the snapshot stay pending.
+     *
+     * @param checkpoint where a sync cut short now would resume; null to leave it as it is.
+     *                   The store records its own acknowledged seq in place of the one given.
+     */
+    void acknowledge(String collection, Snapshot snapshot, Collection<String> ids, SyncCheckpoint checkpoint);
+
+    /**
+     * Where an unfinished sync of a collection got to, or null if there is none.
+     */
+    SyncCheckpoint loadCheckpoint(String collection);
+
+    /**
+     * Forget every checkpoint once a sync has finished.
+     */
+    void clearCheckpoints();
+}
@@ -0,0 +1,120 @@
+package com.universalyoga.admin.sync;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Merges copies of a record made on different devices.
+ *
+ * Each field is merged on its own: the write with the higher clock wins, so two
+ * devices editing different fields of a course both keep their edit. Deletes take
+ * precedence: once any device has deleted a record it stays deleted, even if another
+ * device edited it later. The result does not depend on which device merges first.
+ */
+public final class MergeEngine {
+
+    private MergeEngine() {}
+
+    /**
+     * What merging a local record with its remote copy means for each side.
+     */
+    public static class Outcome {
+        private final SyncRecord merged;
+        private final SyncRecord toPush;
+        private final boolean localChanged;
+
+        Outcome(SyncRecord merged, SyncRecord toPush, boolean localChanged) {
+            this.merged = merged;
+            this.toPush = toPush;
+            this.localChanged = localChanged;
+        }
+
+        /** The record both sides end up with. */
+        public SyncRecord getMerged() {
+            return merged;
+        }
+
+        /** The fields the remote copy is missing, with their clocks; null if it is up to date. */
+        public SyncRecord getToPush() {
+            return toPush;
+        }
+
+        /** Whether the local row has to be inserted, updated or deleted to match getMerged(). */
+        public boolean isLocalChanged() {
+            return localChanged;
+        }
+    }
+
+    /**
+     * Join two copies of a record: per field the higher clock wins, and a deletion wins
+     * over any field, leaving a tombstone without fields. On equal clocks the first copy
+     * is kept. Neither input is changed.
+     */
+    public static SyncRecord join(SyncRecord first, SyncRecord second) {
+        SyncRecord joined = first.copy();
+        if (second.isDeleted() &&
+                (!joined.isDeleted() || SyncRecord.compareClocks(second.getDeletedClock(), joined.getDeletedClock()) > 0)) {
+            joined.markDeleted(second.getDeletedClock());
+        }
+        if (joined.isDeleted()) {
+            // A tombstone keeps no fields
+            return joined;
+        }
+        for (Map.Entry<String, Object> field : second.getValues().entrySet()) {
+            String name = field.getKey();
+            if (!joined.hasField(name) ||
+                    SyncRecord.compareClocks(second.getClock(name), joined.getClock(name)) > 0) {
+                joined.put(name, field.getValue(), second.getClock(name));
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Merge the local and remote copies of a record.
+     *
+     * @param local  the local row, with clocks only on fields changed since the last sync,
+     *               or a tombstone; null if the row is not stored locally
+     * @param remote the remote copy; null if the remote store does not have it
+     */
+    public static Outcome merge(SyncRecord local, SyncRecord remote) {
+        if (local == null && remote == null) {
+            throw new IllegalArgumentException("Nothing to merge");
+        }
+        if (remote == null) {
+            // Only this device has it: push everything
+            return new Outcome(local.copy(), local.copy(), false);
+        }
+        if (local == null) {
+            return new Outcome(remote.copy(), null, !remote.isDeleted());
+        }
+
+        // Remote first, so a local field without a clock (unchanged since the last sync) takes the remote value
+        SyncRecord merged = join(remote, local);
+        merged.setLocalVersion(local.getLocalVersion());
+
+        SyncRecord toPush = new SyncRecord(local.getId());
+        boolean push = false;
+        boolean localChanged = false;
+        if (merged.isDeleted()) {
+            // Field edits to a deleted record are moot; only a newer deletion needs pushing
+            if (!Objects.equals(merged.getDeletedClock(), remote.getDeletedClock())) {
+                toPush.markDeleted(merged.getDeletedClock());
+                push = true;
+            }
+            localChanged = !local.isDeleted();
+        } else {
+            for (Map.Entry<String, Object> field : local.getValues().entrySet()) {
+                String name = field.getKey();
+                if (!remote.hasField(name) ||
+                        SyncRecord.compareClocks(local.getClock(name), remote.getClock(name)) > 0) {
+                    toPush.put(name, field.getValue(), local.getClock(name));
+                    push = true;
+                } else if (!Objects.equals(field.getValue(), merged.getValue(name))) {
+                    localChanged = true;
+                }
+            }
+        }
+        return new Outcome(merged, push ? toPush : null, localChanged);
+    }
+}
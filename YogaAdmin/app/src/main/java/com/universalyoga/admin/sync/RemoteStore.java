@@ -0,0 +1,36 @@
+package com.universalyoga.admin.sync;
+
+import java.util.List;
+
+/**
+ * The shared copy every device syncs against, one collection per synced table.
+ * Callbacks may arrive on any thread.
+ */
+public interface RemoteStore {
+
+    interface Callback<T> {
+        void onSuccess(T result);
+        void onError(String error);
+    }
+
+    /**
+     * Up to limit records of a collection, tombstones included, in id order starting after
+     * afterId (null for the first page). Fewer than limit means the end has been reached.
+     * Ids compare as Java strings do; the ids used here are ASCII, which Firestore orders the same way.
+     */
+    void fetchPage(String collection, String afterId, int limit, Callback<List<SyncRecord>> callback);
+
+    /**
+     * Join records into a collection with MergeEngine.join() against what is stored at the
+     * time of the write, so a push based on an older fetch cannot undo a newer write from
+     * another device. Each record is joined atomically.
+     */
+    void joinAll(String collection, List<SyncRecord> records, Callback<Void> callback);
+
+    /**
+     * Delete the tombstones of a collection whose deletion is older than a time, so deleted
+     * records do not stay in the store for good. Calls back with the number purged.
+     * A device that has not synced since then never sees those deletes.
+     */
+    void purgeTombstones(String collection, long deletedBefore, Callback<Integer> callback);
+}
@@ -0,0 +1,336 @@
+package com.universalyoga.admin.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.dao.SyncChangeDao;
+import com.universalyoga.admin.data.dao.YogaCourseDao;
+import com.universalyoga.admin.data.database.AppDatabase;
+import com.universalyoga.admin.data.database.DatabaseHelper;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * LocalStore over the app database. Collections are named after their Firestore
+ * collections and fields after the database columns, which are also the Firestore keys.
+ * Records are identified by uid, and a schedule refers to its course by the course's uid
+ * rather than by the local course id, which differs between devices.
+ *
+ * Pending changes come from the sync change log and the tombstones. Their clocks use
+ * the time of the edit and a random id generated once per install, so edits made on
+ * other devices can be ordered against them.
+ */
+public class SqliteLocalStore implements LocalStore {
+
+    private static final String TAG = "SqliteLocalStore";
+    private static final String PREFS_NAME = "sync_engine";
+    private static final String KEY_DEVICE_ID = "deviceId";
+
+    public static final String COLLECTION_COURSES = "yoga_courses";
+    public static final String COLLECTION_SCHEDULES = "schedules";
+    /** Every synced collection, courses before the schedules that reference them. */
+    public static final List<String> COLLECTIONS =
+            Collections.unmodifiableList(Arrays.asList(COLLECTION_COURSES, COLLECTION_SCHEDULES));
+
+    private static final List<String> COURSE_FIELDS = Arrays.asList(
+            DatabaseHelper.COLUMN_DAY_OF_WEEK, DatabaseHelper.COLUMN_TIME, DatabaseHelper.COLUMN_CAPACITY,
+            DatabaseHelper.COLUMN_DURATION, DatabaseHelper.COLUMN_PRICE, DatabaseHelper.COLUMN_TYPE,
+            DatabaseHelper.COLUMN_DESCRIPTION);
+    /** Schedule field holding the course's uid, in place of the courseId column. The customer app reads it too. */
+    static final String FIELD_COURSE_UID = "courseUid";
+    private static final List<String> SCHEDULE_FIELDS = Arrays.asList(
+            FIELD_COURSE_UID, DatabaseHelper.COLUMN_DATE, DatabaseHelper.COLUMN_TEACHER,
+            DatabaseHelper.COLUMN_COMMENTS);
+
+    // What acknowledge() clears for a snapshot; no change log for a deletes-only snapshot
+    private static class Marker {
+        final SyncChangeDao.Pending pending;
+        final Map<String, Integer> localIds;    // uid -> local id of each row in the snapshot
+        final Collection<String> deletedIds;
+
+        Marker(SyncChangeDao.Pending pending, Map<String, Integer> localIds, Collection<String> deletedIds) {
+            this.pending = pending;
+            this.localIds = localIds;
+            this.deletedIds = deletedIds;
+        }
+    }
+
+    private final AppDatabase database;
+    private final String deviceId;
+
+    public SqliteLocalStore(Context context, AppDatabase database) {
+        this.database = database;
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String id = prefs.getString(KEY_DEVICE_ID, null);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_DEVICE_ID, id).apply();
+        }
+        this.deviceId = id;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Rows edited or deleted here that have not been synced yet, across every collection.
+     */
+    public int countPending() {
+        int count = 0;
+        for (String collection : COLLECTIONS) {
+            String entity = entityFor(collection);
+            count += database.syncChangeDao().getPending(entity).getIds().size();
+            count += database.tombstoneDao().getPending(entity).size();
+        }
+        return count;
+    }
+
+    @Override
+    public Snapshot snapshot(String collection) {
+        String entity = entityFor(collection);
+        Map<String, SyncRecord> records = new HashMap<>();
+        Map<String, Integer> localIds = new HashMap<>();
+        Marker[] marker = new Marker[1];
+
+        // One transaction, so no edit lands between reading the change log and the rows
+        database.runInTransaction(() -> {
+            SyncChangeDao.Pending pending = database.syncChangeDao().getPending(entity);
+            database.syncChangeDao().markSnapshotted(pending);
+            if (COLLECTION_COURSES.equals(collection)) {
+                for (YogaCourse course : database.yogaCourseDao().getAllCourses()) {
+                    records.put(course.getUid(), courseToRecord(course, pending.getChangedAt(course.getId())));
+                    localIds.put(course.getUid(), course.getId());
+                }
+            } else {
+                Map<Integer, String> courseUids = new HashMap<>();
+                for (YogaCourse course : database.yogaCourseDao().getAllCourses()) {
+                    courseUids.put(course.getId(), course.getUid());
+                }
+                for (Schedule schedule : database.scheduleDao().getAllSchedules()) {
+                    records.put(schedule.getUid(), scheduleToRecord(schedule, courseUids.get(schedule.getCourseId()),
+                            pending.getChangedAt(schedule.getId())));
+                    localIds.put(schedule.getUid(), schedule.getId());
+                }
+            }
+            marker[0] = new Marker(pending, localIds, addTombstones(entity, records));
+        });
+        return new Snapshot(records, marker[0]);
+    }
+
+    @Override
+    public Snapshot snapshotDeletes(String collection) {
+        Map<String, SyncRecord> records = new HashMap<>();
+        Collection<String> deletedIds = addTombstones(entityFor(collection), records);
+        return new Snapshot(records, new Marker(null, Collections.emptyMap(), deletedIds));
+    }
+
+    @Override
+    public int apply(String collection, List<SyncRecord> records) {
+        int[] applied = {0};
+        database.runInTransaction(() -> {
+            for (SyncRecord record : records) {
+                try {
+                    if (applyRecord(collection, record)) {
+                        applied[0]++;
+                    }
+                } catch (SQLException e) {
+                    // e.g. a schedule moved to a course deleted here; the rest still apply
+                    Log.w(TAG, "Could not apply synced record " + record.getId() + " of " + collection, e);
+                }
+            }
+        });
+        Log.d(TAG, "Applied " + applied[0] + " of " + records.size() + " synced " + collection);
+        return applied[0];
+    }
+
+    @Override
+    public void acknowledge(String collection, Snapshot snapshot, Collection<String> ids, SyncCheckpoint checkpoint) {
+        String entity = entityFor(collection);
+        Marker marker = (Marker) snapshot.getMarker();
+        List<Integer> rowIds = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (String id : ids) {
+            Integer rowId = marker.localIds.get(id);
+            if (rowId != null) {
+                rowIds.add(rowId);
+            }
+            if (marker.deletedIds.contains(id)) {
+                deletedIds.add(id);
+            }
+        }
+
+        // One transaction, so a crash cannot keep the checkpoint but lose the acknowledgement
+        database.runInTransaction(() -> {
+            if (marker.pending != null) {
+                database.syncChangeDao().clear(entity, marker.pending, rowIds);
+            }
+            database.tombstoneDao().markAcknowledged(entity, deletedIds);
+            if (checkpoint != null) {
+                database.syncCheckpointDao().save(checkpoint, marker.pending != null ? marker.pending.getUpToSeq() : 0);
+            }
+        });
+    }
+
+    @Override
+    public SyncCheckpoint loadCheckpoint(String collection) {
+        return database.syncCheckpointDao().get(collection);
+    }
+
+    @Override
+    public void clearCheckpoints() {
+        database.syncCheckpointDao().clearAll();
+    }
+
+    private boolean applyRecord(String collection, SyncRecord record) {
+        // A record read from this database has a version; one new from another device has none
+        boolean stored = record.getLocalVersion() > 0;
+
+        if (COLLECTION_COURSES.equals(collection)) {
+            YogaCourseDao dao = database.yogaCourseDao();
+            if (record.isDeleted()) {
+                return dao.deleteFromRemote(record.getId());
+            }
+            YogaCourse course = recordToCourse(record);
+            return stored ? dao.applyRemote(course, record.getLocalVersion()) : dao.insertFromRemote(course);
+        }
+
+        ScheduleDao dao = database.scheduleDao();
+        if (record.isDeleted()) {
+            return dao.deleteFromRemote(record.getId());
+        }
+        int courseId = database.yogaCourseDao().getIdByUid(courseUidOf(record));
+        if (courseId == -1) {
+            // Its course is not here, e.g. deleted on this device; the next sync tries again
+            Log.w(TAG, "No course " + courseUidOf(record) + " for synced schedule " + record.getId());
+            return false;
+        }
+        Schedule schedule = recordToSchedule(record, courseId);
+        return stored ? dao.applyRemote(schedule, record.getLocalVersion()) : dao.insertFromRemote(schedule);
+    }
+
+    /**
+     * Add a tombstone record for each pending delete. Returns the deleted ids.
+     */
+    private Collection<String> addTombstones(String entity, Map<String, SyncRecord> records) {
+        Map<String, Long> deletes = database.tombstoneDao().getPending(entity);
+        for (Map.Entry<String, Long> delete : deletes.entrySet()) {
+            SyncRecord tombstone = new SyncRecord(delete.getKey());
+            tombstone.markDeleted(SyncRecord.clock(delete.getValue(), deviceId));
+            records.put(tombstone.getId(), tombstone);
+        }
+        return deletes.keySet();
+    }
+
+    /**
+     * Clock of a pending field: the later of its own change and a whole-row change.
+     * Null if the field has not changed since the last sync.
+     */
+    private String clockFor(Map<String, Long> changedAt, String field) {
+        Long time = changedAt.get(field);
+        Long allFields = changedAt.get(SyncChangeDao.ALL_FIELDS);
+        if (allFields != null && (time == null || allFields > time)) {
+            time = allFields;
+        }
+        return time != null ? SyncRecord.clock(time, deviceId) : null;
+    }
+
+    private SyncRecord courseToRecord(YogaCourse course, Map<String, Long> changedAt) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(DatabaseHelper.COLUMN_DAY_OF_WEEK, course.getDayOfWeek());
+        values.put(DatabaseHelper.COLUMN_TIME, course.getTime());
+        values.put(DatabaseHelper.COLUMN_CAPACITY, course.getCapacity());
+        values.put(DatabaseHelper.COLUMN_DURATION, course.getDuration());
+        values.put(DatabaseHelper.COLUMN_PRICE, course.getPrice());
+        values.put(DatabaseHelper.COLUMN_TYPE, course.getType());
+        values.put(DatabaseHelper.COLUMN_DESCRIPTION, course.getDescription());
+        return toRecord(course.getUid(), course.getVersion(), COURSE_FIELDS, values, changedAt);
+    }
+
+    private SyncRecord scheduleToRecord(Schedule schedule, String courseUid, Map<String, Long> changedAt) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(FIELD_COURSE_UID, courseUid);
+        values.put(DatabaseHelper.COLUMN_DATE, schedule.getDate());
+        values.put(DatabaseHelper.COLUMN_TEACHER, schedule.getTeacher());
+        values.put(DatabaseHelper.COLUMN_COMMENTS, schedule.getComments());
+        return toRecord(schedule.getUid(), schedule.getVersion(), SCHEDULE_FIELDS, values, changedAt);
+    }
+
+    private SyncRecord toRecord(String uid, long version, List<String> fields, Map<String, Object> values,
+                                Map<String, Long> changedAt) {
+        SyncRecord record = new SyncRecord(uid);
+        for (String field : fields) {
+            // The change log names the column, courseId, for a change of course
+            String column = FIELD_COURSE_UID.equals(field) ? DatabaseHelper.COLUMN_COURSE_ID : field;
+            record.put(field, values.get(field), clockFor(changedAt, column));
+        }
+        record.setLocalVersion(version);
+        return record;
+    }
+
+    private static YogaCourse recordToCourse(SyncRecord record) {
+        YogaCourse course = new YogaCourse();
+        course.setUid(record.getId());
+        course.setDayOfWeek(stringValue(record, DatabaseHelper.COLUMN_DAY_OF_WEEK));
+        course.setTime(stringValue(record, DatabaseHelper.COLUMN_TIME));
+        course.setCapacity((int) numberValue(record, DatabaseHelper.COLUMN_CAPACITY));
+        course.setDuration((int) numberValue(record, DatabaseHelper.COLUMN_DURATION));
+        course.setPrice(numberValue(record, DatabaseHelper.COLUMN_PRICE));
+        course.setType(stringValue(record, DatabaseHelper.COLUMN_TYPE));
+        course.setDescription(stringValue(record, DatabaseHelper.COLUMN_DESCRIPTION));
+        return course;
+    }
+
+    private static Schedule recordToSchedule(SyncRecord record, int courseId) {
+        Schedule schedule = new Schedule();
+        schedule.setUid(record.getId());
+        schedule.setCourseId(courseId);
+        schedule.setDate(stringValue(record, DatabaseHelper.COLUMN_DATE));
+        schedule.setTeacher(stringValue(record, DatabaseHelper.COLUMN_TEACHER));
+        schedule.setComments(stringValue(record, DatabaseHelper.COLUMN_COMMENTS));
+        return schedule;
+    }
+
+    /**
+     * Uid of a schedule's course. Documents written before uids only have the course id,
+     * which is also the uid existing courses were given.
+     */
+    private static String courseUidOf(SyncRecord record) {
+        String courseUid = stringValue(record, FIELD_COURSE_UID);
+        return courseUid != null ? courseUid : String.valueOf((long) numberValue(record, DatabaseHelper.COLUMN_COURSE_ID));
+    }
+
+    private static String stringValue(SyncRecord record, String field) {
+        Object value = record.getValue(field);
+        return value != null ? value.toString() : null;
+    }
+
+    /** A numeric field, 0 if missing (e.g. documents written by an older version). */
+    private static double numberValue(SyncRecord record, String field) {
+        Object value = record.getValue(field);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static String entityFor(String collection) {
+        if (COLLECTION_COURSES.equals(collection)) {
+            return SyncChangeDao.ENTITY_COURSE;
+        }
+        if (COLLECTION_SCHEDULES.equals(collection)) {
+            return SyncChangeDao.ENTITY_SCHEDULE;
+        }
+        throw new IllegalArgumentException("Not a synced collection: " + collection);
+    }
+}
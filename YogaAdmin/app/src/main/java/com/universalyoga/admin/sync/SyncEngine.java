@@ -0,0 +1,309 @@
+package com.universalyoga.admin.sync;
+
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+import com.universalyoga.admin.utils.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Two-way sync between a LocalStore and a RemoteStore using MergeEngine.
+ *
+ * For each collection: snapshot the local rows, fetch the remote records, merge every
+ * id found on either side, join what the remote is missing into it, then apply the
+ * merged records locally and acknowledge the snapshot. Rows created on other devices
+ * are pulled rather than deleted, and deletes travel as tombstones.
+ *
+ * Remote records are fetched a page at a time in id order, and each page is merged with
+ * the local records in its id range and committed before the next is fetched, together
+ * with a checkpoint. A sync cut short by a crash or a lost connection carries on from the
+ * last checkpoint instead of starting over. A run reports the local records it has covered
+ * to a ProgressTracker, and stops between pages if the tracker is cancelled; the next run
+ * carries on from there too.
+ *
+ * Collections are synced one after another in the order given, so parents can be
+ * listed before the rows that reference them. Local work runs on the executor, and an
+ * exception thrown there fails the run like a remote error. Plain Java with no Android calls, so it runs in local unit tests.
+ */
+public class SyncEngine {
+
+    public interface Callback {
+        void onSuccess(Summary summary);
+        void onError(String error);
+    }
+
+    /**
+     * Counts for one run.
+     */
+    public static class Summary {
+        private int pushed;
+        private int applied;
+        private int pages;
+        private boolean resumed;
+
+        /** Records joined into the remote store. */
+        public int getPushed() {
+            return pushed;
+        }
+
+        /** Records inserted, updated or deleted locally. */
+        public int getApplied() {
+            return applied;
+        }
+
+        /** Pages fetched and committed. */
+        public int getPages() {
+            return pages;
+        }
+
+        /**
+         * True if this run carried on from an earlier one that was cut short. It skipped what
+         * that one had committed, so changes made there since are left for the next run.
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+    }
+
+    /** Error passed to Callback.onError() when the run was stopped through its ProgressTracker. */
+    public static final String CANCELLED = "Sync cancelled";
+
+    /** Records fetched per page, so a page of pushes usually fits in one Firestore transaction. */
+    public static final int DEFAULT_PAGE_SIZE = 300;
+
+    private final LocalStore localStore;
+    private final RemoteStore remoteStore;
+    private final Executor executor;
+    private final int pageSize;
+    private final SyncMetrics metrics = new SyncMetrics();
+
+    public SyncEngine(LocalStore localStore, RemoteStore remoteStore, Executor executor) {
+        this(localStore, remoteStore, executor, DEFAULT_PAGE_SIZE);
+    }
+
+    public SyncEngine(LocalStore localStore, RemoteStore remoteStore, Executor executor, int pageSize) {
+        this.localStore = localStore;
+        this.remoteStore = remoteStore;
+        this.executor = executor;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Timings and counts of every run of this engine.
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Merge the local and remote copies of each collection, in order. Carries on from the
+     * checkpoints of a sync that was cut short, if there are any.
+     */
+    public void sync(List<String> collections, Callback callback) {
+        sync(collections, new ProgressTracker(null), callback);
+    }
+
+    /**
+     * As sync(), reporting a phase per collection to the tracker.
+     */
+    public void sync(List<String> collections, ProgressTracker tracker, Callback callback) {
+        metrics.recordRunStarted();
+        syncFrom(collections, 0, new Summary(), tracker, callback);
+    }
+
+    /**
+     * Push pending local deletes only, without fetching anything, e.g. right after a delete.
+     */
+    public void pushDeletes(List<String> collections, Callback callback) {
+        metrics.recordRunStarted();
+        pushDeletesFrom(collections, 0, new Summary(), callback);
+    }
+
+    private void syncFrom(List<String> collections, int index, Summary summary, ProgressTracker tracker,
+                          Callback callback) {
+        if (index == collections.size()) {
+            localStore.clearCheckpoints();
+            metrics.recordRunSucceeded(summary.resumed);
+            callback.onSuccess(summary);
+            return;
+        }
+        String collection = collections.get(index);
+        Runnable next = () -> syncFrom(collections, index + 1, summary, tracker, callback);
+        executor.execute(guarded(SyncMetrics.Phase.SNAPSHOT, callback, () -> {
+            SyncCheckpoint checkpoint = localStore.loadCheckpoint(collection);
+            if (checkpoint != null) {
+                summary.resumed = true;
+                if (checkpoint.isDone()) {
+                    next.run();
+                    return;
+                }
+            } else {
+                checkpoint = new SyncCheckpoint(collection, null, 0, false, 0);
+            }
+            long started = System.nanoTime();
+            LocalStore.Snapshot snapshot = localStore.snapshot(collection);
+            metrics.recordPhase(SyncMetrics.Phase.SNAPSHOT, started, System.nanoTime());
+            NavigableMap<String, SyncRecord> localRecords = new TreeMap<>(snapshot.getRecords());
+            tracker.beginPhase("Syncing " + collection, localRecords.size());
+            if (checkpoint.getCursor() != null) {
+                tracker.setCompleted(localRecords.headMap(checkpoint.getCursor(), true).size());
+            }
+            syncPage(collection, snapshot, localRecords, checkpoint, summary, tracker, next, callback);
+        }));
+    }
+
+    /**
+     * Fetch the page after the checkpoint and merge it with the local records in the same
+     * id range, then commit the page with its checkpoint and go on to the next one.
+     */
+    private void syncPage(String collection, LocalStore.Snapshot snapshot, NavigableMap<String, SyncRecord> localRecords,
+                          SyncCheckpoint checkpoint, Summary summary, ProgressTracker tracker, Runnable next,
+                          Callback callback) {
+        if (tracker.isCancelled()) {
+            metrics.recordRunCancelled();
+            callback.onError(CANCELLED);
+            return;
+        }
+        String cursor = checkpoint.getCursor();
+        long fetchStarted = System.nanoTime();
+        remoteStore.fetchPage(collection, cursor, pageSize, new RemoteStore.Callback<List<SyncRecord>>() {
+            @Override
+            public void onSuccess(List<SyncRecord> page) {
+                metrics.recordPhase(SyncMetrics.Phase.FETCH, fetchStarted, System.nanoTime());
+                metrics.recordFetched(page);
+                executor.execute(guarded(SyncMetrics.Phase.MERGE, callback, () -> {
+                    long mergeStarted = System.nanoTime();
+                    // The last page covers every id after the cursor, the others up to their last id
+                    boolean last = page.size() < pageSize;
+                    String lastId = last ? cursor : page.get(page.size() - 1).getId();
+                    NavigableMap<String, SyncRecord> range = cursor != null
+                            ? localRecords.tailMap(cursor, false) : localRecords;
+                    if (!last) {
+                        range = range.headMap(lastId, true);
+                    }
+                    Map<String, SyncRecord> remoteRecords = new HashMap<>();
+                    for (SyncRecord record : page) {
+                        remoteRecords.put(record.getId(), record);
+                    }
+
+                    List<SyncRecord> toPush = new ArrayList<>();
+                    List<SyncRecord> toApply = new ArrayList<>();
+                    merge(range, remoteRecords, toPush, toApply);
+                    metrics.recordPhase(SyncMetrics.Phase.MERGE, mergeStarted, System.nanoTime());
+                    SyncCheckpoint reached = new SyncCheckpoint(collection, lastId, checkpoint.getPages() + 1, last, 0);
+                    int covered = range.size();
+                    Runnable afterPage = () -> {
+                        tracker.advance(covered);
+                        if (last) {
+                            next.run();
+                        } else {
+                            syncPage(collection, snapshot, localRecords, reached, summary, tracker, next, callback);
+                        }
+                    };
+                    summary.pages++;
+                    finish(collection, snapshot, range.keySet(), reached, toPush, toApply, summary, afterPage, callback);
+                }));
+            }
+
+            @Override
+            public void onError(String error) {
+                metrics.recordRunFailed(SyncMetrics.Phase.FETCH);
+                callback.onError(error);
+            }
+        });
+    }
+
+    private void pushDeletesFrom(List<String> collections, int index, Summary summary, Callback callback) {
+        if (index == collections.size()) {
+            metrics.recordRunSucceeded(false);
+            callback.onSuccess(summary);
+            return;
+        }
+        String collection = collections.get(index);
+        executor.execute(guarded(SyncMetrics.Phase.SNAPSHOT, callback, () -> {
+            long started = System.nanoTime();
+            LocalStore.Snapshot snapshot = localStore.snapshotDeletes(collection);
+            metrics.recordPhase(SyncMetrics.Phase.SNAPSHOT, started, System.nanoTime());
+            finish(collection, snapshot, snapshot.getRecords().keySet(), null,
+                    new ArrayList<>(snapshot.getRecords().values()), new ArrayList<>(), summary, () -> pushDeletesFrom(collections, index + 1, summary, callback), callback);
+        }));
+    }
+
+    /**
+     * A step of local work that fails the run if it throws, e.g. on a full disk or a
+     * malformed remote record, rather than leaving the callback uncalled.
+     */
+    private Runnable guarded(SyncMetrics.Phase phase, Callback callback, Runnable step) {
+        return () -> {
+            try {
+                step.run();
+            } catch (RuntimeException | Error e) {
+                metrics.recordRunFailed(phase);
+                callback.onError(phase.name().toLowerCase(Locale.ROOT) + " failed: " + e);
+            }
+        };
+    }
+
+    private static void merge(Map<String, SyncRecord> localRecords, Map<String, SyncRecord> remoteRecords,
+                              List<SyncRecord> toPush, List<SyncRecord> toApply) {
+        Set<String> ids = new HashSet<>(localRecords.keySet());
+        ids.addAll(remoteRecords.keySet());
+        for (String id : ids) {
+            MergeEngine.Outcome outcome = MergeEngine.merge(localRecords.get(id), remoteRecords.get(id));
+            if (outcome.getToPush() != null) {
+                toPush.add(outcome.getToPush());
+            }
+            if (outcome.isLocalChanged()) {
+                toApply.add(outcome.getMerged());
+            }
+        }
+    }
+
+    /**
+     * Join toPush into the remote store, then apply toApply locally and acknowledge the ids of
+     * the snapshot with the checkpoint. Nothing local changes if the push fails, so the next
+     * run starts from the last checkpoint.
+     */
+    private void finish(String collection, LocalStore.Snapshot snapshot, Collection<String> ids,
+                        SyncCheckpoint checkpoint, List<SyncRecord> toPush, List<SyncRecord> toApply,
+                        Summary summary, Runnable next, Callback callback) {
+        Runnable applyLocally = guarded(SyncMetrics.Phase.APPLY, callback, () -> {
+            long started = System.nanoTime();
+            int applied = localStore.apply(collection, toApply);
+            localStore.acknowledge(collection, snapshot, ids, checkpoint);
+            metrics.recordPhase(SyncMetrics.Phase.APPLY, started, System.nanoTime());
+            metrics.recordApplied(applied);
+            summary.applied += applied;
+            summary.pushed += toPush.size();
+            next.run();
+        });
+        if (toPush.isEmpty()) {
+            applyLocally.run();
+            return;
+        }
+        long pushStarted = System.nanoTime();
+        remoteStore.joinAll(collection, toPush, new RemoteStore.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                metrics.recordPhase(SyncMetrics.Phase.PUSH, pushStarted, System.nanoTime());
+                metrics.recordPushed(toPush);
+                executor.execute(applyLocally);
+            }
+
+            @Override
+            public void onError(String error) {
+                metrics.recordRunFailed(SyncMetrics.Phase.PUSH);
+                callback.onError(error);
+            }
+        });
+    }
+}
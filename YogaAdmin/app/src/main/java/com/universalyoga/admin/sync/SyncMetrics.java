@@ -0,0 +1,338 @@
+package com.universalyoga.admin.sync;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counters and latency histograms for sync, kept in memory since the app started.
+ *
+ * SyncEngine times each phase of each page and counts what it reads and writes;
+ * SyncScheduler adds the timetable publish and the runs that retry a failed one.
+ * Calls may come from any thread. Plain Java with no Android calls, so it runs in
+ * local unit tests.
+ */
+public class SyncMetrics {
+
+    public enum Phase {
+        /** Reading the local rows and pending changes. */
+        SNAPSHOT,
+        /** Fetching a page of remote records. */
+        FETCH,
+        /** Merging a page with the local records, i.e. building the batch to push. */
+        MERGE,
+        /** Committing the batch to the remote store. */
+        PUSH,
+        /** Applying merged records locally and acknowledging the page. */
+        APPLY,
+        /** Publishing the timetable after a full sync. */
+        PUBLISH
+    }
+
+    /** Upper bounds of the latency buckets, in millis; one more bucket holds everything slower. */
+    static final long[] BUCKET_BOUNDS_MS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    /**
+     * Latencies of one phase.
+     */
+    public static class Histogram {
+        private final long[] buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+        private long count;
+        private long totalMs;
+        private long maxMs;
+
+        void record(long ms) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalMs += ms;
+            maxMs = Math.max(maxMs, ms);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMs() {
+            return count > 0 ? totalMs / count : 0;
+        }
+
+        public long getMaxMs() {
+            return maxMs;
+        }
+
+        /**
+         * Smallest bucket bound at or above the given fraction of samples, e.g. 0.95 for p95;
+         * -1 if the samples are slower than the last bound, 0 if there are none.
+         */
+        public long getPercentileMs(double fraction) {
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (count > 0 && seen >= Math.ceil(count * fraction)) {
+                    return i < BUCKET_BOUNDS_MS.length ? BUCKET_BOUNDS_MS[i] : -1;
+                }
+            }
+            return 0;
+        }
+
+        Histogram copy() {
+            Histogram copy = new Histogram();
+            System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+            copy.count = count;
+            copy.totalMs = totalMs;
+            copy.maxMs = maxMs;
+            return copy;
+        }
+    }
+
+    private long startedAt = System.currentTimeMillis();
+    private long runs;
+    private long succeeded;
+    private long failed;
+    private long cancelled;
+    private long retries;
+    private long resumed;
+    private long pages;
+    private long docsFetched;
+    private long docsWritten;
+    private long docsDeleted;
+    private long docsApplied;
+    private long bytesFetched;
+    private long bytesWritten;
+    private final Map<Phase, Histogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, Long> failures = new EnumMap<>(Phase.class);
+
+    public synchronized void recordRunStarted() {
+        runs++;
+    }
+
+    public synchronized void recordRunSucceeded(boolean wasResumed) {
+        succeeded++;
+        if (wasResumed) {
+            resumed++;
+        }
+    }
+
+    /** A run that failed in a phase; it ends there, and the next run picks up from its checkpoint. */
+    public synchronized void recordRunFailed(Phase phase) {
+        failed++;
+        recordFailure(phase);
+    }
+
+    /** A run stopped by the user between pages; like a failed one, the next run picks up from its checkpoint. */
+    public synchronized void recordRunCancelled() {
+        cancelled++;
+    }
+
+    /** A failure in a phase that does not fail the run, e.g. publishing the timetable. */
+    public synchronized void recordFailure(Phase phase) {
+        failures.put(phase, failures.getOrDefault(phase, 0L) + 1);
+    }
+
+    /** A run started because an earlier one failed. */
+    public synchronized void recordRetry() {
+        retries++;
+    }
+
+    /** How long a phase took, from System.nanoTime() readings. */
+    public synchronized void recordPhase(Phase phase, long startNanos, long endNanos) {
+        Histogram histogram = latencies.get(phase);
+        if (histogram == null) {
+            histogram = new Histogram();
+            latencies.put(phase, histogram);
+        }
+        histogram.record((endNanos - startNanos) / 1_000_000);
+    }
+
+    synchronized void recordFetched(Iterable<SyncRecord> records) {
+        pages++;
+        for (SyncRecord record : records) {
+            docsFetched++;
+            bytesFetched += estimateSize(record);
+        }
+    }
+
+    synchronized void recordPushed(Iterable<SyncRecord> records) {
+        for (SyncRecord record : records) {
+            if (record.isDeleted()) {
+                docsDeleted++;
+            } else {
+                docsWritten++;
+            }
+            bytesWritten += estimateSize(record);
+        }
+    }
+
+    synchronized void recordApplied(int count) {
+        docsApplied += count;
+    }
+
+    public synchronized void reset() {
+        startedAt = System.currentTimeMillis();
+        runs = succeeded = failed = cancelled = retries = resumed = 0;
+        pages = docsFetched = docsWritten = docsDeleted = docsApplied = 0;
+        bytesFetched = bytesWritten = 0;
+        latencies.clear();
+        failures.clear();
+    }
+
+    /** When counting started: app start or the last reset, epoch millis. */
+    public synchronized long getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    public synchronized long getSucceeded() {
+        return succeeded;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getCancelled() {
+        return cancelled;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    /** Successful runs that carried on from a checkpoint. */
+    public synchronized long getResumed() {
+        return resumed;
+    }
+
+    public synchronized long getPages() {
+        return pages;
+    }
+
+    public synchronized long getDocsFetched() {
+        return docsFetched;
+    }
+
+    /** Live documents written; tombstones are counted by getDocsDeleted(). */
+    public synchronized long getDocsWritten() {
+        return docsWritten;
+    }
+
+    public synchronized long getDocsDeleted() {
+        return docsDeleted;
+    }
+
+    public synchronized long getDocsApplied() {
+        return docsApplied;
+    }
+
+    public synchronized long getBytesFetched() {
+        return bytesFetched;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Failures per phase; phases with no failures are left out. */
+    public synchronized Map<Phase, Long> getFailures() {
+        return new EnumMap<>(failures);
+    }
+
+    /** A copy of the latencies of a phase, empty if it has not run. */
+    public synchronized Histogram getLatency(Phase phase) {
+        Histogram histogram = latencies.get(phase);
+        return histogram != null ? histogram.copy() : new Histogram();
+    }
+
+    /**
+     * Everything above as one JSON object, e.g. to attach to a bug report.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"startedAt\":").append(startedAt)
+                .append(",\"exportedAt\":").append(System.currentTimeMillis())
+                .append(",\"runs\":{\"started\":").append(runs)
+                .append(",\"succeeded\":").append(succeeded)
+                .append(",\"failed\":").append(failed)
+                .append(",\"cancelled\":").append(cancelled)
+                .append(",\"retries\":").append(retries)
+                .append(",\"resumed\":").append(resumed).append('}')
+                .append(",\"failures\":{");
+        boolean first = true;
+        for (Map.Entry<Phase, Long> failure : failures.entrySet()) {
+            json.append(first ? "" : ",").append('"').append(name(failure.getKey())).append("\":").append(failure.getValue());
+            first = false;
+        }
+        json.append("},\"documents\":{\"pages\":").append(pages)
+                .append(",\"fetched\":").append(docsFetched)
+                .append(",\"written\":").append(docsWritten)
+                .append(",\"deleted\":").append(docsDeleted)
+                .append(",\"applied\":").append(docsApplied).append('}')
+                .append(",\"bytes\":{\"fetched\":").append(bytesFetched)
+                .append(",\"written\":").append(bytesWritten).append('}')
+                .append(",\"bucketBoundsMs\":[");
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            json.append(i > 0 ? "," : "").append(BUCKET_BOUNDS_MS[i]);
+        }
+        json.append("],\"latencies\":{");
+        first = true;
+        for (Map.Entry<Phase, Histogram> latency : latencies.entrySet()) {
+            Histogram histogram = latency.getValue();
+            json.append(first ? "" : ",").append('"').append(name(latency.getKey())).append("\":{")
+                    .append("\"count\":").append(histogram.count)
+                    .append(",\"totalMs\":").append(histogram.totalMs)
+                    .append(",\"maxMs\":").append(histogram.maxMs)
+                    .append(",\"buckets\":[");
+            for (int i = 0; i < histogram.buckets.length; i++) {
+                json.append(i > 0 ? "," : "").append(histogram.buckets[i]);
+            }
+            json.append("]}");
+            first = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String name(Phase phase) {
+        return phase.name().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Approximate stored size of a record as a Firestore document, by Firestore's size rules:
+     * the document name, each field name and value, and the bookkeeping FirestoreRemoteStore adds.
+     */
+    static long estimateSize(SyncRecord record) {
+        long size = stringSize(record.getId()) + 16 + 32;
+        for (Map.Entry<String, Object> field : record.getValues().entrySet()) {
+            size += stringSize(field.getKey()) + valueSize(field.getValue());
+        }
+        size += stringSize(FirestoreRemoteStore.FIELD_CLOCKS);
+        for (Map.Entry<String, String> clock : record.getClocks().entrySet()) {
+            size += stringSize(clock.getKey()) + stringSize(clock.getValue());
+        }
+        if (record.isDeleted()) {
+            size += stringSize(FirestoreRemoteStore.FIELD_DELETED) + stringSize(record.getDeletedClock());
+        }
+        return size;
+    }
+
+    private static long valueSize(Object value) {
+        if (value instanceof String) {
+            return stringSize((String) value);
+        }
+        if (value instanceof Number) {
+            return 8;
+        }
+        return 1;   // null or boolean
+    }
+
+    private static long stringSize(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8).length + 1 : 1;
+    }
+}
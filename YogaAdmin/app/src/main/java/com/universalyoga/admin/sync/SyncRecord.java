@@ -0,0 +1,131 @@
+package com.universalyoga.admin.sync;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One synced row as a set of fields, each stamped with the clock of the write that set it.
+ *
+ * Clocks are strings that sort in write order, see clock(). A field without a clock
+ * sorts before every stamped write. A record with a deletion clock is a tombstone: it
+ * keeps no fields and stays deleted whatever is later written to them.
+ */
+public class SyncRecord {
+
+    private final String id;
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, String> clocks = new HashMap<>();
+    private String deletedClock;
+    private long localVersion;  // Row version when read from the local store, 0 if not stored locally
+
+    public SyncRecord(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Clock for a write made at an epoch millis time on a device. Equal times are
+     * ordered by device id, so every device picks the same winner.
+     */
+    public static String clock(long time, String deviceId) {
+        return String.format(Locale.US, "%013d@%s", time, deviceId);
+    }
+
+    /** Compare two clocks; null (no clock) sorts first. */
+    public static int compareClocks(String a, String b) {
+        return (a != null ? a : "").compareTo(b != null ? b : "");
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, Object> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public Object getValue(String field) {
+        return values.get(field);
+    }
+
+    public boolean hasField(String field) {
+        return values.containsKey(field);
+    }
+
+    /** Clock of a field, null if the field has none. */
+    public String getClock(String field) {
+        return clocks.get(field);
+    }
+
+    public Map<String, String> getClocks() {
+        return Collections.unmodifiableMap(clocks);
+    }
+
+    /**
+     * Set a field. Whole numbers are stored as Long and decimals as Double,
+     * so values compare equal whichever store they came from.
+     *
+     * @param clock clock of the write, or null if unknown
+     */
+    public void put(String field, Object value, String clock) {
+        values.put(field, normalize(value));
+        if (clock != null) {
+            clocks.put(field, clock);
+        } else {
+            clocks.remove(field);
+        }
+    }
+
+    public boolean isDeleted() {
+        return deletedClock != null;
+    }
+
+    public String getDeletedClock() {
+        return deletedClock;
+    }
+
+    /** Make this record a tombstone, dropping its fields. */
+    public void markDeleted(String clock) {
+        this.deletedClock = clock;
+        values.clear();
+        clocks.clear();
+    }
+
+    public long getLocalVersion() {
+        return localVersion;
+    }
+
+    public void setLocalVersion(long localVersion) {
+        this.localVersion = localVersion;
+    }
+
+    public SyncRecord copy() {
+        SyncRecord copy = new SyncRecord(id);
+        copy.values.putAll(values);
+        copy.clocks.putAll(clocks);
+        copy.deletedClock = deletedClock;
+        copy.localVersion = localVersion;
+        return copy;
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncRecord{" +
+                "id='" + id + '\'' +
+                ", values=" + values +
+                ", clocks=" + clocks +
+                ", deletedClock='" + deletedClock + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,543 @@
+package com.universalyoga.admin.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.SyncChangeDao;
+import com.universalyoga.admin.data.dao.TombstoneDao;
+import com.universalyoga.admin.data.database.AppDatabase;
+import com.universalyoga.admin.utils.DateUtils;
+import com.universalyoga.admin.utils.FirebaseSync;
+import com.universalyoga.admin.utils.NetworkMonitor;
+import com.universalyoga.admin.utils.Progress;
+import com.universalyoga.admin.utils.ProgressTracker;
+import com.universalyoga.admin.utils.TimetablePublisher;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs sync in the background while the app is running: once local edits have settled for
+ * DEBOUNCE_MS, and every PERIOD_MS otherwise so changes from other devices come in too.
+ * Each run merges with Firestore, then publishes the customer timetable.
+ *
+ * Waiting lets the change log coalesce edits before they are sent, but not for ever:
+ * edits are flushed after MAX_DEBOUNCE_MS even if more keep coming, or as soon as
+ * FLUSH_PENDING rows are waiting.
+ *
+ * Only one sync runs at a time. A sync asked for during a run starts one more run after it.
+ * Automatic runs wait while offline and while the battery is low and not charging. If more
+ * than LARGE_SYNC_PENDING rows are waiting on a metered network, only the deletes are pushed
+ * until the network is unmetered. syncNow() skips the battery and metered checks, since an
+ * admin asked for it. A full sync reports its progress in the state, and cancelSync() stops
+ * it after the page in hand; the next run carries on from there.
+ *
+ * Call the public methods on the main thread, except pushDeletes() and publishTimetable(),
+ * which may be called from any thread. Listeners are told of state changes on the main thread.
+ */
+public class SyncScheduler {
+
+    private static final String TAG = "SyncScheduler";
+    private static final String PREFS_NAME = "sync_scheduler";
+    private static final String KEY_LAST_SYNC_AT = "last_sync_at";
+
+    /** Quiet time after the last local edit before syncing, so a burst of edits goes in one run. */
+    static final long DEBOUNCE_MS = 30 * 1000;
+    /** Longest a local edit waits while further edits keep restarting the debounce window. */
+    static final long MAX_DEBOUNCE_MS = 2 * 60 * 1000;
+    /** Rows waiting that start a sync without waiting for the debounce window. */
+    static final int FLUSH_PENDING = 50;
+    /** Time between syncs when nothing is edited here. */
+    static final long PERIOD_MS = 15 * 60 * 1000;
+    /** More unsynced rows than this, and automatic syncs wait for an unmetered network. */
+    public static final int LARGE_SYNC_PENDING = 200;
+    /**
+     * How long a tombstone stays in Firestore after the delete. A device that has not synced
+     * for longer than this never learns of the delete and pushes its copy back.
+     */
+    static final long REMOTE_TOMBSTONE_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private static volatile SyncScheduler INSTANCE;
+
+    public enum Status {
+        IDLE,
+        /** Local edits are waiting for the debounce window to pass. */
+        SCHEDULED,
+        SYNCING,
+        WAITING_FOR_NETWORK,
+        WAITING_FOR_UNMETERED,
+        WAITING_FOR_BATTERY
+    }
+
+    /**
+     * What the scheduler is doing, and how the last sync went.
+     */
+    public static class State {
+        private final Status status;
+        private final long lastSyncAt;
+        private final String lastError;
+        private final int pendingCount;
+        private final Progress progress;
+
+        State(Status status, long lastSyncAt, String lastError, int pendingCount, Progress progress) {
+            this.status = status;
+            this.lastSyncAt = lastSyncAt;
+            this.lastError = lastError;
+            this.pendingCount = pendingCount;
+            this.progress = progress;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /** When the last sync finished successfully, epoch millis; 0 if never. */
+        public long getLastSyncAt() {
+            return lastSyncAt;
+        }
+
+        /** Why the last sync failed; null if it succeeded. */
+        public String getLastError() {
+            return lastError;
+        }
+
+        /** Rows edited or deleted here that have not been synced yet. */
+        public int getPendingCount() {
+            return pendingCount;
+        }
+
+        /** How far the full sync in progress has got; null when not syncing or not reported yet. */
+        public Progress getProgress() {
+            return progress;
+        }
+    }
+
+    public interface Listener {
+        void onSyncStateChanged(State state);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Reads and writes for every sync; SyncEngine runs its local work here too
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Context context;
+    private final AppDatabase database;
+    private final SqliteLocalStore localStore;
+    private final RemoteStore remoteStore;
+    private final SyncEngine engine;
+    private final FirebaseSync firebaseSync;
+    private final TimetablePublisher timetablePublisher;
+    private final NetworkMonitor networkMonitor;
+    private final SharedPreferences prefs;
+
+    // Main thread only
+    private boolean started;
+    private boolean running;
+    private boolean due;
+    private boolean forced;
+    private boolean debouncing;
+    private long debounceStartedAt;
+    private final List<SyncEngine.Callback> waiting = new ArrayList<>();
+    private Status status = Status.IDLE;
+    private long lastSyncAt;
+    private String lastError;
+    private int pendingCount;
+    // Of the full sync in progress, if any
+    private ProgressTracker tracker;
+    private Progress progress;
+
+    private final Runnable debouncedRun = () -> {
+        debouncing = false;
+        requestSync();
+    };
+
+    private final Runnable periodicRun = new Runnable() {
+        @Override
+        public void run() {
+            requestSync();
+            mainHandler.postDelayed(this, PERIOD_MS);
+        }
+    };
+
+    private SyncScheduler(Context context) {
+        this.context = context;
+        this.database = AppDatabase.getInstance(context);
+        this.localStore = new SqliteLocalStore(context, database);
+        this.firebaseSync = new FirebaseSync(context);
+        this.remoteStore = firebaseSync.asRemoteStore();
+        this.engine = new SyncEngine(localStore, remoteStore, executor);
+        this.timetablePublisher = new TimetablePublisher(context, database.yogaCourseDao(), database.scheduleDao());
+        this.networkMonitor = NetworkMonitor.getInstance(context);
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.lastSyncAt = prefs.getLong(KEY_LAST_SYNC_AT, 0);
+    }
+
+    public static SyncScheduler getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SyncScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SyncScheduler(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Start following local edits and the network, and syncing periodically. Call once, at app start.
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        SyncChangeDao.setChangeListener(() -> mainHandler.post(this::onLocalChange));
+        networkMonitor.addListener((connected, metered) -> tryRun());
+        mainHandler.postDelayed(periodicRun, PERIOD_MS);
+
+        // Catch up on edits made, and changes from other devices, while the app was closed;
+        // count the backlog first so the metered check sees it
+        executor.execute(() -> {
+            int pending = localStore.countPending();
+            mainHandler.post(() -> {
+                pendingCount = pending;
+                requestSync();
+            });
+        });
+    }
+
+    /**
+     * Sync as soon as there is a network, whatever the battery or the network cost.
+     */
+    public void syncNow(SyncEngine.Callback callback) {
+        waiting.add(callback);
+        forced = true;
+        requestSync();
+    }
+
+    /**
+     * Sync when the constraints allow, without waiting for the debounce window.
+     */
+    public void requestSync() {
+        due = true;
+        tryRun();
+    }
+
+    /**
+     * Stop the full sync in progress once the page in hand is committed. Its callbacks get
+     * SyncEngine.CANCELLED, and it is not retried until the next trigger.
+     */
+    public void cancelSync() {
+        if (tracker != null) {
+            tracker.cancel();
+            due = false;
+            forced = false;
+        }
+    }
+
+    /**
+     * Push pending deletes straight away, alongside any sync in progress; both only join
+     * records into Firestore, so they can run together.
+     */
+    public void pushDeletes(SyncEngine.Callback callback) {
+        engine.pushDeletes(SqliteLocalStore.COLLECTIONS, new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                refreshPendingCount();
+                callback.onSuccess(summary);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Send the customer timetable documents that changed since they were last published.
+     */
+    public void publishTimetable(FirebaseSync.SyncCallback callback) {
+        executor.execute(() -> {
+            long started = System.nanoTime();
+            TimetablePublisher.Changes changes;
+            try {
+                changes = timetablePublisher.computeChanges(DateUtils.formatIsoDate(Calendar.getInstance()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error reading the timetable to publish", e);
+                getMetrics().recordFailure(SyncMetrics.Phase.PUBLISH);
+                callback.onError("Could not read the timetable: " + e.getMessage());
+                return;
+            }
+            firebaseSync.publishTimetable(changes, new FirebaseSync.SyncCallback() {
+                @Override
+                public void onSuccess() {
+                    getMetrics().recordPhase(SyncMetrics.Phase.PUBLISH, started, System.nanoTime());
+                    timetablePublisher.markPublished(changes);
+                    callback.onSuccess();
+                }
+
+                @Override
+                public void onError(String error) {
+                    getMetrics().recordPhase(SyncMetrics.Phase.PUBLISH, started, System.nanoTime());
+                    getMetrics().recordFailure(SyncMetrics.Phase.PUBLISH);
+                    callback.onError(error);
+                }
+            });
+        });
+    }
+
+    /**
+     * Timings and counts of every sync since the app started, for the diagnostics screen.
+     */
+    public SyncMetrics getMetrics() {
+        return engine.getMetrics();
+    }
+
+    public State getState() {
+        return new State(status, lastSyncAt, lastError, pendingCount, progress);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void onLocalChange() {
+        // Each edit restarts the window, so a burst of edits syncs once, up to MAX_DEBOUNCE_MS
+        long now = System.currentTimeMillis();
+        if (!debouncing) {
+            debounceStartedAt = now;
+        }
+        mainHandler.removeCallbacks(debouncedRun);
+        mainHandler.postDelayed(debouncedRun,
+                Math.max(0, Math.min(DEBOUNCE_MS, debounceStartedAt + MAX_DEBOUNCE_MS - now)));
+        debouncing = true;
+        if (!running && !due) {
+            setStatus(Status.SCHEDULED);
+        }
+        refreshPendingCount();
+    }
+
+    private void tryRun() {
+        if (!due || running) {
+            return;
+        }
+        if (!networkMonitor.isConnected()) {
+            setStatus(Status.WAITING_FOR_NETWORK);
+            return;
+        }
+        if (!forced && isBatteryLow()) {
+            // Tried again on the next periodic run or network change
+            setStatus(Status.WAITING_FOR_BATTERY);
+            return;
+        }
+
+        boolean deletesOnly = !forced && networkMonitor.isMetered() && pendingCount > LARGE_SYNC_PENDING;
+        List<SyncEngine.Callback> callbacks = new ArrayList<>(waiting);
+        waiting.clear();
+        running = true;
+        due = deletesOnly;
+        forced = false;
+        if (lastError != null) {
+            getMetrics().recordRetry();
+        }
+        setStatus(Status.SYNCING);
+
+        if (deletesOnly) {
+            Log.d(TAG, pendingCount + " rows pending on a metered network, pushing deletes only");
+            engine.pushDeletes(SqliteLocalStore.COLLECTIONS, finishing(Status.WAITING_FOR_UNMETERED, callbacks));
+        } else {
+            tracker = new ProgressTracker(reported -> mainHandler.post(() -> onProgress(reported)));
+            engine.sync(SqliteLocalStore.COLLECTIONS, tracker, finishing(null, callbacks));
+        }
+    }
+
+    /**
+     * The end of a run: purge old tombstones and publish the timetable after a full sync, then
+     * record the outcome and start the next run if one was asked for meanwhile.
+     *
+     * @param deferredStatus status to wait in after a deletes-only run; null after a full sync
+     */
+    private SyncEngine.Callback finishing(Status deferredStatus, List<SyncEngine.Callback> callbacks) {
+        return new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                if (deferredStatus != null) {
+                    finish(summary, null, deferredStatus, callbacks);
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        database.tombstoneDao()
+                                .purgeAcknowledged(System.currentTimeMillis() - TombstoneDao.RETENTION_MS);
+                    } catch (RuntimeException e) {
+                        // Left for the next full sync
+                        Log.e(TAG, "Error purging tombstones", e);
+                    }
+                });
+                purgeRemoteTombstones();
+                publishTimetable(new FirebaseSync.SyncCallback() {
+                    @Override
+                    public void onSuccess() {
+                        finish(summary, null, null, callbacks);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        // Unpublished changes are picked up by the next run
+                        finish(summary, "Data synced, but timetable publish failed: " + error, null, callbacks);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                finish(null, SyncEngine.CANCELLED.equals(error) ? error : "Sync failed: " + error, null, callbacks);
+            }
+        };
+    }
+
+    /**
+     * Delete the Firestore tombstones older than REMOTE_TOMBSTONE_RETENTION_MS. Best effort:
+     * a failure is logged and the next full sync tries again.
+     */
+    private void purgeRemoteTombstones() {
+        long deletedBefore = System.currentTimeMillis() - REMOTE_TOMBSTONE_RETENTION_MS;
+        for (String collection : SqliteLocalStore.COLLECTIONS) {
+            remoteStore.purgeTombstones(collection, deletedBefore, new RemoteStore.Callback<Integer>() {
+                @Override
+                public void onSuccess(Integer purged) {
+                    Log.d(TAG, "Purged " + purged + " old " + collection + " tombstones");
+                }
+
+                @Override
+                public void onError(String error) {
+                    Log.w(TAG, "Could not purge " + collection + " tombstones: " + error);
+                }
+            });
+        }
+    }
+
+    private void finish(SyncEngine.Summary summary, String error, Status deferredStatus,
+                        List<SyncEngine.Callback> callbacks) {
+        executor.execute(() -> {
+            // The run has to end whatever happens here, or no sync would start again
+            int pending = countPendingOr(-1);
+            mainHandler.post(() -> {
+                boolean cancelled = SyncEngine.CANCELLED.equals(error);
+                running = false;
+                tracker = null;
+                progress = null;
+                if (pending >= 0) {
+                    pendingCount = pending;
+                }
+                // Stopping a sync on purpose is not a failure to show or retry
+                lastError = cancelled ? null : error;
+                if (summary != null && deferredStatus == null) {
+                    lastSyncAt = System.currentTimeMillis();
+                    prefs.edit().putLong(KEY_LAST_SYNC_AT, lastSyncAt).apply();
+                }
+                Log.d(TAG, "Sync run finished" + (error != null ? ": " + error : "") + ", " + pendingCount + " pending");
+                if (summary != null && summary.isResumed() && pendingCount > 0) {
+                    // It carried on from an interrupted run and skipped what that one had committed
+                    due = true;
+                }
+
+                for (SyncEngine.Callback callback : callbacks) {
+                    if (summary != null && error == null) {
+                        callback.onSuccess(summary);
+                    } else {
+                        callback.onError(error);
+                    }
+                }
+
+                if (deferredStatus != null && error == null && !forced) {
+                    setStatus(deferredStatus);
+                } else if (due && !cancelled && (error == null || forced)) {
+                    // Asked for during this run; a failed automatic run waits for the next trigger
+                    setStatus(Status.IDLE);
+                    tryRun();
+                } else {
+                    setStatus(debouncing ? Status.SCHEDULED : Status.IDLE);
+                }
+            });
+        });
+    }
+
+    /**
+     * The number of rows waiting to sync, or fallback if it cannot be read. Call on the executor.
+     */
+    private int countPendingOr(int fallback) {
+        try {
+            return localStore.countPending();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error counting pending changes", e);
+            return fallback;
+        }
+    }
+
+    private void onProgress(Progress reported) {
+        // Reports posted before the run finished can arrive after it
+        if (tracker != null) {
+            progress = reported;
+            notifyListeners();
+        }
+    }
+
+    private void refreshPendingCount() {
+        executor.execute(() -> {
+            int pending = localStore.countPending();
+            mainHandler.post(() -> {
+                if (pending != pendingCount) {
+                    pendingCount = pending;
+                    notifyListeners();
+                }
+                if (debouncing && pending >= FLUSH_PENDING) {
+                    mainHandler.removeCallbacks(debouncedRun);
+                    debouncedRun.run();
+                }
+            });
+        });
+    }
+
+    private boolean isBatteryLow() {
+        BatteryManager battery = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        if (battery == null || battery.isCharging()) {
+            return false;
+        }
+        PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (power != null && power.isPowerSaveMode()) {
+            return true;
+        }
+        // Reported as 0 or less on devices that do not support it
+        int percent = battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+        return percent > 0 && percent < LOW_BATTERY_PERCENT;
+    }
+
+    private void setStatus(Status newStatus) {
+        status = newStatus;
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        State state = getState();
+        for (Listener listener : listeners) {
+            listener.onSyncStateChanged(state);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.universalyoga.admin.utils;
+
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.dao.YogaCourseDao;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the yoga_courses and schedules tables to CSV or newline-delimited JSON.
+ *
+ * Rows are read with a forward-only cursor walk and written straight to a
+ * buffered file channel, so memory use does not depend on table size.
+ * Each table goes to its own file; output can optionally be gzipped.
+ *
+ * run() blocks; call it from a background executor. It reports progress per table
+ * to its ProgressTracker, and stops if the tracker is cancelled.
+ */
+public class DataExporter {
+
+    private static final String TAG = "DataExporter";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        CSV(".csv"),
+        NDJSON(".ndjson");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public interface Callback {
+        void onComplete(List<File> files, int rowsWritten);
+        void onCancelled();
+        void onError(String error);
+    }
+
+    private final YogaCourseDao courseDao;
+    private final ScheduleDao scheduleDao;
+    private final Format format;
+    private final boolean gzip;
+
+    private int rowsWritten;
+    private ProgressTracker tracker;
+
+    public DataExporter(YogaCourseDao courseDao, ScheduleDao scheduleDao, Format format, boolean gzip) {
+        this.courseDao = courseDao;
+        this.scheduleDao = scheduleDao;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    public void run(File outputDir, ProgressTracker tracker, Callback callback) {
+        this.tracker = tracker;
+        this.rowsWritten = 0;
+
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            callback.onError("Could not create export directory");
+            return;
+        }
+
+        String suffix = "_" + System.currentTimeMillis() + format.getExtension() + (gzip ? ".gz" : "");
+        File coursesFile = new File(outputDir, "yoga_courses" + suffix);
+        File schedulesFile = new File(outputDir, "schedules" + suffix);
+        List<File> files = new ArrayList<>();
+
+        try {
+            tracker.beginPhase("Exporting courses", courseDao.getCoursesCount());
+            exportCourses(coursesFile);
+            files.add(coursesFile);
+            if (!tracker.isCancelled()) {
+                tracker.beginPhase("Exporting schedules", scheduleDao.getSchedulesCount());
+                exportSchedules(schedulesFile);
+                files.add(schedulesFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Export failed", e);
+            coursesFile.delete();
+            schedulesFile.delete();
+            callback.onError("Export failed: " + e.getMessage());
+            return;
+        }
+
+        if (tracker.isCancelled()) {
+            coursesFile.delete();
+            schedulesFile.delete();
+            callback.onCancelled();
+            return;
+        }
+
+        Log.d(TAG, "Exported " + rowsWritten + " rows to " + outputDir.getAbsolutePath());
+        callback.onComplete(files, rowsWritten);
+    }
+
+    private void exportCourses(File file) throws IOException {
+        try (Writer writer = openWriter(file)) {
+            if (format == Format.CSV) {
+                writer.write("id,dayOfWeek,time,capacity,duration,price,type,description\n");
+            }
+
+            IOException[] failure = new IOException[1];
+            courseDao.forEachCourse(course -> {
+                try {
+                    if (format == Format.CSV) {
+                        writeCourseCsv(writer, course);
+                    } else {
+                        writeCourseJson(writer, course);
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+                return rowDone();
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    private void exportSchedules(File file) throws IOException {
+        try (Writer writer = openWriter(file)) {
+            if (format == Format.CSV) {
+                writer.write("id,courseId,date,teacher,comments\n");
+            }
+
+            IOException[] failure = new IOException[1];
+            scheduleDao.forEachSchedule(schedule -> {
+                try {
+                    if (format == Format.CSV) {
+                        writeScheduleCsv(writer, schedule);
+                    } else {
+                        writeScheduleJson(writer, schedule);
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+                return rowDone();
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Count a written row and tell the walk whether to continue.
+     */
+    private boolean rowDone() {
+        rowsWritten++;
+        tracker.advance(1);
+        return !tracker.isCancelled();
+    }
+
+    private Writer openWriter(File file) throws IOException {
+        FileOutputStream fileStream = new FileOutputStream(file);
+        OutputStream out = Channels.newOutputStream(fileStream.getChannel());
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // ---- CSV ----
+
+    private static void writeCourseCsv(Writer w, YogaCourse c) throws IOException {
+        w.write(Integer.toString(c.getId()));
+        w.write(',');
+        writeCsvField(w, c.getDayOfWeek());
+        w.write(',');
+        writeCsvField(w, c.getTime());
+        w.write(',');
+        w.write(Integer.toString(c.getCapacity()));
+        w.write(',');
+        w.write(Integer.toString(c.getDuration()));
+        w.write(',');
+        w.write(formatPrice(c.getPrice()));
+        w.write(',');
+        writeCsvField(w, c.getType());
+        w.write(',');
+        writeCsvField(w, c.getDescription());
+        w.write('\n');
+    }
+
+    private static void writeScheduleCsv(Writer w, Schedule s) throws IOException {
+        w.write(Integer.toString(s.getId()));
+        w.write(',');
+        w.write(Integer.toString(s.getCourseId()));
+        w.write(',');
+        writeCsvField(w, s.getDate());
+        w.write(',');
+        writeCsvField(w, s.getTeacher());
+        w.write(',');
+        writeCsvField(w, s.getComments());
+        w.write('\n');
+    }
+
+    /**
+     * RFC 4180 quoting: only quote fields containing a comma, quote or line break.
+     */
+    static void writeCsvField(Writer w, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuotes = true;
+                break;
+            }
+        }
+        if (!needsQuotes) {
+            w.write(value);
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                w.write('"');
+            }
+            w.write(c);
+        }
+        w.write('"');
+    }
+
+    // ---- NDJSON ----
+
+    private static void writeCourseJson(Writer w, YogaCourse c) throws IOException {
+        w.write("{\"id\":");
+        w.write(Integer.toString(c.getId()));
+        w.write(",\"dayOfWeek\":");
+        writeJsonString(w, c.getDayOfWeek());
+        w.write(",\"time\":");
+        writeJsonString(w, c.getTime());
+        w.write(",\"capacity\":");
+        w.write(Integer.toString(c.getCapacity()));
+        w.write(",\"duration\":");
+        w.write(Integer.toString(c.getDuration()));
+        w.write(",\"price\":");
+        w.write(formatPrice(c.getPrice()));
+        w.write(",\"type\":");
+        writeJsonString(w, c.getType());
+        w.write(",\"description\":");
+        writeJsonString(w, c.getDescription());
+        w.write("}\n");
+    }
+
+    private static void writeScheduleJson(Writer w, Schedule s) throws IOException {
+        w.write("{\"id\":");
+        w.write(Integer.toString(s.getId()));
+        w.write(",\"courseId\":");
+        w.write(Integer.toString(s.getCourseId()));
+        w.write(",\"date\":");
+        writeJsonString(w, s.getDate());
+        w.write(",\"teacher\":");
+        writeJsonString(w, s.getTeacher());
+        w.write(",\"comments\":");
+        writeJsonString(w, s.getComments());
+        w.write("}\n");
+    }
+
+    static void writeJsonString(Writer w, String value) throws IOException {
+        if (value == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': w.write("\\\""); break;
+                case '\\': w.write("\\\\"); break;
+                case '\n': w.write("\\n"); break;
+                case '\r': w.write("\\r"); break;
+                case '\t': w.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        w.write(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        w.write(c);
+                    }
+            }
+        }
+        w.write('"');
+    }
+
+    private static String formatPrice(double price) {
+        // Locale.US so the decimal separator is always a dot
+        return String.format(Locale.US, "%.2f", price);
+    }
+}
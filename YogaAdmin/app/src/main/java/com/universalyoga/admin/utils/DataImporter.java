@@ -0,0 +1,651 @@
+package com.universalyoga.admin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.dao.YogaCourseDao;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk-imports courses and schedules from the files DataExporter writes:
+ * CSV with a header row or newline-delimited JSON, optionally gzipped.
+ *
+ * Files are streamed record by record. Each row is checked with the same
+ * ValidationRules as the add/edit screens, plus the duplicate checks those
+ * screens make (same day/time/type for courses, same course and date for
+ * schedules). Valid rows are inserted in chunks, one transaction and one
+ * compiled statement per chunk. Rejected rows are written to a CSV report.
+ *
+ * Course files are imported before schedule files so schedules can refer to
+ * courses from the same import by their exported id. Exported ids belong to the
+ * exporting device, so a schedule whose course was not imported by this run is
+ * rejected rather than matched against local ids.
+ *
+ * run() blocks; call it from a background executor. It reports rows read to its
+ * ProgressTracker and stops if the tracker is cancelled. Chunks committed before
+ * a cancel or error are kept.
+ */
+public class DataImporter {
+
+    private static final String TAG = "DataImporter";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 500;
+
+    /**
+     * A file to import. open() may be called more than once.
+     */
+    public interface Source {
+        String getName();
+        InputStream open() throws IOException;
+    }
+
+    public interface Callback {
+        void onComplete(Report report);
+        void onCancelled();
+        void onError(String error);
+    }
+
+    public static class Report {
+        private final int coursesImported;
+        private final int schedulesImported;
+        private final int rowsRejected;
+        private final File rejectFile;
+        private final long elapsedMillis;
+
+        Report(int coursesImported, int schedulesImported, int rowsRejected, File rejectFile, long elapsedMillis) {
+            this.coursesImported = coursesImported;
+            this.schedulesImported = schedulesImported;
+            this.rowsRejected = rowsRejected;
+            this.rejectFile = rejectFile;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getCoursesImported() {
+            return coursesImported;
+        }
+
+        public int getSchedulesImported() {
+            return schedulesImported;
+        }
+
+        public int getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /** The reject report, or null if every row was imported. */
+        public File getRejectFile() {
+            return rejectFile;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private enum Kind { COURSES, SCHEDULES }
+
+    private final YogaCourseDao courseDao;
+    private final ScheduleDao scheduleDao;
+
+    // Existing and already-imported keys used for duplicate checks
+    private final Set<String> courseKeys = new HashSet<>();
+    private final Set<String> scheduleKeys = new HashSet<>();
+    // Exported course id -> course inserted by this import
+    private final Map<Integer, YogaCourse> importedCourses = new HashMap<>();
+
+    private final List<YogaCourse> courseChunk = new ArrayList<>(CHUNK_SIZE);
+    private final List<Schedule> scheduleChunk = new ArrayList<>(CHUNK_SIZE);
+
+    private ProgressTracker tracker;
+    private File reportDir;
+    private Writer rejectWriter;
+    private File rejectFile;
+    private int coursesImported;
+    private int schedulesImported;
+    private int rowsRejected;
+
+    public DataImporter(YogaCourseDao courseDao, ScheduleDao scheduleDao) {
+        this.courseDao = courseDao;
+        this.scheduleDao = scheduleDao;
+    }
+
+    /**
+     * Import the given files. The reject report, if any, is written to reportDir.
+     */
+    public void run(List<Source> sources, File reportDir, ProgressTracker tracker, Callback callback) {
+        this.tracker = tracker;
+        this.reportDir = reportDir;
+        long start = SystemClock.elapsedRealtime();
+
+        try {
+            List<Source> courseSources = new ArrayList<>();
+            List<Source> scheduleSources = new ArrayList<>();
+            for (Source source : sources) {
+                Kind kind = detectKind(source);
+                if (kind == Kind.COURSES) {
+                    courseSources.add(source);
+                } else if (kind == Kind.SCHEDULES) {
+                    scheduleSources.add(source);
+                } else {
+                    reject(source.getName(), 0, "Not a course or schedule file");
+                }
+            }
+
+            loadExistingKeys();
+
+            tracker.beginPhase("Importing courses", Progress.UNKNOWN);
+            for (Source source : courseSources) {
+                if (tracker.isCancelled()) break;
+                importFile(source, Kind.COURSES);
+            }
+            flushCourses();
+
+            if (!scheduleSources.isEmpty()) {
+                tracker.beginPhase("Importing schedules", Progress.UNKNOWN);
+            }
+            for (Source source : scheduleSources) {
+                if (tracker.isCancelled()) break;
+                importFile(source, Kind.SCHEDULES);
+            }
+            flushSchedules();
+        } catch (IOException e) {
+            Log.e(TAG, "Import failed", e);
+            closeRejectWriter();
+            callback.onError("Import failed: " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            // SQLite errors surface as unchecked exceptions
+            Log.e(TAG, "Import failed", e);
+            closeRejectWriter();
+            callback.onError("Import failed: " + e.getMessage());
+            return;
+        }
+
+        closeRejectWriter();
+
+        if (tracker.isCancelled()) {
+            callback.onCancelled();
+            return;
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, "Imported " + coursesImported + " courses and " + schedulesImported +
+                " schedules in " + elapsed + "ms, rejected " + rowsRejected);
+        callback.onComplete(new Report(coursesImported, schedulesImported, rowsRejected, rejectFile, elapsed));
+    }
+
+    private Kind detectKind(Source source) throws IOException {
+        try (RecordReader reader = openReader(source)) {
+            if (reader.hasField("dayOfWeek")) {
+                return Kind.COURSES;
+            } else if (reader.hasField("courseId")) {
+                return Kind.SCHEDULES;
+            }
+            return null;
+        }
+    }
+
+    private void loadExistingKeys() {
+        courseDao.forEachCourse(course -> {
+            courseKeys.add(courseKey(course.getDayOfWeek(), course.getTime(), course.getType()));
+            return true;
+        });
+        scheduleDao.forEachSchedule(schedule -> {
+            scheduleKeys.add(scheduleKey(schedule.getCourseId(), schedule.getDate()));
+            return true;
+        });
+    }
+
+    private void importFile(Source source, Kind kind) throws IOException {
+        try (RecordReader reader = openReader(source)) {
+            while (!tracker.isCancelled() && reader.next()) {
+                String error = kind == Kind.COURSES ? importCourse(reader) : importSchedule(reader);
+                if (error != null) {
+                    reject(source.getName(), reader.getLineNumber(), error);
+                }
+                tracker.advance(1);
+            }
+        }
+    }
+
+    /**
+     * Validate a course row and queue it for insert. Returns the reject reason, or null.
+     */
+    private String importCourse(RecordReader row) {
+        String dayOfWeek = trim(row.get("dayOfWeek"));
+        String time = trim(row.get("time"));
+        String type = trim(row.get("type"));
+        String capacity = trim(row.get("capacity"));
+        String duration = trim(row.get("duration"));
+        String price = trim(row.get("price"));
+        String description = trim(row.get("description"));
+
+        String error = firstError(
+                ValidationRules.validateDayOfWeek(dayOfWeek),
+                ValidationRules.validateTime(time),
+                ValidationRules.validateType(type),
+                ValidationRules.validateCapacity(capacity),
+                ValidationRules.validateDuration(duration),
+                ValidationRules.validatePrice(price),
+                ValidationRules.validateDescription(description));
+        if (error != null) {
+            return error;
+        }
+
+        // Store the canonical day name so day filters and ordering keep working
+        dayOfWeek = DateUtils.DAY_NAMES[DateUtils.dayNameToIndex(dayOfWeek)];
+
+        String key = courseKey(dayOfWeek, time, type);
+        if (!courseKeys.add(key)) {
+            return "A course with the same day, time, and type already exists";
+        }
+
+        YogaCourse course = new YogaCourse(dayOfWeek, time, Integer.parseInt(capacity),
+                Integer.parseInt(duration), Double.parseDouble(price), type,
+                description != null ? description : "");
+
+        Integer exportedId = parseId(row.get("id"));
+        if (exportedId != null) {
+            importedCourses.put(exportedId, course);
+        }
+
+        courseChunk.add(course);
+        if (courseChunk.size() >= CHUNK_SIZE) {
+            flushCourses();
+        }
+        return null;
+    }
+
+    /**
+     * Validate a schedule row and queue it for insert. Returns the reject reason, or null.
+     */
+    private String importSchedule(RecordReader row) {
+        Integer sourceCourseId = parseId(row.get("courseId"));
+        if (sourceCourseId == null) {
+            return "Course id is required";
+        }
+
+        // Only courses from this import can be matched; a local course with the same id is unrelated
+        YogaCourse imported = importedCourses.get(sourceCourseId);
+        if (imported == null) {
+            return "Course " + sourceCourseId + " was not imported";
+        }
+        int courseId = imported.getId();
+
+        String date = trim(row.get("date"));
+        String teacher = trim(row.get("teacher"));
+        String comments = row.get("comments");
+
+        String error = firstError(
+                ValidationRules.validateScheduleDate(date),
+                ValidationRules.validateTeacher(teacher));
+        if (error != null) {
+            return error;
+        }
+
+        if (!scheduleKeys.add(scheduleKey(courseId, date))) {
+            return "A schedule for this course and date already exists";
+        }
+
+        scheduleChunk.add(new Schedule(courseId, date, teacher, comments != null ? comments.trim() : ""));
+        if (scheduleChunk.size() >= CHUNK_SIZE) {
+            flushSchedules();
+        }
+        return null;
+    }
+
+    private void flushCourses() {
+        if (courseChunk.isEmpty()) {
+            return;
+        }
+        courseDao.insertAll(courseChunk);
+        coursesImported += courseChunk.size();
+        courseChunk.clear();
+    }
+
+    private void flushSchedules() {
+        if (scheduleChunk.isEmpty()) {
+            return;
+        }
+        scheduleDao.insertAll(scheduleChunk);
+        schedulesImported += scheduleChunk.size();
+        scheduleChunk.clear();
+    }
+
+    // ---- Reject report ----
+
+    private void reject(String fileName, int line, String reason) throws IOException {
+        rowsRejected++;
+        if (rejectWriter == null) {
+            if (!reportDir.exists() && !reportDir.mkdirs()) {
+                throw new IOException("Could not create report directory");
+            }
+            rejectFile = new File(reportDir, "import_rejects_" + System.currentTimeMillis() + ".csv");
+            rejectWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(rejectFile), StandardCharsets.UTF_8), BUFFER_SIZE);
+            rejectWriter.write("file,line,reason\n");
+        }
+        DataExporter.writeCsvField(rejectWriter, fileName);
+        rejectWriter.write(',');
+        rejectWriter.write(Integer.toString(line));
+        rejectWriter.write(',');
+        DataExporter.writeCsvField(rejectWriter, reason);
+        rejectWriter.write('\n');
+    }
+
+    private void closeRejectWriter() {
+        if (rejectWriter == null) {
+            return;
+        }
+        try {
+            rejectWriter.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing reject report", e);
+        }
+        rejectWriter = null;
+    }
+
+    // ---- Helpers ----
+
+    private static String firstError(String... errors) {
+        for (String error : errors) {
+            if (error != null) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private static String courseKey(String dayOfWeek, String time, String type) {
+        return dayOfWeek + '\u0000' + time + '\u0000' + type;
+    }
+
+    private static String scheduleKey(int courseId, String date) {
+        return courseId + "|" + date;
+    }
+
+    private static Integer parseId(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String trim(String value) {
+        return value != null ? value.trim() : null;
+    }
+
+    // ---- Readers ----
+
+    private static RecordReader openReader(Source source) throws IOException {
+        InputStream in = new BufferedInputStream(source.open(), BUFFER_SIZE);
+        try {
+            // Sniff the gzip magic number rather than trusting the file name
+            in.mark(2);
+            int b1 = in.read();
+            int b2 = in.read();
+            in.reset();
+            if (b1 == 0x1f && b2 == 0x8b) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+            reader.mark(1);
+            int first = reader.read();
+            // Skip a UTF-8 byte order mark if present
+            if (first != '\uFEFF') {
+                reader.reset();
+            }
+            reader.mark(BUFFER_SIZE);
+            String firstLine = reader.readLine();
+            reader.reset();
+
+            if (firstLine != null && firstLine.trim().startsWith("{")) {
+                return new JsonRecordReader(reader);
+            }
+            return new CsvRecordReader(reader);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private interface RecordReader extends AutoCloseable {
+        /** Advance to the next record. Returns false at end of input. */
+        boolean next() throws IOException;
+        /** Field value in the current record, or null if absent. */
+        String get(String field);
+        /** Whether records in this file carry the field. */
+        boolean hasField(String field) throws IOException;
+        /** Line on which the current record starts. */
+        int getLineNumber();
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * RFC 4180 CSV with a header row. Quoted fields may contain commas, quotes and line breaks.
+     */
+    private static class CsvRecordReader implements RecordReader {
+        private final Reader reader;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private final StringBuilder field = new StringBuilder();
+        private List<String> record;
+        private int line = 1;
+        private int recordLine;
+        private boolean headerRead;
+
+        CsvRecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        private void readHeader() throws IOException {
+            if (headerRead) {
+                return;
+            }
+            headerRead = true;
+            List<String> header = readRecord();
+            if (header != null) {
+                for (int i = 0; i < header.size(); i++) {
+                    columns.put(header.get(i).trim(), i);
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            readHeader();
+            do {
+                record = readRecord();
+                // Skip blank lines
+            } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+            return record != null;
+        }
+
+        @Override
+        public String get(String name) {
+            Integer index = columns.get(name);
+            if (index == null || record == null || index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index);
+            return value.isEmpty() ? null : value;
+        }
+
+        @Override
+        public boolean hasField(String name) throws IOException {
+            readHeader();
+            return columns.containsKey(name);
+        }
+
+        @Override
+        public int getLineNumber() {
+            return recordLine;
+        }
+
+        private List<String> readRecord() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+
+            while (c != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        int nextChar = reader.read();
+                        if (nextChar == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = nextChar;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    line++;
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+
+            fields.add(field.toString());
+            return fields;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * One JSON object per line. Unparseable lines are reported as a row with no fields.
+     */
+    private static class JsonRecordReader implements RecordReader {
+        // Lines hasField() reads ahead looking for a record with fields
+        private static final int MAX_SNIFF_LINES = 100;
+
+        private final BufferedReader reader;
+        // Records read ahead by hasField(), and the lines they start on
+        private final ArrayDeque<JSONObject> peeked = new ArrayDeque<>();
+        private final ArrayDeque<Integer> peekedLines = new ArrayDeque<>();
+        private JSONObject first;
+        private JSONObject record;
+        private int line;
+        private int linesRead;
+
+        JsonRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (!peeked.isEmpty()) {
+                record = peeked.poll();
+                line = peekedLines.poll();
+                return true;
+            }
+            record = readRecord();
+            line = linesRead;
+            return record != null;
+        }
+
+        @Override
+        public String get(String name) {
+            if (record == null || record.isNull(name)) {
+                return null;
+            }
+            return record.opt(name).toString();
+        }
+
+        @Override
+        public boolean hasField(String name) throws IOException {
+            // The file's fields are those of its first record that parses, so one bad line
+            // at the top does not hide the rest of the file; nothing read here is consumed
+            while (first == null && linesRead < MAX_SNIFF_LINES) {
+                JSONObject next = readRecord();
+                if (next == null) {
+                    return false;
+                }
+                peeked.add(next);
+                peekedLines.add(linesRead);
+                if (next.length() > 0) {
+                    first = next;
+                }
+            }
+            return first != null && first.has(name);
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        /** The next non-blank line as a record, empty if it does not parse; null at end of input. */
+        private JSONObject readRecord() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                linesRead++;
+            } while (text != null && text.trim().isEmpty());
+
+            if (text == null) {
+                return null;
+            }
+            try {
+                return new JSONObject(text);
+            } catch (JSONException e) {
+                return new JSONObject();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.universalyoga.admin.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Shared date/time helpers for the app's fixed storage formats
+ * (dates as yyyy-MM-dd, times as HH:mm).
+ *
+ * Parsing and validating the storage formats is done by hand without
+ * allocating. Display formatting goes through per-thread cached
+ * SimpleDateFormat instances, since SimpleDateFormat is not thread-safe
+ * and is expensive to construct.
+ */
+public final class DateUtils {
+
+    public static final String ISO_DATE_PATTERN = "yyyy-MM-dd";
+    public static final String TIME_PATTERN = "HH:mm";
+
+    /** Day names as stored in YogaCourse.dayOfWeek, Monday first. */
+    public static final String[] DAY_NAMES = {
+            "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"
+    };
+
+    public static final int INVALID = -1;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    // ThreadLocal.withInitial needs API 26, so override initialValue instead (minSdk is 24)
+    private static final ThreadLocal<SimpleDateFormat> LIST_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("EEE, MMM dd, yyyy", Locale.getDefault());
+        }
+    };
+
+    private static final ThreadLocal<SimpleDateFormat> LONG_DATE_PREFIX_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("EEEE, MMMM", Locale.getDefault());
+        }
+    };
+
+    private static final ThreadLocal<Calendar> CALENDAR = new ThreadLocal<Calendar>() {
+        @Override
+        protected Calendar initialValue() {
+            return Calendar.getInstance();
+        }
+    };
+
+    private DateUtils() {}
+
+    // ---- yyyy-MM-dd ----
+
+    /**
+     * Parse an ISO date into a packed int (yyyyMMdd), or INVALID.
+     * Only the exact 10 character form is accepted and the day is checked
+     * against the month length, matching a non-lenient SimpleDateFormat.
+     */
+    public static int parseIsoDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+
+    public static boolean isValidIsoDate(String date) {
+        return parseIsoDate(date) != INVALID;
+    }
+
+    public static int year(int packedDate) {
+        return packedDate / 10000;
+    }
+
+    public static int month(int packedDate) {
+        return (packedDate / 100) % 100;
+    }
+
+    public static int day(int packedDate) {
+        return packedDate % 100;
+    }
+
+    /**
+     * Format year/month(1-12)/day as yyyy-MM-dd.
+     */
+    public static String formatIsoDate(int year, int month, int day) {
+        char[] out = new char[10];
+        out[0] = (char) ('0' + (year / 1000) % 10);
+        out[1] = (char) ('0' + (year / 100) % 10);
+        out[2] = (char) ('0' + (year / 10) % 10);
+        out[3] = (char) ('0' + year % 10);
+        out[4] = '-';
+        out[5] = (char) ('0' + month / 10);
+        out[6] = (char) ('0' + month % 10);
+        out[7] = '-';
+        out[8] = (char) ('0' + day / 10);
+        out[9] = (char) ('0' + day % 10);
+        return new String(out);
+    }
+
+    public static String formatIsoDate(Calendar calendar) {
+        return formatIsoDate(calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1,
+                calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Set the calendar's date fields from an ISO date string.
+     *
+     * @return false if the string is not a valid ISO date
+     */
+    public static boolean setCalendarDate(Calendar calendar, String date) {
+        int packed = parseIsoDate(date);
+        if (packed == INVALID) {
+            return false;
+        }
+        calendar.set(year(packed), month(packed) - 1, day(packed));
+        return true;
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date.
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        // Shift so the year starts in March; leap day then falls at the end
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    public static long toEpochDay(int packedDate) {
+        return toEpochDay(year(packedDate), month(packedDate), day(packedDate));
+    }
+
+    /**
+     * Inverse of toEpochDay, returning a packed yyyyMMdd date.
+     */
+    public static int fromEpochDay(long epochDay) {
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return year * 10000 + month * 100 + day;
+    }
+
+    public static String formatIsoDate(int packedDate) {
+        return formatIsoDate(year(packedDate), month(packedDate), day(packedDate));
+    }
+
+    /**
+     * Day of week for a date, 0 = Monday ... 6 = Sunday (index into DAY_NAMES).
+     */
+    public static int dayOfWeekIndex(long epochDay) {
+        // 1970-01-01 was a Thursday (index 3)
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    /**
+     * English day name for an ISO date, as stored in YogaCourse.dayOfWeek, or null if invalid.
+     */
+    public static String dayOfWeekName(String date) {
+        int packed = parseIsoDate(date);
+        if (packed == INVALID) {
+            return null;
+        }
+        return DAY_NAMES[dayOfWeekIndex(toEpochDay(packed))];
+    }
+
+    /**
+     * The Monday (yyyy-MM-dd) of the week containing an ISO date, or null if invalid.
+     */
+    public static String weekStart(String date) {
+        int packed = parseIsoDate(date);
+        if (packed == INVALID) {
+            return null;
+        }
+        long epochDay = toEpochDay(packed);
+        return formatIsoDate(fromEpochDay(epochDay - dayOfWeekIndex(epochDay)));
+    }
+
+    /**
+     * Index into DAY_NAMES for a stored day name, or INVALID.
+     */
+    public static int dayNameToIndex(String dayName) {
+        if (dayName != null) {
+            for (int i = 0; i < DAY_NAMES.length; i++) {
+                if (DAY_NAMES[i].equalsIgnoreCase(dayName)) {
+                    return i;
+                }
+            }
+        }
+        return INVALID;
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    public static int daysInMonth(int year, int month) {
+        if (month == 2 && isLeapYear(year)) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    // ---- HH:mm ----
+
+    /**
+     * Minutes since midnight for an HH:mm time, or INVALID.
+     */
+    public static int parseTimeToMinutes(String time) {
+        if (time == null || time.length() != 5 || time.charAt(2) != ':') {
+            return INVALID;
+        }
+        int hours = digits(time, 0, 2);
+        int minutes = digits(time, 3, 5);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return INVALID;
+        }
+        return hours * 60 + minutes;
+    }
+
+    public static boolean isValidTime(String time) {
+        return parseTimeToMinutes(time) != INVALID;
+    }
+
+    /**
+     * Format minutes since midnight as HH:mm.
+     */
+    public static String formatMinutes(int minutesOfDay) {
+        int hours = minutesOfDay / 60;
+        int minutes = minutesOfDay % 60;
+        char[] out = {
+                (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                (char) ('0' + minutes / 10), (char) ('0' + minutes % 10)
+        };
+        return new String(out);
+    }
+
+    // ---- Display formats ----
+
+    /**
+     * Short display form used in lists, e.g. "Mon, Oct 23, 2023".
+     * Returns the input unchanged if it is not a valid ISO date.
+     */
+    public static String formatListDate(String date) {
+        Calendar calendar = calendarFor(date);
+        if (calendar == null) {
+            return date;
+        }
+        return LIST_DATE_FORMAT.get().format(calendar.getTime());
+    }
+
+    /**
+     * Long display form with day suffix, e.g. "Monday, October 23rd, 2023".
+     * Returns the input unchanged if it is not a valid ISO date.
+     */
+    public static String formatLongDateWithSuffix(String date) {
+        Calendar calendar = calendarFor(date);
+        if (calendar == null) {
+            return date;
+        }
+        int packed = parseIsoDate(date);
+        int day = day(packed);
+        return LONG_DATE_PREFIX_FORMAT.get().format(calendar.getTime()) +
+                " " + day + getDayOfMonthSuffix(day) + ", " + year(packed);
+    }
+
+    public static String getDayOfMonthSuffix(int day) {
+        if (day >= 11 && day <= 13) {
+            return "th";
+        }
+        switch (day % 10) {
+            case 1: return "st";
+            case 2: return "nd";
+            case 3: return "rd";
+            default: return "th";
+        }
+    }
+
+    private static Calendar calendarFor(String date) {
+        Calendar calendar = CALENDAR.get();
+        calendar.clear();
+        return setCalendarDate(calendar, date) ? calendar : null;
+    }
+
+    private static int digits(String s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -2,29 +2,36 @@
 package com.universalyoga.admin.utils;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.WriteBatch;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.universalyoga.admin.data.entity.YogaCourse;
-import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.sync.FirestoreRemoteStore;
+import com.universalyoga.admin.sync.RemoteStore;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class FirebaseSync {
 
     private static final String TAG = "FirebaseSync";
     private static final String COURSES_COLLECTION = "yoga_courses";
     private static final String SCHEDULES_COLLECTION = "schedules";
+    // Bookings the customer app adds to each schedule document
+    private static final String FIELD_BOOKINGS = "bookings";
+    // Values a whereIn query may take
+    private static final int MAX_IN_VALUES = 10;
+    // Read by the customer app: one pre-joined document per course, see TimetablePublisher
+    private static final String TIMETABLE_COLLECTION = "timetable";
+    private static final int MAX_BATCH_WRITES = 500;
 
     private FirebaseFirestore db;
     private Context context;
@@ -34,6 +41,12 @@ public class FirebaseSync {
         void onError(String error);
     }
 
+    public interface BookingCountsCallback {
+        /** Local schedule id -> number of bookings, for every schedule that could be counted. */
+        void onSuccess(Map<Integer, Integer> counts);
+        void onError(String error);
+    }
+
     public FirebaseSync() {
         initializeFirestore();
     }
@@ -61,6 +74,13 @@ public class FirebaseSync {
         }
     }
 
+    /**
+     * The Firestore collections as a RemoteStore, for SyncEngine.
+     */
+    public RemoteStore asRemoteStore() {
+        return new FirestoreRemoteStore(db);
+    }
+
     /**
      * Check if Firebase and Firestore are properly configured
      */
@@ -73,170 +93,6 @@ public class FirebaseSync {
         }
     }
 
-    /**
-     * Sync all yoga courses to Firestore
-     */
-    public void syncCoursesToFirestore(List<YogaCourse> courses, SyncCallback callback) {
-        if (!isFirebaseConfigured()) {
-            callback.onError("Firebase is not properly configured. Please check your setup.");
-            return;
-        }
-
-        if (courses == null || courses.isEmpty()) {
-            callback.onError("No courses to sync");
-            return;
-        }
-
-        // Check network connectivity if context is available
-        if (context != null) {
-            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (!isNetworkAvailable(cm)) {
-                callback.onError("No internet connection available");
-                return;
-            }
-        }
-
-        // Use batch write for better performance and atomicity
-        WriteBatch batch = db.batch();
-
-        try {
-            for (YogaCourse course : courses) {
-                Map<String, Object> courseData = new HashMap<>();
-                courseData.put("id", course.getId());
-                courseData.put("dayOfWeek", course.getDayOfWeek());
-                courseData.put("time", course.getTime());
-                courseData.put("capacity", course.getCapacity());
-                courseData.put("duration", course.getDuration());
-                courseData.put("price", course.getPrice());
-                courseData.put("type", course.getType());
-                courseData.put("description", course.getDescription());
-                courseData.put("lastUpdated", System.currentTimeMillis());
-
-                // Use course ID as document ID for easy reference
-                batch.set(db.collection(COURSES_COLLECTION).document(String.valueOf(course.getId())), courseData);
-            }
-
-            // Commit the batch
-            batch.commit()
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Successfully synced " + courses.size() + " courses to Firestore");
-                        callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error syncing courses to Firestore", e);
-                        String errorMsg = getErrorMessage(e);
-                        callback.onError("Failed to sync courses: " + errorMsg);
-                    });
-
-        } catch (Exception e) {
-            Log.e(TAG, "Exception during course sync", e);
-            callback.onError("Exception during sync: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Sync schedules to Firestore
-     */
-    public void syncSchedulesToFirestore(List<Schedule> schedules, SyncCallback callback) {
-        if (!isFirebaseConfigured()) {
-            callback.onError("Firebase is not properly configured. Please check your setup.");
-            return;
-        }
-
-        if (schedules == null || schedules.isEmpty()) {
-            callback.onError("No schedules to sync");
-            return;
-        }
-
-        WriteBatch batch = db.batch();
-
-        try {
-            for (Schedule schedule : schedules) {
-                Map<String, Object> scheduleData = new HashMap<>();
-                scheduleData.put("id", schedule.getId());
-                scheduleData.put("courseId", schedule.getCourseId());
-                scheduleData.put("date", schedule.getDate());
-                scheduleData.put("teacher", schedule.getTeacher());
-                scheduleData.put("comments", schedule.getComments());
-                scheduleData.put("lastUpdated", System.currentTimeMillis());
-
-                batch.set(db.collection(SCHEDULES_COLLECTION).document(String.valueOf(schedule.getId())), scheduleData);
-            }
-
-            batch.commit()
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Successfully synced " + schedules.size() + " schedules to Firestore");
-                        callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error syncing schedules to Firestore", e);
-                        String errorMsg = getErrorMessage(e);
-                        callback.onError("Failed to sync schedules: " + errorMsg);
-                    });
-
-        } catch (Exception e) {
-            Log.e(TAG, "Exception during schedule sync", e);
-            callback.onError("Exception during sync: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Delete a course from Firestore
-     */
-    public void deleteCourseFromFirestore(int courseId, SyncCallback callback) {
-        if (!isFirebaseConfigured()) {
-            callback.onError("Firebase is not properly configured.");
-            return;
-        }
-
-        db.collection(COURSES_COLLECTION)
-                .document(String.valueOf(courseId))
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Course " + courseId + " deleted from Firestore");
-                    callback.onSuccess();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error deleting course from Firestore", e);
-                    String errorMsg = getErrorMessage(e);
-                    callback.onError("Failed to delete course: " + errorMsg);
-                });
-    }
-
-    /**
-     * Sync individual course (for real-time updates)
-     */
-    public void syncSingleCourse(YogaCourse course, SyncCallback callback) {
-        if (!isFirebaseConfigured()) {
-            callback.onError("Firebase is not properly configured.");
-            return;
-        }
-
-        Map<String, Object> courseData = new HashMap<>();
-        courseData.put("id", course.getId());
-        courseData.put("dayOfWeek", course.getDayOfWeek());
-        courseData.put("time", course.getTime());
-        courseData.put("capacity", course.getCapacity());
-        courseData.put("duration", course.getDuration());
-        courseData.put("price", course.getPrice());
-        courseData.put("type", course.getType());
-        courseData.put("description", course.getDescription());
-        courseData.put("lastUpdated", System.currentTimeMillis());
-
-        db.collection(COURSES_COLLECTION)
-                .document(String.valueOf(course.getId()))
-                .set(courseData)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Course " + course.getId() + " synced successfully");
-                    callback.onSuccess();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error syncing single course", e);
-                    String errorMsg = getErrorMessage(e);
-                    callback.onError("Failed to sync course: " + errorMsg);
-                });
-    }
-
     /**
      * Clear all courses from Firestore
      */
@@ -316,49 +172,92 @@ public class FirebaseSync {
     }
 
     /**
-     * Full sync - clears Firestore data and then syncs local data
+     * Delete every published timetable document
      */
-    public void fullSyncCoursesToFirestore(List<YogaCourse> courses, SyncCallback callback) {
-        clearAllCoursesFromFirestore(new SyncCallback() {
-            @Override
-            public void onSuccess() {
-                // After clearing, sync the new data
-                if (courses != null && !courses.isEmpty()) {
-                    syncCoursesToFirestore(courses, callback);
-                } else {
-                    Log.d(TAG, "No courses to sync after clearing");
-                    callback.onSuccess();
-                }
-            }
+    public void clearTimetableFromFirestore(SyncCallback callback) {
+        if (!isFirebaseConfigured()) {
+            callback.onError("Firebase is not properly configured.");
+            return;
+        }
 
-            @Override
-            public void onError(String error) {
-                callback.onError("Failed to clear courses before sync: " + error);
-            }
-        });
+        db.collection(TIMETABLE_COLLECTION)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    if (queryDocumentSnapshots.isEmpty()) {
+                        callback.onSuccess();
+                        return;
+                    }
+
+                    WriteBatch batch = db.batch();
+                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
+                        batch.delete(document.getReference());
+                    }
+
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                Log.d(TAG, "Successfully cleared timetable from Firestore");
+                                callback.onSuccess();
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error clearing timetable from Firestore", e);
+                                callback.onError("Failed to clear timetable: " + getErrorMessage(e));
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error getting timetable to clear", e);
+                    callback.onError("Failed to get timetable for clearing: " + getErrorMessage(e));
+                });
     }
 
     /**
-     * Full sync for schedules
+     * Write changed timetable documents and delete removed ones.
+     * Only what TimetablePublisher reports as changed is sent, in batches of at most 500 writes.
      */
-    public void fullSyncSchedulesToFirestore(List<Schedule> schedules, SyncCallback callback) {
-        clearAllSchedulesFromFirestore(new SyncCallback() {
-            @Override
-            public void onSuccess() {
-                // After clearing, sync the new data
-                if (schedules != null && !schedules.isEmpty()) {
-                    syncSchedulesToFirestore(schedules, callback);
-                } else {
-                    Log.d(TAG, "No schedules to sync after clearing");
-                    callback.onSuccess();
-                }
-            }
+    public void publishTimetable(TimetablePublisher.Changes changes, SyncCallback callback) {
+        if (!isFirebaseConfigured()) {
+            callback.onError("Firebase is not properly configured.");
+            return;
+        }
+        if (changes.isEmpty()) {
+            callback.onSuccess();
+            return;
+        }
 
-            @Override
-            public void onError(String error) {
-                callback.onError("Failed to clear schedules before sync: " + error);
+        List<Task<Void>> commits = new ArrayList<>();
+        WriteBatch batch = db.batch();
+        int writes = 0;
+
+        for (Map.Entry<String, Map<String, Object>> entry : changes.getDocuments().entrySet()) {
+            Map<String, Object> document = new HashMap<>(entry.getValue());
+            document.put("lastUpdated", System.currentTimeMillis());
+            batch.set(db.collection(TIMETABLE_COLLECTION).document(entry.getKey()), document);
+            if (++writes % MAX_BATCH_WRITES == 0) {
+                commits.add(batch.commit());
+                batch = db.batch();
             }
-        });
+        }
+        for (String id : changes.getRemovedIds()) {
+            batch.delete(db.collection(TIMETABLE_COLLECTION).document(id));
+            if (++writes % MAX_BATCH_WRITES == 0) {
+                commits.add(batch.commit());
+                batch = db.batch();
+            }
+        }
+        if (writes % MAX_BATCH_WRITES != 0) {
+            commits.add(batch.commit());
+        }
+
+        int total = writes;
+        Tasks.whenAll(commits)
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Published timetable - " + changes.getDocuments().size() + " updated, " +
+                            changes.getRemovedIds().size() + " removed in " + total + " writes");
+                    callback.onSuccess();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error publishing timetable", e);
+                    callback.onError("Timetable publish failed: " + getErrorMessage(e));
+                });
     }
 
     /**
@@ -371,8 +270,18 @@ public class FirebaseSync {
                 clearAllSchedulesFromFirestore(new SyncCallback() {
                     @Override
                     public void onSuccess() {
-                        Log.d(TAG, "Firestore database reset complete");
-                        callback.onSuccess();
+                        clearTimetableFromFirestore(new SyncCallback() {
+                            @Override
+                            public void onSuccess() {
+                                Log.d(TAG, "Firestore database reset complete");
+                                callback.onSuccess();
+                            }
+
+                            @Override
+                            public void onError(String error) {
+                                callback.onError("Failed to clear timetable: " + error);
+                            }
+                        });
                     }
 
                     @Override
@@ -390,166 +299,87 @@ public class FirebaseSync {
     }
 
     /**
-     * Smart sync that handles additions, updates, and deletions for courses
+     * Count customer bookings for the given schedules (local id -> uid).
+     * The customer app appends each booking to its schedule document's bookings
+     * array, so the count is the places in that array. The documents are read by
+     * id, MAX_IN_VALUES per query. Schedules whose read fails, or that have no
+     * document yet, are left out of the result; the callback only errors if
+     * nothing could be counted.
      */
-    public void smartSyncCoursesToFirestore(List<YogaCourse> courses, SyncCallback callback) {
+    public void pullBookingCounts(Map<Integer, String> scheduleUids, BookingCountsCallback callback) {
         if (!isFirebaseConfigured()) {
             callback.onError("Firebase is not properly configured.");
             return;
         }
+        if (scheduleUids == null || scheduleUids.isEmpty()) {
+            callback.onSuccess(new HashMap<>());
+            return;
+        }
 
-        // First, get all existing courses from Firestore
-        db.collection(COURSES_COLLECTION)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-
-                    // Get all existing course IDs from Firestore
-                    Set<String> existingIds = new HashSet<>();
-                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        existingIds.add(doc.getId());
-                    }
-
-                    // Get current course IDs from local data
-                    Set<String> currentIds = new HashSet<>();
-                    if (courses != null) {
-                        for (YogaCourse course : courses) {
-                            currentIds.add(String.valueOf(course.getId()));
+        Map<String, Integer> idsByUid = new HashMap<>();
+        for (Map.Entry<Integer, String> schedule : scheduleUids.entrySet()) {
+            idsByUid.put(schedule.getValue(), schedule.getKey());
+        }
+        List<String> uids = new ArrayList<>(idsByUid.keySet());
+
+        // Listeners run on the main thread, so plain collections are safe here
+        Map<Integer, Integer> counts = new HashMap<>();
+        int[] pending = {(uids.size() + MAX_IN_VALUES - 1) / MAX_IN_VALUES};
+        Exception[] lastError = new Exception[1];
+
+        for (int from = 0; from < uids.size(); from += MAX_IN_VALUES) {
+            List<String> chunk = new ArrayList<>(uids.subList(from, Math.min(from + MAX_IN_VALUES, uids.size())));
+            db.collection(SCHEDULES_COLLECTION)
+                    .whereIn(FieldPath.documentId(), chunk)
+                    .get()
+                    .addOnCompleteListener(task -> {
+                        if (task.isSuccessful() && task.getResult() != null) {
+                            for (QueryDocumentSnapshot doc : task.getResult()) {
+                                counts.put(idsByUid.get(doc.getId()), countPlaces(doc.get(FIELD_BOOKINGS)));
+                            }
+                        } else {
+                            lastError[0] = task.getException();
                         }
-                    }
-
-                    // Find IDs to delete (exist in Firestore but not in local data)
-                    Set<String> idsToDelete = new HashSet<>(existingIds);
-                    idsToDelete.removeAll(currentIds);
-
-                    WriteBatch batch = db.batch();
 
-                    // Add/Update current courses
-                    if (courses != null) {
-                        for (YogaCourse course : courses) {
-                            Map<String, Object> courseData = new HashMap<>();
-                            courseData.put("id", course.getId());
-                            courseData.put("dayOfWeek", course.getDayOfWeek());
-                            courseData.put("time", course.getTime());
-                            courseData.put("capacity", course.getCapacity());
-                            courseData.put("duration", course.getDuration());
-                            courseData.put("price", course.getPrice());
-                            courseData.put("type", course.getType());
-                            courseData.put("description", course.getDescription());
-                            courseData.put("lastUpdated", System.currentTimeMillis());
-
-                            batch.set(db.collection(COURSES_COLLECTION)
-                                    .document(String.valueOf(course.getId())), courseData);
+                        if (--pending[0] == 0) {
+                            Log.d(TAG, "Pulled booking counts for " + counts.size() + " of " +
+                                    scheduleUids.size() + " schedules");
+                            if (counts.isEmpty() && lastError[0] != null) {
+                                callback.onError("Failed to get bookings: " + getErrorMessage(lastError[0]));
+                            } else {
+                                callback.onSuccess(counts);
+                            }
                         }
-                    }
-
-                    // Delete courses that no longer exist locally
-                    for (String idToDelete : idsToDelete) {
-                        batch.delete(db.collection(COURSES_COLLECTION).document(idToDelete));
-                    }
-
-                    // Commit the batch
-                    batch.commit()
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "Smart sync completed - " +
-                                        (courses != null ? courses.size() : 0) + " courses synced, " +
-                                        idsToDelete.size() + " courses deleted");
-                                callback.onSuccess();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Error in smart sync", e);
-                                callback.onError("Smart sync failed: " + getErrorMessage(e));
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error getting existing courses for smart sync", e);
-                    callback.onError("Failed to get existing courses: " + getErrorMessage(e));
-                });
+                    });
+        }
     }
 
     /**
-     * Smart sync for schedules
+     * Places taken by a schedule document's bookings array: each entry's quantity, 1 if it has none.
      */
-    public void smartSyncSchedulesToFirestore(List<Schedule> schedules, SyncCallback callback) {
-        if (!isFirebaseConfigured()) {
-            callback.onError("Firebase is not properly configured.");
-            return;
+    private static int countPlaces(Object bookings) {
+        if (!(bookings instanceof List)) {
+            return 0;
         }
-
-        db.collection(SCHEDULES_COLLECTION)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-
-                    Set<String> existingIds = new HashSet<>();
-                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        existingIds.add(doc.getId());
-                    }
-
-                    Set<String> currentIds = new HashSet<>();
-                    if (schedules != null) {
-                        for (Schedule schedule : schedules) {
-                            currentIds.add(String.valueOf(schedule.getId()));
-                        }
-                    }
-
-                    Set<String> idsToDelete = new HashSet<>(existingIds);
-                    idsToDelete.removeAll(currentIds);
-
-                    WriteBatch batch = db.batch();
-
-                    // Add/Update current schedules
-                    if (schedules != null) {
-                        for (Schedule schedule : schedules) {
-                            Map<String, Object> scheduleData = new HashMap<>();
-                            scheduleData.put("id", schedule.getId());
-                            scheduleData.put("courseId", schedule.getCourseId());
-                            scheduleData.put("date", schedule.getDate());
-                            scheduleData.put("teacher", schedule.getTeacher());
-                            scheduleData.put("comments", schedule.getComments());
-                            scheduleData.put("lastUpdated", System.currentTimeMillis());
-
-                            batch.set(db.collection(SCHEDULES_COLLECTION)
-                                    .document(String.valueOf(schedule.getId())), scheduleData);
-                        }
-                    }
-
-                    // Delete schedules that no longer exist locally
-                    for (String idToDelete : idsToDelete) {
-                        batch.delete(db.collection(SCHEDULES_COLLECTION).document(idToDelete));
-                    }
-
-                    batch.commit()
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "Smart sync completed - " +
-                                        (schedules != null ? schedules.size() : 0) + " schedules synced, " +
-                                        idsToDelete.size() + " schedules deleted");
-                                callback.onSuccess();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Error in smart sync", e);
-                                callback.onError("Smart sync failed: " + getErrorMessage(e));
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error getting existing schedules for smart sync", e);
-                    callback.onError("Failed to get existing schedules: " + getErrorMessage(e));
-                });
+        int places = 0;
+        for (Object booking : (List<?>) bookings) {
+            Object quantity = booking instanceof Map ? ((Map<?, ?>) booking).get("quantity") : null;
+            places += quantity instanceof Number ? ((Number) quantity).intValue() : 1;
+        }
+        return places;
     }
 
     /**
-     * Check if device has internet connectivity
+     * Check if device has internet connectivity, as last reported to NetworkMonitor
      */
-    public static boolean isNetworkAvailable(ConnectivityManager connectivityManager) {
-        if (connectivityManager != null) {
-            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-            return activeNetwork != null && activeNetwork.isConnectedOrConnecting();
-        }
-        return false;
+    public static boolean isNetworkAvailable(Context context) {
+        return NetworkMonitor.getInstance(context).isConnected();
     }
 
     /**
      * Get user-friendly error message
      */
-    private String getErrorMessage(Exception e) {
+    public static String getErrorMessage(Exception e) {
         String message = e.getMessage();
         if (message != null) {
             if (message.contains("PERMISSION_DENIED")) {
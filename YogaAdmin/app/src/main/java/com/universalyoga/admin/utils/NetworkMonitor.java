@@ -0,0 +1,107 @@
+package com.universalyoga.admin.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the default network with a single connectivity callback, registered when the
+ * app starts, so callers can read the current state instead of querying it on every call.
+ *
+ * Listeners are told on the main thread whenever the device goes online or offline,
+ * or moves between metered and unmetered networks.
+ */
+public class NetworkMonitor {
+
+    private static final String TAG = "NetworkMonitor";
+
+    private static volatile NetworkMonitor INSTANCE;
+
+    public interface Listener {
+        void onNetworkChanged(boolean connected, boolean metered);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean connected;
+    private volatile boolean metered;
+
+    private NetworkMonitor(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            Log.w(TAG, "No connectivity service, treating the device as offline");
+            return;
+        }
+
+        // Start from the current network; the callback reports every change after this
+        Network active = connectivityManager.getActiveNetwork();
+        update(active != null ? connectivityManager.getNetworkCapabilities(active) : null);
+
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                update(capabilities);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                update(null);
+            }
+        });
+    }
+
+    public static NetworkMonitor getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (NetworkMonitor.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new NetworkMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** True on networks that may charge by usage, such as mobile data or a hotspot. */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized void update(NetworkCapabilities capabilities) {
+        boolean nowConnected = capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        boolean nowMetered = nowConnected
+                && !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        if (nowConnected == connected && nowMetered == metered) {
+            return;
+        }
+
+        connected = nowConnected;
+        metered = nowMetered;
+        Log.d(TAG, "Network changed: connected=" + nowConnected + ", metered=" + nowMetered);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onNetworkChanged(nowConnected, nowMetered);
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package com.universalyoga.admin.utils;
+
+import java.util.Locale;
+
+/**
+ * Where a long-running operation has got to: the phase it is in, the items done out of
+ * the phase's total, and the throughput and time left estimated from the phase so far.
+ * Immutable; ProgressTracker makes them. Plain Java, so it can be used by SyncEngine.
+ */
+public class Progress {
+
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    /** Value of getTotal() and getEtaMillis() when they are not known. */
+    public static final long UNKNOWN = -1;
+
+    private final String phase;
+    private final long completed;
+    private final long total;
+    private final long elapsedMillis;
+
+    Progress(String phase, long completed, long total, long elapsedMillis) {
+        this.phase = phase;
+        this.completed = completed;
+        this.total = total;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /** What is being done, e.g. "Exporting schedules". */
+    public String getPhase() {
+        return phase;
+    }
+
+    /** Items done in this phase. */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /** Items in this phase, or UNKNOWN, e.g. while reading a file of unknown length. */
+    public long getTotal() {
+        return total;
+    }
+
+    public boolean isIndeterminate() {
+        return total == UNKNOWN;
+    }
+
+    /** 0 to 100, or UNKNOWN if the total is not known. */
+    public int getPercent() {
+        if (isIndeterminate()) {
+            return (int) UNKNOWN;
+        }
+        return total > 0 ? (int) Math.min(100, completed * 100 / total) : 100;
+    }
+
+    /** Time since the phase began. */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Items per second over the phase so far; 0 until something is done. */
+    public double getItemsPerSecond() {
+        return elapsedMillis > 0 ? completed * 1000.0 / elapsedMillis : 0;
+    }
+
+    /** Estimated time left in this phase at the throughput so far, or UNKNOWN. */
+    public long getEtaMillis() {
+        double rate = getItemsPerSecond();
+        if (isIndeterminate() || rate <= 0) {
+            return UNKNOWN;
+        }
+        return (long) (Math.max(0, total - completed) * 1000 / rate);
+    }
+
+    /**
+     * One line for the UI, e.g. "Exporting schedules: 1,500 of 4,000 rows • 1,200/s • 2 s left".
+     *
+     * @param unit plural name of the items, e.g. "rows"
+     */
+    public String toText(String unit) {
+        StringBuilder text = new StringBuilder(phase).append(": ");
+        if (isIndeterminate()) {
+            text.append(String.format(Locale.US, "%,d %s", completed, unit));
+        } else {
+            text.append(String.format(Locale.US, "%,d of %,d %s", completed, total, unit));
+        }
+        if (completed > 0 && elapsedMillis >= 1000) {
+            text.append(String.format(Locale.US, " • %,d/s", Math.round(getItemsPerSecond())));
+        }
+        long eta = getEtaMillis();
+        if (eta != UNKNOWN && completed < total && elapsedMillis >= 1000) {
+            text.append(" • ").append(formatDuration(eta)).append(" left");
+        }
+        return text.toString();
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = Math.max(1, (millis + 999) / 1000);
+        if (seconds < 60) {
+            return seconds + " s";
+        }
+        return String.format(Locale.US, "%d min %02d s", seconds / 60, seconds % 60);
+    }
+
+    @Override
+    public String toString() {
+        return "Progress{" +
+                "phase='" + phase + '\'' +
+                ", completed=" + completed +
+                ", total=" + total +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.universalyoga.admin.utils;
+
+import android.app.Activity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.universalyoga.admin.R;
+
+/**
+ * Drives the progress banner included from view_progress_banner.xml: a card over the
+ * bottom of the screen that shows a running operation without blocking the rest of it.
+ * Shows one operation at a time. Call on the main thread.
+ */
+public class ProgressBanner {
+
+    private final Activity activity;
+    private final View banner;
+    private final TextView tvTitle;
+    private final TextView tvDetail;
+    private final ProgressBar progressBar;
+    private final Button btnCancel;
+
+    private ProgressTracker tracker;
+    // Which start() the banner is showing, so a late report from an earlier one is ignored
+    private int shown;
+
+    public ProgressBanner(Activity activity) {
+        this.activity = activity;
+        this.banner = activity.findViewById(R.id.progressBanner);
+        this.tvTitle = banner.findViewById(R.id.tvProgressTitle);
+        this.tvDetail = banner.findViewById(R.id.tvProgressDetail);
+        this.progressBar = banner.findViewById(R.id.progressBar);
+        this.btnCancel = banner.findViewById(R.id.btnProgressCancel);
+    }
+
+    /** True while an operation started with start() has not been passed to finish(). */
+    public boolean isShowing() {
+        return tracker != null;
+    }
+
+    /**
+     * Show the banner for a new operation and return the tracker to run it with. The banner
+     * follows the tracker's reports, and its Cancel button cancels the tracker.
+     *
+     * @param unit plural name of what the operation counts, e.g. "rows"
+     */
+    public ProgressTracker start(String title, String unit) {
+        int run = ++shown;
+        ProgressTracker started = new ProgressTracker(progress -> activity.runOnUiThread(() -> {
+            // Reports posted just before finish() can arrive after it
+            if (run == shown && tracker != null) {
+                show(progress, unit);
+            }
+        }));
+        tracker = started;
+
+        tvTitle.setText(title);
+        tvDetail.setText("Starting...");
+        progressBar.setIndeterminate(true);
+        btnCancel.setEnabled(true);
+        btnCancel.setOnClickListener(v -> {
+            started.cancel();
+            btnCancel.setEnabled(false);
+            tvDetail.setText("Cancelling...");
+        });
+        banner.setVisibility(View.VISIBLE);
+        return started;
+    }
+
+    /** Hide the banner once the operation has ended, however it ended. */
+    public void finish() {
+        tracker = null;
+        btnCancel.setOnClickListener(null);
+        banner.setVisibility(View.GONE);
+    }
+
+    private void show(Progress progress, String unit) {
+        if (tracker.isCancelled()) {
+            return;
+        }
+        tvDetail.setText(progress.toText(unit));
+        progressBar.setIndeterminate(progress.isIndeterminate());
+        if (!progress.isIndeterminate()) {
+            progressBar.setProgress(progress.getPercent());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.universalyoga.admin.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Progress and cancellation for one run of a long-running operation, such as a sync,
+ * an import, an export or bulk schedule generation.
+ *
+ * The operation calls beginPhase() and advance() as it goes and checks isCancelled()
+ * between items; the UI calls cancel(). The listener is told on the operation's thread
+ * when a phase begins or ends, and otherwise at most every REPORT_INTERVAL_MS, so it
+ * can post every update to the main thread. Safe to call from any thread.
+ */
+public class ProgressTracker {
+
+    static final long REPORT_INTERVAL_MS = 250;
+
+    private final Progress.Listener listener;
+    private final LongSupplier clockMillis;
+    private volatile boolean cancelled;
+
+    private String phase = "";
+    private long completed;
+    private long total = Progress.UNKNOWN;
+    private long phaseStartedAt;
+    private long lastReportAt;
+
+    /**
+     * @param listener told about progress; null to only track cancellation
+     */
+    public ProgressTracker(Progress.Listener listener) {
+        this(listener, () -> System.nanoTime() / 1_000_000);
+    }
+
+    ProgressTracker(Progress.Listener listener, LongSupplier clockMillis) {
+        this.listener = listener;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Start a phase, with nothing done yet.
+     *
+     * @param total items in the phase, or Progress.UNKNOWN
+     */
+    public void beginPhase(String phase, long total) {
+        Progress progress;
+        synchronized (this) {
+            this.phase = phase;
+            this.total = total;
+            this.completed = 0;
+            phaseStartedAt = lastReportAt = clockMillis.getAsLong();
+            progress = current();
+        }
+        report(progress);
+    }
+
+    /** Set the total once it is known, e.g. after counting the rows to do. */
+    public synchronized void setTotal(long total) {
+        this.total = total;
+    }
+
+    public void advance(long count) {
+        Progress progress;
+        synchronized (this) {
+            progress = update(completed + count);
+        }
+        report(progress);
+    }
+
+    public void setCompleted(long completed) {
+        Progress progress;
+        synchronized (this) {
+            progress = update(completed);
+        }
+        report(progress);
+    }
+
+    /** Where the operation is now. */
+    public synchronized Progress current() {
+        return new Progress(phase, completed, total, clockMillis.getAsLong() - phaseStartedAt);
+    }
+
+    /**
+     * Ask the operation to stop. It stops at its next check, after the item in hand,
+     * and reports that it was cancelled in its own way.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // The progress to report for a new count, or null if the last report was too recent
+    private Progress update(long newCompleted) {
+        completed = newCompleted;
+        long now = clockMillis.getAsLong();
+        boolean phaseDone = total != Progress.UNKNOWN && completed >= total;
+        if (!phaseDone && now - lastReportAt < REPORT_INTERVAL_MS) {
+            return null;
+        }
+        lastReportAt = now;
+        return current();
+    }
+
+    private void report(Progress progress) {
+        if (progress != null && listener != null) {
+            listener.onProgress(progress);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.universalyoga.admin.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+import android.util.Log;
+
+import com.google.zxing.common.BitMatrix;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders QR codes for many courses into a single ZIP of PNGs or a multi-page PDF.
+ *
+ * Encoding (the CPU-heavy ZXing step) runs on a small worker pool. The
+ * calling thread renders each matrix into one reused bitmap and pixel
+ * buffer and streams it to the output, so memory stays bounded no matter
+ * how many courses are exported. Only a few encoded matrices are in
+ * flight at once.
+ *
+ * run() blocks; call it from a background executor.
+ */
+public class QRBatchExporter {
+
+    private static final String TAG = "QRBatchExporter";
+
+    // PDF page size in points (A4) and the QR code's printed size
+    private static final int PAGE_WIDTH = 595;
+    private static final int PAGE_HEIGHT = 842;
+    private static final int PDF_QR_SIZE = 400;
+
+    public enum Format {
+        ZIP(".zip"),
+        PDF(".pdf");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public interface Callback {
+        void onProgress(int completed, int total);
+        void onComplete(File output, int count);
+        void onCancelled();
+        void onError(String error);
+    }
+
+    private final Format format;
+    private final QRCodeGenerator.Options options;
+    private final int workerCount;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    // Set once the output is complete; a cancel after that is ignored
+    private volatile boolean finished;
+
+    public QRBatchExporter(Format format, QRCodeGenerator.Options options) {
+        this.format = format;
+        this.options = options;
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Request cancellation. The export stops after the current code and the partial file is deleted.
+     * Ignored once the file has been written.
+     */
+    public void cancel() {
+        if (!finished) {
+            cancelled.set(true);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Export QR codes for the given courses into a file in outputDir.
+     */
+    public void run(List<YogaCourse> courses, File outputDir, Callback callback) {
+        if (courses == null || courses.isEmpty()) {
+            callback.onError("No courses to export");
+            return;
+        }
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            callback.onError("Could not create export directory");
+            return;
+        }
+
+        File output = new File(outputDir, "course_qr_codes_" + System.currentTimeMillis() + format.getExtension());
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+
+        // One bitmap and one pixel buffer, reused for every code
+        int size = options.getSize();
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.RGB_565);
+        int[] pixels = new int[size * size];
+
+        Sink sink = null;
+        boolean sinkClosed = false;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+            sink = format == Format.ZIP ? new ZipSink(out) : new PdfSink(out);
+
+            int total = courses.size();
+            int nextToSubmit = 0;
+            int completed = 0;
+            Deque<Future<BitMatrix>> inFlight = new ArrayDeque<>();
+
+            while (completed < total) {
+                if (cancelled.get()) {
+                    break;
+                }
+
+                // Keep a bounded window of encodes running ahead of the writer
+                while (nextToSubmit < total && inFlight.size() < workerCount * 2) {
+                    final String content = QRCodeGenerator.courseContent(courses.get(nextToSubmit));
+                    inFlight.addLast(workers.submit(() -> QRCodeGenerator.encode(content, options)));
+                    nextToSubmit++;
+                }
+
+                BitMatrix matrix = inFlight.removeFirst().get();
+                if (matrix.getWidth() == size && matrix.getHeight() == size) {
+                    QRCodeGenerator.render(matrix, bitmap, pixels);
+                    sink.write(courses.get(completed), bitmap);
+                } else {
+                    // ZXing grows the matrix when the content does not fit the requested size
+                    Bitmap oversized = Bitmap.createBitmap(matrix.getWidth(), matrix.getHeight(), Bitmap.Config.RGB_565);
+                    QRCodeGenerator.render(matrix, oversized, new int[matrix.getWidth() * matrix.getHeight()]);
+                    sink.write(courses.get(completed), oversized);
+                    oversized.recycle();
+                }
+
+                completed++;
+                callback.onProgress(completed, total);
+            }
+
+            if (!cancelled.get()) {
+                // finish() releases the sink even if it fails
+                sinkClosed = true;
+                sink.finish();
+                finished = true;
+            }
+        } catch (IOException | ExecutionException e) {
+            Log.e(TAG, "QR batch export failed", e);
+            output.delete();
+            callback.onError("QR export failed: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        } finally {
+            // Cancelled, failed or interrupted: release what the sink holds, e.g. the PdfDocument
+            if (sink != null && !sinkClosed) {
+                sink.abort();
+            }
+            workers.shutdownNow();
+            bitmap.recycle();
+        }
+
+        if (!finished) {
+            output.delete();
+            callback.onCancelled();
+        } else {
+            Log.d(TAG, "Exported " + courses.size() + " QR codes to " + output.getAbsolutePath());
+            callback.onComplete(output, courses.size());
+        }
+    }
+
+    private static String entryName(YogaCourse course) {
+        String type = course.getType() != null ? course.getType() : "course";
+        return "course_" + course.getId() + "_" + type.replaceAll("[^A-Za-z0-9]+", "_") + ".png";
+    }
+
+    private interface Sink {
+        void write(YogaCourse course, Bitmap bitmap) throws IOException;
+        void finish() throws IOException;
+        void abort();
+    }
+
+    private static class ZipSink implements Sink {
+        private final ZipOutputStream zip;
+
+        ZipSink(OutputStream out) {
+            zip = new ZipOutputStream(out);
+            // PNG is already compressed; deflating it again only costs time
+            zip.setLevel(0);
+        }
+
+        @Override
+        public void write(YogaCourse course, Bitmap bitmap) throws IOException {
+            zip.putNextEntry(new ZipEntry(entryName(course)));
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, zip);
+            zip.closeEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            zip.finish();
+        }
+
+        @Override
+        public void abort() {
+            // The file is deleted by the caller
+        }
+    }
+
+    private static class PdfSink implements Sink {
+        private final OutputStream out;
+        private final PdfDocument document = new PdfDocument();
+        private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private int pageNumber = 0;
+
+        PdfSink(OutputStream out) {
+            this.out = out;
+            textPaint.setColor(Color.BLACK);
+            textPaint.setTextSize(18f);
+        }
+
+        @Override
+        public void write(YogaCourse course, Bitmap bitmap) {
+            pageNumber++;
+            PdfDocument.Page page = document.startPage(
+                    new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, pageNumber).create());
+            Canvas canvas = page.getCanvas();
+
+            canvas.drawText(course.getType() + " - " + course.getDayOfWeek() + " " + course.getTime(),
+                    48f, 72f, textPaint);
+
+            int left = (PAGE_WIDTH - PDF_QR_SIZE) / 2;
+            int top = 120;
+            canvas.drawBitmap(bitmap, null,
+                    new android.graphics.Rect(left, top, left + PDF_QR_SIZE, top + PDF_QR_SIZE), null);
+
+            // Pages are drawn immediately, so the shared bitmap can be reused afterwards
+            document.finishPage(page);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                document.writeTo(out);
+            } finally {
+                document.close();
+            }
+        }
+
+        @Override
+        public void abort() {
+            document.close();
+        }
+    }
+}
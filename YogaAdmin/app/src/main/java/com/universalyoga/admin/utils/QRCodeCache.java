@@ -0,0 +1,198 @@
+package com.universalyoga.admin.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Two-level cache of rendered QR codes.
+ *
+ * Memory: an LruCache sized in bytes (Bitmap.getByteCount), so a few large
+ * codes evict as much as many small ones would.
+ * Disk: PNG files under cacheDir/qr_codes, trimmed oldest-first. The PNG is
+ * also what gets shared, so sharing does not re-encode the bitmap.
+ *
+ * Keys are a SHA-256 of the content plus the render options.
+ */
+public class QRCodeCache {
+
+    private static final String TAG = "QRCodeCache";
+    private static final String DIRECTORY = "qr_codes";
+    private static final long MAX_DISK_BYTES = 10L * 1024 * 1024;
+
+    private static volatile QRCodeCache INSTANCE;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File directory;
+
+    private QRCodeCache(Context context) {
+        // Use 1/16 of the app's heap for bitmaps; a 512px RGB_565 code is 512KB
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY);
+    }
+
+    public static QRCodeCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (QRCodeCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new QRCodeCache(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Cache key for a piece of content rendered with the given options.
+     */
+    public static String keyFor(String content, QRCodeGenerator.Options options) {
+        String raw = content + '\u0000' + options.getSize() + '\u0000' +
+                options.getErrorCorrection() + '\u0000' + options.getMargin();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(raw.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android; fall back to a weaker key just in case
+            return Integer.toHexString(raw.hashCode()) + "_" + raw.length();
+        }
+    }
+
+    /**
+     * Look up a bitmap in memory, then on disk. Disk hits are decoded and promoted to memory.
+     * Call from a background thread.
+     */
+    public Bitmap get(String key) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), decodeOptions);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Store a bitmap in memory and write it to disk as PNG.
+     * Call from a background thread.
+     */
+    public void put(String key, Bitmap bitmap) {
+        memoryCache.put(key, bitmap);
+        writePng(key, bitmap);
+    }
+
+    /**
+     * The cached PNG for a key, or null if it has not been written.
+     */
+    public File getPngFile(String key) {
+        File file = fileFor(key);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * The cached PNG for a key, writing it from the bitmap if missing.
+     */
+    public File getOrWritePngFile(String key, Bitmap bitmap) {
+        File file = getPngFile(key);
+        if (file == null) {
+            file = writePng(key, bitmap);
+        }
+        return file;
+    }
+
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + ".png");
+    }
+
+    private synchronized File writePng(String key, Bitmap bitmap) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create QR cache directory");
+            return null;
+        }
+
+        File file = fileFor(key);
+        File temp = new File(directory, key + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing QR code to cache", e);
+            temp.delete();
+            return null;
+        }
+
+        // Rename so readers never see a half-written file
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return null;
+        }
+
+        trimDisk();
+        return file;
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        // Oldest first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        Log.d(TAG, "Trimmed QR disk cache to " + total + " bytes");
+    }
+}
@@ -0,0 +1,172 @@
+package com.universalyoga.admin.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.SystemClock;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Encodes QR codes with ZXing and renders them into bitmaps.
+ * Encoding and rendering are blocking; call them from a background executor.
+ */
+public class QRCodeGenerator {
+
+    public static final int DEFAULT_SIZE = 512;
+    public static final int[] SIZE_OPTIONS = {256, 512, 1024};
+
+    /**
+     * Generation settings. Defaults match the previous fixed 512px output.
+     */
+    public static class Options {
+        private final int size;
+        private final ErrorCorrectionLevel errorCorrection;
+        private final int margin;
+
+        public Options(int size, ErrorCorrectionLevel errorCorrection, int margin) {
+            this.size = size;
+            this.errorCorrection = errorCorrection;
+            this.margin = margin;
+        }
+
+        public static Options defaults() {
+            // ZXing defaults: level L with a 4 module quiet zone
+            return new Options(DEFAULT_SIZE, ErrorCorrectionLevel.L, 4);
+        }
+
+        public Options withSize(int size) {
+            return new Options(size, errorCorrection, margin);
+        }
+
+        public Options withErrorCorrection(ErrorCorrectionLevel errorCorrection) {
+            return new Options(size, errorCorrection, margin);
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public ErrorCorrectionLevel getErrorCorrection() {
+            return errorCorrection;
+        }
+
+        public int getMargin() {
+            return margin;
+        }
+    }
+
+    /**
+     * A rendered QR code together with how long each step took.
+     */
+    public static class Result {
+        private final Bitmap bitmap;
+        private final Options options;
+        private final long encodeMillis;
+        private final long renderMillis;
+
+        Result(Bitmap bitmap, Options options, long encodeMillis, long renderMillis) {
+            this.bitmap = bitmap;
+            this.options = options;
+            this.encodeMillis = encodeMillis;
+            this.renderMillis = renderMillis;
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        public Options getOptions() {
+            return options;
+        }
+
+        public long getEncodeMillis() {
+            return encodeMillis;
+        }
+
+        public long getRenderMillis() {
+            return renderMillis;
+        }
+
+        public long getTotalMillis() {
+            return encodeMillis + renderMillis;
+        }
+    }
+
+    private QRCodeGenerator() {}
+
+    /**
+     * The text encoded in a course's QR code.
+     */
+    public static String courseContent(YogaCourse course) {
+        return String.format(
+                "Universal Yoga Course\n" +
+                        "Type: %s\n" +
+                        "Day: %s\n" +
+                        "Time: %s\n" +
+                        "Price: £%.2f\n" +
+                        "Duration: %d min\n" +
+                        "Capacity: %d",
+                course.getType(),
+                course.getDayOfWeek(),
+                course.getTime(),
+                course.getPrice(),
+                course.getDuration(),
+                course.getCapacity()
+        );
+    }
+
+    /**
+     * Encode content to a module matrix.
+     */
+    public static BitMatrix encode(String content, Options options) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, options.getErrorCorrection());
+        hints.put(EncodeHintType.MARGIN, options.getMargin());
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+
+        return new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE,
+                options.getSize(), options.getSize(), hints);
+    }
+
+    /**
+     * Encode and render in one step, timing both.
+     */
+    public static Result generate(String content, Options options) throws WriterException {
+        long start = SystemClock.elapsedRealtime();
+        BitMatrix matrix = encode(content, options);
+        long encoded = SystemClock.elapsedRealtime();
+
+        Bitmap bitmap = Bitmap.createBitmap(matrix.getWidth(), matrix.getHeight(), Bitmap.Config.RGB_565);
+        render(matrix, bitmap, new int[matrix.getWidth() * matrix.getHeight()]);
+        long rendered = SystemClock.elapsedRealtime();
+
+        return new Result(bitmap, options, encoded - start, rendered - encoded);
+    }
+
+    /**
+     * Fill a pixel buffer from the matrix and write it to the bitmap with a single setPixels call.
+     * The buffer must hold at least width * height ints; callers rendering many codes can reuse it.
+     */
+    public static void render(BitMatrix matrix, Bitmap target, int[] pixels) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[offset + x] = matrix.get(x, y) ? Color.BLACK : Color.WHITE;
+            }
+        }
+
+        target.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+}
@@ -0,0 +1,307 @@
+package com.universalyoga.admin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.ScheduleSlot;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates class instances for a course on every matching weekday in a date range.
+ *
+ * Occurrences are computed with epoch-day arithmetic: find the first date on
+ * the course's weekday, then step by seven. Teachers are assigned from a rota
+ * in turn, skip dates (holidays etc.) are left out, and dates the course is
+ * already scheduled on are not duplicated. Occurrences that would double-book
+ * a teacher are left out too. Everything is inserted in one transaction.
+ *
+ * generate() blocks; call it from a background executor. It can report to a
+ * ProgressTracker, and if the tracker is cancelled before the insert nothing is saved.
+ */
+public class ScheduleGenerator {
+
+    private static final String TAG = "ScheduleGenerator";
+
+    /** Longest range accepted in one request, roughly two years. */
+    public static final int MAX_RANGE_DAYS = 731;
+
+    /**
+     * What to generate for one course.
+     */
+    public static class Plan {
+        private final YogaCourse course;
+        private final String startDate;
+        private final String endDate;
+        private final List<String> teacherRota;
+        private final Set<String> skipDates;
+        private final String comments;
+
+        public Plan(YogaCourse course, String startDate, String endDate,
+                    List<String> teacherRota, Set<String> skipDates, String comments) {
+            this.course = course;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.teacherRota = teacherRota;
+            this.skipDates = skipDates != null ? skipDates : Collections.emptySet();
+            this.comments = comments != null ? comments : "";
+        }
+
+        public YogaCourse getCourse() {
+            return course;
+        }
+
+        public String getStartDate() {
+            return startDate;
+        }
+
+        public String getEndDate() {
+            return endDate;
+        }
+
+        public List<String> getTeacherRota() {
+            return teacherRota;
+        }
+
+        public Set<String> getSkipDates() {
+            return skipDates;
+        }
+
+        public String getComments() {
+            return comments;
+        }
+    }
+
+    public static class Result {
+        private final List<Schedule> created;
+        private final int duplicatesSkipped;
+        private final int datesSkipped;
+        private final int conflictsSkipped;
+        private final long elapsedMillis;
+        private final boolean cancelled;
+
+        Result(List<Schedule> created, int duplicatesSkipped, int datesSkipped, int conflictsSkipped,
+               long elapsedMillis, boolean cancelled) {
+            this.created = created;
+            this.duplicatesSkipped = duplicatesSkipped;
+            this.datesSkipped = datesSkipped;
+            this.conflictsSkipped = conflictsSkipped;
+            this.elapsedMillis = elapsedMillis;
+            this.cancelled = cancelled;
+        }
+
+        /** The inserted schedules, with their new ids. */
+        public List<Schedule> getCreated() {
+            return created;
+        }
+
+        /** Occurrences left out because the course was already scheduled that day. */
+        public int getDuplicatesSkipped() {
+            return duplicatesSkipped;
+        }
+
+        /** Occurrences left out because they were on a skip date. */
+        public int getDatesSkipped() {
+            return datesSkipped;
+        }
+
+        /** Occurrences left out because the teacher was already teaching at that time. */
+        public int getConflictsSkipped() {
+            return conflictsSkipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /** True if the run was cancelled; then nothing was inserted and getCreated() is empty. */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final ScheduleDao scheduleDao;
+
+    public ScheduleGenerator(ScheduleDao scheduleDao) {
+        this.scheduleDao = scheduleDao;
+    }
+
+    /**
+     * Check a plan. Returns an error message, or null if it can be generated.
+     */
+    public static String validate(Plan plan) {
+        if (plan.getCourse() == null) {
+            return "Course is required";
+        }
+        if (DateUtils.dayNameToIndex(plan.getCourse().getDayOfWeek()) == DateUtils.INVALID) {
+            return "Course has an invalid day of week";
+        }
+
+        String error = ValidationRules.validateScheduleDate(plan.getStartDate());
+        if (error != null) {
+            return "Start date: " + error;
+        }
+        error = ValidationRules.validateScheduleDate(plan.getEndDate());
+        if (error != null) {
+            return "End date: " + error;
+        }
+
+        long start = DateUtils.toEpochDay(DateUtils.parseIsoDate(plan.getStartDate()));
+        long end = DateUtils.toEpochDay(DateUtils.parseIsoDate(plan.getEndDate()));
+        if (end < start) {
+            return "End date must be on or after start date";
+        }
+        if (end - start >= MAX_RANGE_DAYS) {
+            return "Date range cannot exceed " + MAX_RANGE_DAYS + " days";
+        }
+
+        if (plan.getTeacherRota() == null || plan.getTeacherRota().isEmpty()) {
+            return "At least one teacher is required";
+        }
+        for (String teacher : plan.getTeacherRota()) {
+            error = ValidationRules.validateTeacher(teacher);
+            if (error != null) {
+                return error;
+            }
+        }
+
+        for (String skipDate : plan.getSkipDates()) {
+            if (!DateUtils.isValidIsoDate(skipDate)) {
+                return "Invalid skip date: " + skipDate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Every date (yyyy-MM-dd) on the given weekday between two dates, inclusive.
+     */
+    public static List<String> occurrences(String dayOfWeek, String startDate, String endDate) {
+        int dayIndex = DateUtils.dayNameToIndex(dayOfWeek);
+        int start = DateUtils.parseIsoDate(startDate);
+        int end = DateUtils.parseIsoDate(endDate);
+        if (dayIndex == DateUtils.INVALID || start == DateUtils.INVALID || end == DateUtils.INVALID) {
+            return Collections.emptyList();
+        }
+
+        long first = DateUtils.toEpochDay(start);
+        long last = DateUtils.toEpochDay(end);
+        // Advance to the first date on the course's weekday
+        first += (dayIndex - DateUtils.dayOfWeekIndex(first) + 7) % 7;
+
+        List<String> dates = new ArrayList<>();
+        for (long day = first; day <= last; day += 7) {
+            dates.add(DateUtils.formatIsoDate(DateUtils.fromEpochDay(day)));
+        }
+        return dates;
+    }
+
+    public Result generate(Plan plan) {
+        return generate(Collections.singletonList(plan));
+    }
+
+    public Result generate(List<Plan> plans) {
+        return generate(plans, new ProgressTracker(null));
+    }
+
+    /**
+     * Generate and insert schedules for several plans in a single transaction.
+     *
+     * @param tracker told about each date checked; cancelling it before the insert saves nothing
+     * @throws IllegalArgumentException if a plan does not pass validate()
+     */
+    public Result generate(List<Plan> plans, ProgressTracker tracker) {
+        long startTime = SystemClock.elapsedRealtime();
+        List<Schedule> toInsert = new ArrayList<>();
+        int duplicatesSkipped = 0;
+        int datesSkipped = 0;
+        int conflictsSkipped = 0;
+
+        String fromDate = null;
+        String toDate = null;
+        List<List<String>> dates = new ArrayList<>(plans.size());
+        int dateCount = 0;
+        for (Plan plan : plans) {
+            String error = validate(plan);
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            // ISO dates compare correctly as strings
+            if (fromDate == null || plan.getStartDate().compareTo(fromDate) < 0) fromDate = plan.getStartDate();
+            if (toDate == null || plan.getEndDate().compareTo(toDate) > 0) toDate = plan.getEndDate();
+            List<String> planDates = occurrences(plan.getCourse().getDayOfWeek(), plan.getStartDate(), plan.getEndDate());
+            dates.add(planDates);
+            dateCount += planDates.size();
+        }
+        if (fromDate == null) {
+            return new Result(toInsert, 0, 0, 0, 0, false);
+        }
+
+        tracker.beginPhase("Planning classes", dateCount);
+
+        // Existing bookings in the range; generated slots are added as we go so plans cannot clash with each other
+        TeacherConflictIndex conflicts = TeacherConflictIndex.forRange(scheduleDao, fromDate, toDate);
+
+        for (int i = 0; i < plans.size(); i++) {
+            if (tracker.isCancelled()) {
+                return new Result(Collections.emptyList(), 0, 0, 0,
+                        SystemClock.elapsedRealtime() - startTime, true);
+            }
+            Plan plan = plans.get(i);
+            YogaCourse course = plan.getCourse();
+            int courseId = course.getId();
+            int startMinute = DateUtils.parseTimeToMinutes(course.getTime());
+            Set<String> existing = scheduleDao.getScheduleDatesForCourse(
+                    courseId, plan.getStartDate(), plan.getEndDate());
+            List<String> rota = plan.getTeacherRota();
+            int turn = 0;
+
+            for (String date : dates.get(i)) {
+                tracker.advance(1);
+                if (plan.getSkipDates().contains(date)) {
+                    datesSkipped++;
+                    continue;
+                }
+                // The rota follows the calendar, so re-running a range keeps the same teacher on each date
+                String teacher = rota.get(turn++ % rota.size()).trim();
+                if (existing.contains(date)) {
+                    duplicatesSkipped++;
+                    continue;
+                }
+                if (startMinute != DateUtils.INVALID) {
+                    ScheduleSlot slot = new ScheduleSlot(0, courseId, date, teacher,
+                            startMinute, startMinute + course.getDuration());
+                    if (conflicts.conflicts(slot)) {
+                        conflictsSkipped++;
+                        continue;
+                    }
+                    conflicts.add(slot);
+                }
+                toInsert.add(new Schedule(courseId, date, teacher, plan.getComments()));
+            }
+        }
+
+        if (tracker.isCancelled()) {
+            return new Result(Collections.emptyList(), 0, 0, 0,
+                    SystemClock.elapsedRealtime() - startTime, true);
+        }
+        if (!toInsert.isEmpty()) {
+            // One transaction, so the save cannot be cancelled part way
+            tracker.beginPhase("Saving classes", toInsert.size());
+            scheduleDao.insertAll(toInsert);
+            tracker.setCompleted(toInsert.size());
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        Log.d(TAG, "Generated " + toInsert.size() + " schedules in " + elapsed + "ms (" +
+                duplicatesSkipped + " duplicates, " + datesSkipped + " skip dates, " +
+                conflictsSkipped + " teacher conflicts)");
+        return new Result(toInsert, duplicatesSkipped, datesSkipped, conflictsSkipped, elapsed, false);
+    }
+}
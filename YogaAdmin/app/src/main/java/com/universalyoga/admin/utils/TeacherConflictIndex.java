@@ -0,0 +1,223 @@
+package com.universalyoga.admin.utils;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.entity.ScheduleSlot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Detects teachers booked for two overlapping classes on the same day.
+ *
+ * A schedule only has a date and a teacher; the time comes from its course
+ * (start time plus duration). The index keeps, per teacher and day, a
+ * TreeMap of disjoint busy blocks keyed by start minute. Overlapping slots
+ * are merged into one block, so a conflict check is a single floorEntry
+ * lookup: O(log n) in the number of blocks that day.
+ *
+ * Teachers are matched trimmed and case-insensitively, by teacherKey() in Java
+ * rather than in SQL, where LOWER() only folds ASCII letters.
+ */
+public class TeacherConflictIndex {
+
+    /**
+     * Two slots for the same teacher that overlap.
+     */
+    public static class Conflict {
+        private final ScheduleSlot first;
+        private final ScheduleSlot second;
+
+        public Conflict(ScheduleSlot first, ScheduleSlot second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public ScheduleSlot getFirst() {
+            return first;
+        }
+
+        public ScheduleSlot getSecond() {
+            return second;
+        }
+
+        public String describe() {
+            return first.getTeacher() + " on " + first.getDate() + ": " +
+                    DateUtils.formatMinutes(first.getStartMinute()) + "-" + DateUtils.formatMinutes(first.getEndMinute()) +
+                    " overlaps " +
+                    DateUtils.formatMinutes(second.getStartMinute()) + "-" + DateUtils.formatMinutes(second.getEndMinute());
+        }
+    }
+
+    /** A run of overlapping slots covering [start, end). */
+    private static class Block {
+        final int start;
+        int end;
+        final List<ScheduleSlot> slots = new ArrayList<>(2);
+
+        Block(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // teacher key -> date -> start minute -> block
+    private final Map<String, Map<String, TreeMap<Integer, Block>>> index = new HashMap<>();
+
+    /**
+     * Index every slot in a date range, e.g. before checking a batch of new schedules.
+     */
+    public static TeacherConflictIndex forRange(ScheduleDao dao, String fromDate, String toDate) {
+        TeacherConflictIndex conflictIndex = new TeacherConflictIndex();
+        dao.forEachSlotInRange(fromDate, toDate, slot -> {
+            conflictIndex.add(slot);
+            return true;
+        });
+        return conflictIndex;
+    }
+
+    /**
+     * Index one teacher's slots on one day, for checking a single save.
+     */
+    public static TeacherConflictIndex forTeacherOnDate(ScheduleDao dao, String teacher, String date) {
+        TeacherConflictIndex conflictIndex = new TeacherConflictIndex();
+        String key = teacherKey(teacher);
+        for (ScheduleSlot slot : dao.getSlotsOnDate(date)) {
+            if (teacherKey(slot.getTeacher()).equals(key)) {
+                conflictIndex.add(slot);
+            }
+        }
+        return conflictIndex;
+    }
+
+    static String teacherKey(String teacher) {
+        return teacher != null ? teacher.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Add a slot, merging it with any blocks it overlaps.
+     */
+    public void add(ScheduleSlot slot) {
+        TreeMap<Integer, Block> blocks = blocksFor(slot.getTeacher(), slot.getDate(), true);
+
+        Block merged = new Block(slot.getStartMinute(), slot.getEndMinute());
+        merged.slots.add(slot);
+
+        // Absorb the block that starts before this slot if it reaches into it
+        Map.Entry<Integer, Block> before = blocks.floorEntry(slot.getStartMinute());
+        if (before != null && before.getValue().end > slot.getStartMinute()) {
+            Block absorbed = blocks.remove(before.getKey());
+            merged = mergeInto(absorbed, merged);
+        }
+
+        // Absorb every block that starts inside the merged range
+        Iterator<Block> after = blocks.subMap(merged.start, true, merged.end, false).values().iterator();
+        while (after.hasNext()) {
+            Block absorbed = after.next();
+            after.remove();
+            merged = mergeInto(merged, absorbed);
+        }
+
+        blocks.put(merged.start, merged);
+    }
+
+    /**
+     * Whether the slot would overlap anything already indexed for its teacher and day.
+     * Slots with the given schedule id are ignored, so an edited schedule does not conflict with itself.
+     */
+    public boolean conflicts(ScheduleSlot slot) {
+        return !findConflicts(slot).isEmpty();
+    }
+
+    /**
+     * The indexed slots the given slot would overlap.
+     */
+    public List<ScheduleSlot> findConflicts(ScheduleSlot slot) {
+        List<ScheduleSlot> conflicts = new ArrayList<>();
+        TreeMap<Integer, Block> blocks = blocksFor(slot.getTeacher(), slot.getDate(), false);
+        if (blocks == null) {
+            return conflicts;
+        }
+
+        // Blocks are disjoint, so only those starting before the slot ends can overlap,
+        // and walking back we can stop at the first one that ends before the slot starts
+        for (Block block : blocks.headMap(slot.getEndMinute(), false).descendingMap().values()) {
+            if (block.end <= slot.getStartMinute()) {
+                break;
+            }
+            for (ScheduleSlot existing : block.slots) {
+                if (existing.getScheduleId() != slot.getScheduleId() && existing.overlaps(slot)) {
+                    conflicts.add(existing);
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Find every double booking in the database in one pass.
+     *
+     * Slots arrive by day and sorted by start, so a sweep that tracks each teacher's
+     * still-running slots that day finds each overlapping pair.
+     */
+    public static List<Conflict> scanAll(ScheduleDao dao) {
+        List<Conflict> conflicts = new ArrayList<>();
+        // teacher key -> slots still running, for the current day
+        Map<String, List<ScheduleSlot>> runningByTeacher = new HashMap<>();
+        String[] day = new String[1];
+
+        dao.forEachSlot(slot -> {
+            if (!slot.getDate().equals(day[0])) {
+                day[0] = slot.getDate();
+                runningByTeacher.clear();
+            }
+            List<ScheduleSlot> running = runningByTeacher.get(teacherKey(slot.getTeacher()));
+            if (running == null) {
+                running = new ArrayList<>();
+                runningByTeacher.put(teacherKey(slot.getTeacher()), running);
+            }
+
+            // Drop slots that finished before this one starts
+            Iterator<ScheduleSlot> it = running.iterator();
+            while (it.hasNext()) {
+                if (it.next().getEndMinute() <= slot.getStartMinute()) {
+                    it.remove();
+                }
+            }
+            for (ScheduleSlot other : running) {
+                conflicts.add(new Conflict(other, slot));
+            }
+            running.add(slot);
+            return true;
+        });
+        return conflicts;
+    }
+
+    private TreeMap<Integer, Block> blocksFor(String teacher, String date, boolean create) {
+        String key = teacherKey(teacher);
+        Map<String, TreeMap<Integer, Block>> byDate = index.get(key);
+        if (byDate == null) {
+            if (!create) return null;
+            byDate = new HashMap<>();
+            index.put(key, byDate);
+        }
+        TreeMap<Integer, Block> blocks = byDate.get(date);
+        if (blocks == null && create) {
+            blocks = new TreeMap<>();
+            byDate.put(date, blocks);
+        }
+        return blocks;
+    }
+
+    /** Merge two overlapping blocks; the first must start no later than the second. */
+    private static Block mergeInto(Block first, Block second) {
+        Block merged = new Block(first.start, Math.max(first.end, second.end));
+        merged.slots.addAll(first.slots);
+        merged.slots.addAll(second.slots);
+        return merged;
+    }
+}
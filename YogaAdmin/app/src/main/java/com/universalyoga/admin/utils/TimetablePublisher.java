@@ -0,0 +1,197 @@
+package com.universalyoga.admin.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.universalyoga.admin.data.dao.ScheduleDao;
+import com.universalyoga.admin.data.dao.YogaCourseDao;
+import com.universalyoga.admin.data.entity.Schedule;
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the customer-facing timetable: one document per course with its
+ * upcoming classes embedded, so the customer app can show the whole timetable
+ * with one read per course instead of reading every course and schedule.
+ *
+ * Publishing is incremental. A fingerprint of each document is kept after it
+ * is published; computeChanges() only returns documents whose content differs
+ * (including classes dropping out of the upcoming window) and ids of courses
+ * that no longer exist.
+ *
+ * Booking counts are left out: customers book between publishes, so they
+ * would always be stale here.
+ *
+ * computeChanges() reads the database; call it from a background executor.
+ */
+public class TimetablePublisher {
+
+    private static final String TAG = "TimetablePublisher";
+    private static final String PREFS_NAME = "timetable_publisher";
+
+    /** Upcoming classes embedded per course, about six months of a weekly class. */
+    public static final int MAX_UPCOMING = 26;
+
+    /**
+     * Documents to write and delete to bring the published timetable up to date.
+     */
+    public static class Changes {
+        private final Map<String, Map<String, Object>> documents = new LinkedHashMap<>();
+        private final Map<String, String> fingerprints = new HashMap<>();
+        private final Set<String> removedIds = new HashSet<>();
+
+        /** Document id (course uid) -> content, for new and changed courses. */
+        public Map<String, Map<String, Object>> getDocuments() {
+            return documents;
+        }
+
+        /** Ids of published documents whose course has been deleted. */
+        public Set<String> getRemovedIds() {
+            return removedIds;
+        }
+
+        public boolean isEmpty() {
+            return documents.isEmpty() && removedIds.isEmpty();
+        }
+    }
+
+    private final YogaCourseDao courseDao;
+    private final ScheduleDao scheduleDao;
+    private final SharedPreferences prefs;
+
+    public TimetablePublisher(Context context, YogaCourseDao courseDao, ScheduleDao scheduleDao) {
+        this.courseDao = courseDao;
+        this.scheduleDao = scheduleDao;
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Work out which timetable documents differ from what was last published.
+     *
+     * @param today yyyy-MM-dd; classes before this date are not embedded
+     */
+    public Changes computeChanges(String today) {
+        Map<Integer, List<Schedule>> upcoming = new HashMap<>();
+        scheduleDao.forEachScheduleFrom(today, schedule -> {
+            List<Schedule> forCourse = upcoming.get(schedule.getCourseId());
+            if (forCourse == null) {
+                forCourse = new ArrayList<>();
+                upcoming.put(schedule.getCourseId(), forCourse);
+            }
+            // Rows arrive in date order per course, so the first MAX_UPCOMING are the soonest
+            if (forCourse.size() < MAX_UPCOMING) {
+                forCourse.add(schedule);
+            }
+            return true;
+        });
+
+        Map<String, ?> published = prefs.getAll();
+        Changes changes = new Changes();
+        Set<String> currentIds = new HashSet<>();
+
+        for (YogaCourse course : courseDao.getAllCourses()) {
+            String id = course.getUid();
+            currentIds.add(id);
+
+            List<Schedule> schedules = upcoming.get(course.getId());
+            Map<String, Object> document = buildDocument(course, schedules != null ? schedules : new ArrayList<>());
+            String fingerprint = fingerprint(document);
+            if (!fingerprint.equals(published.get(id))) {
+                changes.documents.put(id, document);
+                changes.fingerprints.put(id, fingerprint);
+            }
+        }
+
+        for (String id : published.keySet()) {
+            if (!currentIds.contains(id)) {
+                changes.removedIds.add(id);
+            }
+        }
+
+        Log.d(TAG, currentIds.size() + " courses, " + changes.documents.size() + " changed, " +
+                changes.removedIds.size() + " removed");
+        return changes;
+    }
+
+    /**
+     * Record that a set of changes has been written, so they are not sent again.
+     */
+    public void markPublished(Changes changes) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, String> entry : changes.fingerprints.entrySet()) {
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        for (String id : changes.removedIds) {
+            editor.remove(id);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Forget what was published, e.g. after the cloud data has been cleared.
+     * The next computeChanges() then returns every course.
+     */
+    public void forgetPublished() {
+        prefs.edit().clear().apply();
+    }
+
+    /**
+     * The timetable document for a course. Field order is fixed so the fingerprint is stable.
+     */
+    static Map<String, Object> buildDocument(YogaCourse course, List<Schedule> upcoming) {
+        int startMinute = DateUtils.parseTimeToMinutes(course.getTime());
+
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("id", course.getUid());
+        document.put("type", course.getType());
+        document.put("dayOfWeek", course.getDayOfWeek());
+        // Numeric day/start let the customer app order with a single query
+        document.put("dayOrdinal", DateUtils.dayNameToIndex(course.getDayOfWeek()));
+        document.put("time", course.getTime());
+        document.put("startMinute", startMinute);
+        document.put("duration", course.getDuration());
+        document.put("capacity", course.getCapacity());
+        document.put("price", course.getPrice());
+        document.put("description", course.getDescription());
+
+        List<Map<String, Object>> classes = new ArrayList<>(upcoming.size());
+        for (Schedule schedule : upcoming) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            // Customers book against this id, so it must be the same whichever device published
+            entry.put("id", schedule.getUid());
+            entry.put("date", schedule.getDate());
+            entry.put("teacher", schedule.getTeacher());
+            entry.put("comments", schedule.getComments());
+            classes.add(entry);
+        }
+        document.put("nextDate", upcoming.isEmpty() ? null : upcoming.get(0).getDate());
+        document.put("upcomingClasses", classes);
+        return document;
+    }
+
+    static String fingerprint(Map<String, Object> document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(document.toString().getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1; fall back to the content itself just in case
+            return document.toString();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.universalyoga.admin.utils;
+
+import com.universalyoga.admin.data.entity.YogaCourse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Finds courses whose weekly time slots overlap in the studio.
+ *
+ * findOverlaps() is a sweep line: courses are sorted by (day, start) and
+ * walked once while a min-heap keyed on end time holds the classes still
+ * running. That is O(n log n) plus the number of overlapping pairs, instead
+ * of comparing every pair.
+ */
+public final class TimetableValidator {
+
+    /**
+     * Two courses that share part of a time slot.
+     */
+    public static class Overlap {
+        private final YogaCourse first;
+        private final YogaCourse second;
+        private final int overlapMinutes;
+
+        Overlap(YogaCourse first, YogaCourse second, int overlapMinutes) {
+            this.first = first;
+            this.second = second;
+            this.overlapMinutes = overlapMinutes;
+        }
+
+        public YogaCourse getFirst() {
+            return first;
+        }
+
+        public YogaCourse getSecond() {
+            return second;
+        }
+
+        public int getOverlapMinutes() {
+            return overlapMinutes;
+        }
+
+        public String describe() {
+            return first.getDayOfWeek() + ": " + first.getType() + " " + first.getTime() +
+                    " overlaps " + second.getType() + " " + second.getTime() +
+                    " by " + overlapMinutes + " min";
+        }
+    }
+
+    /**
+     * Timetable-wide summary: overlaps, unusable time slots and how full each day is.
+     */
+    public static class HealthReport {
+        private final int totalCourses;
+        private final List<Overlap> overlaps;
+        private final List<YogaCourse> invalidSlots;
+        private final int[] coursesPerDay;
+        private final int[] busyMinutesPerDay;
+
+        HealthReport(int totalCourses, List<Overlap> overlaps, List<YogaCourse> invalidSlots,
+                     int[] coursesPerDay, int[] busyMinutesPerDay) {
+            this.totalCourses = totalCourses;
+            this.overlaps = overlaps;
+            this.invalidSlots = invalidSlots;
+            this.coursesPerDay = coursesPerDay;
+            this.busyMinutesPerDay = busyMinutesPerDay;
+        }
+
+        public int getTotalCourses() {
+            return totalCourses;
+        }
+
+        public List<Overlap> getOverlaps() {
+            return overlaps;
+        }
+
+        /** Courses with an unrecognised day or time, which cannot be checked. */
+        public List<YogaCourse> getInvalidSlots() {
+            return invalidSlots;
+        }
+
+        /** Course count per day, Monday first. */
+        public int[] getCoursesPerDay() {
+            return coursesPerDay;
+        }
+
+        /** Minutes the studio is in use per day (overlaps counted once), Monday first. */
+        public int[] getBusyMinutesPerDay() {
+            return busyMinutesPerDay;
+        }
+
+        public boolean isHealthy() {
+            return overlaps.isEmpty() && invalidSlots.isEmpty();
+        }
+
+        public String toText() {
+            StringBuilder text = new StringBuilder();
+            text.append(totalCourses).append(" courses, ")
+                    .append(overlaps.size()).append(" overlap(s)");
+            if (!invalidSlots.isEmpty()) {
+                text.append(", ").append(invalidSlots.size()).append(" with an invalid day/time");
+            }
+            text.append("\n\n");
+
+            for (int day = 0; day < DateUtils.DAY_NAMES.length; day++) {
+                text.append(String.format(Locale.US, "%-10s %2d classes, %d h %02d min in use\n",
+                        DateUtils.DAY_NAMES[day], coursesPerDay[day],
+                        busyMinutesPerDay[day] / 60, busyMinutesPerDay[day] % 60));
+            }
+
+            if (!overlaps.isEmpty()) {
+                text.append("\nOverlaps:\n");
+                for (Overlap overlap : overlaps) {
+                    text.append("• ").append(overlap.describe()).append('\n');
+                }
+            }
+            for (YogaCourse course : invalidSlots) {
+                text.append("• Invalid slot: ").append(course.getType()).append(" (")
+                        .append(course.getDayOfWeek()).append(' ').append(course.getTime()).append(")\n");
+            }
+            return text.toString();
+        }
+    }
+
+    /** A course with its parsed slot. */
+    private static class Slot {
+        final YogaCourse course;
+        final int day;
+        final int start;
+        final int end;
+
+        Slot(YogaCourse course, int day, int start, int end) {
+            this.course = course;
+            this.day = day;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private TimetableValidator() {}
+
+    /**
+     * Every pair of courses whose slots overlap, ordered by day and start time.
+     */
+    public static List<Overlap> findOverlaps(List<YogaCourse> courses) {
+        return sweep(toSlots(courses, null), null, null);
+    }
+
+    /**
+     * Scan the whole timetable and summarise it.
+     */
+    public static HealthReport buildReport(List<YogaCourse> courses) {
+        List<YogaCourse> invalid = new ArrayList<>();
+        List<Slot> slots = toSlots(courses, invalid);
+        int[] coursesPerDay = new int[DateUtils.DAY_NAMES.length];
+        int[] busyMinutesPerDay = new int[DateUtils.DAY_NAMES.length];
+        List<Overlap> overlaps = sweep(slots, coursesPerDay, busyMinutesPerDay);
+        return new HealthReport(courses.size(), overlaps, invalid, coursesPerDay, busyMinutesPerDay);
+    }
+
+    private static List<Slot> toSlots(List<YogaCourse> courses, List<YogaCourse> invalid) {
+        List<Slot> slots = new ArrayList<>(courses.size());
+        for (YogaCourse course : courses) {
+            int day = DateUtils.dayNameToIndex(course.getDayOfWeek());
+            int start = DateUtils.parseTimeToMinutes(course.getTime());
+            if (day == DateUtils.INVALID || start == DateUtils.INVALID) {
+                if (invalid != null) {
+                    invalid.add(course);
+                }
+                continue;
+            }
+            slots.add(new Slot(course, day, start, start + course.getDuration()));
+        }
+
+        Collections.sort(slots, (a, b) -> a.day != b.day ? Integer.compare(a.day, b.day) : Integer.compare(a.start, b.start));
+        return slots;
+    }
+
+    /**
+     * Sweep slots sorted by (day, start). Optionally fills per-day counts and busy minutes.
+     */
+    private static List<Overlap> sweep(List<Slot> slots, int[] coursesPerDay, int[] busyMinutesPerDay) {
+        List<Overlap> overlaps = new ArrayList<>();
+        PriorityQueue<Slot> running = new PriorityQueue<>(11, (a, b) -> Integer.compare(a.end, b.end));
+        int currentDay = -1;
+        // Union of busy time for the current day, tracked as one open interval
+        int busyStart = 0;
+        int busyEnd = 0;
+
+        for (Slot slot : slots) {
+            if (slot.day != currentDay) {
+                if (currentDay >= 0 && busyMinutesPerDay != null) {
+                    busyMinutesPerDay[currentDay] += busyEnd - busyStart;
+                }
+                running.clear();
+                currentDay = slot.day;
+                busyStart = slot.start;
+                busyEnd = slot.start;
+            }
+
+            // Classes that finished by the time this one starts no longer overlap anything later
+            while (!running.isEmpty() && running.peek().end <= slot.start) {
+                running.poll();
+            }
+            for (Slot other : running) {
+                overlaps.add(new Overlap(other.course, slot.course,
+                        Math.min(other.end, slot.end) - slot.start));
+            }
+            running.add(slot);
+
+            if (coursesPerDay != null) {
+                coursesPerDay[slot.day]++;
+            }
+            if (slot.start >= busyEnd) {
+                if (busyMinutesPerDay != null) {
+                    busyMinutesPerDay[currentDay] += busyEnd - busyStart;
+                }
+                busyStart = slot.start;
+                busyEnd = slot.end;
+            } else {
+                busyEnd = Math.max(busyEnd, slot.end);
+            }
+        }
+        if (currentDay >= 0 && busyMinutesPerDay != null) {
+            busyMinutesPerDay[currentDay] += busyEnd - busyStart;
+        }
+
+        // Heap iteration order is arbitrary; report in timetable order
+        Collections.sort(overlaps, (a, b) -> {
+            int dayA = DateUtils.dayNameToIndex(a.getFirst().getDayOfWeek());
+            int dayB = DateUtils.dayNameToIndex(b.getFirst().getDayOfWeek());
+            if (dayA != dayB) return Integer.compare(dayA, dayB);
+            return a.getSecond().getTime().compareTo(b.getSecond().getTime());
+        });
+        return overlaps;
+    }
+}
@@ -0,0 +1,54 @@
+package com.universalyoga.admin.utils;
+
+import java.security.SecureRandom;
+
+/**
+ * ULIDs: 26-character ids that are unique across devices without any coordination
+ * and sort in creation order.
+ *
+ * An id is 48 bits of epoch millis followed by 80 random bits, in Crockford base32.
+ * Ids made in the same millisecond on one device take the previous random part plus
+ * one, so they still sort in the order they were made, even if the clock steps back.
+ */
+public final class Ulid {
+
+    /** Length of every id. */
+    public static final int LENGTH = 26;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Last id made: its time and its 80 random bits, 16 high and 64 low
+    private static long lastTime = -1;
+    private static long lastRandomHigh;
+    private static long lastRandomLow;
+
+    private Ulid() {}
+
+    public static String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    static synchronized String next(long time) {
+        if (time > lastTime) {
+            lastTime = time;
+            lastRandomHigh = RANDOM.nextInt() & 0xFFFF;
+            lastRandomLow = RANDOM.nextLong();
+        } else if (++lastRandomLow == 0) {
+            // Carry into the high bits; the 80 bits running out in one millisecond is not a concern
+            lastRandomHigh = (lastRandomHigh + 1) & 0xFFFF;
+        }
+        return encode((lastTime << 16) | lastRandomHigh, lastRandomLow);
+    }
+
+    // 128 bits as 26 base32 digits, most significant first; the top digit only holds 3 bits
+    private static String encode(long high, long low) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = (low >>> 5) | (high << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+}
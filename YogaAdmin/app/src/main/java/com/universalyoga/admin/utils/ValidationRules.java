@@ -0,0 +1,128 @@
+package com.universalyoga.admin.utils;
+
+import android.text.TextUtils;
+
+/**
+ * Field rules for courses and schedules, shared by the add/edit screens and the bulk importer.
+ * Each method returns an error message, or null if the value is valid.
+ */
+public final class ValidationRules {
+
+    public static final int MAX_CAPACITY = 100;
+    public static final int MAX_DURATION = 300;
+    public static final double MAX_PRICE = 1000;
+    public static final int MAX_DESCRIPTION_LENGTH = 500;
+    public static final int MIN_TEACHER_LENGTH = 2;
+
+    private ValidationRules() {}
+
+    // ---- Course fields ----
+
+    public static String validateCapacity(String capacityStr) {
+        if (TextUtils.isEmpty(capacityStr)) {
+            return "Capacity is required";
+        }
+        try {
+            int capacity = Integer.parseInt(capacityStr);
+            if (capacity <= 0) {
+                return "Capacity must be greater than 0";
+            } else if (capacity > MAX_CAPACITY) {
+                return "Capacity cannot exceed " + MAX_CAPACITY;
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return "Please enter a valid number";
+        }
+    }
+
+    public static String validateDuration(String durationStr) {
+        if (TextUtils.isEmpty(durationStr)) {
+            return "Duration is required";
+        }
+        try {
+            int duration = Integer.parseInt(durationStr);
+            if (duration <= 0) {
+                return "Duration must be greater than 0";
+            } else if (duration > MAX_DURATION) {
+                return "Duration cannot exceed " + MAX_DURATION + " minutes";
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return "Please enter a valid number";
+        }
+    }
+
+    public static String validatePrice(String priceStr) {
+        if (TextUtils.isEmpty(priceStr)) {
+            return "Price is required";
+        }
+        try {
+            double price = Double.parseDouble(priceStr);
+            if (price <= 0) {
+                return "Price must be greater than £0";
+            } else if (price > MAX_PRICE) {
+                return "Price cannot exceed £" + (int) MAX_PRICE;
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return "Please enter a valid price (e.g., 20.50)";
+        }
+    }
+
+    public static String validateDescription(String description) {
+        int length = description != null ? description.length() : 0;
+        if (length > MAX_DESCRIPTION_LENGTH) {
+            return "Description too long (" + length + "/" + MAX_DESCRIPTION_LENGTH + ")";
+        }
+        return null;
+    }
+
+    public static String validateDayOfWeek(String dayOfWeek) {
+        if (TextUtils.isEmpty(dayOfWeek)) {
+            return "Day of week is required";
+        }
+        if (DateUtils.dayNameToIndex(dayOfWeek) == DateUtils.INVALID) {
+            return "Invalid day of week: " + dayOfWeek;
+        }
+        return null;
+    }
+
+    public static String validateTime(String time) {
+        if (TextUtils.isEmpty(time)) {
+            return "Time is required";
+        }
+        if (!DateUtils.isValidTime(time)) {
+            return "Invalid time format (HH:mm)";
+        }
+        return null;
+    }
+
+    public static String validateType(String type) {
+        if (TextUtils.isEmpty(type) || type.trim().isEmpty()) {
+            return "Course type is required";
+        }
+        return null;
+    }
+
+    // ---- Schedule fields ----
+
+    public static String validateScheduleDate(String dateStr) {
+        if (TextUtils.isEmpty(dateStr)) {
+            return "Date is required";
+        }
+        if (!DateUtils.isValidIsoDate(dateStr)) {
+            return "Invalid date format (yyyy-MM-dd)";
+        }
+        return null;
+    }
+
+    public static String validateTeacher(String teacherStr) {
+        if (TextUtils.isEmpty(teacherStr)) {
+            return "Teacher name is required";
+        }
+        if (teacherStr.length() < MIN_TEACHER_LENGTH) {
+            return "Teacher name must be at least " + MIN_TEACHER_LENGTH + " characters";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,320 @@
+package com.universalyoga.admin.sync;
+
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * One admin tablet for tests: a LocalStore in memory that records edits the way the
+ * DAOs do. Each edit bumps the row version and logs the field with the edit time,
+ * and each delete leaves a tombstone. The device clock is set by the test.
+ *
+ * Syncs fetch small pages, so every sync of more than a few rows is paged, and
+ * checkpoints outlive the engine, so restart() can carry on from them. failNextApply
+ * makes the next apply() throw, as a full disk would.
+ *
+ * Also the helpers the sync tests share: syncing to the end of the remote store's queue,
+ * picking a row at random and the fields of a new row.
+ */
+class FakeDevice implements LocalStore {
+
+    private static class Row {
+        final Map<String, Object> values = new HashMap<>();
+        long version = 1;
+    }
+
+    // A logged change or tombstone: its place in the log and the edit time
+    private static class Change {
+        final long seq;
+        final long time;
+
+        Change(long seq, long time) {
+            this.seq = seq;
+            this.time = time;
+        }
+    }
+
+    // What acknowledge() clears: changes and tombstones up to seq, or tombstones only
+    private static class Marker {
+        final long seq;
+        final boolean deletesOnly;
+
+        Marker(long seq, boolean deletesOnly) {
+            this.seq = seq;
+            this.deletesOnly = deletesOnly;
+        }
+    }
+
+    static final int PAGE_SIZE = 3;
+
+    final String deviceId;
+    SyncEngine engine;
+    long now;
+    RuntimeException failNextApply;
+
+    private final Map<String, Map<String, Row>> tables = new HashMap<>();
+    private final Map<String, Map<String, Map<String, Change>>> changes = new HashMap<>();
+    private final Map<String, Map<String, Change>> tombstones = new HashMap<>();
+    private final Map<String, SyncCheckpoint> checkpoints = new HashMap<>();
+    private long seq;
+
+    FakeDevice(String deviceId, RemoteStore remote) {
+        this.deviceId = deviceId;
+        restart(remote, PAGE_SIZE);
+    }
+
+    /** A new engine, as after the app was killed; the data and checkpoints stay. */
+    void restart(RemoteStore remote, int pageSize) {
+        engine = new SyncEngine(this, remote, Runnable::run, pageSize);
+    }
+
+    /** Clock the next edit on this device gets. Every edit moves the clock on, so no two share one. */
+    String nextClock() {
+        return SyncRecord.clock(now, deviceId);
+    }
+
+    void create(String collection, String id, Map<String, Object> values) {
+        Row row = new Row();
+        for (Map.Entry<String, Object> field : values.entrySet()) {
+            row.values.put(field.getKey(), normalize(field.getKey(), field.getValue()));
+            log(collection, id, field.getKey());
+        }
+        table(collection).put(id, row);
+        now++;
+    }
+
+    /** Returns false if the row is not on this device. */
+    boolean edit(String collection, String id, String field, Object value) {
+        Row row = table(collection).get(id);
+        if (row == null) {
+            return false;
+        }
+        row.values.put(field, normalize(field, value));
+        row.version++;
+        log(collection, id, field);
+        now++;
+        return true;
+    }
+
+    /** Returns false if the row is not on this device. */
+    boolean delete(String collection, String id) {
+        if (table(collection).remove(id) == null) {
+            return false;
+        }
+        log(collection).remove(id);
+        pendingDeletes(collection).put(id, new Change(++seq, now));
+        now++;
+        return true;
+    }
+
+    Map<String, Map<String, Object>> rows(String collection) {
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        for (Map.Entry<String, Row> row : table(collection).entrySet()) {
+            rows.put(row.getKey(), new HashMap<>(row.getValue().values));
+        }
+        return rows;
+    }
+
+    boolean hasPending(String collection) {
+        return !log(collection).isEmpty() || !pendingDeletes(collection).isEmpty();
+    }
+
+    @Override
+    public Snapshot snapshot(String collection) {
+        Map<String, SyncRecord> records = new HashMap<>();
+        for (Map.Entry<String, Row> entry : table(collection).entrySet()) {
+            Map<String, Change> changed = log(collection).get(entry.getKey());
+            SyncRecord record = new SyncRecord(entry.getKey());
+            for (Map.Entry<String, Object> field : entry.getValue().values.entrySet()) {
+                Change change = changed != null ? changed.get(field.getKey()) : null;
+                record.put(field.getKey(), field.getValue(),
+                        change != null ? SyncRecord.clock(change.time, deviceId) : null);
+            }
+            record.setLocalVersion(entry.getValue().version);
+            records.put(record.getId(), record);
+        }
+        addTombstones(collection, records);
+        return new Snapshot(records, new Marker(seq, false));
+    }
+
+    @Override
+    public Snapshot snapshotDeletes(String collection) {
+        Map<String, SyncRecord> records = new HashMap<>();
+        addTombstones(collection, records);
+        return new Snapshot(records, new Marker(seq, true));
+    }
+
+    @Override
+    public int apply(String collection, List<SyncRecord> records) {
+        if (failNextApply != null) {
+            RuntimeException failure = failNextApply;
+            failNextApply = null;
+            throw failure;
+        }
+        int applied = 0;
+        Map<String, Row> table = table(collection);
+        for (SyncRecord record : records) {
+            Row row = table.get(record.getId());
+            if (record.isDeleted()) {
+                if (row != null) {
+                    table.remove(record.getId());
+                    log(collection).remove(record.getId());
+                    applied++;
+                }
+            } else if (record.getLocalVersion() > 0) {
+                // Only if not edited since the snapshot, as YogaCourseDao.applyRemote()
+                if (row != null && row.version == record.getLocalVersion()) {
+                    row.values.clear();
+                    row.values.putAll(record.getValues());
+                    row.version++;
+                    applied++;
+                }
+            } else if (row == null) {
+                row = new Row();
+                row.values.putAll(record.getValues());
+                table.put(record.getId(), row);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public void acknowledge(String collection, Snapshot snapshot, Collection<String> ids, SyncCheckpoint checkpoint) {
+        Marker marker = (Marker) snapshot.getMarker();
+        for (String id : ids) {
+            Map<String, Change> fields = log(collection).get(id);
+            if (!marker.deletesOnly && fields != null) {
+                fields.values().removeIf(change -> change.seq <= marker.seq);
+                if (fields.isEmpty()) {
+                    log(collection).remove(id);
+                }
+            }
+            Change delete = pendingDeletes(collection).get(id);
+            if (delete != null && delete.seq <= marker.seq) {
+                pendingDeletes(collection).remove(id);
+            }
+        }
+        if (checkpoint != null) {
+            checkpoints.put(collection, new SyncCheckpoint(collection, checkpoint.getCursor(),
+                    checkpoint.getPages(), checkpoint.isDone(), marker.seq));
+        }
+    }
+
+    @Override
+    public SyncCheckpoint loadCheckpoint(String collection) {
+        return checkpoints.get(collection);
+    }
+
+    @Override
+    public void clearCheckpoints() {
+        checkpoints.clear();
+    }
+
+    // Store values the way SyncRecord does, so rows compare equal to synced records
+    private static Object normalize(String field, Object value) {
+        SyncRecord record = new SyncRecord("");
+        record.put(field, value, null);
+        return record.getValue(field);
+    }
+
+    private void addTombstones(String collection, Map<String, SyncRecord> records) {
+        for (Map.Entry<String, Change> delete : pendingDeletes(collection).entrySet()) {
+            SyncRecord tombstone = new SyncRecord(delete.getKey());
+            tombstone.markDeleted(SyncRecord.clock(delete.getValue().time, deviceId));
+            records.put(tombstone.getId(), tombstone);
+        }
+    }
+
+    private void log(String collection, String id, String field) {
+        Map<String, Change> fields = log(collection).get(id);
+        if (fields == null) {
+            fields = new HashMap<>();
+            log(collection).put(id, fields);
+        }
+        fields.put(field, new Change(++seq, now));
+    }
+
+    private Map<String, Row> table(String collection) {
+        return tables.computeIfAbsent(collection, name -> new HashMap<>());
+    }
+
+    private Map<String, Map<String, Change>> log(String collection) {
+        return changes.computeIfAbsent(collection, name -> new HashMap<>());
+    }
+
+    private Map<String, Change> pendingDeletes(String collection) {
+        return tombstones.computeIfAbsent(collection, name -> new HashMap<>());
+    }
+
+    /** Ids of every row on this device. */
+    List<String> ids(String collection) {
+        return new ArrayList<>(table(collection).keySet());
+    }
+
+    /** A row on this device picked with random, the same one for the same seed; null if there are none. */
+    String anyRow(String collection, Random random) {
+        List<String> ids = ids(collection);
+        Collections.sort(ids);
+        return ids.isEmpty() ? null : ids.get(random.nextInt(ids.size()));
+    }
+
+    /** Sync once, running remote calls until none are left. Fails the test unless the run succeeds. */
+    SyncEngine.Summary syncOnce(List<String> collections, InMemoryRemoteStore remote) {
+        SyncEngine.Summary[] result = new SyncEngine.Summary[1];
+        engine.sync(collections, new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                result[0] = summary;
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(deviceId + ": " + error);
+            }
+        });
+        remote.drain();
+        assertNotNull(deviceId + " did not finish syncing", result[0]);
+        return result[0];
+    }
+
+    /** Sync until a run covers every page, as SyncScheduler does after a resumed run. */
+    void syncToEnd(List<String> collections, InMemoryRemoteStore remote) {
+        while (syncOnce(collections, remote).isResumed()) {
+            // The next run starts from the first page
+        }
+    }
+
+    /** Runs whenDone whether the sync succeeded or failed, for tests where failures are expected. */
+    static SyncEngine.Callback done(Runnable whenDone) {
+        return new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                whenDone.run();
+            }
+
+            @Override
+            public void onError(String error) {
+                whenDone.run();
+            }
+        };
+    }
+
+    /** Fields of a new row, with every field the tests edit. */
+    static Map<String, Object> values(String type, int capacity) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("type", type);
+        values.put("capacity", capacity);
+        values.put("price", 10.0);
+        values.put("description", "");
+        return values;
+    }
+}
@@ -0,0 +1,138 @@
+package com.universalyoga.admin.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Local stand-in for Firestore. Records live in memory and joinAll() joins each one
+ * against what is stored when it runs, like the transactions of FirestoreRemoteStore.
+ *
+ * Calls are queued rather than run, so a test decides how calls from several devices
+ * interleave: runNext() runs the oldest, runAny() and failAny() pick one at random, and
+ * kill() ends every call as if the app had been killed while they were in flight.
+ */
+class InMemoryRemoteStore implements RemoteStore {
+
+    // A call in flight: what it does to the stored records, then the reply to the caller
+    private static class Call {
+        final Runnable effect;
+        final Runnable reply;
+        final Runnable fail;
+
+        Call(Runnable effect, Runnable reply, Runnable fail) {
+            this.effect = effect;
+            this.reply = reply;
+            this.fail = fail;
+        }
+
+        void run() {
+            effect.run();
+            reply.run();
+        }
+    }
+
+    private final Map<String, NavigableMap<String, SyncRecord>> collections = new HashMap<>();
+    private final List<Call> queued = new ArrayList<>();
+    private final List<String> fetchedAfter = new ArrayList<>();
+
+    @Override
+    public void fetchPage(String collection, String afterId, int limit, Callback<List<SyncRecord>> callback) {
+        fetchedAfter.add(afterId);
+        List<SyncRecord> page = new ArrayList<>();
+        queued.add(new Call(() -> {
+            NavigableMap<String, SyncRecord> stored = collection(collection);
+            for (SyncRecord record : (afterId != null ? stored.tailMap(afterId, false) : stored).values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(record.copy());
+            }
+        }, () -> callback.onSuccess(page), () -> callback.onError("fetch failed")));
+    }
+
+    @Override
+    public void joinAll(String collection, List<SyncRecord> records, Callback<Void> callback) {
+        List<SyncRecord> sent = new ArrayList<>();
+        for (SyncRecord record : records) {
+            SyncRecord copy = record.copy();
+            copy.setLocalVersion(0);
+            sent.add(copy);
+        }
+        queued.add(new Call(() -> {
+            Map<String, SyncRecord> stored = collection(collection);
+            for (SyncRecord record : sent) {
+                SyncRecord current = stored.get(record.getId());
+                stored.put(record.getId(), current != null ? MergeEngine.join(current, record) : record);
+            }
+        }, () -> callback.onSuccess(null), () -> callback.onError("write failed")));
+    }
+
+    @Override
+    public void purgeTombstones(String collection, long deletedBefore, Callback<Integer> callback) {
+        int[] purged = new int[1];
+        queued.add(new Call(() -> {
+            String cutoff = SyncRecord.clock(deletedBefore, "");
+            purged[0] = 0;
+            Iterator<SyncRecord> records = collection(collection).values().iterator();
+            while (records.hasNext()) {
+                SyncRecord record = records.next();
+                if (record.isDeleted() && SyncRecord.compareClocks(record.getDeletedClock(), cutoff) < 0) {
+                    records.remove();
+                    purged[0]++;
+                }
+            }
+        }, () -> callback.onSuccess(purged[0]), () -> callback.onError("purge failed")));
+    }
+
+    boolean hasQueued() {
+        return !queued.isEmpty();
+    }
+
+    void runNext() {
+        queued.remove(0).run();
+    }
+
+    void runAny(Random random) {
+        queued.remove(random.nextInt(queued.size())).run();
+    }
+
+    /** Fail a random queued call, as if the network dropped: nothing is stored. */
+    void failAny(Random random) {
+        queued.remove(random.nextInt(queued.size())).fail.run();
+    }
+
+    /**
+     * End every queued call without replying, as if the app were killed: each one either
+     * reached the server anyway or was lost on the way.
+     */
+    void kill(Random random) {
+        for (Call call : queued) {
+            if (random.nextBoolean()) {
+                call.effect.run();
+            }
+        }
+        queued.clear();
+    }
+
+    /** Run queued calls, and the calls they lead to, until none are left. */
+    void drain() {
+        while (hasQueued()) {
+            runNext();
+        }
+    }
+
+    /** The afterId of every page fetched so far, in order; null for a first page. */
+    List<String> fetchedAfter() {
+        return fetchedAfter;
+    }
+
+    NavigableMap<String, SyncRecord> collection(String name) {
+        return collections.computeIfAbsent(name, key -> new TreeMap<>());
+    }
+}
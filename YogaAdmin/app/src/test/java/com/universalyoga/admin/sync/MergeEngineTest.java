@@ -0,0 +1,163 @@
+package com.universalyoga.admin.sync;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-field last-writer-wins and tombstone precedence in MergeEngine.
+ */
+public class MergeEngineTest {
+
+    private static final String A = "tablet-a";
+    private static final String B = "tablet-b";
+
+    @Test
+    public void editsToDifferentFields_areBothKept() {
+        SyncRecord local = course("1", 10, "Flow", null, 20, "Aerial", null);
+        SyncRecord remote = course("1", 10, "Flow", null, 30, "Aerial", SyncRecord.clock(200, B));
+        local.put("price", 15.0, SyncRecord.clock(100, A));
+
+        MergeEngine.Outcome outcome = MergeEngine.merge(local, remote);
+
+        assertEquals(15.0, outcome.getMerged().getValue("price"));
+        assertEquals(30L, outcome.getMerged().getValue("capacity"));
+        // Only the local edit goes up, and the remote edit comes down
+        assertEquals(1, outcome.getToPush().getValues().size());
+        assertEquals(15.0, outcome.getToPush().getValue("price"));
+        assertTrue(outcome.isLocalChanged());
+    }
+
+    @Test
+    public void laterClock_wins() {
+        SyncRecord local = course("1", 10, "Flow", SyncRecord.clock(300, A), 20, "Aerial", null);
+        SyncRecord remote = course("1", 10, "Yin", SyncRecord.clock(200, B), 20, "Aerial", null);
+
+        MergeEngine.Outcome outcome = MergeEngine.merge(local, remote);
+        assertEquals("Flow", outcome.getMerged().getValue("type"));
+        assertEquals("Flow", outcome.getToPush().getValue("type"));
+        assertFalse(outcome.isLocalChanged());
+
+        // And the other way round: the local edit is older, so it gives way
+        outcome = MergeEngine.merge(course("1", 10, "Flow", SyncRecord.clock(100, A), 20, "Aerial", null), remote);
+        assertEquals("Yin", outcome.getMerged().getValue("type"));
+        assertNull(outcome.getToPush());
+        assertTrue(outcome.isLocalChanged());
+    }
+
+    @Test
+    public void equalTimes_areOrderedByDevice() {
+        SyncRecord fromA = course("1", 10, "Flow", SyncRecord.clock(100, A), 20, "Aerial", null);
+        SyncRecord fromB = course("1", 10, "Yin", SyncRecord.clock(100, B), 20, "Aerial", null);
+
+        assertEquals("Yin", MergeEngine.merge(fromA, fromB).getMerged().getValue("type"));
+        assertEquals("Yin", MergeEngine.merge(fromB, fromA).getMerged().getValue("type"));
+    }
+
+    @Test
+    public void join_isOrderIndependent() {
+        SyncRecord first = course("1", 10, "Flow", SyncRecord.clock(100, A), 20, "Aerial", SyncRecord.clock(300, A));
+        SyncRecord second = course("1", 10, "Yin", SyncRecord.clock(200, B), 25, "Aerial", null);
+        second.put("time", "10:00", SyncRecord.clock(50, B));
+
+        SyncRecord oneWay = MergeEngine.join(first, second);
+        SyncRecord otherWay = MergeEngine.join(second, first);
+
+        assertEquals(oneWay.getValues(), otherWay.getValues());
+        assertEquals(oneWay.getClocks(), otherWay.getClocks());
+        assertEquals("Yin", oneWay.getValue("type"));
+        assertEquals(20L, oneWay.getValue("capacity"));
+        assertEquals("10:00", oneWay.getValue("time"));
+    }
+
+    @Test
+    public void delete_beatsLaterEdit() {
+        SyncRecord local = course("1", 10, "Flow", SyncRecord.clock(500, A), 20, "Aerial", null);
+        SyncRecord remote = new SyncRecord("1");
+        remote.markDeleted(SyncRecord.clock(100, B));
+
+        MergeEngine.Outcome outcome = MergeEngine.merge(local, remote);
+
+        assertTrue(outcome.getMerged().isDeleted());
+        assertNull(outcome.getToPush());
+        assertTrue(outcome.isLocalChanged());
+
+        // A local delete goes up over a remote edit made after it
+        SyncRecord tombstone = new SyncRecord("1");
+        tombstone.markDeleted(SyncRecord.clock(100, A));
+        outcome = MergeEngine.merge(tombstone, course("1", 10, "Yin", SyncRecord.clock(900, B), 20, "Aerial", null));
+
+        assertTrue(outcome.getMerged().isDeleted());
+        assertTrue(outcome.getToPush().isDeleted());
+        assertFalse(outcome.isLocalChanged());
+    }
+
+    @Test
+    public void tombstone_keepsNoFields() {
+        SyncRecord live = course("1", 10, "Flow", SyncRecord.clock(500, A), 20, "Aerial", null);
+        SyncRecord tombstone = new SyncRecord("1");
+        tombstone.markDeleted(SyncRecord.clock(100, B));
+
+        // Whichever side is stored, the joined document is only the deletion
+        for (SyncRecord joined : new SyncRecord[]{MergeEngine.join(live, tombstone), MergeEngine.join(tombstone, live)}) {
+            assertTrue(joined.isDeleted());
+            assertTrue(joined.getValues().isEmpty());
+            assertTrue(joined.getClocks().isEmpty());
+        }
+    }
+
+    @Test
+    public void unchangedLocalField_takesRemoteValue() {
+        // Fields without a clock have not changed here since the last sync
+        SyncRecord local = course("1", 10, "Flow", null, 20, "Aerial", null);
+        SyncRecord remote = course("1", 10, "Flow", SyncRecord.clock(100, B), 20, "Aerial", null);
+        remote.put("type", "Yin", null);
+
+        MergeEngine.Outcome outcome = MergeEngine.merge(local, remote);
+
+        assertEquals("Yin", outcome.getMerged().getValue("type"));
+        assertNull(outcome.getToPush());
+        assertTrue(outcome.isLocalChanged());
+    }
+
+    @Test
+    public void recordsOnOneSide_arePushedOrPulled() {
+        SyncRecord onlyLocal = course("1", 10, "Flow", SyncRecord.clock(100, A), 20, "Aerial", null);
+        MergeEngine.Outcome pushed = MergeEngine.merge(onlyLocal, null);
+        assertEquals(onlyLocal.getValues(), pushed.getToPush().getValues());
+        assertFalse(pushed.isLocalChanged());
+
+        SyncRecord onlyRemote = course("2", 10, "Yin", SyncRecord.clock(100, B), 20, "Aerial", null);
+        MergeEngine.Outcome pulled = MergeEngine.merge(null, onlyRemote);
+        assertNull(pulled.getToPush());
+        assertTrue(pulled.isLocalChanged());
+        assertEquals(0, pulled.getMerged().getLocalVersion());
+
+        // A remote tombstone for a row never stored here needs nothing
+        SyncRecord tombstone = new SyncRecord("3");
+        tombstone.markDeleted(SyncRecord.clock(100, B));
+        assertFalse(MergeEngine.merge(null, tombstone).isLocalChanged());
+    }
+
+    @Test
+    public void numbers_compareEqualAcrossStores() {
+        // SQLite reads give Integer, Firestore gives Long; neither is a change
+        SyncRecord local = course("1", 10, "Flow", null, 20, "Aerial", null);
+        SyncRecord remote = course("1", 10, "Flow", null, 20, "Aerial", null);
+        remote.put("capacity", 20L, null);
+
+        MergeEngine.Outcome outcome = MergeEngine.merge(local, remote);
+        assertNull(outcome.getToPush());
+        assertFalse(outcome.isLocalChanged());
+    }
+
+    private static SyncRecord course(String id, double price, String type, String typeClock,
+                                     int capacity, String description, String capacityClock) {
+        SyncRecord record = new SyncRecord(id);
+        record.put("price", price, null);
+        record.put("type", type, typeClock);
+        record.put("capacity", capacity, capacityClock);
+        record.put("description", description, null);
+        return record;
+    }
+}
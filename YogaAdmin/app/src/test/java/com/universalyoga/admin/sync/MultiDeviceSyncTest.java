@@ -0,0 +1,172 @@
+package com.universalyoga.admin.sync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.universalyoga.admin.sync.FakeDevice.done;
+import static com.universalyoga.admin.sync.FakeDevice.values;
+import static org.junit.Assert.*;
+
+/**
+ * Several tablets editing, deleting and syncing against one shared remote store, with
+ * their edits, sync steps and network failures interleaved at random from fixed seeds.
+ * Once everything has synced, every tablet and the remote store must hold, for each
+ * field, the write with the highest clock, and no deleted row may come back.
+ */
+public class MultiDeviceSyncTest {
+
+    private static final String COURSES = "yoga_courses";
+    private static final List<String> COLLECTIONS = Collections.singletonList(COURSES);
+    private static final String[] FIELDS = {"type", "capacity", "price", "description"};
+
+    // Expected end state, built from every write as it is made
+    private final Map<String, Map<String, String>> winningClocks = new HashMap<>();
+    private final Map<String, Map<String, Object>> winningValues = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+
+    @Test
+    public void twoDevices_converge() {
+        for (long seed = 1; seed <= 20; seed++) {
+            run(seed, 2, 300);
+        }
+    }
+
+    @Test
+    public void manyDevices_converge() {
+        for (long seed = 100; seed < 110; seed++) {
+            run(seed, 5, 800);
+        }
+    }
+
+    @Test
+    public void newRowsOnOtherDevices_areNotDeleted() {
+        // What the old sync got wrong: the last device to sync removed rows it had not seen
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice a = new FakeDevice("tablet-a", remote);
+        FakeDevice b = new FakeDevice("tablet-b", remote);
+        a.create(COURSES, "1", values("Flow", 10));
+        b.create(COURSES, "1001", values("Yin", 12));
+
+        a.syncToEnd(COLLECTIONS, remote);
+        b.syncToEnd(COLLECTIONS, remote);
+        a.syncToEnd(COLLECTIONS, remote);
+
+        Set<String> both = new HashSet<>(Arrays.asList("1", "1001"));
+        assertEquals(both, a.rows(COURSES).keySet());
+        assertEquals(both, remote.collection(COURSES).keySet());
+        assertEquals(a.rows(COURSES), b.rows(COURSES));
+    }
+
+    private void run(long seed, int deviceCount, int steps) {
+        winningClocks.clear();
+        winningValues.clear();
+        deleted.clear();
+        Random random = new Random(seed);
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        List<FakeDevice> devices = new ArrayList<>();
+        boolean[] syncing = new boolean[deviceCount];
+        int[] created = new int[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            FakeDevice device = new FakeDevice("tablet-" + i, remote);
+            // Device clocks are skewed, and may tie with each other
+            device.now = 1000 + random.nextInt(50);
+            devices.add(device);
+        }
+
+        for (int step = 0; step < steps; step++) {
+            int index = random.nextInt(deviceCount);
+            FakeDevice device = devices.get(index);
+            int op = random.nextInt(100);
+            String context = "seed " + seed + " step " + step;
+
+            if (op < 15) {
+                // Each device numbers its rows in its own range
+                String id = String.valueOf(index * 10000 + created[index]++);
+                Map<String, Object> values = values("type-" + seed + "-" + step, random.nextInt(30));
+                record(id, values, device.nextClock());
+                device.create(COURSES, id, values);
+            } else if (op < 45) {
+                String id = device.anyRow(COURSES, random);
+                if (id != null) {
+                    String field = FIELDS[random.nextInt(FIELDS.length)];
+                    Object value = field.equals("capacity") ? (Object) (long) random.nextInt(30) : field + "-" + step;
+                    Map<String, Object> values = new HashMap<>();
+                    values.put(field, value);
+                    record(id, values, device.nextClock());
+                    assertTrue(context, device.edit(COURSES, id, field, value));
+                }
+            } else if (op < 52) {
+                String id = device.anyRow(COURSES, random);
+                if (id != null) {
+                    deleted.add(id);
+                    assertTrue(context, device.delete(COURSES, id));
+                }
+            } else if (op < 67) {
+                // One sync at a time per device, as the app runs them
+                if (!syncing[index]) {
+                    syncing[index] = true;
+                    device.engine.sync(COLLECTIONS, done(() -> syncing[index] = false));
+                }
+            } else if (op < 72) {
+                device.engine.pushDeletes(COLLECTIONS, done(() -> { }));
+            } else if (op < 94) {
+                device.now += random.nextInt(3);
+                if (remote.hasQueued()) {
+                    remote.runAny(random);
+                }
+            } else if (remote.hasQueued()) {
+                remote.failAny(random);
+            }
+        }
+
+        // Let every call in flight finish, then sync each device in turn, twice
+        remote.drain();
+        for (int round = 0; round < 2; round++) {
+            for (FakeDevice device : devices) {
+                device.syncToEnd(COLLECTIONS, remote);
+            }
+        }
+
+        Map<String, Map<String, Object>> expected = new HashMap<>(winningValues);
+        expected.keySet().removeAll(deleted);
+        Map<String, Map<String, Object>> live = new HashMap<>();
+        for (SyncRecord record : remote.collection(COURSES).values()) {
+            if (record.isDeleted()) {
+                assertTrue("seed " + seed + ": unexpected tombstone " + record, deleted.contains(record.getId()));
+            } else {
+                live.put(record.getId(), new HashMap<>(record.getValues()));
+            }
+        }
+        assertEquals("seed " + seed + ": remote", expected, live);
+        for (String id : deleted) {
+            assertTrue("seed " + seed + ": no tombstone for " + id, remote.collection(COURSES).get(id).isDeleted());
+        }
+        for (FakeDevice device : devices) {
+            assertEquals("seed " + seed + ": " + device.deviceId, expected, device.rows(COURSES));
+            assertFalse("seed " + seed + ": " + device.deviceId, device.hasPending(COURSES));
+        }
+    }
+
+    // Note a write for the expected end state: per field, the highest clock wins
+    private void record(String id, Map<String, Object> values, String clock) {
+        Map<String, String> clocks = winningClocks.computeIfAbsent(id, key -> new HashMap<>());
+        Map<String, Object> fields = winningValues.computeIfAbsent(id, key -> new HashMap<>());
+        for (Map.Entry<String, Object> field : values.entrySet()) {
+            if (SyncRecord.compareClocks(clock, clocks.get(field.getKey())) > 0) {
+                clocks.put(field.getKey(), clock);
+                SyncRecord normalized = new SyncRecord(id);
+                normalized.put(field.getKey(), field.getValue(), null);
+                fields.put(field.getKey(), normalized.getValue(field.getKey()));
+            }
+        }
+    }
+}
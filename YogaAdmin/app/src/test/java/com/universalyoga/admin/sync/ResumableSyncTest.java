@@ -0,0 +1,288 @@
+package com.universalyoga.admin.sync;
+
+import com.universalyoga.admin.data.entity.SyncCheckpoint;
+import com.universalyoga.admin.utils.Progress;
+import com.universalyoga.admin.utils.ProgressTracker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.universalyoga.admin.sync.FakeDevice.done;
+import static com.universalyoga.admin.sync.FakeDevice.values;
+import static org.junit.Assert.*;
+
+/**
+ * Syncs killed part way through, at random points from fixed seeds, and carried on by a
+ * new engine from the checkpoints left behind. Calls in flight when the app is killed
+ * may or may not have reached the remote store. Once everything has synced, every tablet
+ * and the remote store must hold the same rows, with nothing left pending.
+ */
+public class ResumableSyncTest {
+
+    private static final String COURSES = "yoga_courses";
+    private static final String SCHEDULES = "schedules";
+    private static final List<String> COLLECTIONS = Arrays.asList(COURSES, SCHEDULES);
+
+    @Test
+    public void resumedSync_fetchesFromCheckpoint() {
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice device = new FakeDevice("tablet-a", remote);
+        for (int i = 0; i < 10; i++) {
+            device.create(COURSES, "c" + i, values("Flow", i));
+        }
+        device.syncOnce(COLLECTIONS, remote);
+        for (int i = 0; i < 10; i++) {
+            device.edit(COURSES, "c" + i, "type", "Yin");
+        }
+
+        // Pages follow the remote ids; kill the sync once two pages of courses are committed
+        device.engine.sync(COLLECTIONS, expectNoReply());
+        while (device.loadCheckpoint(COURSES) == null || device.loadCheckpoint(COURSES).getPages() < 2) {
+            remote.runNext();
+        }
+        SyncCheckpoint checkpoint = device.loadCheckpoint(COURSES);
+        assertEquals("c5", checkpoint.getCursor());
+        remote.kill(new Random(1));
+        device.restart(remote, FakeDevice.PAGE_SIZE);
+
+        int fetched = remote.fetchedAfter().size();
+        SyncEngine.Summary summary = device.syncOnce(COLLECTIONS, remote);
+        assertTrue(summary.isResumed());
+        assertEquals("c5", remote.fetchedAfter().get(fetched));
+        assertNull(device.loadCheckpoint(COURSES));
+        assertNull(device.loadCheckpoint(SCHEDULES));
+
+        for (SyncRecord record : remote.collection(COURSES).values()) {
+            assertEquals("Yin", record.getValue("type"));
+        }
+        assertFalse(device.hasPending(COURSES));
+        assertFalse(device.syncOnce(COLLECTIONS, remote).isResumed());
+    }
+
+    @Test
+    public void finishedCollections_areSkipped() {
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice device = new FakeDevice("tablet-a", remote);
+        device.create(COURSES, "c1", values("Flow", 10));
+        device.create(SCHEDULES, "s1", values("Monday", 1));
+
+        // Kill the sync once the courses are done and the schedules page is in flight
+        device.engine.sync(COLLECTIONS, expectNoReply());
+        while (device.loadCheckpoint(COURSES) == null || !device.loadCheckpoint(COURSES).isDone()) {
+            remote.runNext();
+        }
+        remote.kill(new Random(2));
+        device.restart(remote, FakeDevice.PAGE_SIZE);
+
+        int fetched = remote.fetchedAfter().size();
+        assertTrue(device.syncOnce(COLLECTIONS, remote).isResumed());
+        // Only the schedules were fetched again
+        assertEquals(Collections.singletonList(null), remote.fetchedAfter().subList(fetched, remote.fetchedAfter().size()));
+        assertTrue(remote.collection(SCHEDULES).containsKey("s1"));
+        assertFalse(device.hasPending(SCHEDULES));
+    }
+
+    @Test
+    public void cancelledSync_stopsBetweenPages_andResumes() {
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice device = new FakeDevice("tablet-a", remote);
+        for (int i = 0; i < 10; i++) {
+            device.create(COURSES, "c" + i, values("Flow", i));
+        }
+        device.syncOnce(COLLECTIONS, remote);
+        for (int i = 0; i < 10; i++) {
+            device.edit(COURSES, "c" + i, "type", "Yin");
+        }
+
+        // Cancel once the first page is committed; the page already in flight is finished
+        ProgressTracker tracker = new ProgressTracker(null);
+        String[] error = new String[1];
+        device.engine.sync(COLLECTIONS, tracker, new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                fail("cancelled sync finished");
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+            }
+        });
+        while (device.loadCheckpoint(COURSES) == null) {
+            remote.runNext();
+        }
+        tracker.cancel();
+        remote.drain();
+
+        assertEquals(SyncEngine.CANCELLED, error[0]);
+        SyncCheckpoint checkpoint = device.loadCheckpoint(COURSES);
+        assertEquals(2, checkpoint.getPages());
+        assertEquals("c5", checkpoint.getCursor());
+        Progress progress = tracker.current();
+        assertEquals("Syncing " + COURSES, progress.getPhase());
+        assertEquals(6, progress.getCompleted());
+        assertEquals(10, progress.getTotal());
+        assertEquals(1, device.engine.getMetrics().getCancelled());
+        assertEquals(0, device.engine.getMetrics().getFailed());
+
+        assertTrue(device.syncOnce(COLLECTIONS, remote).isResumed());
+        for (SyncRecord record : remote.collection(COURSES).values()) {
+            assertEquals("Yin", record.getValue("type"));
+        }
+        assertFalse(device.hasPending(COURSES));
+    }
+
+    @Test
+    public void localFailure_failsTheRun_andTheNextRunCarriesOn() {
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice device = new FakeDevice("tablet-a", remote);
+        for (int i = 0; i < 5; i++) {
+            device.create(COURSES, "c" + i, values("Flow", i));
+        }
+
+        // The first page is pushed, then applying it locally throws
+        device.failNextApply = new IllegalStateException("database or disk is full");
+        String[] error = new String[1];
+        device.engine.sync(COLLECTIONS, new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                fail("failed sync finished");
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+            }
+        });
+        remote.drain();
+
+        assertNotNull("no reply from a failed sync", error[0]);
+        assertTrue(error[0], error[0].contains("database or disk is full"));
+        assertEquals(1, device.engine.getMetrics().getFailed());
+        assertEquals(Long.valueOf(1), device.engine.getMetrics().getFailures().get(SyncMetrics.Phase.APPLY));
+        assertTrue(device.hasPending(COURSES));
+
+        device.syncToEnd(COLLECTIONS, remote);
+        assertEquals(5, remote.collection(COURSES).size());
+        assertFalse(device.hasPending(COURSES));
+    }
+
+    @Test
+    public void killedSyncs_converge() {
+        for (long seed = 1; seed <= 30; seed++) {
+            run(seed);
+        }
+    }
+
+    private void run(long seed) {
+        Random random = new Random(seed);
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        List<FakeDevice> devices = Arrays.asList(new FakeDevice("tablet-a", remote), new FakeDevice("tablet-b", remote));
+        boolean[] syncing = new boolean[devices.size()];
+        Set<String> created = new HashSet<>();
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < devices.size(); i++) {
+            devices.get(i).now = 1000 + random.nextInt(50);
+            for (String collection : COLLECTIONS) {
+                for (int row = 0; row < 8 + random.nextInt(8); row++) {
+                    String id = collection.charAt(0) + "-" + i + "-" + row;
+                    devices.get(i).create(collection, id, values("row-" + row, random.nextInt(30)));
+                    created.add(id);
+                }
+            }
+        }
+
+        for (int step = 0; step < 400; step++) {
+            int index = random.nextInt(devices.size());
+            FakeDevice device = devices.get(index);
+            String collection = COLLECTIONS.get(random.nextInt(COLLECTIONS.size()));
+            int op = random.nextInt(100);
+
+            if (op < 20) {
+                String id = device.anyRow(collection, random);
+                if (id != null) {
+                    device.edit(collection, id, "capacity", (long) random.nextInt(30));
+                }
+            } else if (op < 25) {
+                String id = device.anyRow(collection, random);
+                if (id != null) {
+                    deleted.add(id);
+                    device.delete(collection, id);
+                }
+            } else if (op < 40) {
+                if (!syncing[index]) {
+                    syncing[index] = true;
+                    device.engine.sync(COLLECTIONS, done(() -> syncing[index] = false));
+                }
+            } else if (op < 90) {
+                device.now += random.nextInt(3);
+                if (remote.hasQueued()) {
+                    remote.runAny(random);
+                }
+            } else if (op < 95) {
+                if (remote.hasQueued()) {
+                    remote.failAny(random);
+                }
+            } else {
+                // Both apps are killed with their calls in flight, and restart with any page size
+                remote.kill(random);
+                for (int i = 0; i < devices.size(); i++) {
+                    devices.get(i).restart(remote, 1 + random.nextInt(6));
+                    syncing[i] = false;
+                }
+            }
+        }
+
+        remote.drain();
+        for (int round = 0; round < 2; round++) {
+            for (FakeDevice device : devices) {
+                device.syncToEnd(COLLECTIONS, remote);
+            }
+        }
+
+        String context = "seed " + seed;
+        for (String collection : COLLECTIONS) {
+            Map<String, Map<String, Object>> live = new HashMap<>();
+            for (SyncRecord record : remote.collection(collection).values()) {
+                if (record.isDeleted()) {
+                    assertTrue(context + ": unexpected tombstone " + record, deleted.contains(record.getId()));
+                } else {
+                    assertFalse(context + ": deleted row came back " + record, deleted.contains(record.getId()));
+                    live.put(record.getId(), new HashMap<>(record.getValues()));
+                }
+            }
+            Set<String> expectedIds = new HashSet<>(created);
+            expectedIds.removeAll(deleted);
+            expectedIds.removeIf(id -> id.charAt(0) != collection.charAt(0));
+            assertEquals(context + ": " + collection, expectedIds, live.keySet());
+            for (FakeDevice device : devices) {
+                assertEquals(context + ": " + device.deviceId, live, device.rows(collection));
+                assertFalse(context + ": " + device.deviceId, device.hasPending(collection));
+                assertNull(context + ": " + device.deviceId, device.loadCheckpoint(collection));
+            }
+        }
+    }
+
+    // For a sync that is killed before it replies
+    private static SyncEngine.Callback expectNoReply() {
+        return new SyncEngine.Callback() {
+            @Override
+            public void onSuccess(SyncEngine.Summary summary) {
+                fail("killed sync finished");
+            }
+
+            @Override
+            public void onError(String error) {
+                fail("killed sync failed: " + error);
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package com.universalyoga.admin.sync;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.universalyoga.admin.sync.FakeDevice.done;
+import static com.universalyoga.admin.sync.FakeDevice.values;
+import static org.junit.Assert.*;
+
+public class SyncMetricsTest {
+
+    private static final String COURSES = "yoga_courses";
+    private static final List<String> COLLECTIONS = Collections.singletonList(COURSES);
+
+    @Test
+    public void histogram_bucketsLatencies() {
+        SyncMetrics metrics = new SyncMetrics();
+        long[] latenciesMs = {3, 8, 40, 90, 120, 20000};
+        for (long ms : latenciesMs) {
+            metrics.recordPhase(SyncMetrics.Phase.FETCH, 0, ms * 1_000_000);
+        }
+
+        SyncMetrics.Histogram fetch = metrics.getLatency(SyncMetrics.Phase.FETCH);
+        assertEquals(6, fetch.getCount());
+        assertEquals(20000, fetch.getMaxMs());
+        assertEquals(50, fetch.getPercentileMs(0.5));
+        assertEquals(-1, fetch.getPercentileMs(0.95));
+        assertEquals(0, metrics.getLatency(SyncMetrics.Phase.PUSH).getCount());
+    }
+
+    @Test
+    public void sync_countsPagesDocumentsAndFailures() {
+        InMemoryRemoteStore remote = new InMemoryRemoteStore();
+        FakeDevice a = new FakeDevice("tablet-a", remote);
+        FakeDevice b = new FakeDevice("tablet-b", remote);
+        for (int i = 0; i < 5; i++) {
+            a.create(COURSES, "c" + i, values("Flow", i));
+        }
+        a.syncOnce(COLLECTIONS, remote);
+        a.delete(COURSES, "c0");
+        a.syncOnce(COLLECTIONS, remote);
+        b.syncOnce(COLLECTIONS, remote);
+
+        SyncMetrics metrics = a.engine.getMetrics();
+        assertEquals(2, metrics.getSucceeded());
+        assertEquals(5, metrics.getDocsWritten());
+        assertEquals(1, metrics.getDocsDeleted());
+        assertTrue(metrics.getBytesWritten() > 0);
+        // Second run: pages of 3, 2 and none after the last
+        assertEquals(5, metrics.getDocsFetched());
+        assertEquals(2, metrics.getLatency(SyncMetrics.Phase.SNAPSHOT).getCount());
+        // The deleted row was never on b, so only the live ones are applied
+        assertEquals(4, b.engine.getMetrics().getDocsApplied());
+
+        // Fail the push of b's edit, which is on the first page
+        b.now = 100;
+        b.edit(COURSES, "c1", "type", "Yin");
+        b.engine.sync(COLLECTIONS, done(() -> { }));
+        remote.runNext();
+        remote.failAny(new Random(1));
+        assertEquals(1, b.engine.getMetrics().getFailed());
+        assertEquals(Long.valueOf(1), b.engine.getMetrics().getFailures().get(SyncMetrics.Phase.PUSH));
+    }
+
+    @Test
+    public void json_includesCountersAndLatencies() {
+        SyncMetrics metrics = new SyncMetrics();
+        metrics.recordRunStarted();
+        metrics.recordRunFailed(SyncMetrics.Phase.FETCH);
+        metrics.recordPhase(SyncMetrics.Phase.FETCH, 0, 30_000_000);
+
+        String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{") && json.endsWith("}"));
+        assertTrue(json, json.contains("\"runs\":{\"started\":1,\"succeeded\":0,\"failed\":1"));
+        assertTrue(json, json.contains("\"failures\":{\"fetch\":1}"));
+        assertTrue(json, json.contains("\"fetch\":{\"count\":1,\"totalMs\":30,\"maxMs\":30,\"buckets\":[0,1,0,0,0,0,0,0,0,0]}"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getRuns());
+        assertTrue(metrics.getFailures().isEmpty());
+    }
+}
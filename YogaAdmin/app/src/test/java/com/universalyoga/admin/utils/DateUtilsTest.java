@@ -0,0 +1,148 @@
+package com.universalyoga.admin.utils;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks DateUtils against SimpleDateFormat and compares their cost.
+ */
+public class DateUtilsTest {
+
+    @Test
+    public void isoDates_matchSimpleDateFormat() {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        SimpleDateFormat dayName = new SimpleDateFormat("EEEE", Locale.US);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(1999, Calendar.JANUARY, 1);
+
+        // Walk every day for several years, across leap years and the 2000 boundary
+        for (int i = 0; i < 365 * 30; i++) {
+            String expected = iso.format(calendar.getTime());
+            int packed = DateUtils.parseIsoDate(expected);
+
+            assertNotEquals(expected, DateUtils.INVALID, packed);
+            assertEquals(expected, DateUtils.formatIsoDate(packed));
+            assertEquals(expected, DateUtils.formatIsoDate(calendar));
+            assertEquals(expected, dayName.format(calendar.getTime()), DateUtils.dayOfWeekName(expected));
+            assertEquals(expected, packed, DateUtils.fromEpochDay(DateUtils.toEpochDay(packed)));
+
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        assertEquals(0, DateUtils.toEpochDay(1970, 1, 1));
+        assertEquals(11017, DateUtils.toEpochDay(2000, 3, 1));
+    }
+
+    @Test
+    public void invalidIsoDates_areRejected() {
+        assertFalse(DateUtils.isValidIsoDate(null));
+        assertFalse(DateUtils.isValidIsoDate(""));
+        assertFalse(DateUtils.isValidIsoDate("2023-02-29"));
+        assertFalse(DateUtils.isValidIsoDate("2023-13-01"));
+        assertFalse(DateUtils.isValidIsoDate("2023-00-10"));
+        assertFalse(DateUtils.isValidIsoDate("2023-1-10"));
+        assertFalse(DateUtils.isValidIsoDate("2023/01/10"));
+        assertFalse(DateUtils.isValidIsoDate("20a3-01-10"));
+        assertTrue(DateUtils.isValidIsoDate("2024-02-29"));
+    }
+
+    @Test
+    public void times_roundTrip() {
+        assertEquals(0, DateUtils.parseTimeToMinutes("00:00"));
+        assertEquals(10 * 60 + 30, DateUtils.parseTimeToMinutes("10:30"));
+        assertEquals(DateUtils.INVALID, DateUtils.parseTimeToMinutes("24:00"));
+        assertEquals(DateUtils.INVALID, DateUtils.parseTimeToMinutes("9:00"));
+        for (int m = 0; m < 24 * 60; m++) {
+            assertEquals(m, DateUtils.parseTimeToMinutes(DateUtils.formatMinutes(m)));
+        }
+    }
+
+    @Test
+    public void longDate_hasDaySuffix() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            // Formatters are cached per thread, so run on a fresh thread that sees Locale.US
+            String[] result = new String[3];
+            Thread thread = new Thread(() -> {
+                result[0] = DateUtils.formatLongDateWithSuffix("2023-10-23");
+                result[1] = DateUtils.formatLongDateWithSuffix("2023-10-11");
+                result[2] = DateUtils.formatListDate("2023-10-01");
+            });
+            thread.start();
+            thread.join();
+
+            assertEquals("Monday, October 23rd, 2023", result[0]);
+            assertEquals("Wednesday, October 11th, 2023", result[1]);
+            assertEquals("Sun, Oct 01, 2023", result[2]);
+            assertEquals("not a date", DateUtils.formatLongDateWithSuffix("not a date"));
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    /**
+     * Benchmark: per-call SimpleDateFormat (the previous approach) vs DateUtils, validating a
+     * date and naming its day. Each path keeps its best of several rounds, so a GC pause in
+     * one round does not decide the result. DateUtils must not be slower.
+     */
+    @Test
+    public void benchmark_dateUtilsIsNotSlowerThanPerCallSimpleDateFormat() throws ParseException {
+        final int iterations = 20_000;
+        final int rounds = 5;
+        String[] dates = new String[366];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = DateUtils.formatIsoDate(DateUtils.fromEpochDay(DateUtils.toEpochDay(2024, 1, 1) + i));
+        }
+
+        // Warm up both paths
+        assertEquals(runLegacy(dates, 2_000), runDateUtils(dates, 2_000));
+
+        long legacyNanos = Long.MAX_VALUE;
+        long fastNanos = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            int legacy = runLegacy(dates, iterations);
+            legacyNanos = Math.min(legacyNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int fast = runDateUtils(dates, iterations);
+            fastNanos = Math.min(fastNanos, System.nanoTime() - start);
+
+            assertEquals(legacy, fast);
+        }
+        assertTrue("DateUtils " + fastNanos / 1000 + "us vs SimpleDateFormat " + legacyNanos / 1000 + "us",
+                fastNanos <= legacyNanos);
+    }
+
+    private static int runLegacy(String[] dates, int iterations) throws ParseException {
+        int sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            String date = dates[i % dates.length];
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+            sdf.setLenient(false);
+            Date parsed = sdf.parse(date);
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE", Locale.US);
+            sum += dayFormat.format(parsed).length();
+        }
+        return sum;
+    }
+
+    private static int runDateUtils(String[] dates, int iterations) {
+        int sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            sum += DateUtils.dayOfWeekName(dates[i % dates.length]).length();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,78 @@
+package com.universalyoga.admin.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks ProgressTracker's throttling and the figures Progress derives, on a fake clock.
+ */
+public class ProgressTrackerTest {
+
+    private long now = 1000;
+
+    @Test
+    public void reports_areThrottled_exceptAtPhaseEdges() {
+        List<Progress> reports = new ArrayList<>();
+        ProgressTracker tracker = new ProgressTracker(reports::add, () -> now);
+
+        tracker.beginPhase("Exporting courses", 1100);
+        for (int i = 0; i < 1100; i++) {
+            now++;
+            tracker.advance(1);
+        }
+
+        // The start, one every REPORT_INTERVAL_MS, and the end, which is not held back
+        assertEquals(2 + 1100 / ProgressTracker.REPORT_INTERVAL_MS, reports.size());
+        assertEquals(0, reports.get(0).getCompleted());
+        for (int i = 1; i < reports.size() - 1; i++) {
+            assertEquals(ProgressTracker.REPORT_INTERVAL_MS * i, reports.get(i).getCompleted());
+        }
+        Progress last = reports.get(reports.size() - 1);
+        assertEquals(1100, last.getCompleted());
+        assertEquals(100, last.getPercent());
+
+        tracker.beginPhase("Exporting schedules", Progress.UNKNOWN);
+        assertEquals("Exporting schedules", reports.get(reports.size() - 1).getPhase());
+        assertEquals(0, reports.get(reports.size() - 1).getCompleted());
+    }
+
+    @Test
+    public void progress_estimatesThroughputAndTimeLeft() {
+        ProgressTracker tracker = new ProgressTracker(null, () -> now);
+        tracker.beginPhase("Exporting schedules", 4000);
+        now += 2000;
+        tracker.setCompleted(1000);
+
+        Progress progress = tracker.current();
+        assertEquals(25, progress.getPercent());
+        assertEquals(500.0, progress.getItemsPerSecond(), 0.001);
+        assertEquals(6000, progress.getEtaMillis());
+        assertEquals("Exporting schedules: 1,000 of 4,000 rows • 500/s • 6 s left", progress.toText("rows"));
+    }
+
+    @Test
+    public void unknownTotal_hasNoPercentOrEta() {
+        ProgressTracker tracker = new ProgressTracker(null, () -> now);
+        tracker.beginPhase("Importing courses", Progress.UNKNOWN);
+        now += 1500;
+        tracker.advance(3000);
+
+        Progress progress = tracker.current();
+        assertTrue(progress.isIndeterminate());
+        assertEquals(Progress.UNKNOWN, progress.getPercent());
+        assertEquals(Progress.UNKNOWN, progress.getEtaMillis());
+        assertEquals("Importing courses: 3,000 rows • 2,000/s", progress.toText("rows"));
+    }
+
+    @Test
+    public void cancel_isSeenByTheOperation() {
+        ProgressTracker tracker = new ProgressTracker(null);
+        assertFalse(tracker.isCancelled());
+        tracker.cancel();
+        assertTrue(tracker.isCancelled());
+    }
+}
@@ -30,6 +30,10 @@ const COLLECTIONS = {
   SHOPPING_CART: 'shoppingCart', // Cart items
 };
 
+// A class or schedule deleted in the admin app stays as a tombstone document holding
+// only `_clocks` and `_deleted` until it is purged; it cannot be booked
+const isDeleted = (data) => data._deleted !== undefined;
+
 /**
  * Shopping Cart Operations
  */
@@ -253,7 +257,7 @@ export const bookingService = {
             const instanceRef = doc(db, COLLECTIONS.INSTANCES, item.instanceId);
             const instanceDoc = await transaction.get(instanceRef);
 
-            if (!instanceDoc.exists()) {
+            if (!instanceDoc.exists() || isDeleted(instanceDoc.data())) {
               throw new Error(`Schedule ${item.instanceId} no longer exists`);
             }
 
@@ -265,7 +269,7 @@ export const bookingService = {
             );
             const classDoc = await transaction.get(classRef);
 
-            if (!classDoc.exists()) {
+            if (!classDoc.exists() || isDeleted(classDoc.data())) {
               throw new Error(`Class ${item.courseId} no longer exists`);
             }
 
@@ -789,7 +793,7 @@ export const integrationHelpers = {
         doc(db, COLLECTIONS.INSTANCES, instanceId)
       );
 
-      if (!scheduleDoc.exists()) {
+      if (!scheduleDoc.exists() || isDeleted(scheduleDoc.data())) {
         throw new Error('Schedule not found');
       }
 
@@ -806,7 +810,7 @@ export const integrationHelpers = {
         doc(db, COLLECTIONS.CLASSES, courseId.toString())
       );
 
-      if (!classDoc.exists()) {
+      if (!classDoc.exists() || isDeleted(classDoc.data())) {
         throw new Error('Class not found');
       }
 
@@ -24,11 +24,46 @@ import { db } from './firebase';
 const COLLECTIONS = {
   CLASSES: 'yoga_courses', // Changed from 'yogaClasses'
   INSTANCES: 'schedules', // Changed from 'classInstances'
+  // One document per course with its upcoming classes embedded, written by the
+  // admin app's TimetablePublisher; the class listings read only this
+  TIMETABLE: 'timetable',
   BOOKINGS: 'bookings',
   USERS: 'users',
   SHOPPING_CART: 'shoppingCart',
 };
 
+// A class or schedule deleted in the admin app stays as a tombstone document holding
+// only `_clocks` and `_deleted` until it is purged; it is not shown or booked
+const isDeleted = (data) => data._deleted !== undefined;
+
+// A schedule's course, as the id of its yoga_courses document. The admin app names
+// courses by uid and writes it as `courseUid`; schedules written before that only have
+// the numeric `courseId`, which is also the uid those courses kept
+const courseIdOf = (data) =>
+  data.courseUid !== undefined ? data.courseUid : String(data.courseId);
+
+// The classes embedded in a timetable document, as schedules of its course.
+// Timetable documents are named by course uid, like yoga_courses documents
+const instancesOf = (timetableDoc) =>
+  (timetableDoc.data().upcomingClasses || []).map((instance) => ({
+    ...instance,
+    courseId: timetableDoc.id,
+    courseUid: timetableDoc.id,
+  }));
+
+// Every live timetable document, in weekly order
+const getTimetable = async () => {
+  const timetableRef = collection(db, COLLECTIONS.TIMETABLE);
+  const q = query(timetableRef, orderBy('dayOrdinal'), orderBy('startMinute'));
+  const querySnapshot = await getDocs(q);
+
+  const docs = [];
+  querySnapshot.forEach((doc) => {
+    if (!isDeleted(doc.data())) docs.push(doc);
+  });
+  return docs;
+};
+
 /**
  * Yoga Class Operations - Based on YogaCourse.java entity
  */
@@ -36,13 +71,11 @@ export const yogaClassService = {
   // Get all yoga classes
   getAllClasses: async () => {
     try {
-      console.log('Fetching all yoga classes from:', COLLECTIONS.CLASSES);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
-      const q = query(classesRef, orderBy('dayOfWeek'), orderBy('time'));
-      const querySnapshot = await getDocs(q);
+      console.log('Fetching all yoga classes from:', COLLECTIONS.TIMETABLE);
+      const timetable = await getTimetable();
 
       const classes = [];
-      querySnapshot.forEach((doc) => {
+      timetable.forEach((doc) => {
         const data = doc.data();
         classes.push({
           id: doc.id,
@@ -72,9 +105,9 @@ export const yogaClassService = {
   getClassById: async (classId) => {
     try {
       console.log('Fetching class:', classId);
-      const classDoc = await getDoc(doc(db, COLLECTIONS.CLASSES, classId));
+      const classDoc = await getDoc(doc(db, COLLECTIONS.TIMETABLE, classId));
 
-      if (!classDoc.exists()) {
+      if (!classDoc.exists() || isDeleted(classDoc.data())) {
         throw new Error('Class not found');
       }
 
@@ -101,17 +134,18 @@ export const yogaClassService = {
   searchClassesByType: async (classType) => {
     try {
       console.log('Searching classes by type:', classType);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
+      const classesRef = collection(db, COLLECTIONS.TIMETABLE);
       const q = query(
         classesRef,
         where('type', '==', classType),
-        orderBy('dayOfWeek'),
-        orderBy('time')
+        orderBy('dayOrdinal'),
+        orderBy('startMinute')
       );
       const querySnapshot = await getDocs(q);
 
       const classes = [];
       querySnapshot.forEach((doc) => {
+        if (isDeleted(doc.data())) return;
         classes.push({
           id: doc.id,
           ...doc.data(),
@@ -130,16 +164,17 @@ export const yogaClassService = {
   searchClassesByDay: async (dayOfWeek) => {
     try {
       console.log('Searching classes by day:', dayOfWeek);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
+      const classesRef = collection(db, COLLECTIONS.TIMETABLE);
       const q = query(
         classesRef,
         where('dayOfWeek', '==', dayOfWeek),
-        orderBy('time')
+        orderBy('startMinute')
       );
       const querySnapshot = await getDocs(q);
 
       const classes = [];
       querySnapshot.forEach((doc) => {
+        if (isDeleted(doc.data())) return;
         classes.push({
           id: doc.id,
           ...doc.data(),
@@ -158,16 +193,17 @@ export const yogaClassService = {
   searchClassesByTime: async (time) => {
     try {
       console.log('Searching classes by time:', time);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
+      const classesRef = collection(db, COLLECTIONS.TIMETABLE);
       const q = query(
         classesRef,
         where('time', '==', time),
-        orderBy('dayOfWeek')
+        orderBy('dayOrdinal')
       );
       const querySnapshot = await getDocs(q);
 
       const classes = [];
       querySnapshot.forEach((doc) => {
+        if (isDeleted(doc.data())) return;
         classes.push({
           id: doc.id,
           ...doc.data(),
@@ -186,7 +222,7 @@ export const yogaClassService = {
   searchClasses: async (filters = {}) => {
     try {
       console.log('Advanced search with filters:', filters);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
+      const classesRef = collection(db, COLLECTIONS.TIMETABLE);
       let q = query(classesRef);
 
       // Apply filters based on YogaCourse fields
@@ -210,11 +246,12 @@ export const yogaClassService = {
       }
 
       // Add default ordering
-      q = query(q, orderBy('dayOfWeek'), orderBy('time'));
+      q = query(q, orderBy('dayOrdinal'), orderBy('startMinute'));
 
       const querySnapshot = await getDocs(q);
       const classes = [];
       querySnapshot.forEach((doc) => {
+        if (isDeleted(doc.data())) return;
         classes.push({
           id: doc.id,
           ...doc.data(),
@@ -233,8 +270,8 @@ export const yogaClassService = {
   subscribeToClasses: (callback, filters = {}) => {
     try {
       console.log('Setting up classes subscription with filters:', filters);
-      const classesRef = collection(db, COLLECTIONS.CLASSES);
-      let q = query(classesRef, orderBy('dayOfWeek'), orderBy('time'));
+      const classesRef = collection(db, COLLECTIONS.TIMETABLE);
+      let q = query(classesRef, orderBy('dayOrdinal'), orderBy('startMinute'));
 
       // Apply filters if provided
       if (filters.dayOfWeek) {
@@ -249,6 +286,7 @@ export const yogaClassService = {
         (querySnapshot) => {
           const classes = [];
           querySnapshot.forEach((doc) => {
+            if (isDeleted(doc.data())) return;
             classes.push({
               id: doc.id,
               ...doc.data(),
@@ -275,33 +313,19 @@ export const yogaClassService = {
  * Class Instance Operations - Based on Schedule.java entity
  */
 export const classInstanceService = {
-  // Get instances for a specific class (courseId)
+  // Get instances for a specific class (courseId): its upcoming classes, from one document
   getInstancesForClass: async (courseId) => {
     try {
       console.log('Fetching instances for course:', courseId);
-      const instancesRef = collection(db, COLLECTIONS.INSTANCES);
-      const q = query(
-        instancesRef,
-        where('courseId', '==', parseInt(courseId)), // courseId is int in Java
-        orderBy('date')
+      const courseUid = courseId.toString();
+      const timetableDoc = await getDoc(
+        doc(db, COLLECTIONS.TIMETABLE, courseUid)
       );
-      const querySnapshot = await getDocs(q);
 
-      const instances = [];
-      querySnapshot.forEach((doc) => {
-        const data = doc.data();
-        instances.push({
-          id: doc.id,
-          // Map Firestore fields to match Schedule entity
-          courseId: data.courseId,
-          date: data.date,
-          teacher: data.teacher,
-          comments: data.comments,
-          // Additional computed fields
-          lastUpdated: data.lastUpdated,
-          ...data,
-        });
-      });
+      const instances =
+        timetableDoc.exists() && !isDeleted(timetableDoc.data())
+          ? instancesOf(timetableDoc)
+          : [];
 
       console.log(
         `✅ Fetched ${instances.length} instances for course ${courseId}`
@@ -321,19 +345,19 @@ export const classInstanceService = {
         doc(db, COLLECTIONS.INSTANCES, instanceId)
       );
 
-      if (!instanceDoc.exists()) {
+      if (!instanceDoc.exists() || isDeleted(instanceDoc.data())) {
         throw new Error('Instance not found');
       }
 
       const data = instanceDoc.data();
       return {
         id: instanceDoc.id,
-        courseId: data.courseId,
         date: data.date,
         teacher: data.teacher,
         comments: data.comments,
         lastUpdated: data.lastUpdated,
         ...data,
+        courseId: courseIdOf(data),
       };
     } catch (error) {
       console.error('❌ Error fetching instance:', error);
@@ -345,27 +369,24 @@ export const classInstanceService = {
   searchInstancesByTeacher: async (teacherName) => {
     try {
       console.log('Searching instances by teacher:', teacherName);
-      const instancesRef = collection(db, COLLECTIONS.INSTANCES);
-
       // For partial matching, we'll fetch all and filter
       // In a production app, you might want to use full-text search
-      const q = query(instancesRef, orderBy('teacher'), orderBy('date'));
-      const querySnapshot = await getDocs(q);
+      const timetable = await getTimetable();
+      const search = teacherName.toLowerCase();
 
       const instances = [];
-      querySnapshot.forEach((doc) => {
-        const data = doc.data();
-        // Case-insensitive partial matching
-        if (
-          data.teacher &&
-          data.teacher.toLowerCase().includes(teacherName.toLowerCase())
-        ) {
-          instances.push({
-            id: doc.id,
-            ...data,
-          });
-        }
+      timetable.forEach((timetableDoc) => {
+        instancesOf(timetableDoc).forEach((instance) => {
+          // Case-insensitive partial matching
+          if (
+            instance.teacher &&
+            instance.teacher.toLowerCase().includes(search)
+          ) {
+            instances.push(instance);
+          }
+        });
       });
+      instances.sort((a, b) => a.date.localeCompare(b.date));
 
       console.log(
         `✅ Found ${instances.length} instances for teacher containing "${teacherName}"`
@@ -382,22 +403,16 @@ export const classInstanceService = {
     try {
       console.log('Fetching available instances...');
       const today = new Date().toISOString().split('T')[0]; // YYYY-MM-DD format
-      const instancesRef = collection(db, COLLECTIONS.INSTANCES);
-      const q = query(
-        instancesRef,
-        where('date', '>=', today),
-        orderBy('date')
-      );
-      const querySnapshot = await getDocs(q);
+      const timetable = await getTimetable();
 
+      // Classes published earlier may have passed since
       const instances = [];
-      querySnapshot.forEach((doc) => {
-        const data = doc.data();
-        instances.push({
-          id: doc.id,
-          ...data,
+      timetable.forEach((timetableDoc) => {
+        instancesOf(timetableDoc).forEach((instance) => {
+          if (instance.date >= today) instances.push(instance);
         });
       });
+      instances.sort((a, b) => a.date.localeCompare(b.date));
 
       console.log(`✅ Found ${instances.length} available instances`);
       return instances;
@@ -407,69 +422,33 @@ export const classInstanceService = {
     }
   },
 
-  // Get instances with class details (JOIN operation)
+  // Get upcoming instances with class details. Each timetable document holds the
+  // class and its instances, so no join is needed
   getInstancesWithClassDetails: async (filters = {}) => {
     try {
       console.log('Fetching instances with class details...');
-
-      // First get instances
-      let instancesQuery = query(collection(db, COLLECTIONS.INSTANCES));
-
-      if (filters.fromDate) {
-        instancesQuery = query(
-          instancesQuery,
-          where('date', '>=', filters.fromDate)
-        );
-      }
-      if (filters.toDate) {
-        instancesQuery = query(
-          instancesQuery,
-          where('date', '<=', filters.toDate)
-        );
-      }
-
-      instancesQuery = query(instancesQuery, orderBy('date'));
-
-      const instancesSnapshot = await getDocs(instancesQuery);
-
-      // Get all unique courseIds
-      const courseIds = new Set();
-      const instancesData = [];
-
-      instancesSnapshot.forEach((doc) => {
-        const data = doc.data();
-        instancesData.push({ id: doc.id, ...data });
-        courseIds.add(data.courseId);
+      const timetable = await getTimetable();
+
+      const combinedData = [];
+      timetable.forEach((timetableDoc) => {
+        const { upcomingClasses, ...classDetails } = timetableDoc.data();
+        instancesOf(timetableDoc).forEach((instance) => {
+          if (filters.fromDate && instance.date < filters.fromDate) return;
+          if (filters.toDate && instance.date > filters.toDate) return;
+          combinedData.push({
+            ...instance,
+            classDetails,
+            // Computed fields for easy access
+            className: classDetails.type || 'Unknown Class',
+            classTime: classDetails.time || 'Unknown Time',
+            classDuration: classDetails.duration || 0,
+            classPrice: classDetails.price || 0,
+            classCapacity: classDetails.capacity || 0,
+            classDayOfWeek: classDetails.dayOfWeek || 'Unknown Day',
+          });
+        });
       });
-
-      // Get class details for all courseIds
-      const classesData = {};
-      for (const courseId of courseIds) {
-        try {
-          const classDoc = await getDoc(
-            doc(db, COLLECTIONS.CLASSES, courseId.toString())
-          );
-          if (classDoc.exists()) {
-            classesData[courseId] = classDoc.data();
-          }
-        } catch (error) {
-          console.warn(`Could not fetch class ${courseId}:`, error.message);
-        }
-      }
-
-      // Combine instances with class details
-      const combinedData = instancesData.map((instance) => ({
-        ...instance,
-        classDetails: classesData[instance.courseId] || null,
-        // Computed fields for easy access
-        className: classesData[instance.courseId]?.type || 'Unknown Class',
-        classTime: classesData[instance.courseId]?.time || 'Unknown Time',
-        classDuration: classesData[instance.courseId]?.duration || 0,
-        classPrice: classesData[instance.courseId]?.price || 0,
-        classCapacity: classesData[instance.courseId]?.capacity || 0,
-        classDayOfWeek:
-          classesData[instance.courseId]?.dayOfWeek || 'Unknown Day',
-      }));
+      combinedData.sort((a, b) => a.date.localeCompare(b.date));
 
       console.log(
         `✅ Combined ${combinedData.length} instances with class details`
@@ -615,7 +594,7 @@ export const yogaServiceUtils = {
 
   scheduleToFirestore: (schedule) => {
     return {
-      courseId: schedule.courseId,
+      courseUid: schedule.courseId.toString(),
       date: schedule.date,
       teacher: schedule.teacher,
       comments: schedule.comments || '',
@@ -136,7 +136,10 @@ export class YogaCourseModel {
 export class ScheduleModel {
   constructor(data = {}) {
     this.id = data.id || null;
-    this.courseId = data.courseId || 0;
+    // Id of the yoga_courses document; see courseIdOf() in yogaService.js
+    this.courseId = String(
+      data.courseUid !== undefined ? data.courseUid : data.courseId || ''
+    );
     this.date = data.date || '';
     this.teacher = data.teacher || '';
     this.comments = data.comments || '';
@@ -175,14 +178,6 @@ export class ScheduleModel {
       }
     }
 
-    // CourseId must be a number
-    if (
-      this.courseId &&
-      (typeof this.courseId !== 'number' || this.courseId <= 0)
-    ) {
-      errors.push('Course ID must be a positive number');
-    }
-
     return {
       isValid: errors.length === 0,
       errors,
@@ -192,7 +187,7 @@ export class ScheduleModel {
   // Convert to Firestore format
   toFirestore() {
     return {
-      courseId: parseInt(this.courseId),
+      courseUid: this.courseId,
       date: this.date,
       teacher: this.teacher,
       comments: this.comments,
@@ -479,7 +474,8 @@ export class CartItemModel {
   constructor(data = {}) {
     this.id = data.id || null;
     this.userId = data.userId || '';
-    this.courseId = data.courseId || 0;
+    // Id of the yoga_courses document, numeric in items added before course uids
+    this.courseId = data.courseId ? String(data.courseId) : '';
     this.instanceId = data.instanceId || '';
     this.className = data.className || '';
     this.classType = data.classType || '';
@@ -536,7 +532,7 @@ export class CartItemModel {
   toFirestore() {
     return {
       userId: this.userId,
-      courseId: parseInt(this.courseId),
+      courseId: this.courseId,
       instanceId: this.instanceId,
       className: this.className,
       classType: this.classType,